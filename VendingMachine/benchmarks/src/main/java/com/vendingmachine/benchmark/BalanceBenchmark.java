@@ -0,0 +1,55 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.model.Coin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link VendingMachine#getCurrentBalance()} as the number of inserted coins grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BalanceBenchmark {
+
+    @Param({"1", "10", "40", "200"})
+    public int insertedCoins;
+
+    private VendingMachine vm;
+
+    @Setup
+    public void setUp() {
+        vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        for (int i = 0; i < insertedCoins; i++) {
+            vm.insertCoin(Coin.PENNY);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        vm.cancelTransaction();
+    }
+
+    @Benchmark
+    public int getCurrentBalance() {
+        return vm.getCurrentBalance();
+    }
+}
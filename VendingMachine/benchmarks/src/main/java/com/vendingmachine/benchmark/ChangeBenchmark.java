@@ -0,0 +1,100 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.change.OptimalChangeStrategy;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.model.Coin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link Inventory#calculateChange(int)} and its allocation-free
+ * {@link Inventory#calculateChange(int, int[])} variant across change amounts and coin floats.
+ *
+ * {@code strategy=selected} is the default strategy picked for the canonical US set (greedy
+ * with an optimal fallback), {@code optimal} always runs the dynamic program.
+ *
+ * calculateChange removes the coins it hands out, so every invocation puts them
+ * back to keep the float stable; the refill is part of the measured time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChangeBenchmark {
+
+    @Param({"5", "40", "95", "385"})
+    public int amount;
+
+    /**
+     * rich: plenty of every coin.
+     * noNickels: no nickels and few dimes, so many amounts fall through to pennies or fail.
+     * pennies: only pennies, the worst case for the number of coins handed out.
+     */
+    @Param({"rich", "noNickels", "pennies"})
+    public String coinFloat;
+
+    @Param({"selected", "optimal"})
+    public String strategy;
+
+    private Inventory inventory;
+    private final int[] changeCounts = new int[Coin.values().length];
+
+    @Setup
+    public void setUp() {
+        inventory = strategy.equals("optimal") ? new Inventory(new OptimalChangeStrategy()) : new Inventory();
+        switch (coinFloat) {
+            case "rich":
+                for (Coin coin : Coin.values()) {
+                    inventory.addCoins(coin, 1_000);
+                }
+                break;
+            case "noNickels":
+                inventory.addCoins(Coin.DOLLAR, 100);
+                inventory.addCoins(Coin.QUARTER, 100);
+                inventory.addCoins(Coin.DIME, 3);
+                inventory.addCoins(Coin.PENNY, 4);
+                break;
+            case "pennies":
+                inventory.addCoins(Coin.PENNY, 10_000);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown coin float: " + coinFloat);
+        }
+    }
+
+    @Benchmark
+    public List<Coin> calculateChange() {
+        List<Coin> change = inventory.calculateChange(amount);
+        if (change != null) {
+            for (Coin coin : change) {
+                inventory.addCoins(coin, 1);
+            }
+        }
+        return change;
+    }
+
+    @Benchmark
+    public boolean calculateChangeIntoBuffer() {
+        boolean made = inventory.calculateChange(amount, changeCounts);
+        if (made) {
+            for (Coin coin : Coin.values()) {
+                inventory.addCoins(coin, changeCounts[coin.ordinal()]);
+            }
+        }
+        return made;
+    }
+}
@@ -0,0 +1,91 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks vending while the coin float is refilled and collected at the same time.
+ *
+ * Three threads vend with change from sessions of one shared inventory; one thread adds and
+ * removes quarters, like a service engineer topping up the float and emptying the cash box.
+ * Read the vend result against {@code VendCycleBenchmark.fullCycleWithChange} for the cost
+ * of the concurrent coin traffic, and the refill result for how long a refill waits.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoinFloatBenchmark {
+
+    private static final String SHELF = "A1";
+    private static final int STOCK = 50_000_000;
+
+    @State(Scope.Group)
+    public static class Machine {
+        Inventory inventory;
+        VendingMachine vm;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            inventory = new Inventory();
+            vm = new VendingMachine(inventory, VendingEventListener.NO_OP);
+            vm.stockProduct(SHELF, new Product("COKE", "Coca-Cola", 150), STOCK);
+        }
+
+        @Setup(Level.Iteration)
+        public void refill() {
+            // Every vend pays two dollars and takes back two quarters.
+            vm.stockProduct(SHELF, inventory.getProduct(SHELF), STOCK);
+            vm.loadCoins(Coin.QUARTER, 2 * STOCK - inventory.getCoinCount(Coin.QUARTER));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        VendingMachine vm;
+
+        @Setup(Level.Trial)
+        public void setUp(Machine machine) {
+            vm = machine.vm.openSession();
+        }
+    }
+
+    /** Full purchase that needs 50 cents of change, from one of three concurrent sessions. */
+    @Benchmark
+    @Group("float")
+    @GroupThreads(3)
+    public Product vend(Session session) {
+        session.vm.insertCoin(Coin.DOLLAR);
+        session.vm.insertCoin(Coin.DOLLAR);
+        session.vm.selectProduct(SHELF);
+        return session.vm.dispenseProduct();
+    }
+
+    /** Adds ten quarters and collects them again. */
+    @Benchmark
+    @Group("float")
+    @GroupThreads(1)
+    public boolean refillAndCollect(Machine machine) {
+        machine.inventory.addCoins(Coin.QUARTER, 10);
+        return machine.inventory.removeCoins(Coin.QUARTER, 10);
+    }
+}
@@ -0,0 +1,92 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the optimistic read path of {@link Inventory}: availability and price checks
+ * and the total coin value, with no writer and next to a session vending with change.
+ *
+ * {@code readOnly} runs on four threads; its score per operation should stay flat as
+ * threads are added, since readers take no lock and write no shared memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class InventoryReadBenchmark {
+
+    private static final String SHELF = "A1";
+    private static final int STOCK = 50_000_000;
+
+    private Inventory inventory;
+    private VendingMachine vm;
+    private int slot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        inventory = new Inventory();
+        vm = new VendingMachine(inventory, VendingEventListener.NO_OP);
+        vm.stockProduct(SHELF, new Product("COKE", "Coca-Cola", 150), STOCK);
+        slot = inventory.resolveShelf(SHELF);
+    }
+
+    @Setup(Level.Iteration)
+    public void refill() {
+        // Every vend pays two dollars and takes back two quarters.
+        vm.stockProduct(SHELF, inventory.getProduct(SHELF), STOCK);
+        vm.loadCoins(Coin.QUARTER, 2 * STOCK - inventory.getCoinCount(Coin.QUARTER));
+    }
+
+    /** Availability, price and coin value, with no writer running. */
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(4)
+    public int readOnly() {
+        return read();
+    }
+
+    /** The same reads, from three threads, while a fourth thread vends. */
+    @Benchmark
+    @Group("readWhileVending")
+    @GroupThreads(3)
+    public int reader() {
+        return read();
+    }
+
+    /** Full purchase that needs 50 cents of change. */
+    @Benchmark
+    @Group("readWhileVending")
+    @GroupThreads(1)
+    public Product vend() {
+        vm.insertCoin(Coin.DOLLAR);
+        vm.insertCoin(Coin.DOLLAR);
+        vm.selectProduct(SHELF);
+        return vm.dispenseProduct();
+    }
+
+    private int read() {
+        Product product = inventory.getAvailableProduct(slot);
+        return (product != null ? product.getPriceInCents() : 0) + inventory.getTotalCoinValue();
+    }
+}
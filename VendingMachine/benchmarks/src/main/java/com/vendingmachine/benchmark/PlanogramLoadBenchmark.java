@@ -0,0 +1,65 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.inventory.PlanogramLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link PlanogramLoader#load(Path)} on CSV planograms of increasing size,
+ * with 500 distinct products spread over the shelves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class PlanogramLoadBenchmark {
+
+    private static final int PRODUCTS = 500;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private Path file;
+
+    @Setup
+    public void writePlanogram() throws IOException {
+        file = Files.createTempFile("planogram", ".csv");
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("shelf,product_id,product_name,price_cents,quantity\n");
+            for (int i = 0; i < rows; i++) {
+                int product = i % PRODUCTS;
+                out.write(Planograms.shelfCode(i) + ",P" + product + ",Product " + product + ","
+                    + (100 + product) + "," + (i % 12) + "\n");
+            }
+        }
+    }
+
+    @TearDown
+    public void deletePlanogram() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Inventory load() throws IOException {
+        return PlanogramLoader.load(file);
+    }
+}
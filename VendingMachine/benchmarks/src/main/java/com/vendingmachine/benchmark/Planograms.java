@@ -0,0 +1,25 @@
+package com.vendingmachine.benchmark;
+
+/**
+ * Shelf code helpers for building synthetic planograms.
+ */
+final class Planograms {
+
+    private static final int COLUMNS = 10;
+
+    private Planograms() {
+    }
+
+    /**
+     * Maps a running index to a grid code: 0 → "A0", 11 → "B1", 260 → "AA0".
+     */
+    static String shelfCode(int index) {
+        int row = index / COLUMNS;
+        StringBuilder letters = new StringBuilder();
+        do {
+            letters.insert(0, (char) ('A' + row % 26));
+            row = row / 26 - 1;
+        } while (row >= 0);
+        return letters.append(index % COLUMNS).toString();
+    }
+}
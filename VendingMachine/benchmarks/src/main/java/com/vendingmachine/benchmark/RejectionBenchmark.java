@@ -0,0 +1,60 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.exception.ProductNotAvailableException;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.result.VendResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks selecting a sold-out product: the exception API against the
+ * {@link VendResult} API.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RejectionBenchmark {
+
+    private static final String SHELF = "A1";
+
+    private VendingMachine vm;
+
+    @Setup
+    public void setUp() {
+        vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        vm.stockProduct(SHELF, new Product("COKE", "Coca-Cola", 150), 0);
+        vm.insertCoin(Coin.DOLLAR);
+    }
+
+    @Benchmark
+    public Object soldOutException() {
+        try {
+            vm.selectProduct(SHELF);
+            return null;
+        } catch (ProductNotAvailableException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public VendResult soldOutResult() {
+        return vm.trySelectProduct(SHELF);
+    }
+}
@@ -0,0 +1,70 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.analytics.SalesAnalytics;
+import com.vendingmachine.analytics.SalesFigures;
+import com.vendingmachine.analytics.SalesWindow;
+import com.vendingmachine.event.VendingEvent;
+import com.vendingmachine.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link SalesAnalytics} on a machine with 120 products: recording one dispense
+ * (the cost added to every sale), and the top-5 and revenue queries, which should not
+ * depend on how many sales were recorded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SalesAnalyticsBenchmark {
+
+    private static final int PRODUCTS = 120;
+
+    private SalesAnalytics analytics;
+    private VendingEvent[] dispensed;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        analytics = new SalesAnalytics();
+        dispensed = new VendingEvent[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product("P" + i, "Product " + i, 100 + i);
+            dispensed[i] = new VendingEvent.ProductDispensed(Planograms.shelfCode(i), product);
+            // Uneven sales, so the ranking is not trivial
+            for (int n = 0; n < i % 7; n++) {
+                analytics.onEvent(dispensed[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public void recordDispense() {
+        analytics.onEvent(dispensed[next]);
+        next = next + 1 == PRODUCTS ? 0 : next + 1;
+    }
+
+    @Benchmark
+    public List<SalesFigures> topFive() {
+        return analytics.topProducts(SalesWindow.HOUR, 5);
+    }
+
+    @Benchmark
+    public long revenue() {
+        return analytics.getRevenue(SalesWindow.DAY);
+    }
+}
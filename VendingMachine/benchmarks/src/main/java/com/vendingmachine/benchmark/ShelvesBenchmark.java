@@ -0,0 +1,64 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.inventory.InventoryView;
+import com.vendingmachine.model.ItemShelf;
+import com.vendingmachine.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link Inventory#getAllShelves()} and {@link Inventory#getView()} on planograms
+ * of increasing size. {@code getViewUnchanged} polls an inventory that does not change;
+ * {@code getViewAfterRestock} restocks one shelf before each call, so a new view is built.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShelvesBenchmark {
+
+    @Param({"12", "120", "1200", "12000"})
+    public int shelves;
+
+    private Inventory inventory;
+
+    @Setup
+    public void setUp() {
+        inventory = new Inventory();
+        Product product = new Product("COKE", "Coca-Cola", 150);
+        for (int i = 0; i < shelves; i++) {
+            inventory.stockProduct(Planograms.shelfCode(i), product, 10);
+        }
+    }
+
+    @Benchmark
+    public List<ItemShelf> getAllShelves() {
+        return inventory.getAllShelves();
+    }
+
+    @Benchmark
+    public InventoryView getViewUnchanged() {
+        return inventory.getView();
+    }
+
+    @Benchmark
+    public InventoryView getViewAfterRestock() {
+        inventory.addStock(Planograms.shelfCode(0), 1);
+        return inventory.getView();
+    }
+}
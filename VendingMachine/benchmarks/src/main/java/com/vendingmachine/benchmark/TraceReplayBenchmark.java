@@ -0,0 +1,144 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.trace.ReplayResult;
+import com.vendingmachine.trace.Trace;
+import com.vendingmachine.trace.TraceRecorder;
+import com.vendingmachine.trace.TraceReplayer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks traces: replaying a recorded workload of {@value #CALLS} calls from two
+ * sessions (reported per call, including setting up the fresh machine), and a purchase with
+ * change on a machine being recorded, to compare with
+ * {@link VendCycleBenchmark#fullCycleWithChange()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TraceReplayBenchmark {
+
+    private static final int CALLS = 100_000;
+    private static final String SHELF = "A1";
+    private static final int STOCK = 50_000_000;
+
+    private Trace trace;
+    private VendingMachine recorded;
+    private TraceRecorder recorder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        trace = record();
+        ReplayResult check = new TraceReplayer(trace).run();
+        if (!check.isFaithful()) {
+            throw new IllegalStateException("Replay does not match the recording: " + check.firstMismatches());
+        }
+
+        recorded = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        recorded.stockProduct(SHELF, new Product("COKE", "Coca-Cola", 150), STOCK);
+        recorder = TraceRecorder.start(recorded, OutputStream.nullOutputStream());
+    }
+
+    @Setup(Level.Iteration)
+    public void refill() {
+        recorded.stockProduct(SHELF, recorded.getInventory().getProduct(SHELF), STOCK);
+        recorded.loadCoins(Coin.QUARTER, 2 * STOCK - recorded.getInventory().getCoinCount(Coin.QUARTER));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        recorder.close();
+    }
+
+    /** Replays the whole trace on a new machine. */
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public long replay() {
+        return new TraceReplayer(trace).run().mismatches();
+    }
+
+    /** Full purchase that needs 50 cents of change, with every call recorded. */
+    @Benchmark
+    public Product recordedCycleWithChange() {
+        recorded.insertCoin(Coin.DOLLAR);
+        recorded.insertCoin(Coin.DOLLAR);
+        recorded.selectProduct(SHELF);
+        return recorded.dispenseProduct();
+    }
+
+    /**
+     * Records a customer mix on six shelves: mostly coins and purchases, some cancels,
+     * sold-out and wrong-state calls, and the occasional restock.
+     */
+    private static Trace record() throws IOException {
+        Product[] products = {
+            new Product("COKE", "Coca-Cola", 125),
+            new Product("CHIPS", "Chips", 65),
+            new Product("WATER", "Water", 100)
+        };
+        VendingMachine vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        for (int i = 0; i < 6; i++) {
+            vm.stockProduct("A" + (i + 1), products[i % products.length], 20);
+        }
+        vm.loadCoins(Coin.QUARTER, 200);
+        vm.loadCoins(Coin.DIME, 200);
+        vm.loadCoins(Coin.NICKEL, 200);
+        VendingMachine[] sessions = {vm, vm.openSession()};
+
+        Coin[] coins = {Coin.NICKEL, Coin.DIME, Coin.QUARTER, Coin.DOLLAR};
+        Random random = new Random(42);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceRecorder traceRecorder = TraceRecorder.start(vm, bytes)) {
+            for (int i = 0; i < CALLS; i++) {
+                VendingMachine session = sessions[random.nextInt(sessions.length)];
+                int kind = random.nextInt(100);
+                if (kind < 45) {
+                    session.tryInsertCoin(coins[random.nextInt(coins.length)]);
+                } else if (kind < 65) {
+                    session.trySelectProduct("A" + (1 + random.nextInt(6)));
+                } else if (kind < 85) {
+                    session.tryDispenseProduct();
+                } else if (kind < 97) {
+                    try {
+                        session.cancelTransaction();
+                    } catch (RuntimeException e) {
+                        // Recorded; nothing to cancel
+                    }
+                } else {
+                    String shelf = "A" + (1 + random.nextInt(6));
+                    session.stockProduct(shelf, vm.getInventory().getProduct(shelf), 20);
+                }
+            }
+            if (traceRecorder.getRecordCount() != CALLS) {
+                throw new IllegalStateException("Recorded " + traceRecorder.getRecordCount() + " of " + CALLS + " calls");
+            }
+        }
+        return Trace.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
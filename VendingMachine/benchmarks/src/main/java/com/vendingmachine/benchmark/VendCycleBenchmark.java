@@ -0,0 +1,91 @@
+package com.vendingmachine.benchmark;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.metrics.MachineMetrics;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the customer-facing transaction path of {@link VendingMachine}.
+ *
+ * Each benchmark stops at a different point of the insert → select → dispense
+ * cycle so the cost of a single step can be read off as the difference between
+ * two neighbouring results. {@code metrics=true} runs the same paths with
+ * {@link MachineMetrics} recording, to show its overhead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VendCycleBenchmark {
+
+    private static final String SHELF = "A1";
+    private static final int STOCK = 50_000_000;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private VendingMachine vm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        vm.stockProduct(SHELF, new Product("COKE", "Coca-Cola", 150), STOCK);
+        if (metrics) {
+            vm.getInventory().setMetrics(new MachineMetrics());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void refill() {
+        // Every vend pays two dollars and takes back two quarters.
+        vm.stockProduct(SHELF, vm.getInventory().getProduct(SHELF), STOCK);
+        vm.loadCoins(Coin.QUARTER, 2 * STOCK - vm.getInventory().getCoinCount(Coin.QUARTER));
+    }
+
+    /** Insert and cancel: the baseline cost of coin handling and a refund. */
+    @Benchmark
+    public List<Coin> insertAndCancel() {
+        vm.insertCoin(Coin.DOLLAR);
+        vm.insertCoin(Coin.DOLLAR);
+        return vm.cancelTransaction();
+    }
+
+    /** Full purchase with exact money: no change calculation involved. */
+    @Benchmark
+    public Product fullCycleExactMoney() {
+        vm.insertCoin(Coin.DOLLAR);
+        vm.insertCoin(Coin.QUARTER);
+        vm.insertCoin(Coin.QUARTER);
+        vm.selectProduct(SHELF);
+        return vm.dispenseProduct();
+    }
+
+    /** Full purchase that needs 50 cents of change. */
+    @Benchmark
+    public Product fullCycleWithChange() {
+        vm.insertCoin(Coin.DOLLAR);
+        vm.insertCoin(Coin.DOLLAR);
+        vm.selectProduct(SHELF);
+        return vm.dispenseProduct();
+    }
+}
@@ -0,0 +1,68 @@
+package com.vendingmachine.loadgen;
+
+import com.vendingmachine.model.Coin;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * How simulated customers pay.
+ */
+enum CoinMix {
+
+    /** Pays the exact price, largest coins first. */
+    EXACT,
+    /** Pays in dollar coins, usually needing change. */
+    DOLLARS,
+    /** Random coins until the price is covered. */
+    MIXED,
+    /** Pays everything in pennies: many inserts per customer. */
+    PENNIES,
+    /** Like MIXED, but one in five customers stops a coin short of the price. */
+    SHORT;
+
+    private static final Coin[] COINS = Coin.values();
+
+    /**
+     * Chooses the coins one customer will insert for a product of the given price.
+     */
+    void coinsFor(int price, SplittableRandom random, List<Coin> out) {
+        out.clear();
+        int paid = 0;
+        switch (this) {
+            case EXACT:
+                for (Coin coin : Coin.largestFirst()) {
+                    while (paid + coin.getValue() <= price) {
+                        out.add(coin);
+                        paid += coin.getValue();
+                    }
+                }
+                break;
+            case DOLLARS:
+                while (paid < price) {
+                    out.add(Coin.DOLLAR);
+                    paid += Coin.DOLLAR.getValue();
+                }
+                break;
+            case PENNIES:
+                for (int i = 0; i < price; i++) {
+                    out.add(Coin.PENNY);
+                }
+                break;
+            case MIXED:
+            case SHORT:
+                while (paid < price) {
+                    // Skip pennies for MIXED, they dominate the insert count otherwise
+                    Coin coin = COINS[1 + random.nextInt(COINS.length - 1)];
+                    out.add(coin);
+                    paid += coin.getValue();
+                }
+                if (this == SHORT && random.nextInt(5) == 0) {
+                    out.remove(out.size() - 1);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown coin mix " + this);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.vendingmachine.loadgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of a load-generation run, parsed from {@code key=value} command-line arguments.
+ *
+ * <pre>
+ * customers=100000     total customers to simulate
+ * rate=50000           mean arrivals per second (Poisson); 0 starts everyone at once
+ * cores=1,2,4,8        core counts to measure, each in its own JVM
+ * coins=mixed          coin mix: exact | dollars | mixed | pennies | short
+ * products=A1:5,A2:3   shelf preferences as code:weight
+ * stock=1000           items per shelf
+ * float=200            coins of every denomination loaded for change
+ * seed=42              random seed
+ * </pre>
+ */
+final class LoadConfig {
+
+    int customers = 100_000;
+    double arrivalsPerSecond = 50_000;
+    List<Integer> coreCounts = defaultCoreCounts();
+    CoinMix coinMix = CoinMix.MIXED;
+    Map<String, Integer> productWeights = defaultProductWeights();
+    int stockPerShelf = 1_000;
+    int coinFloat = 200;
+    long seed = 42;
+
+    static LoadConfig parse(String[] args) {
+        LoadConfig config = new LoadConfig();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "customers":
+                    config.customers = Integer.parseInt(value);
+                    break;
+                case "rate":
+                    config.arrivalsPerSecond = Double.parseDouble(value);
+                    break;
+                case "cores":
+                    config.coreCounts = new ArrayList<>();
+                    for (String cores : value.split(",")) {
+                        config.coreCounts.add(Integer.parseInt(cores.trim()));
+                    }
+                    break;
+                case "coins":
+                    config.coinMix = CoinMix.valueOf(value.toUpperCase());
+                    break;
+                case "products":
+                    config.productWeights = new LinkedHashMap<>();
+                    for (String entry : value.split(",")) {
+                        String[] parts = entry.split(":");
+                        config.productWeights.put(parts[0].trim(),
+                            parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1);
+                    }
+                    break;
+                case "stock":
+                    config.stockPerShelf = Integer.parseInt(value);
+                    break;
+                case "float":
+                    config.coinFloat = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    config.seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Arguments that reproduce this configuration for a single core count.
+     */
+    List<String> toArgs(int cores) {
+        List<String> args = new ArrayList<>();
+        args.add("customers=" + customers);
+        args.add("rate=" + arrivalsPerSecond);
+        args.add("cores=" + cores);
+        args.add("coins=" + coinMix.name().toLowerCase());
+        StringBuilder products = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : productWeights.entrySet()) {
+            if (products.length() > 0) {
+                products.append(',');
+            }
+            products.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        args.add("products=" + products);
+        args.add("stock=" + stockPerShelf);
+        args.add("float=" + coinFloat);
+        args.add("seed=" + seed);
+        return args;
+    }
+
+    private static List<Integer> defaultCoreCounts() {
+        List<Integer> counts = new ArrayList<>();
+        int available = Runtime.getRuntime().availableProcessors();
+        for (int cores = 1; cores < available; cores *= 2) {
+            counts.add(cores);
+        }
+        counts.add(available);
+        return counts;
+    }
+
+    private static Map<String, Integer> defaultProductWeights() {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        // A1 is the hot shelf, as in the field
+        for (String code : Arrays.asList("A1", "A2", "A3", "B1", "B2", "B3")) {
+            weights.put(code, code.equals("A1") ? 5 : 1);
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,253 @@
+package com.vendingmachine.loadgen;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientMoneyException;
+import com.vendingmachine.exception.InvalidOperationException;
+import com.vendingmachine.exception.ProductNotAvailableException;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.metrics.LatencyHistogram;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for the vend path: simulates many concurrent customers, one virtual
+ * thread each, buying from one machine through their own {@link VendingMachine#openSession() session}.
+ *
+ * Customers arrive as a Poisson process at the configured rate, pick a shelf by weighted
+ * preference, pay with the configured coin mix and buy. The run reports throughput, latency
+ * percentiles per operation and a breakdown of failed purchases.
+ *
+ * To produce a scaling curve every core count runs in a separate JVM whose processor count
+ * and virtual-thread scheduler parallelism are pinned to that number; the parent collects a
+ * summary line from each. See {@link LoadConfig} for the options. Requires Java 21.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.vendingmachine.loadgen.LoadGenerator customers=200000 rate=100000 cores=1,2,4
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private static final String CHILD_PROPERTY = "loadgen.child";
+    private static final String RESULT_PREFIX = "RESULT ";
+
+    enum Operation { INSERT_COIN, SELECT_PRODUCT, DISPENSE_PRODUCT, CANCEL_TRANSACTION, PURCHASE }
+
+    enum Failure { INSUFFICIENT_MONEY, INSUFFICIENT_CHANGE, STOCK_OUT, INVALID_OPERATION, OTHER }
+
+    private final LoadConfig config;
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Failure, LongAdder> failures = new EnumMap<>(Failure.class);
+    private final LongAdder completed = new LongAdder();
+
+    // Events off: console output would dominate the measurement
+    private final VendingMachine machine = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+    private final String[] shelves;
+    private final int[] cumulativeWeights;
+    private final Map<String, Integer> prices = new LinkedHashMap<>();
+
+    LoadGenerator(LoadConfig config) {
+        this.config = config;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+        for (Failure failure : Failure.values()) {
+            failures.put(failure, new LongAdder());
+        }
+
+        shelves = config.productWeights.keySet().toArray(new String[0]);
+        cumulativeWeights = new int[shelves.length];
+        int total = 0;
+        for (int i = 0; i < shelves.length; i++) {
+            total += config.productWeights.get(shelves[i]);
+            cumulativeWeights[i] = total;
+            int price = 75 + 25 * (i % 5);
+            prices.put(shelves[i], price);
+            machine.stockProduct(shelves[i], new Product("P" + i, "Product " + shelves[i], price), config.stockPerShelf);
+        }
+        for (Coin coin : Coin.values()) {
+            machine.loadCoins(coin, config.coinFloat);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.parse(args);
+        if (Boolean.getBoolean(CHILD_PROPERTY)) {
+            runInThisJvm(config);
+        } else {
+            runScalingCurve(config);
+        }
+    }
+
+    // ==================== Parent: one JVM per core count ====================
+
+    private static void runScalingCurve(LoadConfig config) throws IOException, InterruptedException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        String classPath = System.getProperty("java.class.path");
+        List<String> summary = new ArrayList<>();
+
+        for (int cores : config.coreCounts) {
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.add("-XX:ActiveProcessorCount=" + cores);
+            command.add("-Djdk.virtualThreadScheduler.parallelism=" + cores);
+            command.add("-Djdk.virtualThreadScheduler.maxPoolSize=" + cores);
+            command.add("-D" + CHILD_PROPERTY + "=true");
+            command.add("-cp");
+            command.add(classPath);
+            command.add(LoadGenerator.class.getName());
+            command.addAll(config.toArgs(cores));
+
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(RESULT_PREFIX)) {
+                        summary.add(line.substring(RESULT_PREFIX.length()));
+                    } else {
+                        System.out.println(line);
+                    }
+                }
+            }
+            if (process.waitFor() != 0) {
+                System.out.println("Run with " + cores + " core(s) failed with exit code " + process.exitValue());
+            }
+        }
+
+        System.out.println("\n========== SCALING ==========");
+        System.out.printf("%6s %14s %12s %12s %12s%n", "cores", "purchases/s", "p50 us", "p99 us", "p999 us");
+        for (String line : summary) {
+            String[] fields = line.split(" ");
+            System.out.printf("%6s %14s %12s %12s %12s%n", fields[0], fields[1], fields[2], fields[3], fields[4]);
+        }
+        System.out.println("=============================");
+    }
+
+    // ==================== Child: one measured run ====================
+
+    private static void runInThisJvm(LoadConfig config) {
+        LoadGenerator generator = new LoadGenerator(config);
+        long elapsed = generator.run();
+        generator.report(System.out, elapsed);
+    }
+
+    long run() {
+        SplittableRandom arrivals = new SplittableRandom(config.seed);
+        long start = System.nanoTime();
+        long nextArrival = start;
+
+        try (ExecutorService customers = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("customer-", 0).factory())) {
+            for (int i = 0; i < config.customers; i++) {
+                if (config.arrivalsPerSecond > 0) {
+                    // Exponential inter-arrival times give a Poisson arrival process
+                    nextArrival += (long) (-Math.log(1.0 - arrivals.nextDouble()) / config.arrivalsPerSecond * 1e9);
+                    long wait = nextArrival - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                SplittableRandom random = arrivals.split();
+                customers.execute(() -> purchase(random));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void purchase(SplittableRandom random) {
+        VendingMachine session = machine.openSession();
+        String shelf = pickShelf(random);
+        List<Coin> coins = new ArrayList<>();
+        config.coinMix.coinsFor(prices.get(shelf), random, coins);
+
+        long purchaseStart = System.nanoTime();
+        try {
+            for (Coin coin : coins) {
+                long t = System.nanoTime();
+                session.insertCoin(coin);
+                latencies.get(Operation.INSERT_COIN).record(System.nanoTime() - t);
+            }
+            long t = System.nanoTime();
+            session.selectProduct(shelf);
+            latencies.get(Operation.SELECT_PRODUCT).record(System.nanoTime() - t);
+
+            t = System.nanoTime();
+            session.dispenseProduct();
+            latencies.get(Operation.DISPENSE_PRODUCT).record(System.nanoTime() - t);
+            completed.increment();
+        } catch (InsufficientMoneyException e) {
+            failures.get(Failure.INSUFFICIENT_MONEY).increment();
+        } catch (InsufficientChangeException e) {
+            failures.get(Failure.INSUFFICIENT_CHANGE).increment();
+        } catch (ProductNotAvailableException e) {
+            failures.get(Failure.STOCK_OUT).increment();
+        } catch (InvalidOperationException e) {
+            failures.get(Failure.INVALID_OPERATION).increment();
+        } catch (RuntimeException e) {
+            failures.get(Failure.OTHER).increment();
+        }
+
+        // A failed selection leaves the money in the machine; take it back
+        if ("HAS_MONEY".equals(session.getCurrentStateName())) {
+            long t = System.nanoTime();
+            session.cancelTransaction();
+            latencies.get(Operation.CANCEL_TRANSACTION).record(System.nanoTime() - t);
+        }
+        latencies.get(Operation.PURCHASE).record(System.nanoTime() - purchaseStart);
+    }
+
+    private String pickShelf(SplittableRandom random) {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return shelves[i];
+            }
+        }
+        return shelves[shelves.length - 1];
+    }
+
+    void report(PrintStream out, long elapsedNanos) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double seconds = elapsedNanos / 1e9;
+        double throughput = completed.sum() / seconds;
+
+        out.printf("%n========== LOAD REPORT (%d core(s)) ==========%n", cores);
+        out.printf("Customers: %d (%s), coin mix %s%n", config.customers,
+            config.arrivalsPerSecond > 0 ? String.format("%.0f/s arrivals", config.arrivalsPerSecond) : "all at once",
+            config.coinMix);
+        out.printf("Elapsed: %.3f s, completed purchases: %d (%.0f/s)%n", seconds, completed.sum(), throughput);
+
+        out.printf("%n%-20s %10s %10s %10s %10s%n", "operation (us)", "count", "p50", "p99", "p999");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = latencies.get(operation);
+            out.printf("%-20s %10d %10.1f %10.1f %10.1f%n", operation, histogram.count(),
+                histogram.percentile(50) / 1e3, histogram.percentile(99) / 1e3, histogram.percentile(99.9) / 1e3);
+        }
+
+        out.println("\nFailures:");
+        for (Failure failure : Failure.values()) {
+            out.printf("  %-20s %d%n", failure, failures.get(failure).sum());
+        }
+        out.println("==============================================");
+
+        LatencyHistogram purchases = latencies.get(Operation.PURCHASE);
+        out.printf("%s%d %.0f %.1f %.1f %.1f%n", RESULT_PREFIX, cores, throughput,
+            purchases.percentile(50) / 1e3, purchases.percentile(99) / 1e3, purchases.percentile(99.9) / 1e3);
+    }
+}
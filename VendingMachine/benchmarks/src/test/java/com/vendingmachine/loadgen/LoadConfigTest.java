@@ -0,0 +1,91 @@
+package com.vendingmachine.loadgen;
+
+import com.vendingmachine.model.Coin;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadConfigTest {
+
+    @Test
+    void childArgumentsReproduceTheConfiguration() {
+        LoadConfig config = LoadConfig.parse(new String[] {
+            "customers=1234", "rate=2500.5", "cores=1,2, 4", "coins=Pennies",
+            "products=A1:5, B2:2,C3", "stock=77", "float=9", "seed=-3"
+        });
+        assertEquals(1234, config.customers);
+        assertEquals(List.of(1, 2, 4), config.coreCounts);
+        assertEquals(CoinMix.PENNIES, config.coinMix);
+        assertEquals(Map.of("A1", 5, "B2", 2, "C3", 1), config.productWeights);
+
+        LoadConfig child = LoadConfig.parse(config.toArgs(2).toArray(new String[0]));
+        assertEquals(config.customers, child.customers);
+        assertEquals(config.arrivalsPerSecond, child.arrivalsPerSecond);
+        assertEquals(List.of(2), child.coreCounts);
+        assertEquals(config.coinMix, child.coinMix);
+        assertEquals(List.copyOf(config.productWeights.entrySet()), List.copyOf(child.productWeights.entrySet()));
+        assertEquals(config.stockPerShelf, child.stockPerShelf);
+        assertEquals(config.coinFloat, child.coinFloat);
+        assertEquals(config.seed, child.seed);
+        assertEquals(config.toArgs(2), child.toArgs(2));
+    }
+
+    @Test
+    void defaultsRoundTrip() {
+        LoadConfig config = LoadConfig.parse(new String[0]);
+        assertEquals(config.toArgs(1), LoadConfig.parse(config.toArgs(1).toArray(new String[0])).toArgs(1));
+    }
+
+    @Test
+    void rejectsMalformedArguments() {
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse(new String[] {"customers"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse(new String[] {"=5"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse(new String[] {"speed=5"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse(new String[] {"coins=euros"}));
+        assertThrows(NumberFormatException.class, () -> LoadConfig.parse(new String[] {"stock=lots"}));
+    }
+
+    @Test
+    void coinMixesPayAsDescribed() {
+        SplittableRandom random = new SplittableRandom(5);
+        List<Coin> coins = new ArrayList<>();
+        int shortCustomers = 0;
+        for (int price = 5; price <= 300; price += 5) {
+            CoinMix.EXACT.coinsFor(price, random, coins);
+            assertEquals(price, total(coins));
+
+            CoinMix.DOLLARS.coinsFor(price, random, coins);
+            assertTrue(coins.stream().allMatch(coin -> coin == Coin.DOLLAR));
+            assertTrue(total(coins) >= price && total(coins) < price + 100);
+
+            CoinMix.PENNIES.coinsFor(price, random, coins);
+            assertEquals(price, coins.size());
+
+            for (int customer = 0; customer < 20; customer++) {
+                CoinMix.MIXED.coinsFor(price, random, coins);
+                assertTrue(total(coins) >= price && !coins.contains(Coin.PENNY));
+                CoinMix.SHORT.coinsFor(price, random, coins);
+                if (total(coins) < price) {
+                    shortCustomers++;
+                }
+            }
+        }
+        // One in five, over 1200 customers
+        assertTrue(shortCustomers > 150 && shortCustomers < 350, "short customers: " + shortCustomers);
+    }
+
+    private static int total(List<Coin> coins) {
+        int total = 0;
+        for (Coin coin : coins) {
+            total += coin.getValue();
+        }
+        return total;
+    }
+}
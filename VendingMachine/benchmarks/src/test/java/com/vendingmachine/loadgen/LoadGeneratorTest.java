@@ -0,0 +1,39 @@
+package com.vendingmachine.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadGeneratorTest {
+
+    @Test
+    void completesEveryCustomerPayingExactly() {
+        String report = run("customers=2000", "rate=0", "coins=exact", "stock=1000", "float=0");
+        assertTrue(report.contains("completed purchases: 2000 "), report);
+        assertTrue(report.contains("INSUFFICIENT_CHANGE  0"), report);
+        assertTrue(report.contains("STOCK_OUT            0"), report);
+        assertTrue(report.contains("\nRESULT "), report);
+    }
+
+    @Test
+    void countsStockOutsAndShortPayments() {
+        // 6 shelves of 10 items for 500 customers
+        String report = run("customers=500", "rate=0", "coins=short", "stock=10", "float=500");
+        assertTrue(report.contains("completed purchases: 60 "), report);
+        assertTrue(!report.contains("STOCK_OUT            0"), report);
+        assertTrue(!report.contains("INSUFFICIENT_MONEY   0"), report);
+        assertTrue(report.contains("OTHER                0"), report);
+    }
+
+    private static String run(String... args) {
+        LoadGenerator generator = new LoadGenerator(LoadConfig.parse(args));
+        long elapsed = generator.run();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        generator.report(new PrintStream(bytes, true, StandardCharsets.UTF_8), elapsed);
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
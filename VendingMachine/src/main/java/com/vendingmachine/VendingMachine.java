@@ -1,22 +1,38 @@
 package com.vendingmachine;
 
+import com.vendingmachine.change.DenominationSet;
 import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.inventory.ShelfView;
+import com.vendingmachine.event.ConsoleEventListener;
+import com.vendingmachine.event.VendingEvent;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.exception.InvalidOperationException;
+import com.vendingmachine.metrics.MachineMetrics;
 import com.vendingmachine.model.Coin;
-import com.vendingmachine.model.ItemShelf;
+import com.vendingmachine.model.CoinTally;
 import com.vendingmachine.model.Product;
+import com.vendingmachine.payment.Authorization;
+import com.vendingmachine.payment.PaymentAuthorizer;
+import com.vendingmachine.result.VendResult;
 import com.vendingmachine.state.DispensingState;
 import com.vendingmachine.state.HasMoneyState;
 import com.vendingmachine.state.IdleState;
+import com.vendingmachine.state.MachineState;
+import com.vendingmachine.state.VendingEngine;
 import com.vendingmachine.state.VendingMachineState;
+import com.vendingmachine.trace.TraceOp;
+import com.vendingmachine.trace.TraceRecorder;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Main VendingMachine class that coordinates the vending machine operations.
  * 
  * Design Patterns Used:
- * - State Pattern: For managing different states (Idle, HasMoney, Dispensing)
+ * - State Pattern: For managing different states (Idle, HasMoney, Dispensing), table-driven:
+ *   a session stores its state as one byte and every operation is a lookup in the
+ *   {@link com.vendingmachine.state.TransitionTable} run by the {@link VendingEngine}
  * - Singleton Pattern: Optional - can be made singleton if needed
  * 
  * SOLID Principles Applied:
@@ -25,30 +41,78 @@ import java.util.List;
  * - Liskov Substitution: All states implement VendingMachineState interface
  * - Interface Segregation: VendingMachineState has minimal required methods
  * - Dependency Inversion: VendingMachine depends on abstractions (VendingMachineState)
+ *
+ * Sessions:
+ * Several payment terminals can front one physical machine. {@link #openSession()} returns
+ * a new VendingMachine with its own state, balance and selection that shares this machine's
+ * {@link Inventory}. Each session is meant to be driven by one thread at a time; different
+ * sessions may run in parallel, and the inventory keeps stock and the coin float consistent.
+ *
+ * Card payments: {@link #payByCard(String, int)} asks the machine's {@link PaymentAuthorizer}
+ * for a hold and returns a future instead of waiting for the answer. The session, and every
+ * other session, keeps running meanwhile; the answer is applied by the session's next operation.
+ *
+ * Coins: the machine takes the coins of its inventory's {@link DenominationSet}, identified by
+ * their position in the set ({@link #insertCoin(int)}, {@link #loadCoins(int, int)}). The
+ * {@link Coin} overloads insert the denomination of the coin's value; {@link #cancelTransaction()}
+ * lists the refund as {@link Coin}s and so needs a set of US coins, while
+ * {@link #tryCancelTransaction()} returns it as a tally on any set.
  */
 public class VendingMachine {
+
+    private static final byte AUTHORIZING = MachineState.AUTHORIZING.code();
     
     private final Inventory inventory;
-    private final List<Coin> insertedCoins;
+    private volatile VendingEventListener eventListener;
+    private volatile PaymentAuthorizer paymentAuthorizer;
+    // Coins inserted in the current transaction, packed per denomination (see CoinTally)
+    private long insertedCoins;
+    private int balance;
     private String selectedShelfCode;
-    
-    // State Pattern - different states of the vending machine
-    private final VendingMachineState idleState;
-    private final VendingMachineState hasMoneyState;
-    private final VendingMachineState dispensingState;
-    private VendingMachineState currentState;
+    // Inventory slot of the selected shelf, resolved once at selection
+    private int selectedShelf = Inventory.NO_SHELF;
+    // Shelves of a multi-item selection (a cart) and their slots, or null for a single selection
+    private String[] cartCodes;
+    private int[] cartSlots;
+    // This session's stripe of the inventory's metrics, renewed when the metrics are replaced
+    private MachineMetrics.SessionCounters counters = MachineMetrics.DISABLED.newSession(this);
+    // Current state, a MachineState code
+    private byte state = MachineState.IDLE.code();
+    // State Pattern facades over the transition table, created on first use by their getters
+    private VendingMachineState idleState;
+    private VendingMachineState hasMoneyState;
+    private VendingMachineState dispensingState;
+    // Card payment of the current transaction: the authorization in flight, then the approved hold
+    private CompletableFuture<Authorization> pendingAuthorization;
+    private Authorization authorization;
+    private int paymentHold;
 
     public VendingMachine() {
-        this.inventory = new Inventory();
-        this.insertedCoins = new ArrayList<>();
-        
-        // Initialize states
-        this.idleState = new IdleState(this);
-        this.hasMoneyState = new HasMoneyState(this);
-        this.dispensingState = new DispensingState(this);
-        
-        // Start in idle state
-        this.currentState = idleState;
+        this(new Inventory());
+    }
+
+    /**
+     * Creates a vending machine (or session) on top of an existing inventory.
+     * Events are written to the console synchronously ({@link ConsoleEventListener}); pass an
+     * {@link com.vendingmachine.event.AsyncEventSink} to keep console output off the vend path.
+     * @param inventory the inventory to sell from, possibly shared with other sessions
+     */
+    public VendingMachine(Inventory inventory) {
+        this(inventory, new ConsoleEventListener());
+    }
+
+    /**
+     * Creates a vending machine (or session) on top of an existing inventory.
+     * @param inventory the inventory to sell from, possibly shared with other sessions
+     * @param eventListener receives the machine's events
+     */
+    public VendingMachine(Inventory inventory, VendingEventListener eventListener) {
+        if (inventory == null) {
+            throw new IllegalArgumentException("Inventory cannot be null");
+        }
+        this.inventory = inventory;
+        setEventListener(eventListener);
+        this.insertedCoins = CoinTally.EMPTY;
     }
 
     // ==================== Public API ====================
@@ -56,9 +120,33 @@ public class VendingMachine {
     /**
      * Inserts a coin into the vending machine.
      * @param coin the coin to insert
+     * @throws IllegalArgumentException if the machine's denomination set has no coin of that value
      */
     public void insertCoin(Coin coin) {
-        currentState.insertCoin(coin);
+        insertCoin(inventory.denominationOf(coin));
+    }
+
+    /**
+     * Inserts a coin into the vending machine.
+     * @param denomination position of the coin's denomination in the machine's set
+     * @throws IllegalArgumentException if the set has no such position
+     */
+    public void insertCoin(int denomination) {
+        MachineMetrics.SessionCounters counters = counters();
+        TraceRecorder trace = inventory.getTraceRecorder();
+        try {
+            VendingEngine.insertCoinOrThrow(this, state(), denomination);
+        } catch (RuntimeException e) {
+            counters.getMetrics().recordException(e);
+            if (trace != null) {
+                trace.recordCoin(this, TraceOp.INSERT_COIN, denomination, null, e);
+            }
+            throw e;
+        }
+        counters.recordCoinInserted();
+        if (trace != null) {
+            trace.recordCoin(this, TraceOp.INSERT_COIN, denomination, null, null);
+        }
     }
 
     /**
@@ -66,23 +154,378 @@ public class VendingMachine {
      * @param shelfCode the code of the shelf
      */
     public void selectProduct(String shelfCode) {
-        currentState.selectProduct(shelfCode);
+        MachineMetrics.SessionCounters counters = counters();
+        TraceRecorder trace = inventory.getTraceRecorder();
+        try {
+            VendingEngine.selectProductOrThrow(this, state(), shelfCode);
+        } catch (RuntimeException e) {
+            counters.getMetrics().recordException(e);
+            if (trace != null) {
+                trace.recordSelect(this, TraceOp.SELECT_PRODUCT, shelfCode, null, e);
+            }
+            throw e;
+        }
+        counters.recordProductSelected();
+        if (trace != null) {
+            trace.recordSelect(this, TraceOp.SELECT_PRODUCT, shelfCode, null, null);
+        }
     }
 
     /**
      * Dispenses the selected product.
      * @return the dispensed product
+     * @throws InvalidOperationException if a cart is selected; use {@link #dispenseProducts()}
      */
     public Product dispenseProduct() {
-        return currentState.dispenseProduct();
+        MachineMetrics.SessionCounters counters = counters();
+        TraceRecorder trace = inventory.getTraceRecorder();
+        long start = counters.getMetrics().startTimer();
+        Product product;
+        try {
+            product = VendingEngine.dispenseProductOrThrow(this, state());
+        } catch (RuntimeException e) {
+            counters.getMetrics().recordException(e);
+            if (trace != null) {
+                trace.record(this, TraceOp.DISPENSE_PRODUCT, null, e);
+            }
+            throw e;
+        }
+        counters.recordProductDispensed(start);
+        if (trace != null) {
+            trace.record(this, TraceOp.DISPENSE_PRODUCT, null, null);
+        }
+        return product;
+    }
+
+    /**
+     * Selects several products to buy together (a cart). The balance must cover the total
+     * price. On {@link #dispenseProducts()} change is made once for the whole purchase, and
+     * either every product is dispensed or none is.
+     * @param shelfCodes shelves of the products, one entry per item; a shelf may repeat
+     * @throws IllegalArgumentException if no shelf is given
+     */
+    public void selectProducts(String... shelfCodes) {
+        MachineMetrics.SessionCounters counters = counters();
+        TraceRecorder trace = inventory.getTraceRecorder();
+        try {
+            VendingEngine.selectProductsOrThrow(this, state(), shelfCodes);
+        } catch (RuntimeException e) {
+            counters.getMetrics().recordException(e);
+            if (trace != null) {
+                trace.recordCart(this, TraceOp.SELECT_PRODUCTS, shelfCodes, null, e);
+            }
+            throw e;
+        }
+        counters.recordProductsSelected(shelfCodes.length);
+        if (trace != null) {
+            trace.recordCart(this, TraceOp.SELECT_PRODUCTS, shelfCodes, null, null);
+        }
+    }
+
+    /**
+     * Dispenses the selected cart, or the single selected product.
+     * @return the dispensed products, in the order they were selected
+     */
+    public List<Product> dispenseProducts() {
+        MachineMetrics.SessionCounters counters = counters();
+        TraceRecorder trace = inventory.getTraceRecorder();
+        long start = counters.getMetrics().startTimer();
+        List<Product> products;
+        try {
+            products = VendingEngine.dispenseProductsOrThrow(this, state());
+        } catch (RuntimeException e) {
+            counters.getMetrics().recordException(e);
+            if (trace != null) {
+                trace.record(this, TraceOp.DISPENSE_PRODUCTS, null, e);
+            }
+            throw e;
+        }
+        counters.recordProductsDispensed(start, products.size());
+        if (trace != null) {
+            trace.record(this, TraceOp.DISPENSE_PRODUCTS, null, null);
+        }
+        return products;
     }
 
     /**
      * Cancels the current transaction and returns inserted coins.
      * @return list of coins returned to the user
+     * @throws InvalidOperationException if the machine's denomination set is not a set of US
+     *         coins; use {@link #tryCancelTransaction()}
      */
     public List<Coin> cancelTransaction() {
-        return currentState.cancelTransaction();
+        MachineMetrics.SessionCounters counters = counters();
+        TraceRecorder trace = inventory.getTraceRecorder();
+        DenominationSet denominations = inventory.getDenominations();
+        List<Coin> refund;
+        try {
+            if (!denominations.isUsCoins()) {
+                throw new InvalidOperationException("Cannot list " + denominations.getName()
+                    + " coins as US coins, use tryCancelTransaction()");
+            }
+            refund = CoinTally.toList(VendingEngine.cancelTransactionOrThrow(this, state()), denominations);
+        } catch (RuntimeException e) {
+            counters.getMetrics().recordException(e);
+            if (trace != null) {
+                trace.record(this, TraceOp.CANCEL_TRANSACTION, null, e);
+            }
+            throw e;
+        }
+        counters.recordTransactionCancelled();
+        if (trace != null) {
+            trace.record(this, TraceOp.CANCEL_TRANSACTION, null, null);
+        }
+        return refund;
+    }
+
+    // ==================== Result API ====================
+
+    /**
+     * Inserts a coin, reporting expected failures as a result instead of an exception.
+     * @param coin the coin to insert
+     * @return {@link VendResult#ACCEPTED}, or {@link VendResult.Rejected#COIN_LIMIT} or
+     *         {@link VendResult.Rejected#WRONG_STATE}
+     * @throws IllegalArgumentException if the machine's denomination set has no coin of that value
+     */
+    public VendResult tryInsertCoin(Coin coin) {
+        return tryInsertCoin(inventory.denominationOf(coin));
+    }
+
+    /**
+     * Inserts a coin, reporting expected failures as a result instead of an exception.
+     * @param denomination position of the coin's denomination in the machine's set
+     * @return {@link VendResult#ACCEPTED}, or {@link VendResult.Rejected#COIN_LIMIT} or
+     *         {@link VendResult.Rejected#WRONG_STATE}
+     * @throws IllegalArgumentException if the set has no such position
+     */
+    public VendResult tryInsertCoin(int denomination) {
+        MachineMetrics.SessionCounters counters = counters();
+        TraceRecorder trace = inventory.getTraceRecorder();
+        VendResult result;
+        try {
+            result = VendingEngine.insertCoin(this, state(), denomination);
+        } catch (RuntimeException e) {
+            if (trace != null) {
+                trace.recordCoin(this, TraceOp.TRY_INSERT_COIN, denomination, null, e);
+            }
+            throw e;
+        }
+        if (result == VendResult.ACCEPTED) {
+            counters.recordCoinInserted();
+        } else {
+            counters.getMetrics().recordRejection(result);
+        }
+        if (trace != null) {
+            trace.recordCoin(this, TraceOp.TRY_INSERT_COIN, denomination, result, null);
+        }
+        return result;
+    }
+
+    /**
+     * Selects a product, reporting expected failures as a result instead of an exception.
+     * @param shelfCode the code of the shelf
+     * @return {@link VendResult#ACCEPTED}, or a {@link VendResult.Rejected} reason:
+     *         {@code UNKNOWN_SHELF}, {@code SOLD_OUT}, {@code NOT_ENOUGH_MONEY} or {@code WRONG_STATE}
+     */
+    public VendResult trySelectProduct(String shelfCode) {
+        MachineMetrics.SessionCounters counters = counters();
+        TraceRecorder trace = inventory.getTraceRecorder();
+        VendResult result;
+        try {
+            result = VendingEngine.selectProduct(this, state(), shelfCode);
+        } catch (RuntimeException e) {
+            if (trace != null) {
+                trace.recordSelect(this, TraceOp.TRY_SELECT_PRODUCT, shelfCode, null, e);
+            }
+            throw e;
+        }
+        if (result == VendResult.ACCEPTED) {
+            counters.recordProductSelected();
+        } else {
+            counters.getMetrics().recordRejection(result);
+        }
+        if (trace != null) {
+            trace.recordSelect(this, TraceOp.TRY_SELECT_PRODUCT, shelfCode, result, null);
+        }
+        return result;
+    }
+
+    /**
+     * Selects a cart, reporting expected failures as a result instead of an exception.
+     * @param shelfCodes shelves of the products, one entry per item; a shelf may repeat
+     * @return {@link VendResult#ACCEPTED}, or a {@link VendResult.Rejected} reason:
+     *         {@code UNKNOWN_SHELF}, {@code SOLD_OUT}, {@code NOT_ENOUGH_MONEY} or {@code WRONG_STATE}
+     * @throws IllegalArgumentException if no shelf is given
+     */
+    public VendResult trySelectProducts(String... shelfCodes) {
+        MachineMetrics.SessionCounters counters = counters();
+        TraceRecorder trace = inventory.getTraceRecorder();
+        VendResult result;
+        try {
+            result = VendingEngine.selectProducts(this, state(), shelfCodes);
+        } catch (RuntimeException e) {
+            // An empty cart, or a failure the engine does not report as a result
+            if (trace != null) {
+                trace.recordCart(this, TraceOp.TRY_SELECT_PRODUCTS, shelfCodes, null, e);
+            }
+            throw e;
+        }
+        if (result == VendResult.ACCEPTED) {
+            counters.recordProductsSelected(shelfCodes.length);
+        } else {
+            counters.getMetrics().recordRejection(result);
+        }
+        if (trace != null) {
+            trace.recordCart(this, TraceOp.TRY_SELECT_PRODUCTS, shelfCodes, result, null);
+        }
+        return result;
+    }
+
+    /**
+     * Dispenses the selected product, reporting expected failures as a result instead of an
+     * exception. As with {@link #dispenseProduct()}, a sold-out shelf, a price raised since
+     * selection or missing change refunds the money and returns the machine to idle.
+     * @return a {@link VendResult.Dispensed} with the product and change, a
+     *         {@link VendResult.CartDispensed} if a cart was selected, or a {@link VendResult.Rejected}
+     *         reason: {@code SOLD_OUT}, {@code NOT_ENOUGH_MONEY}, {@code NO_EXACT_CHANGE} or {@code WRONG_STATE}
+     */
+    public VendResult tryDispenseProduct() {
+        MachineMetrics.SessionCounters counters = counters();
+        long start = counters.getMetrics().startTimer();
+        TraceRecorder trace = inventory.getTraceRecorder();
+        VendResult result;
+        try {
+            result = VendingEngine.dispenseProduct(this, state());
+        } catch (RuntimeException e) {
+            if (trace != null) {
+                trace.record(this, TraceOp.TRY_DISPENSE_PRODUCT, null, e);
+            }
+            throw e;
+        }
+        if (result instanceof VendResult.Dispensed) {
+            counters.recordProductDispensed(start);
+        } else if (result instanceof VendResult.CartDispensed) {
+            counters.recordProductsDispensed(start, ((VendResult.CartDispensed) result).products().size());
+        } else {
+            counters.getMetrics().recordRejection(result);
+        }
+        if (trace != null) {
+            trace.record(this, TraceOp.TRY_DISPENSE_PRODUCT, result, null);
+        }
+        return result;
+    }
+
+    /**
+     * Cancels the current transaction, reporting a wrong state as a result instead of an
+     * exception. Works on any denomination set, unlike {@link #cancelTransaction()}.
+     * @return a {@link VendResult.Refunded} with the coins returned, or {@link VendResult.Rejected#WRONG_STATE}
+     */
+    public VendResult tryCancelTransaction() {
+        MachineMetrics.SessionCounters counters = counters();
+        TraceRecorder trace = inventory.getTraceRecorder();
+        VendResult result;
+        try {
+            result = VendingEngine.cancelTransaction(this, state());
+        } catch (RuntimeException e) {
+            if (trace != null) {
+                trace.record(this, TraceOp.TRY_CANCEL_TRANSACTION, null, e);
+            }
+            throw e;
+        }
+        if (result instanceof VendResult.Refunded) {
+            counters.recordTransactionCancelled();
+        } else {
+            counters.getMetrics().recordRejection(result);
+        }
+        if (trace != null) {
+            trace.record(this, TraceOp.TRY_CANCEL_TRANSACTION, result, null);
+        }
+        return result;
+    }
+
+    // ==================== Card Payments ====================
+
+    /**
+     * Starts a card payment by requesting a hold of {@code holdCents} on the customer's account.
+     * Returns at once; the session is {@code AUTHORIZING} until the answer arrives and is applied
+     * by the session's next operation. Meanwhile the customer may select a product, which is
+     * dispensed on {@link #dispenseProduct()} once the payment is approved. The price is charged
+     * when the product is dispensed and the rest of the hold released; cancelling releases it all.
+     * @param paymentToken card or wallet token presented by the customer
+     * @param holdCents amount to hold, at least the price of the product to buy
+     * @return future completed with {@link VendResult#ACCEPTED} or
+     *         {@link VendResult.Rejected#PAYMENT_DECLINED} when the authorizer answers, or already
+     *         completed with {@link VendResult.Rejected#WRONG_STATE} if a transaction is in progress
+     * @throws IllegalStateException if no payment authorizer is set
+     */
+    public CompletableFuture<VendResult> payByCard(String paymentToken, int holdCents) {
+        if (paymentAuthorizer == null) {
+            throw new IllegalStateException("No payment authorizer is set");
+        }
+        MachineMetrics metrics = counters().getMetrics();
+        CompletableFuture<VendResult> result = VendingEngine.authorizePayment(this, state(), paymentToken, holdCents);
+        if (metrics.isEnabled()) {
+            result.thenAccept(metrics::recordRejection);
+        }
+        return result;
+    }
+
+    /**
+     * Sets the authorizer for card payments on this machine; sessions opened afterwards share it.
+     * @param paymentAuthorizer the authorizer
+     */
+    public void setPaymentAuthorizer(PaymentAuthorizer paymentAuthorizer) {
+        if (paymentAuthorizer == null) {
+            throw new IllegalArgumentException("Payment authorizer cannot be null");
+        }
+        this.paymentAuthorizer = paymentAuthorizer;
+    }
+
+    // ==================== Sessions and Events ====================
+
+    /**
+     * Opens a new customer session on this machine.
+     * The session has its own transaction state and balance but sells from, and pays
+     * change out of, the same inventory as this machine and all its other sessions.
+     * @return a new session starting in the idle state
+     */
+    public VendingMachine openSession() {
+        VendingMachine session = new VendingMachine(inventory, eventListener);
+        session.paymentAuthorizer = paymentAuthorizer;
+        return session;
+    }
+
+    /**
+     * Replaces the listener that receives this machine's events.
+     * Use {@link VendingEventListener#NO_OP} for headless runs.
+     * @param eventListener the new listener
+     */
+    public void setEventListener(VendingEventListener eventListener) {
+        if (eventListener == null) {
+            throw new IllegalArgumentException("Event listener cannot be null");
+        }
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * Gets the metrics of this machine, shared by all its sessions.
+     * @return the metrics, {@link MachineMetrics#DISABLED} unless enabled
+     */
+    public MachineMetrics getMetrics() {
+        return inventory.getMetrics();
+    }
+
+    /**
+     * Turns on metrics for this machine and all its sessions and publishes them over JMX.
+     * @param machineName name identifying the machine in JMX
+     * @return the new metrics
+     */
+    public MachineMetrics enableMetrics(String machineName) {
+        MachineMetrics metrics = new MachineMetrics();
+        metrics.register(machineName);
+        inventory.getMetrics().unregister();
+        inventory.setMetrics(metrics);
+        return metrics;
     }
 
     /**
@@ -90,7 +533,15 @@ public class VendingMachine {
      * @return name of current state
      */
     public String getCurrentStateName() {
-        return currentState.getStateName();
+        return MachineState.of(state()).name();
+    }
+
+    /**
+     * Gets the current state.
+     * @return the current state
+     */
+    public MachineState getCurrentState() {
+        return MachineState.of(state());
     }
 
     // ==================== Inventory Management ====================
@@ -102,16 +553,48 @@ public class VendingMachine {
      * @param quantity the quantity to stock
      */
     public void stockProduct(String shelfCode, Product product, int quantity) {
-        inventory.stockProduct(shelfCode, product, quantity);
+        TraceRecorder trace = inventory.getTraceRecorder();
+        try {
+            inventory.stockProduct(shelfCode, product, quantity);
+        } catch (RuntimeException e) {
+            if (trace != null) {
+                trace.recordStock(this, shelfCode, product, quantity, e);
+            }
+            throw e;
+        }
+        if (trace != null) {
+            trace.recordStock(this, shelfCode, product, quantity, null);
+        }
     }
 
     /**
      * Adds coins to the machine's coin inventory (for change).
      * @param coin type of coin
      * @param count number of coins
+     * @throws IllegalArgumentException if the machine's denomination set has no coin of that value
      */
     public void loadCoins(Coin coin, int count) {
-        inventory.addCoins(coin, count);
+        loadCoins(inventory.denominationOf(coin), count);
+    }
+
+    /**
+     * Adds coins to the machine's coin inventory (for change).
+     * @param denomination position of the denomination in the machine's set
+     * @param count number of coins
+     */
+    public void loadCoins(int denomination, int count) {
+        TraceRecorder trace = inventory.getTraceRecorder();
+        try {
+            inventory.addCoins(denomination, count);
+        } catch (RuntimeException e) {
+            if (trace != null) {
+                trace.recordLoadCoins(this, denomination, count, e);
+            }
+            throw e;
+        }
+        if (trace != null) {
+            trace.recordLoadCoins(this, denomination, count, null);
+        }
     }
 
     /**
@@ -119,13 +602,13 @@ public class VendingMachine {
      */
     public void displayProducts() {
         System.out.println("\n========== AVAILABLE PRODUCTS ==========");
-        for (ItemShelf shelf : inventory.getAllShelves()) {
-            if (shelf.getProduct() != null) {
+        for (ShelfView shelf : inventory.getView().getShelves()) {
+            if (shelf.product() != null) {
                 System.out.printf("[%s] %s - %s (Stock: %d)%n",
-                    shelf.getCode(),
-                    shelf.getProduct().getName(),
-                    shelf.getProduct().getFormattedPrice(),
-                    shelf.getQuantity());
+                    shelf.code(),
+                    shelf.product().getName(),
+                    shelf.product().getFormattedPrice(),
+                    shelf.quantity());
             }
         }
         System.out.println("=========================================\n");
@@ -140,50 +623,173 @@ public class VendingMachine {
 
     // ==================== State Management (Internal) ====================
 
+    public byte getStateCode() {
+        return state;
+    }
+
+    /**
+     * Gets the current state code after applying a card authorization that has arrived.
+     */
+    private byte state() {
+        if (state == AUTHORIZING) {
+            VendingEngine.settlePayment(this, state);
+        }
+        return state;
+    }
+
+    public void enterState(byte next) {
+        if (next == state) {
+            return;
+        }
+        state = next;
+        MachineMetrics.SessionCounters counters = counters();
+        if (counters.getMetrics().isEnabled()) {
+            // MachineMetrics state indexes are the MachineState codes
+            counters.recordStateEntry(next);
+        }
+    }
+
     public void setState(VendingMachineState state) {
-        this.currentState = state;
+        enterState(state.getMachineState().code());
+    }
+
+    private MachineMetrics.SessionCounters counters() {
+        MachineMetrics metrics = inventory.getMetrics();
+        if (counters.getMetrics() != metrics) {
+            counters = metrics.newSession(this);
+        }
+        return counters;
     }
 
     public VendingMachineState getIdleState() {
+        if (idleState == null) {
+            idleState = new IdleState(this);
+        }
         return idleState;
     }
 
     public VendingMachineState getHasMoneyState() {
+        if (hasMoneyState == null) {
+            hasMoneyState = new HasMoneyState(this);
+        }
         return hasMoneyState;
     }
 
     public VendingMachineState getDispensingState() {
+        if (dispensingState == null) {
+            dispensingState = new DispensingState(this);
+        }
         return dispensingState;
     }
 
+    // ==================== Events (Internal) ====================
+
+    public void publishEvent(VendingEvent event) {
+        eventListener.onEvent(event);
+    }
+
+    /**
+     * Checks whether events go anywhere, so failure paths can skip building them.
+     * @return false if the listener is {@link VendingEventListener#NO_OP}
+     */
+    public boolean isPublishingEvents() {
+        return eventListener != VendingEventListener.NO_OP;
+    }
+
     // ==================== Balance Management (Internal) ====================
 
-    public void addInsertedCoin(Coin coin) {
-        insertedCoins.add(coin);
+    public void addInsertedCoin(int denomination) {
+        if (!tryAddInsertedCoin(denomination)) {
+            throw new InvalidOperationException("Cannot hold more than " + CoinTally.MAX_PER_COIN + " "
+                + inventory.getDenominations().getCoinName(denomination) + " coins");
+        }
+    }
+
+    public boolean tryAddInsertedCoin(int denomination) {
+        DenominationSet denominations = inventory.getDenominations();
+        if (denomination < 0 || denomination >= denominations.size()) {
+            throw new IllegalArgumentException("No denomination " + denomination + " in denomination set "
+                + denominations.getName());
+        }
+        if (CoinTally.count(insertedCoins, denomination) == CoinTally.MAX_PER_COIN) {
+            return false;
+        }
+        insertedCoins = CoinTally.add(insertedCoins, denomination);
+        balance += denominations.value(denomination);
+        return true;
     }
 
     public int getCurrentBalance() {
-        return insertedCoins.stream()
-            .mapToInt(Coin::getValue)
-            .sum();
+        return balance;
+    }
+
+    public long getInsertedCoinTally() {
+        return insertedCoins;
+    }
+
+    public int getInsertedCoinCount(int denomination) {
+        return CoinTally.count(insertedCoins, denomination);
     }
 
-    public List<Coin> refundInsertedCoins() {
-        List<Coin> refund = new ArrayList<>(insertedCoins);
-        insertedCoins.clear();
+    public long refundInsertedCoins() {
+        long refund = insertedCoins;
+        clearInsertedCoins();
         return refund;
     }
 
     public void clearInsertedCoins() {
-        insertedCoins.clear();
+        insertedCoins = CoinTally.EMPTY;
+        balance = 0;
     }
 
     public void addInsertedCoinsToInventory() {
-        for (Coin coin : insertedCoins) {
-            inventory.addCoins(coin, 1);
+        for (int i = 0; i < inventory.getDenominations().size(); i++) {
+            int count = CoinTally.count(insertedCoins, i);
+            if (count > 0) {
+                inventory.addCoins(i, count);
+            }
         }
     }
 
+    // ==================== Payment Management (Internal) ====================
+
+    public PaymentAuthorizer getPaymentAuthorizer() {
+        return paymentAuthorizer;
+    }
+
+    public boolean hasPayment() {
+        return pendingAuthorization != null;
+    }
+
+    public CompletableFuture<Authorization> getPendingAuthorization() {
+        return pendingAuthorization;
+    }
+
+    public Authorization getAuthorization() {
+        return authorization;
+    }
+
+    public int getPaymentHold() {
+        return paymentHold;
+    }
+
+    public void beginPayment(CompletableFuture<Authorization> pending, int holdCents) {
+        this.pendingAuthorization = pending;
+        this.paymentHold = holdCents;
+    }
+
+    public void approvePayment(Authorization authorization) {
+        this.authorization = authorization;
+        this.balance = authorization.amountCents();
+    }
+
+    public void endPayment() {
+        pendingAuthorization = null;
+        authorization = null;
+        paymentHold = 0;
+        balance = 0;
+    }
+
     // ==================== Selection Management (Internal) ====================
 
     public String getSelectedShelfCode() {
@@ -194,6 +800,31 @@ public class VendingMachine {
         this.selectedShelfCode = shelfCode;
     }
 
+    public int getSelectedShelf() {
+        return selectedShelf;
+    }
+
+    public void setSelectedShelf(int slot) {
+        this.selectedShelf = slot;
+    }
+
+    public int getCartSize() {
+        return cartSlots != null ? cartSlots.length : 0;
+    }
+
+    public String[] getCartCodes() {
+        return cartCodes;
+    }
+
+    public int[] getCartSlots() {
+        return cartSlots;
+    }
+
+    public void setCart(String[] shelfCodes, int[] slots) {
+        this.cartCodes = shelfCodes;
+        this.cartSlots = slots;
+    }
+
     public Inventory getInventory() {
         return inventory;
     }
@@ -1,11 +1,17 @@
 package com.vendingmachine;
 
+import com.vendingmachine.event.ConsoleEventListener;
+import com.vendingmachine.inventory.Inventory;
 import com.vendingmachine.model.Coin;
 import com.vendingmachine.model.Product;
+import com.vendingmachine.payment.StubPaymentAuthorizer;
+import com.vendingmachine.result.VendResult;
 import com.vendingmachine.exception.InsufficientMoneyException;
 import com.vendingmachine.exception.InvalidOperationException;
 import com.vendingmachine.exception.ProductNotAvailableException;
 
+import java.time.Duration;
+
 /**
  * Demo class showcasing the Vending Machine functionality.
  * 
@@ -22,8 +28,8 @@ public class VendingMachineDemo {
         System.out.println("    VENDING MACHINE - LOW LEVEL DESIGN DEMO   ");
         System.out.println("==============================================\n");
 
-        // Create vending machine
-        VendingMachine vendingMachine = new VendingMachine();
+        // Create vending machine; print events synchronously so they interleave with the demo output
+        VendingMachine vendingMachine = new VendingMachine(new Inventory(), new ConsoleEventListener());
 
         // Setup Phase: Stock products
         setupProducts(vendingMachine);
@@ -59,6 +65,10 @@ public class VendingMachineDemo {
         System.out.println("\n>>> DEMO 6: Invalid operation error handling");
         demo6InvalidOperation(vendingMachine);
 
+        // Demo 7: Card payment
+        System.out.println("\n>>> DEMO 7: Card payment with a pipelined selection");
+        demo7CardPayment(vendingMachine);
+
         // Final inventory status
         System.out.println("\n>>> FINAL INVENTORY STATUS:");
         vendingMachine.displayInventoryStatus();
@@ -214,4 +224,26 @@ public class VendingMachineDemo {
             System.out.println("Error caught: " + e.getMessage());
         }
     }
+
+    private static void demo7CardPayment(VendingMachine vm) {
+        try (StubPaymentAuthorizer authorizer = new StubPaymentAuthorizer(Duration.ofMillis(300), 0.0)) {
+            vm.setPaymentAuthorizer(authorizer);
+
+            // Hold $2.00; the call returns before the authorizer answers
+            var payment = vm.payByCard("card-4242", 200);
+            System.out.println("Current state: " + vm.getCurrentStateName());
+
+            // Select while the authorization is in flight
+            vm.selectProduct("B2");
+
+            // Wait for the answer; the session applies it on its next call
+            VendResult authorized = payment.join();
+            System.out.println("Authorization: " + authorized);
+            System.out.println("Current state: " + vm.getCurrentStateName());
+
+            Product product = vm.dispenseProduct();
+            System.out.println("Received: " + product);
+            System.out.println("Current state: " + vm.getCurrentStateName());
+        }
+    }
 }
@@ -0,0 +1,328 @@
+package com.vendingmachine.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rolling counters of one dimension (the machine, its shelves or its products) for every
+ * {@link SalesWindow}, in flat primitive arrays.
+ *
+ * Each key has one ring of int buckets per window and metric, plus a running total per
+ * window and metric, so reading a figure is one array load whatever the sales volume. When
+ * the clock moves into a new bucket, the oldest bucket of every key is subtracted from the
+ * totals and cleared. For each window the keys are kept ranked by units sold: a sale moves
+ * its key up with one binary search and one swap, and the ranking is re-sorted only when a
+ * bucket with sales expires. Memory depends on the number of keys, capped at construction,
+ * and never on how long the table runs.
+ *
+ * Not thread-safe; {@link SalesAnalytics} guards it with its lock.
+ */
+final class RollingTable {
+
+    /** Returned by {@link #indexOf} for a key that is not tracked. */
+    static final int NO_KEY = -1;
+    /** Metric ranked by {@link #top}; it only ever goes up by one. */
+    static final int UNITS = 0;
+
+    private static final SalesWindow[] WINDOWS = SalesWindow.values();
+    private static final int INITIAL_KEYS = 16;
+    // Bits of a packed sort entry holding the key index
+    private static final int KEY_BITS = 21;
+    static final int MAX_KEYS = 1 << KEY_BITS;
+
+    private final int metrics;
+    private final int stockOutMetric;
+    private final int maxKeys;
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private String[] keys = new String[0];
+    private int size;
+
+    // Per window: bucket (key * metrics + metric) * buckets + slot, and total key * metrics + metric
+    private final int[][] buckets = new int[WINDOWS.length][0];
+    private final long[][] totals = new long[WINDOWS.length][0];
+    // Per window: keys by units sold, most first, and each key's position in that order
+    private final int[][] order = new int[WINDOWS.length][0];
+    private final int[][] rank = new int[WINDOWS.length][0];
+    // Per window: number of the bucket in progress, counted from the epoch
+    private final long[] epochs = new long[WINDOWS.length];
+    // Per window: ring slot of the bucket in progress
+    private final int[] current = new int[WINDOWS.length];
+    // Since when each key's shelf has been empty, or -1
+    private long[] emptySince = new long[0];
+    private long[] sortScratch = new long[0];
+
+    /**
+     * @param metrics counters per key
+     * @param stockOutMetric metric that accrues the time a key is empty, or -1 for none
+     * @param maxKeys most keys tracked
+     * @param now current time in milliseconds
+     */
+    RollingTable(int metrics, int stockOutMetric, int maxKeys, long now) {
+        this.metrics = metrics;
+        this.stockOutMetric = stockOutMetric;
+        this.maxKeys = maxKeys;
+        for (int w = 0; w < WINDOWS.length; w++) {
+            epochs[w] = now / WINDOWS[w].getBucketMillis();
+            current[w] = (int) (epochs[w] % WINDOWS[w].getBuckets());
+        }
+    }
+
+    /**
+     * Gets the index of a key, adding it if there is room.
+     * @param key shelf code or product id
+     * @return the key's index, or {@link #NO_KEY} if the table is full
+     */
+    int indexOf(String key) {
+        Integer index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (size == maxKeys) {
+            return NO_KEY;
+        }
+        if (size == keys.length) {
+            grow(Math.min(Math.max(INITIAL_KEYS, keys.length * 2), maxKeys));
+        }
+        int added = size++;
+        keys[added] = key;
+        indexes.put(key, added);
+        // No sales yet, so last in every ranking
+        for (int w = 0; w < WINDOWS.length; w++) {
+            order[w][added] = added;
+            rank[w][added] = added;
+        }
+        return added;
+    }
+
+    /**
+     * Gets the index of a key without adding it.
+     * @param key shelf code or product id
+     * @return the key's index, or {@link #NO_KEY} if it was never seen
+     */
+    int find(String key) {
+        Integer index = indexes.get(key);
+        return index != null ? index : NO_KEY;
+    }
+
+    private void grow(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        for (int w = 0; w < WINDOWS.length; w++) {
+            buckets[w] = Arrays.copyOf(buckets[w], capacity * metrics * WINDOWS[w].getBuckets());
+            totals[w] = Arrays.copyOf(totals[w], capacity * metrics);
+            order[w] = Arrays.copyOf(order[w], capacity);
+            rank[w] = Arrays.copyOf(rank[w], capacity);
+        }
+        int old = emptySince.length;
+        emptySince = Arrays.copyOf(emptySince, capacity);
+        Arrays.fill(emptySince, old, capacity, -1L);
+        sortScratch = new long[capacity];
+    }
+
+    // ==================== Updates ====================
+
+    /**
+     * Adds to a metric of a key in every window. {@link #advance} must have been called first.
+     * @param key the key's index
+     * @param metric the metric
+     * @param amount amount to add; 1 for {@link #UNITS}
+     */
+    void add(int key, int metric, int amount) {
+        for (int w = 0; w < WINDOWS.length; w++) {
+            put(w, key, metric, amount);
+            if (metric == UNITS) {
+                promote(w, key);
+            }
+        }
+    }
+
+    /**
+     * Marks a key's shelf as empty from now on, if it is not already.
+     */
+    void markEmpty(int key, long now) {
+        if (emptySince[key] < 0) {
+            emptySince[key] = now;
+        }
+    }
+
+    /**
+     * Marks a key's shelf as stocked again and books the time it was empty.
+     * {@link #advance} must have been called first.
+     */
+    void markStocked(int key, long now) {
+        if (emptySince[key] < 0) {
+            return;
+        }
+        for (int w = 0; w < WINDOWS.length; w++) {
+            creditStockOut(w, key, now);
+        }
+        emptySince[key] = -1;
+    }
+
+    /**
+     * Moves every window to the bucket holding {@code now}, expiring the buckets that fall
+     * out of it. Costs one pass over the keys per bucket passed, at most one ring's worth.
+     * @param now current time in milliseconds
+     */
+    void advance(long now) {
+        for (int w = 0; w < WINDOWS.length; w++) {
+            long millis = WINDOWS[w].getBucketMillis();
+            if (now >= (epochs[w] + 1) * millis) {
+                roll(w, now / millis);
+            }
+        }
+    }
+
+    private void roll(int w, long epoch) {
+        int slots = WINDOWS[w].getBuckets();
+        // Book empty shelves up to the end of the bucket being closed
+        long end = (epochs[w] + 1) * WINDOWS[w].getBucketMillis();
+        creditStockOut(w, end);
+        boolean resort = false;
+        // Buckets more than a ring behind would be cleared again, so skip them
+        for (long e = Math.max(epochs[w] + 1, epoch - slots + 1); e <= epoch; e++) {
+            int slot = (int) (e % slots);
+            for (int k = 0; k < size; k++) {
+                for (int m = 0; m < metrics; m++) {
+                    int bucket = (k * metrics + m) * slots + slot;
+                    int expired = buckets[w][bucket];
+                    if (expired != 0) {
+                        totals[w][k * metrics + m] -= expired;
+                        buckets[w][bucket] = 0;
+                        resort |= m == UNITS;
+                    }
+                }
+            }
+            epochs[w] = e;
+            current[w] = slot;
+            // Shelves still empty were empty for all of a skipped bucket
+            if (e < epoch) {
+                creditStockOut(w, (e + 1) * WINDOWS[w].getBucketMillis());
+            }
+        }
+        if (resort) {
+            sort(w);
+        }
+    }
+
+    private void creditStockOut(int w, long until) {
+        if (stockOutMetric < 0) {
+            return;
+        }
+        for (int k = 0; k < size; k++) {
+            if (emptySince[k] >= 0) {
+                creditStockOut(w, k, until);
+            }
+        }
+    }
+
+    private void creditStockOut(int w, int key, long until) {
+        long from = Math.max(emptySince[key], epochs[w] * WINDOWS[w].getBucketMillis());
+        if (until > from) {
+            put(w, key, stockOutMetric, (int) (until - from));
+        }
+    }
+
+    private void put(int w, int key, int metric, int amount) {
+        buckets[w][(key * metrics + metric) * WINDOWS[w].getBuckets() + current[w]] += amount;
+        totals[w][key * metrics + metric] += amount;
+    }
+
+    // ==================== Ranking ====================
+
+    /**
+     * Moves a key whose units just went up by one ahead of the keys it passed. Those keys all
+     * had its old count, so swapping it with the first of them keeps the order sorted.
+     */
+    private void promote(int w, int key) {
+        long units = totals[w][key * metrics + UNITS];
+        int[] keysByUnits = order[w];
+        int at = rank[w][key];
+        int low = 0;
+        int high = at;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (totals[w][keysByUnits[mid] * metrics + UNITS] < units) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        if (low < at) {
+            int passed = keysByUnits[low];
+            keysByUnits[low] = key;
+            keysByUnits[at] = passed;
+            rank[w][key] = low;
+            rank[w][passed] = at;
+        }
+    }
+
+    private void sort(int w) {
+        long mask = (1L << KEY_BITS) - 1;
+        for (int k = 0; k < size; k++) {
+            sortScratch[k] = totals[w][k * metrics + UNITS] << KEY_BITS | k;
+        }
+        Arrays.sort(sortScratch, 0, size);
+        for (int i = 0; i < size; i++) {
+            int k = (int) (sortScratch[size - 1 - i] & mask);
+            order[w][i] = k;
+            rank[w][k] = i;
+        }
+    }
+
+    // ==================== Queries ====================
+
+    /**
+     * Gets a metric of a key over a window. {@link #advance} must have been called first.
+     * @return the metric's total, 0 for a metric the table does not keep
+     */
+    long get(int key, SalesWindow window, int metric) {
+        return metric < metrics ? totals[window.ordinal()][key * metrics + metric] : 0;
+    }
+
+    /**
+     * Gets the time a key's shelf was empty within a window, including an ongoing stock-out.
+     * {@link #advance} must have been called first.
+     */
+    long getStockOut(int key, SalesWindow window, long now) {
+        if (stockOutMetric < 0) {
+            return 0;
+        }
+        int w = window.ordinal();
+        long total = totals[w][key * metrics + stockOutMetric];
+        if (emptySince[key] >= 0) {
+            total += Math.max(0, now - Math.max(emptySince[key], epochs[w] * window.getBucketMillis()));
+        }
+        return total;
+    }
+
+    /**
+     * Gets the figures of one key. {@link #advance} must have been called first.
+     */
+    SalesFigures figures(int key, SalesWindow window, int revenue, int failures, long now) {
+        return new SalesFigures(keys[key], get(key, window, UNITS), get(key, window, revenue),
+            get(key, window, failures), getStockOut(key, window, now));
+    }
+
+    /**
+     * Gets the keys that sold most over a window, most first; keys without sales are left
+     * out. Reads the first {@code n} entries of the ranking. {@link #advance} must have been
+     * called first.
+     */
+    List<SalesFigures> top(SalesWindow window, int n, int revenue, int failures, long now) {
+        int[] keysByUnits = order[window.ordinal()];
+        int count = Math.min(n, size);
+        List<SalesFigures> top = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int key = keysByUnits[i];
+            if (get(key, window, UNITS) == 0) {
+                break;
+            }
+            top.add(figures(key, window, revenue, failures, now));
+        }
+        return top;
+    }
+}
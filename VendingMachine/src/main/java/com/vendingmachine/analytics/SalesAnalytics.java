@@ -0,0 +1,305 @@
+package com.vendingmachine.analytics;
+
+import com.vendingmachine.event.VendingEvent;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.inventory.InventoryChange;
+import com.vendingmachine.inventory.ShelfView;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.LongSupplier;
+
+/**
+ * Sales analytics kept up to date event by event: units sold, revenue, failed sales, refunds
+ * and stock-out time, for the machine, each shelf and each product, over the last minute,
+ * hour and day ({@link SalesWindow}).
+ *
+ * Register it as (or next to) a machine's event listener:
+ * <pre>
+ * SalesAnalytics analytics = new SalesAnalytics();
+ * VendingMachine vm = new VendingMachine(inventory, new ConsoleEventListener().andThen(analytics));
+ * analytics.track(inventory);
+ * </pre>
+ * It counts {@link VendingEvent.ProductDispensed}, {@link VendingEvent.SaleFailed} and
+ * refunds; other events return without taking the lock. {@link #track(Inventory)} adds
+ * stock-out time from the inventory's change stream.
+ *
+ * Counters live in primitive ring buffers with running totals (see {@link RollingTable}), so
+ * recording an event is a few array updates and a figure is read in constant time, however
+ * long the machine has run. Top sellers are kept ranked as sales come in, so
+ * {@link #topProducts} costs the number of entries asked for. Memory grows with the number
+ * of shelves and products, up to {@code maxKeys} of each; sales of further keys count in
+ * the machine totals only ({@link #getUntrackedCount()}).
+ *
+ * Updates and queries share one lock, held for a few array updates. When a new bucket starts,
+ * the first caller after it expires the oldest bucket of every key.
+ */
+public final class SalesAnalytics implements VendingEventListener {
+
+    /** Shelves and products tracked by default, each. */
+    public static final int DEFAULT_MAX_KEYS = 1024;
+
+    // Metrics of the tables; the machine has refunds where shelves have stock-out time
+    private static final int REVENUE = 1;
+    private static final int FAILURES = 2;
+    private static final int REFUNDS = 3;
+    private static final int STOCK_OUT = 3;
+    private static final int MACHINE = 0;
+
+    private final LongSupplier clock;
+    private final RollingTable machine;
+    private final RollingTable shelves;
+    private final RollingTable products;
+    private long untracked;
+
+    /**
+     * Creates analytics on the system clock.
+     */
+    public SalesAnalytics() {
+        this(System::currentTimeMillis, DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * Creates analytics on the given clock, e.g. one driven by a replayed trace.
+     * @param clock current time in milliseconds
+     * @param maxKeys most shelves, and most products, tracked
+     */
+    public SalesAnalytics(LongSupplier clock, int maxKeys) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock cannot be null");
+        }
+        if (maxKeys <= 0 || maxKeys > RollingTable.MAX_KEYS) {
+            throw new IllegalArgumentException("Max keys must be between 1 and " + RollingTable.MAX_KEYS);
+        }
+        this.clock = clock;
+        long now = clock.getAsLong();
+        this.machine = new RollingTable(4, -1, 1, now);
+        this.shelves = new RollingTable(4, STOCK_OUT, maxKeys, now);
+        this.products = new RollingTable(2, -1, maxKeys, now);
+        machine.indexOf("");
+    }
+
+    @Override
+    public void onEvent(VendingEvent event) {
+        if (event instanceof VendingEvent.ProductDispensed dispensed) {
+            recordSale(dispensed.shelfCode(), dispensed.product());
+        } else if (event instanceof VendingEvent.SaleFailed failed) {
+            recordFailure(failed.shelfCode());
+        } else if (event instanceof VendingEvent.Refunded refunded) {
+            // A cancel with nothing inserted returns nothing
+            if (refunded.coins() != CoinTally.EMPTY) {
+                recordRefund();
+            }
+        } else if (event instanceof VendingEvent.PaymentReleased) {
+            recordRefund();
+        }
+    }
+
+    /**
+     * Tracks stock-out time for the shelves of an inventory, from its current stock and
+     * then from its {@link Inventory#getChanges() change stream}.
+     * @param inventory the inventory the machine sells from
+     */
+    public void track(Inventory inventory) {
+        // Subscribe before reading the stock: a change after the read is still delivered
+        inventory.getChanges().subscribe(new StockSubscriber());
+        synchronized (this) {
+            long now = advance();
+            for (ShelfView shelf : inventory.getView().getShelves()) {
+                updateStock(shelf.code(), shelf.quantity(), now);
+            }
+        }
+    }
+
+    // ==================== Recording ====================
+
+    private synchronized void recordSale(String shelfCode, Product product) {
+        advance();
+        int price = product.getPriceInCents();
+        machine.add(MACHINE, RollingTable.UNITS, 1);
+        machine.add(MACHINE, REVENUE, price);
+        recordSale(shelves, shelfCode, price);
+        recordSale(products, product.getId(), price);
+    }
+
+    private void recordSale(RollingTable table, String key, int price) {
+        int index = table.indexOf(key);
+        if (index == RollingTable.NO_KEY) {
+            untracked++;
+            return;
+        }
+        table.add(index, RollingTable.UNITS, 1);
+        table.add(index, REVENUE, price);
+    }
+
+    private synchronized void recordFailure(String shelfCode) {
+        advance();
+        machine.add(MACHINE, FAILURES, 1);
+        int index = shelves.indexOf(shelfCode);
+        if (index != RollingTable.NO_KEY) {
+            shelves.add(index, FAILURES, 1);
+        }
+    }
+
+    private synchronized void recordRefund() {
+        advance();
+        machine.add(MACHINE, REFUNDS, 1);
+    }
+
+    private synchronized void stockChanged(String shelfCode, int quantity) {
+        updateStock(shelfCode, quantity, advance());
+    }
+
+    private void updateStock(String shelfCode, int quantity, long now) {
+        int index = shelves.indexOf(shelfCode);
+        if (index == RollingTable.NO_KEY) {
+            return;
+        }
+        if (quantity == 0) {
+            shelves.markEmpty(index, now);
+        } else {
+            shelves.markStocked(index, now);
+        }
+    }
+
+    private long advance() {
+        long now = clock.getAsLong();
+        machine.advance(now);
+        shelves.advance(now);
+        products.advance(now);
+        return now;
+    }
+
+    // ==================== Queries ====================
+
+    /**
+     * Gets the items dispensed over a window.
+     * @param window the window
+     * @return units sold
+     */
+    public synchronized long getUnitsSold(SalesWindow window) {
+        advance();
+        return machine.get(MACHINE, window, RollingTable.UNITS);
+    }
+
+    /**
+     * Gets the value of the items dispensed over a window.
+     * @param window the window
+     * @return revenue in cents
+     */
+    public synchronized long getRevenue(SalesWindow window) {
+        advance();
+        return machine.get(MACHINE, window, REVENUE);
+    }
+
+    /**
+     * Gets the sales that failed after selection (sold out or no change) over a window.
+     * @param window the window
+     * @return failed sales
+     */
+    public synchronized long getFailedSales(SalesWindow window) {
+        advance();
+        return machine.get(MACHINE, window, FAILURES);
+    }
+
+    /**
+     * Gets the transactions that returned coins or released a card hold over a window.
+     * @param window the window
+     * @return refunds
+     */
+    public synchronized long getRefunds(SalesWindow window) {
+        advance();
+        return machine.get(MACHINE, window, REFUNDS);
+    }
+
+    /**
+     * Gets the figures of one shelf over a window.
+     * @param shelfCode the shelf code
+     * @param window the window
+     * @return the shelf's figures, all zero if it has no recorded activity
+     */
+    public synchronized SalesFigures getShelfFigures(String shelfCode, SalesWindow window) {
+        long now = advance();
+        int index = shelves.find(shelfCode);
+        return index != RollingTable.NO_KEY
+            ? shelves.figures(index, window, REVENUE, FAILURES, now)
+            : new SalesFigures(shelfCode, 0, 0, 0, 0);
+    }
+
+    /**
+     * Gets the figures of one product over a window.
+     * @param productId the product's id
+     * @param window the window
+     * @return the product's figures, all zero if it has not sold
+     */
+    public synchronized SalesFigures getProductFigures(String productId, SalesWindow window) {
+        long now = advance();
+        int index = products.find(productId);
+        return index != RollingTable.NO_KEY
+            ? products.figures(index, window, REVENUE, FAILURES, now)
+            : new SalesFigures(productId, 0, 0, 0, 0);
+    }
+
+    /**
+     * Gets the best-selling products over a window, by units sold.
+     * @param window the window
+     * @param n most entries to return
+     * @return up to {@code n} products with sales, best first
+     */
+    public synchronized List<SalesFigures> topProducts(SalesWindow window, int n) {
+        long now = advance();
+        return products.top(window, n, REVENUE, FAILURES, now);
+    }
+
+    /**
+     * Gets the best-selling shelves over a window, by units sold.
+     * @param window the window
+     * @param n most entries to return
+     * @return up to {@code n} shelves with sales, best first
+     */
+    public synchronized List<SalesFigures> topShelves(SalesWindow window, int n) {
+        long now = advance();
+        return shelves.top(window, n, REVENUE, FAILURES, now);
+    }
+
+    /**
+     * Gets the sales whose shelf or product could not be tracked because {@code maxKeys}
+     * were already tracked. They still count in the machine totals.
+     * @return untracked shelf and product sales
+     */
+    public synchronized long getUntrackedCount() {
+        return untracked;
+    }
+
+    /**
+     * Follows shelf quantities from the inventory's change stream.
+     */
+    private final class StockSubscriber implements Flow.Subscriber<InventoryChange> {
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            // Changes are coalesced per shelf, so unbounded demand stays bounded
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(InventoryChange change) {
+            if (change instanceof InventoryChange.ShelfEmpty empty) {
+                stockChanged(empty.shelfCode(), 0);
+            } else if (change instanceof InventoryChange.ShelfQuantityChanged changed) {
+                stockChanged(changed.shelfCode(), changed.quantity());
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
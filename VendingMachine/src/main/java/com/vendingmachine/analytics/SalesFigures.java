@@ -0,0 +1,13 @@
+package com.vendingmachine.analytics;
+
+/**
+ * Sales of one shelf or product over a {@link SalesWindow}.
+ *
+ * @param key shelf code or product id
+ * @param unitsSold items dispensed
+ * @param revenueCents value of the items dispensed
+ * @param failedSales sales refunded after selection (shelves only)
+ * @param stockOutMillis time the shelf was empty (shelves only, when stock is tracked)
+ */
+public record SalesFigures(String key, long unitsSold, long revenueCents, long failedSales, long stockOutMillis) {
+}
@@ -0,0 +1,39 @@
+package com.vendingmachine.analytics;
+
+/**
+ * A rolling time window of {@link SalesAnalytics}. Each window is a ring of fixed-length
+ * buckets: it covers the bucket in progress and the complete buckets before it, so the last
+ * minute is between 59 and 60 seconds long.
+ */
+public enum SalesWindow {
+    /** The last minute, in one-second buckets. */
+    MINUTE(1_000L, 60),
+    /** The last hour, in one-minute buckets. */
+    HOUR(60_000L, 60),
+    /** The last day, in one-hour buckets. */
+    DAY(3_600_000L, 24);
+
+    private final long bucketMillis;
+    private final int buckets;
+
+    SalesWindow(long bucketMillis, int buckets) {
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Gets the length of one bucket.
+     * @return bucket length in milliseconds
+     */
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * Gets the number of buckets in the ring.
+     * @return bucket count
+     */
+    public int getBuckets() {
+        return buckets;
+    }
+}
@@ -0,0 +1,52 @@
+package com.vendingmachine.change;
+
+/**
+ * Change strategy for canonical denomination sets: greedy first, optimal when the float is short.
+ *
+ * For a canonical set the greedy answer with unlimited coins is the fewest coins possible, so
+ * whenever the float holds every coin that answer needs it is also the best answer with the
+ * limited float. That is the common case and costs O(k) for k denominations. Otherwise (the
+ * float is out of some coin greedy wants) the call falls back to an {@link OptimalChangeStrategy},
+ * which finds exact change whenever it exists.
+ *
+ * Not thread-safe; {@link com.vendingmachine.inventory.Inventory} calls it under its coin lock.
+ */
+public class CanonicalChangeStrategy implements ChangeStrategy {
+
+    private final DenominationSet denominations;
+    private final int[] values;
+    private final OptimalChangeStrategy fallback;
+
+    /**
+     * Creates the strategy for a canonical set.
+     * @param denominations the denominations
+     * @throws IllegalArgumentException if the set is not canonical
+     */
+    public CanonicalChangeStrategy(DenominationSet denominations) {
+        if (!denominations.isCanonical()) {
+            throw new IllegalArgumentException("Greedy change is not optimal for " + denominations);
+        }
+        this.denominations = denominations;
+        this.values = denominations.values();
+        this.fallback = new OptimalChangeStrategy(denominations);
+    }
+
+    @Override
+    public boolean makeChange(int amountInCents, int[] availableCounts, int[] changeCounts) {
+        int remaining = amountInCents;
+        for (int i = values.length - 1; i >= 0; i--) {
+            int used = remaining / values[i];
+            if (used > availableCounts[i]) {
+                return fallback.makeChange(amountInCents, availableCounts, changeCounts);
+            }
+            changeCounts[i] = used;
+            remaining -= used * values[i];
+        }
+        return remaining == 0;
+    }
+
+    @Override
+    public DenominationSet getDenominations() {
+        return denominations;
+    }
+}
@@ -0,0 +1,46 @@
+package com.vendingmachine.change;
+
+/**
+ * Strategy for choosing which coins to hand back as change.
+ *
+ * Coin counts are passed as primitive arrays indexed by position in the strategy's
+ * {@link DenominationSet} ({@link com.vendingmachine.model.Coin#ordinal()} for the default US set),
+ * so making change allocates nothing.
+ *
+ * Implements Strategy Pattern following:
+ * - Open-Closed Principle: new change algorithms can be plugged into Inventory without modifying it
+ * - Single Responsibility Principle: only decides which coins to use, never touches the coin float
+ */
+public interface ChangeStrategy {
+
+    /**
+     * Chooses coins that add up exactly to the given amount.
+     * @param amountInCents amount to return as change, greater than zero
+     * @param availableCounts coins currently in the machine, per denomination; must not be modified
+     * @param changeCounts receives the number of coins to return per denomination; fully overwritten
+     * @return true if exact change can be made, false otherwise (changeCounts is then unspecified)
+     */
+    boolean makeChange(int amountInCents, int[] availableCounts, int[] changeCounts);
+
+    /**
+     * Gets the denominations this strategy makes change in.
+     * @return the denomination set, {@link DenominationSet#US} unless constructed for another
+     */
+    default DenominationSet getDenominations() {
+        return DenominationSet.US;
+    }
+
+    /**
+     * Picks the fastest strategy that always finds the fewest coins for a denomination set:
+     * {@link CanonicalChangeStrategy} (greedy) if the set is canonical, otherwise
+     * {@link OptimalChangeStrategy} (dynamic programming over a table kept between calls).
+     * @param denominations the denominations
+     * @return a new strategy for the set
+     */
+    static ChangeStrategy forDenominations(DenominationSet denominations) {
+        if (denominations.isCanonical()) {
+            return new CanonicalChangeStrategy(denominations);
+        }
+        return new OptimalChangeStrategy(denominations);
+    }
+}
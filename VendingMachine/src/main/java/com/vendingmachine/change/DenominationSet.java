@@ -0,0 +1,301 @@
+package com.vendingmachine.change;
+
+import com.vendingmachine.model.Coin;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set of coin denominations, such as the coins of one region, defined at runtime.
+ *
+ * Values are in the smallest currency unit and strictly ascending; coin count arrays passed to a
+ * {@link ChangeStrategy} for this set are indexed by position in it. {@link #US} is the
+ * {@link Coin} enum, whose ordinals are those positions.
+ *
+ * Whether the set is canonical, meaning the greedy algorithm (largest coin first) always
+ * returns the fewest coins when coins are unlimited, is decided once when the set is created.
+ * {@link ChangeStrategy#forDenominations(DenominationSet)} uses it to pick greedy or dynamic
+ * programming. The check follows Kozen and Zaks: for a set with a 1-unit coin and
+ * denominations c1 &lt; c2 &lt; ... &lt; cm, the smallest amount where greedy is not optimal,
+ * if any, lies strictly between c3 + 1 and cm + c(m-1). The check compares greedy with an
+ * unbounded-knapsack table over that range, in O(m * cm) time. A set without a 1-unit coin
+ * is never treated as canonical, since greedy can strand a remainder that other coins could make.
+ *
+ * A vending machine runs on the set of its inventory's change strategy: coin tallies, the coin
+ * float, the journal, checkpoints and traces all identify a coin by its position in the set.
+ * A {@link Coin} stands for the denomination of the same value, if the set has one.
+ *
+ * Immutable and thread-safe. Equality compares the values only, not the name.
+ */
+public final class DenominationSet {
+
+    // Initialized before US, which needs it
+    private static final Coin[] COINS = Coin.values();
+
+    /** Largest accepted denomination, which bounds the work of the canonical check. */
+    public static final int MAX_VALUE = 1_000_000;
+
+    /** The US coins of the {@link Coin} enum, in ordinal order. */
+    public static final DenominationSet US = fromCoins();
+
+    private final String name;
+    private final int[] values;
+    private final boolean canonical;
+    // Coin of each denomination's value (or null), and position of each Coin's value (or -1)
+    private final Coin[] coins;
+    private final int[] coinIndexes;
+    private final boolean usCoins;
+
+    private DenominationSet(String name, int[] values) {
+        this.name = name;
+        this.values = values;
+        this.canonical = checkCanonical(values);
+        this.coins = new Coin[values.length];
+        this.coinIndexes = new int[COINS.length];
+        int matched = 0;
+        for (Coin coin : COINS) {
+            int index = Arrays.binarySearch(values, coin.getValue());
+            coinIndexes[coin.ordinal()] = index >= 0 ? index : -1;
+            if (index >= 0) {
+                coins[index] = coin;
+                matched++;
+            }
+        }
+        this.usCoins = matched == values.length;
+    }
+
+    /**
+     * Creates a denomination set.
+     * @param name name of the set, such as a region or currency code
+     * @param values denominations in the smallest currency unit, strictly ascending
+     * @return the set
+     * @throws IllegalArgumentException if the values are empty, not positive, above {@value #MAX_VALUE}
+     *         or not strictly ascending
+     */
+    public static DenominationSet of(String name, int... values) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Denomination set name cannot be empty");
+        }
+        if (values == null || values.length == 0) {
+            throw new IllegalArgumentException("Denomination set " + name + " has no denominations");
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] <= 0 || values[i] > MAX_VALUE) {
+                throw new IllegalArgumentException("Denomination set " + name + " has a value out of range: " + values[i]);
+            }
+            if (i > 0 && values[i] <= values[i - 1]) {
+                throw new IllegalArgumentException("Denomination set " + name + " is not strictly ascending at "
+                    + values[i]);
+            }
+        }
+        return new DenominationSet(name, values.clone());
+    }
+
+    /**
+     * Parses a denomination set from a comma-separated list of values, such as {@code "1, 2, 5, 10"}.
+     * @param name name of the set
+     * @param values comma-separated denominations, strictly ascending
+     * @return the set
+     * @throws IllegalArgumentException if a value is not a number or the values are invalid
+     */
+    public static DenominationSet parse(String name, String values) {
+        String[] fields = values.split(",");
+        int[] parsed = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            try {
+                parsed[i] = Integer.parseInt(fields[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Denomination set " + name + " has an invalid value: '"
+                    + fields[i].trim() + "'");
+            }
+        }
+        return of(name, parsed);
+    }
+
+    /**
+     * Loads denomination sets from a file with one {@code NAME = v1, v2, ...} line per set.
+     * Blank lines and lines starting with {@code #} are ignored.
+     * @param file the file to read
+     * @return the sets by name, in file order
+     * @throws IOException if the file cannot be read or a line is invalid (the message names the line)
+     */
+    public static Map<String, DenominationSet> loadAll(Path file) throws IOException {
+        Map<String, DenominationSet> sets = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int separator = line.indexOf('=');
+                if (separator < 0) {
+                    throw new IOException(file + " line " + lineNumber + ": expected NAME = values");
+                }
+                String name = line.substring(0, separator).trim();
+                DenominationSet set;
+                try {
+                    set = parse(name, line.substring(separator + 1));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + " line " + lineNumber + ": " + e.getMessage());
+                }
+                if (sets.putIfAbsent(name, set) != null) {
+                    throw new IOException(file + " line " + lineNumber + ": duplicate denomination set " + name);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(sets);
+    }
+
+    private static DenominationSet fromCoins() {
+        int[] values = new int[COINS.length];
+        for (Coin coin : COINS) {
+            values[coin.ordinal()] = coin.getValue();
+        }
+        return of("US", values);
+    }
+
+    // ==================== Accessors ====================
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of denominations.
+     * @return the size of count arrays for this set
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Gets one denomination.
+     * @param index position in the set
+     * @return its value
+     */
+    public int value(int index) {
+        return values[index];
+    }
+
+    /**
+     * Gets all denominations.
+     * @return a copy of the values, ascending
+     */
+    public int[] values() {
+        return values.clone();
+    }
+
+    /**
+     * Gets the position of the denomination a {@link Coin} stands for: the one of the same value.
+     * @param coin the coin
+     * @return its position in the set ({@link Coin#ordinal()} for {@link #US}), or -1 if the set
+     *         has no denomination of that value
+     */
+    public int indexOf(Coin coin) {
+        return coinIndexes[coin.ordinal()];
+    }
+
+    /**
+     * Gets the {@link Coin} of a denomination's value.
+     * @param index position in the set
+     * @return the coin, or null if no {@link Coin} has that value
+     */
+    public Coin coin(int index) {
+        return coins[index];
+    }
+
+    /**
+     * Checks whether every denomination is the value of a {@link Coin}, so coins of this set
+     * can be listed as {@link Coin}s.
+     * @return true for {@link #US} and its subsets
+     */
+    public boolean isUsCoins() {
+        return usCoins;
+    }
+
+    /**
+     * Gets the display name of a denomination: the {@link Coin} name in a set of
+     * {@linkplain #isUsCoins() US coins}, otherwise the set name and the value, such as {@code EUR 50}.
+     * @param index position in the set
+     * @return the name
+     */
+    public String getCoinName(int index) {
+        return usCoins ? coins[index].name() : name + " " + values[index];
+    }
+
+    /**
+     * Checks whether greedy change is optimal for every amount when coins are unlimited.
+     * @return true if the set is canonical
+     */
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    // ==================== Canonical Check ====================
+
+    private static boolean checkCanonical(int[] values) {
+        int m = values.length;
+        if (values[0] != 1) {
+            return false;
+        }
+        if (m <= 2) {
+            return true;
+        }
+        // Smallest counterexample, if any, lies in (c3 + 1, cm + c(m-1))
+        int limit = values[m - 1] + values[m - 2];
+        int from = values[2] + 2;
+        if (from >= limit) {
+            return true;
+        }
+
+        // fewest[a]: fewest coins making a with unlimited coins
+        int[] fewest = new int[limit];
+        for (int amount = 1; amount < limit; amount++) {
+            int best = Integer.MAX_VALUE;
+            for (int i = 0; i < m && values[i] <= amount; i++) {
+                best = Math.min(best, fewest[amount - values[i]] + 1);
+            }
+            fewest[amount] = best;
+        }
+        for (int amount = from; amount < limit; amount++) {
+            if (greedyCount(values, amount) != fewest[amount]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int greedyCount(int[] values, int amount) {
+        int coins = 0;
+        for (int i = values.length - 1; i >= 0; i--) {
+            coins += amount / values[i];
+            amount %= values[i];
+        }
+        return coins;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DenominationSet && Arrays.equals(values, ((DenominationSet) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return name + Arrays.toString(values) + (canonical ? " (canonical)" : " (non-canonical)");
+    }
+}
@@ -0,0 +1,44 @@
+package com.vendingmachine.change;
+
+/**
+ * Greedy change strategy: always takes the largest coin that still fits.
+ *
+ * Fast, but with a limited coin supply it can fail even when exact change exists
+ * (e.g. 30 cents from one quarter and three dimes), and for a non-canonical denomination set
+ * it can use more coins than needed even with unlimited coins.
+ * {@link ChangeStrategy#forDenominations(DenominationSet)} picks a strategy that is always correct.
+ */
+public class GreedyChangeStrategy implements ChangeStrategy {
+
+    private final DenominationSet denominations;
+    private final int[] values;
+
+    public GreedyChangeStrategy() {
+        this(DenominationSet.US);
+    }
+
+    /**
+     * Creates a greedy strategy for a denomination set.
+     * @param denominations the denominations
+     */
+    public GreedyChangeStrategy(DenominationSet denominations) {
+        this.denominations = denominations;
+        this.values = denominations.values();
+    }
+
+    @Override
+    public boolean makeChange(int amountInCents, int[] availableCounts, int[] changeCounts) {
+        int remaining = amountInCents;
+        for (int i = values.length - 1; i >= 0; i--) {
+            int used = Math.min(availableCounts[i], remaining / values[i]);
+            changeCounts[i] = used;
+            remaining -= used * values[i];
+        }
+        return remaining == 0;
+    }
+
+    @Override
+    public DenominationSet getDenominations() {
+        return denominations;
+    }
+}
@@ -0,0 +1,146 @@
+package com.vendingmachine.change;
+
+import java.util.Arrays;
+
+/**
+ * Bounded-knapsack change strategy: finds exact change whenever it exists
+ * with the limited coin supply, using the fewest coins possible.
+ *
+ * The strategy keeps a table {@code best[i][a]}: the fewest coins that make amount
+ * {@code a} using only the first {@code i} denominations within their available counts.
+ * The table is kept between calls. Row {@code i} only depends on rows below it, so when
+ * the float of one denomination changes only that row and the rows above it are
+ * recomputed, and only if the change matters for amounts the table covers (having
+ * 200 quarters or 300 makes no difference for change up to $5).
+ * Each row is computed in O(capacity) with a sliding-window minimum per residue class.
+ *
+ * Not thread-safe; {@link com.vendingmachine.inventory.Inventory} calls it under its coin lock.
+ */
+public class OptimalChangeStrategy implements ChangeStrategy {
+
+    private static final int INITIAL_CAPACITY = 500;
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+
+    private final DenominationSet denominations;
+    private final int[] values;
+
+    // best[i] covers denominations 0..i-1; best[0] is "no coins"
+    private int[][] best;
+    // Effective count (capped by capacity / value) each row was built with
+    private final int[] builtCounts;
+    private int capacity;
+    private int validRows;
+
+    // Scratch space for the sliding-window minimum
+    private int[] windowIndex;
+    private int[] windowValue;
+
+    public OptimalChangeStrategy() {
+        this(DenominationSet.US);
+    }
+
+    /**
+     * Creates an optimal strategy for a denomination set.
+     * @param denominations the denominations
+     */
+    public OptimalChangeStrategy(DenominationSet denominations) {
+        this.denominations = denominations;
+        this.values = denominations.values();
+        this.builtCounts = new int[values.length];
+        allocate(INITIAL_CAPACITY);
+    }
+
+    @Override
+    public boolean makeChange(int amountInCents, int[] availableCounts, int[] changeCounts) {
+        if (amountInCents > capacity) {
+            allocate(Math.max(amountInCents, capacity * 2));
+        }
+        refresh(availableCounts);
+
+        if (best[values.length][amountInCents] >= UNREACHABLE) {
+            return false;
+        }
+
+        // Walk the rows back down to recover how many coins of each denomination were used
+        int remaining = amountInCents;
+        for (int i = values.length; i > 0; i--) {
+            int value = values[i - 1];
+            int target = best[i][remaining];
+            int[] below = best[i - 1];
+            int maxUse = Math.min(builtCounts[i - 1], remaining / value);
+            int used = 0;
+            while (used < maxUse && below[remaining - used * value] + used != target) {
+                used++;
+            }
+            changeCounts[i - 1] = used;
+            remaining -= used * value;
+        }
+        return true;
+    }
+
+    @Override
+    public DenominationSet getDenominations() {
+        return denominations;
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        best = new int[values.length + 1][newCapacity + 1];
+        Arrays.fill(best[0], UNREACHABLE);
+        best[0][0] = 0;
+        windowIndex = new int[newCapacity + 1];
+        windowValue = new int[newCapacity + 1];
+        validRows = 0;
+    }
+
+    /**
+     * Recomputes the rows from the lowest denomination whose effective count changed.
+     */
+    private void refresh(int[] availableCounts) {
+        int firstStale = validRows;
+        for (int i = 0; i < firstStale; i++) {
+            if (effectiveCount(i, availableCounts) != builtCounts[i]) {
+                firstStale = i;
+                break;
+            }
+        }
+        for (int i = firstStale; i < values.length; i++) {
+            builtCounts[i] = effectiveCount(i, availableCounts);
+            buildRow(i + 1, values[i], builtCounts[i]);
+        }
+        validRows = values.length;
+    }
+
+    private int effectiveCount(int index, int[] availableCounts) {
+        return Math.min(availableCounts[index], capacity / values[index]);
+    }
+
+    /**
+     * best[row][a] = min over 0..count uses of the coin of best[row-1][a - used*value] + used.
+     * Along one residue class a = r + t*value this is a minimum of (below - t') + t over a
+     * window of the last count+1 positions, maintained with a monotone deque.
+     */
+    private void buildRow(int row, int value, int count) {
+        int[] below = best[row - 1];
+        int[] current = best[row];
+        for (int residue = 0; residue < value && residue <= capacity; residue++) {
+            int head = 0;
+            int tail = 0;
+            for (int t = 0, amount = residue; amount <= capacity; t++, amount += value) {
+                if (below[amount] < UNREACHABLE) {
+                    int candidate = below[amount] - t;
+                    while (tail > head && windowValue[tail - 1] >= candidate) {
+                        tail--;
+                    }
+                    windowIndex[tail] = t;
+                    windowValue[tail] = candidate;
+                    tail++;
+                }
+                while (tail > head && windowIndex[head] < t - count) {
+                    head++;
+                }
+                current[amount] = tail > head ? windowValue[head] + t : UNREACHABLE;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.vendingmachine.event;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Event listener that hands events to a background thread and returns immediately.
+ *
+ * Events go into a lock-free ring buffer. A daemon writer thread drains it in batches,
+ * formats a whole batch into one buffer and writes it with a single call, so the vend path
+ * never waits for console I/O. If the writer falls behind and the buffer fills up, new events
+ * are dropped and counted ({@link #getDroppedCount()}) rather than blocking the caller.
+ * Events still buffered when the JVM exits are lost unless the sink is closed first.
+ */
+public class AsyncEventSink implements VendingEventListener, AutoCloseable {
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int BATCH_SIZE = 512;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static volatile AsyncEventSink systemOut;
+
+    private final EventRingBuffer buffer;
+    private final PrintStream out;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * Creates a sink writing to the given stream and starts its writer thread.
+     * @param out destination of the formatted events
+     * @param capacity ring buffer size, a power of two
+     */
+    public AsyncEventSink(PrintStream out, int capacity) {
+        this.out = out;
+        this.buffer = new EventRingBuffer(capacity);
+        this.writer = new Thread(this::drainLoop, "vending-event-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public AsyncEventSink(PrintStream out) {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Gets the shared sink writing to {@code System.out}, starting it on first use. The sink
+     * is closed by a shutdown hook, so events accepted before the JVM exits are written.
+     * @return the shared console sink
+     */
+    public static AsyncEventSink systemOut() {
+        AsyncEventSink sink = systemOut;
+        if (sink == null) {
+            synchronized (AsyncEventSink.class) {
+                sink = systemOut;
+                if (sink == null) {
+                    sink = new AsyncEventSink(System.out);
+                    Runtime.getRuntime().addShutdownHook(new Thread(sink::close, "vending-event-flush"));
+                    systemOut = sink;
+                }
+            }
+        }
+        return sink;
+    }
+
+    @Override
+    public void onEvent(VendingEvent event) {
+        if (!buffer.offer(event)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Gets the number of events dropped because the buffer was full.
+     * @return dropped event count
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops the writer thread after it has written every event already accepted.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        StringBuilder batch = new StringBuilder(4096);
+        while (true) {
+            // Read the flag first so a final drain after close() sees every accepted event
+            boolean stopping = !running;
+            int drained = 0;
+            VendingEvent event;
+            while (drained < BATCH_SIZE && (event = buffer.poll()) != null) {
+                EventFormatter.format(event, batch);
+                drained++;
+            }
+            if (drained > 0) {
+                out.print(batch);
+                out.flush();
+                batch.setLength(0);
+            } else if (stopping) {
+                return;
+            } else {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+}
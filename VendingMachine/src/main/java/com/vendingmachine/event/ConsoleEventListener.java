@@ -0,0 +1,33 @@
+package com.vendingmachine.event;
+
+import java.io.PrintStream;
+
+/**
+ * Writes every event to a console stream synchronously, on the caller's thread.
+ *
+ * Output stays in step with other console output, which suits demos and debugging.
+ * For production use an {@link AsyncEventSink}.
+ */
+public class ConsoleEventListener implements VendingEventListener {
+
+    private final PrintStream out;
+    private final StringBuilder buffer = new StringBuilder();
+
+    /**
+     * Creates a listener that writes to the current {@code System.out}.
+     */
+    public ConsoleEventListener() {
+        this(System.out);
+    }
+
+    public ConsoleEventListener(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void onEvent(VendingEvent event) {
+        buffer.setLength(0);
+        EventFormatter.format(event, buffer);
+        out.print(buffer);
+    }
+}
@@ -0,0 +1,83 @@
+package com.vendingmachine.event;
+
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.model.CoinTally;
+
+/**
+ * Renders events as the human-readable console messages of the vending machine.
+ */
+final class EventFormatter {
+
+    private EventFormatter() {
+    }
+
+    static void format(VendingEvent event, StringBuilder out) {
+        if (event instanceof VendingEvent.CoinInserted inserted) {
+            DenominationSet denominations = inserted.denominations();
+            int denomination = inserted.denomination();
+            out.append("Inserted: ").append(denominations.getCoinName(denomination))
+                .append(" (").append(denominations.value(denomination)).append(" cents)\n");
+            out.append("Current balance: ").append(inserted.balance()).append(" cents\n");
+        } else if (event instanceof VendingEvent.ProductSelected selected) {
+            out.append("Product selected: ").append(selected.product().getName())
+                .append(" (").append(selected.product().getFormattedPrice()).append(")\n");
+        } else if (event instanceof VendingEvent.ProductDispensed dispensed) {
+            out.append("\n*** DISPENSING: ").append(dispensed.product().getName()).append(" ***\n");
+        } else if (event instanceof VendingEvent.ChangeReturned change) {
+            if (change.totalCents() > 0) {
+                out.append("Change returned: \n");
+                DenominationSet denominations = change.denominations();
+                for (int i = denominations.size() - 1; i >= 0; i--) {
+                    for (int n = CoinTally.count(change.coins(), i); n > 0; n--) {
+                        out.append("  - ").append(denominations.getCoinName(i))
+                            .append(" (").append(denominations.value(i)).append(" cents)\n");
+                    }
+                }
+                out.append(String.format("Total change: %d cents ($%.2f)%n",
+                    change.totalCents(), change.totalCents() / 100.0));
+            } else {
+                out.append("No change due.\n");
+            }
+            out.append("Thank you for your purchase!\n\n");
+        } else if (event instanceof VendingEvent.PaymentAuthorized authorized) {
+            out.append("Card payment authorized. Balance: ").append(authorized.amountCents()).append(" cents\n");
+        } else if (event instanceof VendingEvent.PaymentDeclined declined) {
+            out.append("Card payment declined: ").append(declined.reason()).append('\n');
+        } else if (event instanceof VendingEvent.PaymentCaptured captured) {
+            out.append(String.format("Card charged: $%.2f%n", captured.amountCents() / 100.0));
+            out.append("Thank you for your purchase!\n\n");
+        } else if (event instanceof VendingEvent.PaymentCaptureFailed failed) {
+            out.append(String.format("Card charge of $%.2f failed: %s%n", failed.amountCents() / 100.0, failed.reason()));
+        } else if (event instanceof VendingEvent.PaymentReleased released) {
+            if (released.reason() == VendingEvent.RefundReason.SOLD_OUT) {
+                out.append("Product sold out. Card not charged.\n");
+            } else if (released.reason() == VendingEvent.RefundReason.PRICE_CHANGED) {
+                out.append("Price changed since selection. Card not charged.\n");
+            } else {
+                out.append("Card payment cancelled. Card not charged.\n");
+            }
+        } else if (event instanceof VendingEvent.Refunded refund) {
+            int coins = CoinTally.size(refund.coins());
+            switch (refund.reason()) {
+                case CANCELLED:
+                    if (coins == 0) {
+                        out.append("No transaction to cancel.\n");
+                    } else {
+                        out.append("Transaction cancelled. Returning ").append(coins).append(" coin(s).\n");
+                    }
+                    break;
+                case NO_CHANGE:
+                    out.append("Cannot make exact change. Returning ").append(coins).append(" coin(s).\n");
+                    break;
+                case SOLD_OUT:
+                    out.append("Product sold out. Returning ").append(coins).append(" coin(s).\n");
+                    break;
+                case PRICE_CHANGED:
+                    out.append("Price changed since selection. Returning ").append(coins).append(" coin(s).\n");
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown refund reason " + refund.reason());
+            }
+        }
+    }
+}
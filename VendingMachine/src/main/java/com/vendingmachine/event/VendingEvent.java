@@ -0,0 +1,126 @@
+package com.vendingmachine.event;
+
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+
+/**
+ * Something that happened during a transaction, published by the state classes
+ * to the machine's {@link VendingEventListener}.
+ *
+ * Coins are identified by their position in the machine's {@link DenominationSet}, which the
+ * events carrying coins include, so a listener can name and value them without the machine.
+ */
+public sealed interface VendingEvent {
+
+    /**
+     * A coin was accepted.
+     * @param denominations the machine's denomination set
+     * @param denomination position of the inserted coin's denomination in the set
+     * @param balance balance after the insert, in cents
+     */
+    record CoinInserted(DenominationSet denominations, int denomination, int balance) implements VendingEvent {
+    }
+
+    /**
+     * A product was selected and payment verified.
+     * @param shelfCode shelf the product is on
+     * @param product the selected product
+     */
+    record ProductSelected(String shelfCode, Product product) implements VendingEvent {
+    }
+
+    /**
+     * A product left the machine.
+     * @param shelfCode shelf the product came from
+     * @param product the dispensed product
+     */
+    record ProductDispensed(String shelfCode, Product product) implements VendingEvent {
+    }
+
+    /**
+     * Change was paid out after a sale; {@code coins} is empty when no change was due.
+     * @param denominations the machine's denomination set
+     * @param coins packed {@link CoinTally} of the coins returned
+     * @param totalCents total value of the change
+     */
+    record ChangeReturned(DenominationSet denominations, long coins, int totalCents) implements VendingEvent {
+    }
+
+    /**
+     * Inserted money was handed back without a sale.
+     * @param denominations the machine's denomination set
+     * @param coins packed {@link CoinTally} of the refunded coins ({@link CoinTally#EMPTY} if
+     *              there was nothing to refund)
+     * @param reason why the money was refunded
+     */
+    record Refunded(DenominationSet denominations, long coins, RefundReason reason) implements VendingEvent {
+    }
+
+    /**
+     * A sale fell through after the product was selected, and the money was refunded. Published
+     * before the {@link Refunded} or {@link PaymentReleased} event; for a cart, once per item,
+     * each with the reason the whole cart failed.
+     * @param shelfCode shelf the product was to come from
+     * @param reason why the sale failed ({@link RefundReason#SOLD_OUT}, {@link RefundReason#NO_CHANGE}
+     *               or {@link RefundReason#PRICE_CHANGED})
+     */
+    record SaleFailed(String shelfCode, RefundReason reason) implements VendingEvent {
+    }
+
+    /**
+     * A card payment was authorized; the amount is held on the customer's account.
+     * @param authorizationId identifier of the hold
+     * @param amountCents amount held, now the session's balance
+     */
+    record PaymentAuthorized(String authorizationId, int amountCents) implements VendingEvent {
+    }
+
+    /**
+     * A card payment was declined or could not be authorized; the transaction ended.
+     * @param reason the authorizer's reason
+     */
+    record PaymentDeclined(String reason) implements VendingEvent {
+    }
+
+    /**
+     * A card payment was charged for a dispensed product; the rest of the hold is released.
+     * Published once the authorizer accepts the charge, which may be on the authorizer's thread.
+     * @param authorizationId identifier of the hold
+     * @param amountCents amount charged
+     */
+    record PaymentCaptured(String authorizationId, int amountCents) implements VendingEvent {
+    }
+
+    /**
+     * The authorizer refused or failed to charge a card payment for products already dispensed,
+     * e.g. because the hold expired or the service was down. Nothing was charged; the sale
+     * needs following up. Published on the authorizer's thread.
+     * @param authorizationId identifier of the hold
+     * @param amountCents amount that was to be charged
+     * @param reason the authorizer's error message
+     */
+    record PaymentCaptureFailed(String authorizationId, int amountCents, String reason) implements VendingEvent {
+    }
+
+    /**
+     * A card payment ended without a charge; its hold, if any, is released.
+     * @param reason why nothing was charged
+     */
+    record PaymentReleased(RefundReason reason) implements VendingEvent {
+    }
+
+    /**
+     * Why a transaction ended in a refund.
+     */
+    enum RefundReason {
+        /** The customer cancelled. */
+        CANCELLED,
+        /** Exact change could not be made. */
+        NO_CHANGE,
+        /** The selected product sold out before it could be dispensed. */
+        SOLD_OUT,
+        /** A restock raised the price after selection and the money no longer covers it. */
+        PRICE_CHANGED
+    }
+}
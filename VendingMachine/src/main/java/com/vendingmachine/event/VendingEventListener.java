@@ -0,0 +1,41 @@
+package com.vendingmachine.event;
+
+/**
+ * Receives the events of a vending machine.
+ *
+ * Called on the thread that drives the machine, in the middle of an operation, so
+ * implementations must be fast and must not throw. The outcome of a card charge
+ * ({@link VendingEvent.PaymentCaptured}, {@link VendingEvent.PaymentCaptureFailed}) arrives
+ * later on the payment authorizer's thread, so listeners of card-paying machines must be
+ * thread-safe. Slow work (console or file output,
+ * network) belongs behind an {@link AsyncEventSink}.
+ */
+@FunctionalInterface
+public interface VendingEventListener {
+
+    /**
+     * Listener that drops every event, for headless or high-throughput runs.
+     */
+    VendingEventListener NO_OP = event -> { };
+
+    /**
+     * Handles one event.
+     * @param event the event
+     */
+    void onEvent(VendingEvent event);
+
+    /**
+     * Combines this listener with another, e.g. console output with sales analytics.
+     * @param next listener called after this one
+     * @return a listener passing every event to both
+     */
+    default VendingEventListener andThen(VendingEventListener next) {
+        if (next == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        return event -> {
+            onEvent(event);
+            next.onEvent(event);
+        };
+    }
+}
@@ -0,0 +1,338 @@
+package com.vendingmachine.fleet;
+
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Hosts a large number of vending machines in one JVM.
+ *
+ * Machines are identified by an integer ID and stored in a compact, array-based layout
+ * (a couple of hundred bytes per machine instead of a {@link com.vendingmachine.VendingMachine}
+ * object graph). They are split across shards, by default one per core, with
+ * {@code machineId % shardCount} selecting the shard. Each shard runs a single-writer event
+ * loop, so operations on machines of different shards run in parallel and operations on one
+ * machine are applied in submission order. All operations are asynchronous and return a
+ * {@link CompletableFuture}; business errors complete it exceptionally with the same exceptions
+ * the single-machine API throws.
+ *
+ * Shelves are addressed by index (0 .. shelvesPerMachine-1) rather than by code.
+ *
+ * Fleet-wide queries ({@link #getTotalCash()}, {@link #getStockOutsPerProduct()}) scan all
+ * machines in parallel with fork-join. They read the shards without stopping them, so while
+ * machines are vending the result is a weakly consistent view.
+ */
+public class Fleet implements AutoCloseable {
+
+    // Machines per fork-join leaf task
+    private static final int QUERY_GRAIN = 4096;
+
+    private final int machineCount;
+    private final int shelvesPerMachine;
+    private final FleetShard[] shards;
+    private final Thread[] loops;
+    private final ProductCatalog catalog;
+    private final ForkJoinPool queryPool;
+
+    /**
+     * Creates a fleet with one shard per available processor.
+     * @param machineCount number of machines
+     * @param shelvesPerMachine number of shelves in every machine
+     */
+    public Fleet(int machineCount, int shelvesPerMachine) {
+        this(machineCount, shelvesPerMachine, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a fleet and starts its shard event loops.
+     * @param machineCount number of machines
+     * @param shelvesPerMachine number of shelves in every machine
+     * @param shardCount number of shards (and event loop threads)
+     */
+    public Fleet(int machineCount, int shelvesPerMachine, int shardCount) {
+        if (machineCount <= 0 || shelvesPerMachine <= 0 || shardCount <= 0) {
+            throw new IllegalArgumentException("Machine, shelf and shard counts must be positive");
+        }
+        this.machineCount = machineCount;
+        this.shelvesPerMachine = shelvesPerMachine;
+        this.catalog = new ProductCatalog();
+        this.queryPool = ForkJoinPool.commonPool();
+
+        int shards = Math.min(shardCount, machineCount);
+        this.shards = new FleetShard[shards];
+        this.loops = new Thread[shards];
+        for (int i = 0; i < shards; i++) {
+            // Machines i, i + shards, i + 2*shards, ... belong to shard i
+            int machinesInShard = (machineCount - i + shards - 1) / shards;
+            this.shards[i] = new FleetShard(machinesInShard, shelvesPerMachine, catalog);
+            this.loops[i] = new Thread(this.shards[i], "fleet-shard-" + i);
+            this.loops[i].setDaemon(true);
+            this.loops[i].start();
+        }
+    }
+
+    public int getMachineCount() {
+        return machineCount;
+    }
+
+    public int getShelvesPerMachine() {
+        return shelvesPerMachine;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // ==================== Customer Operations ====================
+
+    /**
+     * Inserts a coin into a machine.
+     * @return future with the machine's new balance in cents
+     */
+    public CompletableFuture<Integer> insertCoin(int machineId, Coin coin) {
+        FleetShard shard = shardOf(machineId);
+        int m = localIndex(machineId);
+        return shard.submit(() -> shard.insertCoin(m, coin));
+    }
+
+    /**
+     * Selects the product on a shelf of a machine.
+     * @return future with the selected product
+     */
+    public CompletableFuture<Product> selectProduct(int machineId, int shelf) {
+        FleetShard shard = shardOf(machineId);
+        int m = localIndex(machineId);
+        return shard.submit(() -> shard.selectProduct(m, shelf));
+    }
+
+    /**
+     * Dispenses the selected product of a machine and pays out change. If a restock since the
+     * selection emptied the shelf or raised the price above the balance, the money is refunded
+     * and the future fails.
+     * @return future with the dispensed product
+     */
+    public CompletableFuture<Product> dispenseProduct(int machineId) {
+        FleetShard shard = shardOf(machineId);
+        int m = localIndex(machineId);
+        return shard.submit(() -> shard.dispenseProduct(m));
+    }
+
+    /**
+     * Cancels the current transaction of a machine.
+     * @return future with the refunded coins
+     */
+    public CompletableFuture<List<Coin>> cancelTransaction(int machineId) {
+        FleetShard shard = shardOf(machineId);
+        int m = localIndex(machineId);
+        return shard.submit(() -> shard.cancelTransaction(m));
+    }
+
+    /**
+     * Gets the state name of a machine.
+     * @return future with IDLE, HAS_MONEY or DISPENSING
+     */
+    public CompletableFuture<String> getStateName(int machineId) {
+        FleetShard shard = shardOf(machineId);
+        int m = localIndex(machineId);
+        return shard.submit(() -> shard.getStateName(m));
+    }
+
+    // ==================== Inventory Operations ====================
+
+    /**
+     * Stocks a product on a shelf of a machine.
+     */
+    public CompletableFuture<Void> stockProduct(int machineId, int shelf, Product product, int quantity) {
+        FleetShard shard = shardOf(machineId);
+        int m = localIndex(machineId);
+        return shard.submit(() -> shard.stockProduct(m, shelf, product, quantity));
+    }
+
+    /**
+     * Adds coins to a machine's coin inventory.
+     */
+    public CompletableFuture<Void> loadCoins(int machineId, Coin coin, int count) {
+        FleetShard shard = shardOf(machineId);
+        int m = localIndex(machineId);
+        return shard.submit(() -> shard.loadCoins(m, coin, count));
+    }
+
+    public CompletableFuture<Integer> getShelfQuantity(int machineId, int shelf) {
+        FleetShard shard = shardOf(machineId);
+        int m = localIndex(machineId);
+        return shard.submit(() -> shard.getShelfQuantity(m, shelf));
+    }
+
+    public CompletableFuture<Integer> getCoinCount(int machineId, Coin coin) {
+        FleetShard shard = shardOf(machineId);
+        int m = localIndex(machineId);
+        return shard.submit(() -> shard.getCoinCount(m, coin));
+    }
+
+    // ==================== Fleet-wide Queries ====================
+
+    /**
+     * Gets the total value of all coins held by all machines.
+     * @return total value in cents
+     */
+    public long getTotalCash() {
+        List<ForkJoinTask<Long>> tasks = new ArrayList<>(shards.length);
+        for (FleetShard shard : shards) {
+            tasks.add(queryPool.submit(new CashTask(shard, 0, shard.machineCount())));
+        }
+        long total = 0;
+        for (ForkJoinTask<Long> task : tasks) {
+            total += task.join();
+        }
+        return total;
+    }
+
+    /**
+     * Counts, per product, the shelves across the fleet that carry it and are empty.
+     * Shelves holding the product at different prices or names are counted together,
+     * under the first version stocked.
+     * @return map of product to number of empty shelves, only products with at least one
+     */
+    public Map<Product, Long> getStockOutsPerProduct() {
+        int products = catalog.size();
+        List<ForkJoinTask<long[]>> tasks = new ArrayList<>(shards.length);
+        for (FleetShard shard : shards) {
+            tasks.add(queryPool.submit(new StockOutTask(shard, products, 0, shard.machineCount())));
+        }
+        long[] counts = new long[products];
+        for (ForkJoinTask<long[]> task : tasks) {
+            long[] shardCounts = task.join();
+            for (int i = 0; i < products; i++) {
+                counts[i] += shardCounts[i];
+            }
+        }
+        Map<Product, Long> stockOuts = new LinkedHashMap<>();
+        for (int i = 0; i < products; i++) {
+            if (counts[i] > 0) {
+                stockOuts.merge(catalog.get(i), counts[i], Long::sum);
+            }
+        }
+        return Collections.unmodifiableMap(stockOuts);
+    }
+
+    /**
+     * Stops all shard event loops after the operations already queued have run. Operations
+     * submitted from then on fail with {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].stop(loops[i]);
+        }
+        for (Thread loop : loops) {
+            try {
+                loop.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // ==================== Helpers ====================
+
+    private FleetShard shardOf(int machineId) {
+        if (machineId < 0 || machineId >= machineCount) {
+            throw new IllegalArgumentException("Machine " + machineId + " does not exist");
+        }
+        return shards[machineId % shards.length];
+    }
+
+    private int localIndex(int machineId) {
+        return machineId / shards.length;
+    }
+
+    /**
+     * Sums coin values over a range of a shard's machines.
+     */
+    private static final class CashTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final FleetShard shard;
+        private final int from;
+        private final int to;
+
+        CashTask(FleetShard shard, int from, int to) {
+            this.shard = shard;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from > QUERY_GRAIN) {
+                int mid = (from + to) >>> 1;
+                CashTask left = new CashTask(shard, from, mid);
+                left.fork();
+                return new CashTask(shard, mid, to).compute() + left.join();
+            }
+            Coin[] coins = Coin.values();
+            int[] counts = shard.coinCounts;
+            long total = 0;
+            for (int i = from * coins.length; i < to * coins.length; i++) {
+                total += (long) counts[i] * coins[i % coins.length].getValue();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Counts empty shelves per catalog product over a range of a shard's machines.
+     */
+    private static final class StockOutTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final FleetShard shard;
+        private final int products;
+        private final int from;
+        private final int to;
+
+        StockOutTask(FleetShard shard, int products, int from, int to) {
+            this.shard = shard;
+            this.products = products;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > QUERY_GRAIN) {
+                int mid = (from + to) >>> 1;
+                StockOutTask left = new StockOutTask(shard, products, from, mid);
+                left.fork();
+                long[] counts = new StockOutTask(shard, products, mid, to).compute();
+                long[] leftCounts = left.join();
+                for (int i = 0; i < products; i++) {
+                    counts[i] += leftCounts[i];
+                }
+                return counts;
+            }
+            long[] counts = new long[products];
+            int shelves = shard.shelvesPerMachine();
+            short[] product = shard.shelfProduct;
+            int[] quantity = shard.shelfQuantity;
+            for (int slot = from * shelves; slot < to * shelves; slot++) {
+                int index = product[slot];
+                // Products registered after the query started are not counted
+                if (index >= 0 && index < products && quantity[slot] == 0) {
+                    counts[index]++;
+                }
+            }
+            return counts;
+        }
+    }
+}
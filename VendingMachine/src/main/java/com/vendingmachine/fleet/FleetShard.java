@@ -0,0 +1,284 @@
+package com.vendingmachine.fleet;
+
+import com.vendingmachine.change.ChangeStrategy;
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientMoneyException;
+import com.vendingmachine.exception.InvalidOperationException;
+import com.vendingmachine.exception.ProductNotAvailableException;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.state.MachineState;
+import com.vendingmachine.state.Operation;
+import com.vendingmachine.state.TransitionTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * One shard of a {@link Fleet}: a slice of machines stored as parallel primitive arrays
+ * and the single thread that is allowed to modify them.
+ *
+ * Every operation on a machine of this shard is queued to the shard's event loop, so the
+ * arrays have exactly one writer and need no locks. The loop drains its mailbox in batches
+ * to keep the hand-off cost low when many requests arrive at once.
+ *
+ * Machine layout (local index {@code m}, {@code S} shelves per machine, {@code C} coin types):
+ * state[m], balance[m], inserted[m] (packed {@link CoinTally}), selectedShelf[m],
+ * coinCounts[m*C .. m*C+C-1], shelfProduct[m*S ..] (catalog index or -1) and shelfQuantity[m*S ..].
+ * state[m] is a {@link MachineState} code and moves through the same {@link TransitionTable}
+ * as a {@link com.vendingmachine.VendingMachine} session.
+ */
+class FleetShard implements Runnable {
+
+    static final byte IDLE = MachineState.IDLE.code();
+
+    private static final Coin[] COINS = Coin.values();
+    private static final int COIN_TYPES = COINS.length;
+    private static final short NO_PRODUCT = -1;
+    private static final int NO_SELECTION = -1;
+    private static final int BATCH_SIZE = 256;
+
+    private final int machineCount;
+    private final int shelvesPerMachine;
+    private final ProductCatalog catalog;
+
+    // Single-writer machine state, touched only by the event loop thread
+    final byte[] state;
+    final int[] balance;
+    final long[] inserted;
+    final int[] selectedShelf;
+    final int[] coinCounts;
+    final short[] shelfProduct;
+    final int[] shelfQuantity;
+
+    private final ChangeStrategy changeStrategy = ChangeStrategy.forDenominations(DenominationSet.US);
+    private final int[] available = new int[COIN_TYPES];
+    private final int[] change = new int[COIN_TYPES];
+
+    private final BlockingQueue<Runnable> mailbox = new LinkedBlockingQueue<>();
+    private final List<Runnable> batch = new ArrayList<>(BATCH_SIZE);
+    private volatile boolean running = true;
+
+    FleetShard(int machineCount, int shelvesPerMachine, ProductCatalog catalog) {
+        this.machineCount = machineCount;
+        this.shelvesPerMachine = shelvesPerMachine;
+        this.catalog = catalog;
+        this.state = new byte[machineCount];
+        this.balance = new int[machineCount];
+        this.inserted = new long[machineCount];
+        this.selectedShelf = new int[machineCount];
+        this.coinCounts = new int[machineCount * COIN_TYPES];
+        this.shelfProduct = new short[machineCount * shelvesPerMachine];
+        this.shelfQuantity = new int[machineCount * shelvesPerMachine];
+        Arrays.fill(selectedShelf, NO_SELECTION);
+        Arrays.fill(shelfProduct, NO_PRODUCT);
+    }
+
+    int machineCount() {
+        return machineCount;
+    }
+
+    int shelvesPerMachine() {
+        return shelvesPerMachine;
+    }
+
+    // ==================== Event Loop ====================
+
+    /**
+     * Queues an operation for the event loop.
+     * @return future completed with the operation's result, or exceptionally with what it threw
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!running) {
+            result.completeExceptionally(new IllegalStateException("Fleet is shut down"));
+            return result;
+        }
+        Runnable task = () -> {
+            try {
+                result.complete(operation.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        };
+        mailbox.add(task);
+        // Lost a race with stop(): the loop may already have drained its mailbox for the last
+        // time. If the task is still queued it is taken back here; otherwise the loop has it.
+        if (!running && mailbox.remove(task)) {
+            result.completeExceptionally(new IllegalStateException("Fleet is shut down"));
+        }
+        return result;
+    }
+
+    @Override
+    public void run() {
+        while (running || !mailbox.isEmpty()) {
+            try {
+                // After stop() a task may be taken back by its submitter, so never block then
+                Runnable task = running ? mailbox.take() : mailbox.poll();
+                if (task != null) {
+                    batch.add(task);
+                }
+            } catch (InterruptedException e) {
+                // Shutdown wake-up; drain whatever is left below
+            }
+            mailbox.drainTo(batch, BATCH_SIZE - batch.size());
+            for (Runnable task : batch) {
+                task.run();
+            }
+            batch.clear();
+        }
+    }
+
+    void stop(Thread loop) {
+        running = false;
+        loop.interrupt();
+    }
+
+    // ==================== Customer Operations (event loop only) ====================
+
+    int insertCoin(int m, Coin coin) {
+        byte next = transition(m, Operation.INSERT_COIN);
+        try {
+            inserted[m] = CoinTally.add(inserted[m], coin);
+        } catch (IllegalStateException e) {
+            throw new InvalidOperationException(e.getMessage());
+        }
+        balance[m] += coin.getValue();
+        state[m] = next;
+        return balance[m];
+    }
+
+    Product selectProduct(int m, int shelf) {
+        byte next = transition(m, Operation.SELECT_PRODUCT);
+        int slot = slot(m, shelf);
+        if (shelfProduct[slot] == NO_PRODUCT || shelfQuantity[slot] == 0) {
+            throw new ProductNotAvailableException("Product at shelf " + shelf + " is not available");
+        }
+        Product product = catalog.get(shelfProduct[slot]);
+        if (balance[m] < product.getPriceInCents()) {
+            throw new InsufficientMoneyException(product.getPriceInCents(), balance[m]);
+        }
+        selectedShelf[m] = shelf;
+        state[m] = next;
+        return product;
+    }
+
+    Product dispenseProduct(int m) {
+        transition(m, Operation.DISPENSE_PRODUCT);
+        int shelf = selectedShelf[m];
+        int slot = slot(m, shelf);
+        // A restock queued since the selection may have emptied the shelf or raised the price
+        if (shelfProduct[slot] == NO_PRODUCT || shelfQuantity[slot] == 0) {
+            resetTransaction(m);
+            throw new ProductNotAvailableException("Product at shelf " + shelf + " is not available");
+        }
+        Product product = catalog.get(shelfProduct[slot]);
+        if (balance[m] < product.getPriceInCents()) {
+            int paid = balance[m];
+            resetTransaction(m);
+            throw new InsufficientMoneyException(product.getPriceInCents(), paid);
+        }
+        int changeAmount = balance[m] - product.getPriceInCents();
+        int coinBase = m * COIN_TYPES;
+
+        if (changeAmount > 0) {
+            System.arraycopy(coinCounts, coinBase, available, 0, COIN_TYPES);
+            if (!changeStrategy.makeChange(changeAmount, available, change)) {
+                // Cannot provide exact change, refund all money
+                resetTransaction(m);
+                throw new InsufficientChangeException(changeAmount);
+            }
+            for (int i = 0; i < COIN_TYPES; i++) {
+                coinCounts[coinBase + i] -= change[i];
+            }
+        }
+
+        // Bank the inserted coins and dispense
+        for (Coin coin : COINS) {
+            coinCounts[coinBase + coin.ordinal()] += CoinTally.count(inserted[m], coin);
+        }
+        shelfQuantity[slot]--;
+        resetTransaction(m);
+        return product;
+    }
+
+    List<Coin> cancelTransaction(int m) {
+        transition(m, Operation.CANCEL_TRANSACTION);
+        List<Coin> refund = CoinTally.toList(inserted[m]);
+        resetTransaction(m);
+        return refund;
+    }
+
+    String getStateName(int m) {
+        return stateName(state[m]);
+    }
+
+    /**
+     * Looks up an operation in the transition table.
+     * @return the state to enter on success
+     * @throws InvalidOperationException if the machine's state does not allow the operation
+     */
+    private byte transition(int m, Operation operation) {
+        byte next = TransitionTable.onSuccess(state[m], operation);
+        if (next == TransitionTable.REJECT) {
+            throw new InvalidOperationException(TransitionTable.rejectionMessage(state[m], operation));
+        }
+        return next;
+    }
+
+    private void resetTransaction(int m) {
+        inserted[m] = CoinTally.EMPTY;
+        balance[m] = 0;
+        selectedShelf[m] = NO_SELECTION;
+        state[m] = IDLE;
+    }
+
+    // ==================== Inventory Operations (event loop only) ====================
+
+    Void stockProduct(int m, int shelf, Product product, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        int slot = slot(m, shelf);
+        shelfProduct[slot] = catalog.indexOf(product);
+        shelfQuantity[slot] = quantity;
+        return null;
+    }
+
+    Void loadCoins(int m, Coin coin, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Cannot add negative coins");
+        }
+        coinCounts[m * COIN_TYPES + coin.ordinal()] += count;
+        return null;
+    }
+
+    int getShelfQuantity(int m, int shelf) {
+        return shelfQuantity[slot(m, shelf)];
+    }
+
+    int getCoinCount(int m, Coin coin) {
+        return coinCounts[m * COIN_TYPES + coin.ordinal()];
+    }
+
+    // ==================== Helpers ====================
+
+    private int slot(int m, int shelf) {
+        if (shelf < 0 || shelf >= shelvesPerMachine) {
+            throw new ProductNotAvailableException("Shelf " + shelf + " does not exist");
+        }
+        return m * shelvesPerMachine + shelf;
+    }
+
+    static String stateName(byte state) {
+        return MachineState.of(state).name();
+    }
+}
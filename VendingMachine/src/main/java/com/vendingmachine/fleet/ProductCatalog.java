@@ -0,0 +1,57 @@
+package com.vendingmachine.fleet;
+
+import com.vendingmachine.model.Product;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fleet-wide table of distinct products, so shelves can refer to a product by a
+ * two-byte index instead of holding a reference.
+ *
+ * Entries are keyed by id, name and price, not by {@link Product#equals(Object)} (the id only),
+ * so restocking a product at a new price or name adds an entry and shelves stocked with it
+ * sell at the new price.
+ *
+ * Registration is synchronized; lookups read a volatile array and never block.
+ */
+class ProductCatalog {
+
+    private final Map<ProductKey, Short> indexes = new HashMap<>();
+    private volatile Product[] products = new Product[0];
+
+    synchronized short indexOf(Product product) {
+        if (product == null) {
+            throw new IllegalArgumentException("Product cannot be null");
+        }
+        ProductKey key = ProductKey.of(product);
+        Short index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (products.length > Short.MAX_VALUE) {
+            throw new IllegalStateException("Fleet catalog is limited to " + (Short.MAX_VALUE + 1) + " products");
+        }
+        Product[] grown = Arrays.copyOf(products, products.length + 1);
+        grown[products.length] = product;
+        short added = (short) products.length;
+        indexes.put(key, added);
+        products = grown;
+        return added;
+    }
+
+    Product get(int index) {
+        return products[index];
+    }
+
+    int size() {
+        return products.length;
+    }
+
+    private record ProductKey(String id, String name, int priceInCents) {
+        static ProductKey of(Product product) {
+            return new ProductKey(product.getId(), product.getName(), product.getPriceInCents());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.model.CoinTally;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The coins an {@link Inventory} holds, one lock-free counter per denomination of its
+ * {@link DenominationSet}, indexed by position in the set.
+ *
+ * Every update is an atomic add or compare-and-set on a single counter, so refills, cash
+ * collection and sales running at the same time never lose an update and a count never goes
+ * below zero. Each counter sits on its own cache line, so updates to different denominations
+ * do not slow each other down.
+ *
+ * {@link #tryWithdraw(int[])} takes several denominations as one all-or-nothing step: it
+ * takes each count in turn and, if one is short, puts back what it already took. Meanwhile a
+ * concurrent withdrawal may briefly see the lower counts and fail as if the coins were
+ * missing; it never takes coins that are not there.
+ */
+final class CoinFloat {
+    // Ints per cache line: one counter per line
+    private static final int STRIDE = 16;
+
+    private final int[] values;
+    private final AtomicIntegerArray counts;
+
+    CoinFloat(DenominationSet denominations) {
+        this.values = denominations.values();
+        this.counts = new AtomicIntegerArray(values.length * STRIDE);
+    }
+
+    /**
+     * Gets the count of one denomination.
+     * @param denomination position in the set
+     * @return coins held
+     */
+    int get(int denomination) {
+        return counts.get(denomination * STRIDE);
+    }
+
+    /**
+     * Copies every count, indexed by position in the set. Counts changed during the copy
+     * may be seen before or after the change, each independently.
+     * @param into receives the counts
+     */
+    void copyInto(int[] into) {
+        for (int i = 0; i < values.length; i++) {
+            into[i] = counts.get(i * STRIDE);
+        }
+    }
+
+    /**
+     * Adds (or, with a negative count, removes) coins without checking the result.
+     * @param denomination position in the set
+     * @param delta coins to add
+     */
+    void add(int denomination, int delta) {
+        counts.getAndAdd(denomination * STRIDE, delta);
+    }
+
+    /**
+     * Adds every coin of a packed tally.
+     * @param tally coins as a packed {@link CoinTally}
+     */
+    void deposit(long tally) {
+        if (tally == CoinTally.EMPTY) {
+            return;
+        }
+        for (int i = 0; i < values.length; i++) {
+            int count = CoinTally.count(tally, i);
+            if (count != 0) {
+                counts.getAndAdd(i * STRIDE, count);
+            }
+        }
+    }
+
+    /**
+     * Adds back coins per denomination, e.g. a withdrawal that could not be used.
+     * @param amounts coins per denomination, indexed by position in the set
+     */
+    void deposit(int[] amounts) {
+        for (int i = 0; i < values.length; i++) {
+            if (amounts[i] != 0) {
+                counts.getAndAdd(i * STRIDE, amounts[i]);
+            }
+        }
+    }
+
+    /**
+     * Removes coins of one denomination if that many are held.
+     * @param denomination position in the set
+     * @param count coins to remove
+     * @return true if removed, false if fewer are held (nothing changes)
+     */
+    boolean tryRemove(int denomination, int count) {
+        return tryTake(denomination * STRIDE, count);
+    }
+
+    /**
+     * Removes coins of several denominations as one step: all of them, or none if any
+     * denomination is short.
+     * @param amounts coins per denomination, indexed by position in the set
+     * @return true if every coin was removed, false if nothing was
+     */
+    boolean tryWithdraw(int[] amounts) {
+        for (int i = 0; i < values.length; i++) {
+            if (amounts[i] != 0 && !tryTake(i * STRIDE, amounts[i])) {
+                // Put back the denominations already taken
+                for (int j = 0; j < i; j++) {
+                    if (amounts[j] != 0) {
+                        counts.getAndAdd(j * STRIDE, amounts[j]);
+                    }
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the value of every coin held. Counts changed during the sum may be seen before or
+     * after the change, each independently.
+     * @return total value in the smallest currency unit
+     */
+    int totalValue() {
+        int total = 0;
+        for (int i = 0; i < values.length; i++) {
+            total += values[i] * get(i);
+        }
+        return total;
+    }
+
+    private boolean tryTake(int index, int count) {
+        int current;
+        do {
+            current = counts.get(index);
+            if (current < count) {
+                return false;
+            }
+        } while (!counts.compareAndSet(index, current, current - count));
+        return true;
+    }
+}
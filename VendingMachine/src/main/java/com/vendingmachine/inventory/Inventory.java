@@ -1,36 +1,288 @@
 package com.vendingmachine.inventory;
 
+import com.vendingmachine.change.ChangeStrategy;
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.metrics.MachineMetrics;
 import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.CoinTally;
 import com.vendingmachine.model.ItemShelf;
 import com.vendingmachine.model.Product;
+import com.vendingmachine.trace.TraceRecorder;
 import com.vendingmachine.exception.ProductNotAvailableException;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages the inventory of products and coins in the vending machine.
  * 
  * Follows Single Responsibility Principle - only handles inventory management.
  * Follows Open-Closed Principle - can extend inventory operations without modifying existing code.
+ *
+ * Shelves: every shelf gets a dense slot number when it is created. {@link #resolveShelf(String)}
+ * turns a code into its slot once, and the slot-based methods then find the shelf by array
+ * index instead of hashing the code again. Grid codes of one row letter and one column digit
+ * ("A1".."Z9") resolve through a direct table without hashing at all. Shelves are never
+ * removed, so a slot stays valid for the lifetime of the inventory.
+ *
+ * Thread-safe: an inventory may be shared by several {@link com.vendingmachine.VendingMachine}
+ * sessions. Shelf stock is lock-free (see {@link ItemShelf}); a sale reserves an item with
+ * {@link #reserveProduct(String)} and later commits or releases it. The coin float is
+ * lock-free too (see {@link CoinFloat}): refills and cash collection never wait for a sale.
+ * Change is planned against a copy of the float and its coins taken out in one
+ * all-or-nothing step; if a concurrent collection took coins the plan needed, it is planned
+ * again. Sales still run one at a time under the inventory lock.
+ *
+ * Reads do not lock. Every mutation under the inventory lock makes a version number odd
+ * while it is half applied and even again when done, like the stamp of a
+ * {@link java.util.concurrent.locks.StampedLock}. Reads that combine several values
+ * ({@link #isProductAvailable(int)}, {@link #getAvailableProduct(int)},
+ * {@link #getTotalCoinValue()}) read them optimistically and check the version did not move;
+ * only if a mutation overlapped do they read again under the lock. Reserving an item is a
+ * single atomic update and does not move the version; refilling or collecting coins moves it
+ * by two, so it stays even but no longer matches.
+ *
+ * Coins: the inventory holds coins of the {@link DenominationSet} of its change strategy and
+ * identifies each denomination by its position in the set, like {@link CoinTally} and the
+ * strategy. The {@link Coin} methods take the denomination of the coin's value
+ * ({@link #denominationOf(Coin)}), so a machine on another set still accepts the coins it shares
+ * with {@link DenominationSet#US}.
+ *
+ * {@link #getView()} publishes the whole inventory as an immutable {@link InventoryView},
+ * rebuilt only when the version has moved since the last one. {@link #getChanges()} pushes
+ * changes to subscribers instead, with backpressure.
+ *
+ * Durability: an inventory created with {@link #recover(Path)} writes every mutation to an
+ * {@link InventoryJournal} before it becomes visible, and is rebuilt from that journal on
+ * the next start. Journaled restocking and sales run under the inventory lock so the
+ * journal order matches the order they were applied in; journaled coin refills and
+ * collections only hold the journal's own lock while writing their record and updating the
+ * float. Replay applies coin records as plain additions and removals, which give the same
+ * float in any order. Reserving and releasing items stays lock-free and is not journaled,
+ * since a reservation that was in flight during a crash never completed.
  */
 public class Inventory {
-    private final Map<String, ItemShelf> productShelves;
-    private final Map<Coin, Integer> coinInventory;
+    /** Slot returned by {@link #resolveShelf(String)} for an unknown shelf code. */
+    public static final int NO_SHELF = -1;
+    /** Returned by {@link #sell(int, long, int)} when exact change cannot be made. */
+    public static final long NO_SALE = -1L;
 
+    private static final int GRID_ROWS = 26;
+    private static final int GRID_COLUMNS = 10;
+
+    // Shelves by slot; grown under the inventory lock and republished, so readers need no lock
+    private volatile ItemShelf[] shelves;
+    private volatile int shelfCount;
+    private final Map<String, Integer> slotsByCode;
+    // Slot + 1 of each grid code ("A1".."Z9"), 0 if no such shelf
+    private final AtomicIntegerArray gridSlots = new AtomicIntegerArray(GRID_ROWS * GRID_COLUMNS);
+    private final DenominationSet denominations;
+    private final CoinFloat coins;
+    // Copy of the float that change is planned against, guarded by the inventory lock
+    private final int[] changeFloat;
+    // Change buffer for sell(), guarded by the inventory lock
+    private final int[] saleChange;
+    private final ChangeStrategy changeStrategy;
+    private volatile InventoryJournal journal;
+    private volatile MachineMetrics metrics = MachineMetrics.DISABLED;
+    private volatile TraceRecorder traceRecorder;
+    // Even when no mutation is in progress, odd while one is half applied
+    private final AtomicLong version = new AtomicLong();
+    // Nesting of mutations, so only the outermost one moves the version; guarded by the lock
+    private int writeDepth;
+    // Latest published view and getAllShelves() list, replaced when out of date
+    private volatile InventoryView view = InventoryView.EMPTY;
+    private volatile List<ItemShelf> shelfList = List.of();
+    private volatile InventoryChangePublisher changes;
+
+    /**
+     * Creates an inventory that makes change with the fewest coins possible, using the strategy
+     * {@link ChangeStrategy#forDenominations(DenominationSet)} picks for the US coins
+     * (greedy, since the set is canonical, with an optimal fallback when the float runs short).
+     */
     public Inventory() {
-        this.productShelves = new HashMap<>();
-        this.coinInventory = new HashMap<>();
-        initializeCoinInventory();
+        this(ChangeStrategy.forDenominations(DenominationSet.US));
+    }
+
+    /**
+     * Creates an inventory that makes change with the given strategy.
+     * @param changeStrategy strategy used by {@link #calculateChange(int)}; the inventory holds
+     *                       coins of its {@link DenominationSet}
+     * @throws IllegalArgumentException if the strategy is null or its set is too large
+     *         ({@link #checkChangeStrategy(ChangeStrategy)})
+     */
+    public Inventory(ChangeStrategy changeStrategy) {
+        this(changeStrategy, 16);
+    }
+
+    /**
+     * Creates an inventory sized for a number of shelves, e.g. a large planogram.
+     * @param changeStrategy strategy used by {@link #calculateChange(int)}; the inventory holds
+     *                       coins of its {@link DenominationSet}
+     * @param expectedShelves number of shelves the inventory will hold
+     * @throws IllegalArgumentException if the strategy is null or its set is too large, or
+     *         expectedShelves is negative
+     */
+    public Inventory(ChangeStrategy changeStrategy, int expectedShelves) {
+        checkChangeStrategy(changeStrategy);
+        if (expectedShelves < 0) {
+            throw new IllegalArgumentException("Expected shelves cannot be negative");
+        }
+        this.changeStrategy = changeStrategy;
+        this.denominations = changeStrategy.getDenominations();
+        this.coins = new CoinFloat(denominations);
+        this.shelves = new ItemShelf[Math.max(expectedShelves, 16)];
+        this.slotsByCode = new ConcurrentHashMap<>(expectedShelves);
+        this.changeFloat = new int[denominations.size()];
+        this.saleChange = new int[denominations.size()];
+    }
+
+    /**
+     * Opens (or creates) a journal, rebuilds the inventory it describes and keeps
+     * journaling every further mutation to it.
+     * @param journalFile journal file
+     * @return the recovered inventory, making change like {@link #Inventory()}
+     * @throws IOException if the journal cannot be opened or read
+     */
+    public static Inventory recover(Path journalFile) throws IOException {
+        return recover(journalFile, ChangeStrategy.forDenominations(DenominationSet.US));
+    }
+
+    /**
+     * Opens (or creates) a journal, rebuilds the inventory it describes and keeps
+     * journaling every further mutation to it.
+     * @param journalFile journal file
+     * @param changeStrategy strategy used by {@link #calculateChange(int)}, for the denomination
+     *                       set the journal was written with
+     * @return the recovered inventory
+     * @throws IOException if the journal cannot be opened or read, or has been compacted and
+     *         needs its checkpoint ({@link #recover(Path, InventoryCheckpoint)})
+     * @throws IllegalArgumentException if the strategy is null or its set is too large; the
+     *         journal is then not opened
+     * @throws IllegalStateException if the journal holds coins of another denomination set
+     */
+    public static Inventory recover(Path journalFile, ChangeStrategy changeStrategy) throws IOException {
+        Inventory inventory = new Inventory(changeStrategy);
+        InventoryJournal journal = InventoryJournal.open(journalFile);
+        if (journal.isCompacted()) {
+            journal.close();
+            throw new IOException("Journal " + journalFile + " was compacted to a checkpoint at position "
+                + journal.getStartPosition() + "; recover it with that checkpoint");
+        }
+        replay(journal, inventory, journal.getStartPosition());
+        return inventory;
+    }
+
+    /**
+     * Restores an inventory from a checkpoint, replays the journal records written after the
+     * checkpoint was taken and keeps journaling every further mutation.
+     * @param journalFile journal file the checkpointed inventory was writing to
+     * @param checkpoint checkpoint taken from that inventory; if the journal was compacted,
+     *                   the checkpoint it was compacted to or a later one
+     * @return the recovered inventory, making change for the checkpoint's denomination set with
+     *         the strategy {@link ChangeStrategy#forDenominations(DenominationSet)} picks
+     * @throws IOException if the journal cannot be opened or read, or does not hold the
+     *         records following the checkpoint
+     */
+    public static Inventory recover(Path journalFile, InventoryCheckpoint checkpoint) throws IOException {
+        InventoryJournal journal = InventoryJournal.open(journalFile);
+        // Position 0: the checkpoint was taken without a journal, so replay all of it
+        long from = checkpoint.getJournalPosition() == 0 ? journal.getStartPosition() : checkpoint.getJournalPosition();
+        if (!journal.covers(from) || (checkpoint.getJournalPosition() == 0 && journal.isCompacted())) {
+            journal.close();
+            throw new IOException("Checkpoint at journal position " + checkpoint.getJournalPosition()
+                + " does not match journal " + journalFile + " (" + journal.getStartPosition()
+                + " to " + journal.getPosition() + ")");
+        }
+        Inventory inventory = new Inventory(ChangeStrategy.forDenominations(checkpoint.getDenominations()));
+        checkpoint.restoreInto(inventory);
+        replay(journal, inventory, from);
+        return inventory;
+    }
+
+    /**
+     * Replays a journal into a new inventory and attaches it, closing the journal if a record
+     * does not fit the inventory, e.g. one written for another denomination set.
+     */
+    private static void replay(InventoryJournal journal, Inventory inventory, long from) throws IOException {
+        try {
+            journal.replay(inventory, from);
+        } catch (RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        inventory.journal = journal;
+    }
+
+    /**
+     * Gets the journal this inventory writes to.
+     * @return the journal, or null if the inventory is not journaled
+     */
+    public InventoryJournal getJournal() {
+        return journal;
     }
 
-    private void initializeCoinInventory() {
-        for (Coin coin : Coin.values()) {
-            coinInventory.put(coin, 0);
+    /**
+     * Writes a checkpoint and, if the inventory is journaled, compacts the journal to it, so
+     * the journal only holds what happened since. Recover with
+     * {@link #recover(Path, InventoryCheckpoint)} and this checkpoint.
+     * @param file checkpoint file, replaced atomically
+     * @return the checkpoint written
+     * @throws IOException if the checkpoint or the compacted journal cannot be written
+     */
+    public InventoryCheckpoint checkpoint(Path file) throws IOException {
+        InventoryCheckpoint checkpoint = InventoryCheckpoint.capture(this);
+        checkpoint.writeTo(file);
+        InventoryJournal journal = this.journal;
+        if (journal != null) {
+            journal.compact(checkpoint);
         }
+        return checkpoint;
+    }
+
+    /**
+     * Gets the metrics recorded for this inventory and every session selling from it.
+     * @return the metrics, {@link MachineMetrics#DISABLED} unless set
+     */
+    public MachineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics recorded for this inventory and every session selling from it.
+     * @param metrics the metrics, or {@link MachineMetrics#DISABLED}
+     */
+    public void setMetrics(MachineMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics cannot be null");
+        }
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the recorder tracing the operations of every session selling from this inventory.
+     * @return the recorder, or null when not tracing
+     */
+    public TraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    /**
+     * Sets the recorder tracing the operations of every session selling from this inventory.
+     * Called by {@link TraceRecorder}.
+     * @param traceRecorder the recorder, or null to stop tracing
+     */
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
     }
 
     // ==================== Product Inventory ====================
@@ -39,9 +291,18 @@ public class Inventory {
      * Adds a new shelf to the inventory.
      * @param code unique shelf code
      */
-    public void addShelf(String code) {
-        if (!productShelves.containsKey(code)) {
-            productShelves.put(code, new ItemShelf(code));
+    public synchronized void addShelf(String code) {
+        if (code == null || code.trim().isEmpty()) {
+            throw new IllegalArgumentException("Shelf code cannot be null or empty");
+        }
+        beginWrite();
+        try {
+            if (journal != null) {
+                journal.logAddShelf(code);
+            }
+            shelfFor(code);
+        } finally {
+            endWrite();
         }
     }
 
@@ -51,14 +312,55 @@ public class Inventory {
      * @param product the product to stock
      * @param quantity number of items to stock
      */
-    public void stockProduct(String code, Product product, int quantity) {
-        ItemShelf shelf = productShelves.get(code);
-        if (shelf == null) {
-            shelf = new ItemShelf(code);
-            productShelves.put(code, shelf);
+    public synchronized void stockProduct(String code, Product product, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        if (journal != null && code != null && product != null) {
+            // Before the shelf is created: a new shelf could not be rolled back
+            InventoryJournal.checkStrings(code, product.getId(), product.getName());
+        }
+        beginWrite();
+        try {
+            ItemShelf shelf = shelfFor(code);
+            Product previousProduct = shelf.getProduct();
+            int previousQuantity = shelf.getStockedQuantity();
+            shelf.setProduct(product);
+            // Reserved items stay on the shelf, so fewer than those cannot be set. Journal the
+            // count actually stocked: sales committed later replay against it.
+            int stocked = shelf.setQuantity(quantity);
+            if (journal != null) {
+                try {
+                    journal.logStockProduct(code, product, stocked);
+                } catch (RuntimeException e) {
+                    shelf.setProduct(previousProduct);
+                    shelf.setQuantity(previousQuantity);
+                    throw e;
+                }
+            }
+            shelfChanged(shelf);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Stocks a range of shelves as one step; a shelf without a product is only added.
+     * Used by {@link PlanogramLoader}.
+     */
+    synchronized void stockShelves(String[] codes, Product[] products, int[] quantities, int from, int to) {
+        beginWrite();
+        try {
+            for (int i = from; i < to; i++) {
+                if (products[i] == null) {
+                    addShelf(codes[i]);
+                } else {
+                    stockProduct(codes[i], products[i], quantities[i]);
+                }
+            }
+        } finally {
+            endWrite();
         }
-        shelf.setProduct(product);
-        shelf.setQuantity(quantity);
     }
 
     /**
@@ -66,12 +368,44 @@ public class Inventory {
      * @param code shelf code
      * @param quantity additional quantity to add
      */
-    public void addStock(String code, int quantity) {
-        ItemShelf shelf = productShelves.get(code);
-        if (shelf == null) {
-            throw new IllegalArgumentException("Shelf " + code + " does not exist");
+    public synchronized void addStock(String code, int quantity) {
+        ItemShelf shelf = getShelf(code);
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Cannot add negative amount");
+        }
+        beginWrite();
+        try {
+            int previousQuantity = shelf.getStockedQuantity();
+            shelf.addStock(quantity);
+            if (journal != null) {
+                try {
+                    journal.logAddStock(code, quantity);
+                } catch (RuntimeException e) {
+                    shelf.setQuantity(previousQuantity);
+                    throw e;
+                }
+            }
+            shelfChanged(shelf);
+        } finally {
+            endWrite();
         }
-        shelf.addStock(quantity);
+    }
+
+    /**
+     * Resolves a shelf code to the shelf's slot, for use with the slot-based methods.
+     * @param code shelf code
+     * @return the slot, or {@link #NO_SHELF} if there is no such shelf
+     */
+    public int resolveShelf(String code) {
+        if (code == null) {
+            return NO_SHELF;
+        }
+        int grid = gridIndex(code);
+        if (grid >= 0) {
+            return gridSlots.get(grid) - 1;
+        }
+        Integer slot = slotsByCode.get(code);
+        return slot != null ? slot : NO_SHELF;
     }
 
     /**
@@ -80,8 +414,39 @@ public class Inventory {
      * @return true if product is available
      */
     public boolean isProductAvailable(String code) {
-        ItemShelf shelf = productShelves.get(code);
-        return shelf != null && shelf.isAvailable();
+        int slot = resolveShelf(code);
+        return slot != NO_SHELF && availableProduct(shelf(slot)) != null;
+    }
+
+    /**
+     * Checks if a product is available at a specific shelf.
+     * @param slot shelf slot from {@link #resolveShelf(String)}
+     * @return true if product is available
+     */
+    public boolean isProductAvailable(int slot) {
+        return availableProduct(shelf(slot)) != null;
+    }
+
+    /**
+     * Gets the product at a shelf if an item is available, as one check: the product and
+     * the availability come from the same state of the shelf, even during a restock.
+     * @param slot shelf slot from {@link #resolveShelf(String)}
+     * @return the product, or null if the shelf is empty or has no product
+     */
+    public Product getAvailableProduct(int slot) {
+        return availableProduct(shelf(slot));
+    }
+
+    private Product availableProduct(ItemShelf shelf) {
+        long stamp = version.get();
+        Product product = shelf.getProduct();
+        boolean available = product != null && shelf.getQuantity() > 0;
+        if (validate(stamp)) {
+            return available ? product : null;
+        }
+        synchronized (this) {
+            return shelf.isAvailable() ? shelf.getProduct() : null;
+        }
     }
 
     /**
@@ -91,14 +456,26 @@ public class Inventory {
      * @throws ProductNotAvailableException if shelf doesn't exist or product not available
      */
     public Product getProduct(String code) {
-        ItemShelf shelf = productShelves.get(code);
-        if (shelf == null) {
+        int slot = resolveShelf(code);
+        if (slot == NO_SHELF) {
             throw new ProductNotAvailableException("Shelf " + code + " does not exist");
         }
-        if (shelf.getProduct() == null) {
-            throw new ProductNotAvailableException("No product assigned to shelf " + code);
+        return getProduct(slot);
+    }
+
+    /**
+     * Gets the product at a specific shelf.
+     * @param slot shelf slot from {@link #resolveShelf(String)}
+     * @return the product
+     * @throws ProductNotAvailableException if no product is assigned to the shelf
+     */
+    public Product getProduct(int slot) {
+        ItemShelf shelf = shelf(slot);
+        Product product = shelf.getProduct();
+        if (product == null) {
+            throw new ProductNotAvailableException("No product assigned to shelf " + shelf.getCode());
         }
-        return shelf.getProduct();
+        return product;
     }
 
     /**
@@ -108,33 +485,284 @@ public class Inventory {
      * @throws ProductNotAvailableException if product not available
      */
     public Product dispenseProduct(String code) {
-        ItemShelf shelf = productShelves.get(code);
-        if (shelf == null || !shelf.isAvailable()) {
+        Product product = reserveProduct(code);
+        commitReservation(code);
+        return product;
+    }
+
+    /**
+     * Reserves one item on a shelf for a sale in progress.
+     * The item no longer counts as available until it is committed or released.
+     * @param code shelf code
+     * @return the reserved product
+     * @throws ProductNotAvailableException if the shelf doesn't exist or is empty
+     */
+    public Product reserveProduct(String code) {
+        int slot = resolveShelf(code);
+        if (slot == NO_SHELF) {
             throw new ProductNotAvailableException("Product not available at shelf " + code);
         }
-        return shelf.dispense();
+        return reserveProduct(slot);
+    }
+
+    /**
+     * Reserves one item on a shelf for a sale in progress.
+     * @param slot shelf slot from {@link #resolveShelf(String)}
+     * @return the reserved product
+     * @throws ProductNotAvailableException if the shelf is empty
+     */
+    public Product reserveProduct(int slot) {
+        ItemShelf shelf = shelf(slot);
+        if (!shelf.tryReserve()) {
+            throw new ProductNotAvailableException("Product not available at shelf " + shelf.getCode());
+        }
+        return shelf.getProduct();
+    }
+
+    /**
+     * Reserves one item on a shelf for a sale in progress, without throwing if it is empty.
+     * @param slot shelf slot from {@link #resolveShelf(String)}
+     * @return the reserved product, or null if the shelf is empty
+     */
+    public Product tryReserveProduct(int slot) {
+        ItemShelf shelf = shelf(slot);
+        return shelf.tryReserve() ? shelf.getProduct() : null;
+    }
+
+    /**
+     * Completes the sale of an item reserved with {@link #reserveProduct(String)}.
+     * @param code shelf code
+     */
+    public synchronized void commitReservation(String code) {
+        ItemShelf shelf = getShelf(code);
+        beginWrite();
+        try {
+            if (journal != null) {
+                journal.logDispense(code);
+            }
+            shelf.commit();
+            shelfChanged(shelf);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Returns an item reserved with {@link #reserveProduct(String)} to the shelf.
+     * @param code shelf code
+     */
+    public void releaseReservation(String code) {
+        getShelf(code).release();
+    }
+
+    /**
+     * Returns an item reserved with {@link #reserveProduct(int)} to the shelf.
+     * @param slot shelf slot from {@link #resolveShelf(String)}
+     */
+    public void releaseReservation(int slot) {
+        shelf(slot).release();
+    }
+
+    private ItemShelf getShelf(String code) {
+        int slot = resolveShelf(code);
+        if (slot == NO_SHELF) {
+            throw new IllegalArgumentException("Shelf " + code + " does not exist");
+        }
+        return shelves[slot];
+    }
+
+    private ItemShelf shelf(int slot) {
+        if (slot < 0 || slot >= shelfCount) {
+            throw new IllegalArgumentException("No shelf in slot " + slot);
+        }
+        return shelves[slot];
+    }
+
+    ItemShelf shelfAt(int slot) {
+        return shelf(slot);
     }
 
     /**
-     * Gets all shelves in the inventory.
+     * Gets the shelf with the given code, creating it if needed. Caller holds the lock.
+     */
+    private ItemShelf shelfFor(String code) {
+        int slot = resolveShelf(code);
+        if (slot != NO_SHELF) {
+            return shelves[slot];
+        }
+        slot = shelfCount;
+        ItemShelf shelf = new ItemShelf(code);
+        ItemShelf[] array = shelves;
+        if (slot == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[slot] = shelf;
+        InventoryChangePublisher changes = this.changes;
+        if (changes != null) {
+            changes.ensureCapacity(slot + 1);
+        }
+        // Publish the array before the count and the code, so a reader that finds the slot also finds the shelf
+        shelves = array;
+        shelfCount = slot + 1;
+        slotsByCode.put(code, slot);
+        int grid = gridIndex(code);
+        if (grid >= 0) {
+            gridSlots.set(grid, slot + 1);
+        }
+        return shelf;
+    }
+
+    private static int gridIndex(String code) {
+        if (code == null || code.length() != 2) {
+            return -1;
+        }
+        int row = code.charAt(0) - 'A';
+        int column = code.charAt(1) - '0';
+        if (row < 0 || row >= GRID_ROWS || column < 0 || column >= GRID_COLUMNS) {
+            return -1;
+        }
+        return row * GRID_COLUMNS + column;
+    }
+
+    ItemShelf[] shelves() {
+        int count = shelfCount;
+        return Arrays.copyOf(shelves, count);
+    }
+
+    /**
+     * Gets all shelves in the inventory, in the order they were added. The shelves are live;
+     * use {@link #getView()} for a consistent copy of their contents. The list is built once
+     * per added shelf and shared by every caller until then.
      * @return unmodifiable list of all shelves
      */
     public List<ItemShelf> getAllShelves() {
-        return Collections.unmodifiableList(new ArrayList<>(productShelves.values()));
+        List<ItemShelf> list = shelfList;
+        if (list.size() != shelfCount) {
+            list = Collections.unmodifiableList(Arrays.asList(shelves()));
+            shelfList = list;
+        }
+        return list;
+    }
+
+    /**
+     * Gets an immutable copy of every shelf and the coin float, with no sale or restock half
+     * applied. While the inventory does not change, every call returns the same view without
+     * copying anything.
+     * @return the current view
+     */
+    public InventoryView getView() {
+        InventoryView current = view;
+        long stamp = version.get();
+        if (current.getVersion() == stamp) {
+            return current;
+        }
+        InventoryView fresh = buildView(stamp, current);
+        if (!validate(stamp)) {
+            synchronized (this) {
+                fresh = buildView(version.get(), current);
+            }
+        }
+        // Racing builders may publish out of order; a stale view is simply rebuilt next time
+        if (fresh.getVersion() > view.getVersion()) {
+            view = fresh;
+        }
+        return fresh;
+    }
+
+    /**
+     * Copies the inventory into a view labelled {@code stamp}, reusing the shelf views of
+     * {@code previous} that did not change. The label is read before the contents, so the
+     * contents are never older than it.
+     */
+    private InventoryView buildView(long stamp, InventoryView previous) {
+        ItemShelf[] shelves = shelves();
+        List<ShelfView> old = previous.getShelves();
+        ShelfView[] views = new ShelfView[shelves.length];
+        for (int i = 0; i < shelves.length; i++) {
+            ItemShelf shelf = shelves[i];
+            Product product = shelf.getProduct();
+            int quantity = shelf.getStockedQuantity();
+            ShelfView before = i < old.size() ? old.get(i) : null;
+            views[i] = before != null && before.product() == product && before.quantity() == quantity
+                ? before
+                : new ShelfView(shelf.getCode(), product, quantity);
+        }
+        int[] coinCounts = new int[denominations.size()];
+        coins.copyInto(coinCounts);
+        return new InventoryView(stamp, Collections.unmodifiableList(Arrays.asList(views)), denominations, coinCounts);
     }
 
     // ==================== Coin Inventory ====================
 
+    /**
+     * Checks that an inventory can make change with a strategy: a packed {@link CoinTally}
+     * must hold a coin count for every denomination of its set.
+     * @param changeStrategy the strategy
+     * @throws IllegalArgumentException if the strategy is null or its set has more than
+     *         {@value CoinTally#MAX_DENOMINATIONS} denominations
+     */
+    public static void checkChangeStrategy(ChangeStrategy changeStrategy) {
+        if (changeStrategy == null) {
+            throw new IllegalArgumentException("Change strategy cannot be null");
+        }
+        if (changeStrategy.getDenominations().size() > CoinTally.MAX_DENOMINATIONS) {
+            throw new IllegalArgumentException("An inventory holds at most " + CoinTally.MAX_DENOMINATIONS
+                + " denominations; change strategy is for " + changeStrategy.getDenominations());
+        }
+    }
+
+    /**
+     * Gets the denominations this inventory holds, those of its change strategy.
+     * @return the denomination set
+     */
+    public DenominationSet getDenominations() {
+        return denominations;
+    }
+
+    /**
+     * Gets the denomination a {@link Coin} stands for in this inventory: the one of the same value.
+     * @param coin the coin
+     * @return its position in {@link #getDenominations()}
+     * @throws IllegalArgumentException if the set has no denomination of that value
+     */
+    public int denominationOf(Coin coin) {
+        int denomination = denominations.indexOf(coin);
+        if (denomination < 0) {
+            throw new IllegalArgumentException("No " + coin.name() + " in denomination set " + denominations.getName());
+        }
+        return denomination;
+    }
+
     /**
      * Adds coins to the coin inventory.
      * @param coin type of coin
      * @param count number of coins to add
      */
     public void addCoins(Coin coin, int count) {
+        addCoins(denominationOf(coin), count);
+    }
+
+    /**
+     * Adds coins to the coin inventory.
+     * @param denomination position of the denomination in {@link #getDenominations()}
+     * @param count number of coins to add
+     */
+    public void addCoins(int denomination, int count) {
+        checkDenomination(denomination);
         if (count < 0) {
             throw new IllegalArgumentException("Cannot add negative coins");
         }
-        coinInventory.merge(coin, count, Integer::sum);
+        InventoryJournal journal = this.journal;
+        if (journal == null) {
+            coins.add(denomination, count);
+        } else {
+            // Record and update together, so a checkpoint sees both or neither
+            synchronized (journal) {
+                journal.logAddCoins(denomination, count);
+                coins.add(denomination, count);
+            }
+        }
+        coinsChanged();
     }
 
     /**
@@ -143,97 +771,455 @@ public class Inventory {
      * @return number of coins available
      */
     public int getCoinCount(Coin coin) {
-        return coinInventory.getOrDefault(coin, 0);
+        return coins.get(denominationOf(coin));
     }
 
     /**
-     * Removes coins from the inventory for change.
+     * Gets the count of one denomination.
+     * @param denomination position of the denomination in {@link #getDenominations()}
+     * @return number of coins available
+     */
+    public int getCoinCount(int denomination) {
+        checkDenomination(denomination);
+        return coins.get(denomination);
+    }
+
+    /**
+     * Removes coins from the inventory, e.g. when cash is collected.
      * @param coin type of coin
      * @param count number of coins to remove
-     * @return true if successful
+     * @return true if successful, false if fewer coins are held (nothing changes)
      */
     public boolean removeCoins(Coin coin, int count) {
-        int available = coinInventory.getOrDefault(coin, 0);
-        if (available >= count) {
-            coinInventory.put(coin, available - count);
-            return true;
+        return removeCoins(denominationOf(coin), count);
+    }
+
+    /**
+     * Removes coins from the inventory, e.g. when cash is collected.
+     * @param denomination position of the denomination in {@link #getDenominations()}
+     * @param count number of coins to remove
+     * @return true if successful, false if fewer coins are held (nothing changes)
+     */
+    public boolean removeCoins(int denomination, int count) {
+        checkDenomination(denomination);
+        if (count < 0) {
+            throw new IllegalArgumentException("Cannot remove negative coins");
+        }
+        InventoryJournal journal = this.journal;
+        if (journal == null) {
+            if (!coins.tryRemove(denomination, count)) {
+                return false;
+            }
+        } else {
+            synchronized (journal) {
+                if (!coins.tryRemove(denomination, count)) {
+                    return false;
+                }
+                try {
+                    journal.logRemoveCoins(denomination, count);
+                } catch (RuntimeException e) {
+                    coins.add(denomination, count);
+                    throw e;
+                }
+            }
+        }
+        coinsChanged();
+        coinsRemoved();
+        return true;
+    }
+
+    /**
+     * Adds or removes coins without checks. Used by journal replay.
+     */
+    void applyCoins(int denomination, int delta) {
+        coins.add(denomination, delta);
+        coinsChanged();
+        if (delta < 0) {
+            coinsRemoved();
+        }
+    }
+
+    private void checkDenomination(int denomination) {
+        if (denomination < 0 || denomination >= denominations.size()) {
+            throw new IllegalArgumentException("No denomination " + denomination + " in denomination set "
+                + denominations.getName());
         }
-        return false;
     }
 
     /**
-     * Calculates and returns change for the given amount.
-     * Uses greedy algorithm with largest coins first.
+     * Moves the version past a refill or collection, after it is applied, so a view built
+     * before it is not reused. Moving by two leaves a mutation in progress still odd.
+     */
+    private void coinsChanged() {
+        version.addAndGet(2);
+    }
+
+    // ==================== Change Stream ====================
+
+    /**
+     * Gets the publisher of this inventory's changes (shelf quantities, empty shelves, low
+     * coins), creating it on first use. Until then sales do not track changes at all.
+     * @return the change publisher, delivering on {@link ForkJoinPool#commonPool()}
+     */
+    public InventoryChangePublisher getChanges() {
+        InventoryChangePublisher publisher = changes;
+        if (publisher == null) {
+            synchronized (this) {
+                publisher = changes;
+                if (publisher == null) {
+                    publisher = new InventoryChangePublisher(this, ForkJoinPool.commonPool());
+                    publisher.ensureCapacity(shelfCount);
+                    changes = publisher;
+                }
+            }
+        }
+        return publisher;
+    }
+
+    private void shelfChanged(ItemShelf shelf) {
+        InventoryChangePublisher changes = this.changes;
+        if (changes != null) {
+            changes.shelfChanged(resolveShelf(shelf.getCode()), shelf.getStockedQuantity());
+        }
+    }
+
+    private void coinsRemoved() {
+        InventoryChangePublisher changes = this.changes;
+        if (changes != null) {
+            changes.coinsRemoved();
+        }
+    }
+
+    /**
+     * Copies the coin counts for a checkpoint, indexed by denomination. Caller holds
+     * the inventory lock, so no sale is half done. Journaled refills and collections update
+     * the float under the journal lock, which is held here too, so the counts match the
+     * journal length returned.
+     * @return the journal position the counts correspond to, 0 if not journaled
+     */
+    long copyCoinCounts(int[] into) {
+        InventoryJournal journal = this.journal;
+        if (journal == null) {
+            coins.copyInto(into);
+            return 0;
+        }
+        synchronized (journal) {
+            coins.copyInto(into);
+            return journal.getPosition();
+        }
+    }
+
+    /**
+     * Calculates and returns change for the given amount, removing the coins from inventory.
+     * The coins are chosen by the configured {@link ChangeStrategy}.
+     * Allocates a list for the result; see {@link #calculateChange(int, int[])} for the
+     * allocation-free variant used on the vend path, which also works for any denomination set.
      * @param amountInCents amount to return as change
-     * @return list of coins as change, or null if exact change cannot be made
+     * @return list of coins as change (largest first), or null if exact change cannot be made
+     * @throws IllegalStateException if the inventory's denominations are not all {@link Coin}s
+     *         ({@link DenominationSet#isUsCoins()})
      */
-    public List<Coin> calculateChange(int amountInCents) {
-        if (amountInCents == 0) {
-            return new ArrayList<>();
+    public synchronized List<Coin> calculateChange(int amountInCents) {
+        if (!denominations.isUsCoins()) {
+            throw new IllegalStateException("Denomination set " + denominations.getName() + " has no Coin values");
         }
+        int[] changeCounts = new int[denominations.size()];
+        if (!calculateChange(amountInCents, changeCounts)) {
+            // Cannot provide exact change
+            return null;
+        }
+        List<Coin> change = new ArrayList<>();
+        for (int i = changeCounts.length - 1; i >= 0; i--) {
+            for (int n = 0; n < changeCounts[i]; n++) {
+                change.add(denominations.coin(i));
+            }
+        }
+        return change;
+    }
+
+    /**
+     * Calculates change for the given amount and removes the coins from inventory,
+     * without allocating.
+     * @param amountInCents amount to return as change
+     * @param changeCounts receives the number of coins returned per denomination,
+     *                     indexed by denomination; fully overwritten
+     * @return true if exact change was made, false if it cannot be (inventory unchanged)
+     */
+    public synchronized boolean calculateChange(int amountInCents, int[] changeCounts) {
         if (amountInCents < 0) {
             throw new IllegalArgumentException("Cannot calculate negative change");
         }
+        if (amountInCents == 0) {
+            Arrays.fill(changeCounts, 0);
+            return true;
+        }
+        beginWrite();
+        try {
+            if (!withdrawChange(amountInCents, changeCounts)) {
+                return false;
+            }
+            if (journal != null) {
+                try {
+                    journal.logChange(changeCounts);
+                } catch (RuntimeException e) {
+                    coins.deposit(changeCounts);
+                    throw e;
+                }
+            }
+            return true;
+        } finally {
+            endWrite();
+        }
+    }
 
-        List<Coin> change = new ArrayList<>();
-        Map<Coin, Integer> tempInventory = new HashMap<>(coinInventory);
-        int remaining = amountInCents;
+    /**
+     * Completes a sale as one step: pays out the change, banks the customer's coins and
+     * takes the item reserved with {@link #reserveProduct(String)} off the shelf.
+     * Nothing changes if exact change cannot be made; the reservation is then still held.
+     * @param code shelf code of the reserved item
+     * @param insertedCoins the customer's coins, as a packed {@link CoinTally}
+     * @param changeAmount change due in cents
+     * @param changeCounts receives the change paid out per denomination
+     * @return true if the sale completed, false if exact change cannot be made
+     */
+    public synchronized boolean completeSale(String code, long insertedCoins, int changeAmount, int[] changeCounts) {
+        return completeSale(getShelf(code), insertedCoins, changeAmount, changeCounts);
+    }
+
+    /**
+     * Completes a sale as one step; see {@link #completeSale(String, long, int, int[])}.
+     * @param slot shelf slot of the item reserved with {@link #reserveProduct(int)}
+     * @param insertedCoins the customer's coins, as a packed {@link CoinTally}
+     * @param changeAmount change due in cents
+     * @param changeCounts receives the change paid out per denomination
+     * @return true if the sale completed, false if exact change cannot be made
+     */
+    public synchronized boolean completeSale(int slot, long insertedCoins, int changeAmount, int[] changeCounts) {
+        return completeSale(shelf(slot), insertedCoins, changeAmount, changeCounts);
+    }
+
+    /**
+     * Completes a sale as one step, like {@link #completeSale(int, long, int, int[])}, and
+     * returns the change as a packed tally instead of filling a caller's buffer, so callers
+     * need no per-sale or per-session scratch array.
+     * @param slot shelf slot of the item reserved with {@link #reserveProduct(int)}
+     * @param insertedCoins the customer's coins, as a packed {@link CoinTally}
+     * @param changeAmount change due in cents
+     * @return the change paid out as a packed {@link CoinTally}, or {@link #NO_SALE} if exact
+     *         change cannot be made (nothing changes and the reservation is still held)
+     */
+    public synchronized long sell(int slot, long insertedCoins, int changeAmount) {
+        if (!completeSale(shelf(slot), insertedCoins, changeAmount, saleChange)) {
+            return NO_SALE;
+        }
+        return changeAmount == 0 ? CoinTally.EMPTY : CoinTally.fromCounts(saleChange);
+    }
+
+    /**
+     * Completes the sale of several reserved items (a cart) as one step: change for the whole
+     * purchase is made once, then the inserted coins are banked, the change paid out and every
+     * item taken off its shelf together, with a single journal record. If exact change cannot be
+     * made nothing changes and all reservations are still held, so a cart is never half sold.
+     * @param slots shelf slots of the items reserved with {@link #reserveProduct(int)}; a slot
+     *              appears once per item
+     * @param count number of items, the first {@code count} entries of {@code slots}
+     * @param insertedCoins the customer's coins, as a packed {@link CoinTally}
+     * @param changeAmount change due for the whole purchase, in cents
+     * @return the change paid out as a packed {@link CoinTally}, or {@link #NO_SALE} if exact
+     *         change cannot be made
+     */
+    public synchronized long sell(int[] slots, int count, long insertedCoins, int changeAmount) {
+        if (changeAmount < 0) {
+            throw new IllegalArgumentException("Cannot calculate negative change");
+        }
+        if (count < 1 || count > slots.length) {
+            throw new IllegalArgumentException("Cart size out of range: " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            shelf(slots[i]);
+        }
+        beginWrite();
+        try {
+            if (changeAmount == 0) {
+                Arrays.fill(saleChange, 0);
+            } else if (!withdrawChange(changeAmount, saleChange)) {
+                return NO_SALE;
+            }
+            if (journal != null) {
+                String[] codes = new String[count];
+                for (int i = 0; i < count; i++) {
+                    codes[i] = shelf(slots[i]).getCode();
+                }
+                try {
+                    journal.logCartSale(codes, count, insertedCoins, saleChange);
+                } catch (RuntimeException e) {
+                    coins.deposit(saleChange);
+                    throw e;
+                }
+            }
+            coins.deposit(insertedCoins);
+            for (int i = 0; i < count; i++) {
+                ItemShelf shelf = shelf(slots[i]);
+                shelf.commit();
+                shelfChanged(shelf);
+            }
+        } finally {
+            endWrite();
+        }
+        return changeAmount == 0 ? CoinTally.EMPTY : CoinTally.fromCounts(saleChange);
+    }
+
+    private boolean completeSale(ItemShelf shelf, long insertedCoins, int changeAmount, int[] changeCounts) {
+        if (changeAmount < 0) {
+            throw new IllegalArgumentException("Cannot calculate negative change");
+        }
+        beginWrite();
+        try {
+            if (changeAmount == 0) {
+                Arrays.fill(changeCounts, 0);
+            } else if (!withdrawChange(changeAmount, changeCounts)) {
+                return false;
+            }
+            if (journal != null) {
+                try {
+                    journal.logSale(shelf.getCode(), insertedCoins, changeCounts);
+                } catch (RuntimeException e) {
+                    coins.deposit(changeCounts);
+                    throw e;
+                }
+            }
+            coins.deposit(insertedCoins);
+            shelf.commit();
+            shelfChanged(shelf);
+            return true;
+        } finally {
+            endWrite();
+        }
+    }
 
-        // Sort coins by value in descending order (largest first)
-        List<Coin> sortedCoins = java.util.Arrays.stream(Coin.values())
-            .sorted((a, b) -> Integer.compare(b.getValue(), a.getValue()))
-            .collect(java.util.stream.Collectors.toList());
-        
-        for (Coin coin : sortedCoins) {
-            int available = tempInventory.getOrDefault(coin, 0);
-            while (remaining >= coin.getValue() && available > 0) {
-                change.add(coin);
-                remaining -= coin.getValue();
-                available--;
-                tempInventory.put(coin, available);
+    /**
+     * Plans change against a copy of the float and takes those coins out of it, planning
+     * again if a concurrent collection took coins the plan needed. Caller holds the lock.
+     * The plan uses at most {@value CoinTally#MAX_PER_COIN} coins of a denomination, so the
+     * change always fits a {@link CoinTally}.
+     */
+    private boolean withdrawChange(int amountInCents, int[] changeCounts) {
+        MachineMetrics metrics = this.metrics;
+        long start = metrics.startTimer();
+        boolean success;
+        do {
+            coins.copyInto(changeFloat);
+            for (int i = 0; i < changeFloat.length; i++) {
+                changeFloat[i] = Math.min(changeFloat[i], CoinTally.MAX_PER_COIN);
             }
+            success = changeStrategy.makeChange(amountInCents, changeFloat, changeCounts);
+        } while (success && !coins.tryWithdraw(changeCounts));
+        metrics.recordChangeCalculation(start, success);
+        if (success) {
+            coinsRemoved();
         }
+        return success;
+    }
 
-        if (remaining == 0) {
-            // Update actual inventory by decrementing count for each coin used
-            for (Coin coin : change) {
-                int currentCount = coinInventory.get(coin);
-                coinInventory.put(coin, currentCount - 1);
+    /**
+     * Applies the effect of a sale without any checks: change out, inserted coins in and,
+     * if a shelf is given, one item off it. Used by journal replay.
+     */
+    synchronized void applySale(String code, long insertedCoins, int[] changeCounts) {
+        beginWrite();
+        try {
+            for (int i = 0; i < changeCounts.length; i++) {
+                coins.add(i, CoinTally.count(insertedCoins, i) - changeCounts[i]);
+            }
+            coinsRemoved();
+            if (code != null) {
+                ItemShelf shelf = getShelf(code);
+                shelf.dispense();
+                shelfChanged(shelf);
             }
-            return change;
+        } finally {
+            endWrite();
         }
-        
-        // Cannot provide exact change
-        return null;
     }
 
     /**
-     * Gets the total value of coins in inventory.
+     * Applies a journaled cart sale: coins as in {@link #applySale}, one item off each listed shelf.
+     */
+    synchronized void applyCartSale(String[] codes, long insertedCoins, int[] changeCounts) {
+        beginWrite();
+        try {
+            applySale(null, insertedCoins, changeCounts);
+            for (String code : codes) {
+                ItemShelf shelf = getShelf(code);
+                shelf.dispense();
+                shelfChanged(shelf);
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    // ==================== Versioning ====================
+
+    /**
+     * Starts a mutation that readers must not see half applied. Caller holds the lock.
+     */
+    private void beginWrite() {
+        if (writeDepth++ == 0) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Ends a mutation started with {@link #beginWrite()}.
+     */
+    private void endWrite() {
+        if (--writeDepth == 0) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Checks that an optimistic read saw no mutation: no mutation was in progress when it
+     * started ({@code stamp} is the version read then) and none ran since. Everything read
+     * optimistically is volatile or atomic, so reading the version again orders after it.
+     */
+    private boolean validate(long stamp) {
+        return (stamp & 1) == 0 && version.get() == stamp;
+    }
+
+    /**
+     * Gets the total value of coins in inventory. A sale is counted wholly or not at all;
+     * a concurrent refill of one denomination is counted before or after.
      * @return total value in cents
      */
     public int getTotalCoinValue() {
-        int total = 0;
-        for (Map.Entry<Coin, Integer> entry : coinInventory.entrySet()) {
-            total += entry.getKey().getValue() * entry.getValue();
+        long stamp = version.get();
+        int total = coins.totalValue();
+        if (validate(stamp)) {
+            return total;
+        }
+        synchronized (this) {
+            return coins.totalValue();
         }
-        return total;
     }
 
     /**
-     * Displays the current inventory status.
+     * Displays the current inventory status, from {@link #getView()}.
      */
     public void displayInventory() {
+        InventoryView view = getView();
         System.out.println("\n========== INVENTORY STATUS ==========");
         System.out.println("Products:");
-        for (ItemShelf shelf : productShelves.values()) {
+        for (ShelfView shelf : view.getShelves()) {
             System.out.println("  " + shelf);
         }
         System.out.println("\nCoins:");
-        for (Coin coin : Coin.values()) {
-            System.out.printf("  %s: %d coins (%d cents each)%n", 
-                coin.name(), coinInventory.get(coin), coin.getValue());
+        for (int i = 0; i < denominations.size(); i++) {
+            System.out.printf("  %s: %d coins (%d cents each)%n",
+                denominations.getCoinName(i), view.getCoinCount(i), denominations.value(i));
         }
-        System.out.printf("Total coin value: $%.2f%n", getTotalCoinValue() / 100.0);
+        System.out.printf("Total coin value: $%.2f%n", view.getTotalCoinValue() / 100.0);
         System.out.println("======================================\n");
     }
 }
@@ -0,0 +1,36 @@
+package com.vendingmachine.inventory;
+
+/**
+ * A change to an {@link Inventory}, published by its {@link InventoryChangePublisher}.
+ */
+public sealed interface InventoryChange {
+
+    /**
+     * The number of items on a shelf changed. Coalesced: a subscriber that falls behind gets
+     * one event per shelf with the quantity at delivery time.
+     * @param shelfCode the shelf
+     * @param quantity items on the shelf now, including items reserved by sales in progress
+     */
+    record ShelfQuantityChanged(String shelfCode, int quantity) implements InventoryChange {
+    }
+
+    /**
+     * A shelf ran out. Delivered even if the shelf was restocked before the subscriber asked
+     * for it; a {@link ShelfQuantityChanged} with the current quantity follows.
+     * @param shelfCode the shelf
+     */
+    record ShelfEmpty(String shelfCode) implements InventoryChange {
+    }
+
+    /**
+     * The coins of one denomination fell below the threshold set with
+     * {@link InventoryChangePublisher#setCoinThreshold(int, int)}. Delivered even if coins
+     * were loaded before the subscriber asked for it.
+     * @param denomination position of the denomination in the inventory's
+     *                     {@link com.vendingmachine.change.DenominationSet}
+     * @param count coins held at delivery time
+     * @param threshold the threshold
+     */
+    record CoinLow(int denomination, int count, int threshold) implements InventoryChange {
+    }
+}
@@ -0,0 +1,323 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.ItemShelf;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Publishes the changes of an {@link Inventory} as a {@link Flow} stream of
+ * {@link InventoryChange}s, with backpressure: a subscriber gets no more events than it has
+ * requested. Get it with {@link Inventory#getChanges()}.
+ *
+ * The vend path only marks what changed: one bit per shelf in a shared bitmap (and one per
+ * shelf that ran out), one bit per denomination that fell below its threshold. It never
+ * touches a subscriber, so a slow subscriber cannot hold up a sale. A drain task on the
+ * executor moves the marks into each subscription and delivers them as demand allows. A
+ * burst of sales from one shelf becomes a single {@link InventoryChange.ShelfQuantityChanged}
+ * carrying the quantity at delivery time, so what a subscriber has pending is bounded by the
+ * number of shelves and denominations, however far behind it is. Running out and falling
+ * below a threshold are latched, so they are delivered even if they lasted only a moment.
+ *
+ * Signals to a subscriber come from one drain at a time, in order. A subscriber that blocks
+ * in {@code onNext} holds up delivery to the other subscribers, never the sales.
+ */
+public final class InventoryChangePublisher implements Flow.Publisher<InventoryChange> {
+
+    // Shelves per bitmap chunk; chunks are added but never replaced, so no mark is lost
+    private static final int CHUNK_SLOTS = 4096;
+    private static final int CHUNK_WORDS = CHUNK_SLOTS / Long.SIZE;
+
+    private final Inventory inventory;
+    private final Executor executor;
+    // Shelves changed, and shelves that ran out, since the last drain
+    private volatile AtomicLongArray[] changedChunks = new AtomicLongArray[0];
+    private volatile AtomicLongArray[] emptiedChunks = new AtomicLongArray[0];
+    // Denominations that fell below their threshold since the last drain, one bit per denomination
+    private final AtomicInteger lowCoins = new AtomicInteger();
+    private final AtomicIntegerArray thresholds;
+    // Denominations with a threshold, so the vend path can skip the check entirely
+    private volatile int watchedCoins;
+    private final CopyOnWriteArrayList<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    // Drain requests not yet served; whoever raises it from zero starts a drain
+    private final AtomicInteger pendingDrains = new AtomicInteger();
+    private final Runnable drainTask = this::drain;
+
+    InventoryChangePublisher(Inventory inventory, Executor executor) {
+        this.inventory = inventory;
+        this.executor = executor;
+        this.thresholds = new AtomicIntegerArray(inventory.getDenominations().size());
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super InventoryChange> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        ChangeSubscription subscription = new ChangeSubscription(subscriber);
+        // onSubscribe happens before the drain can see the subscription, so before any onNext
+        subscriber.onSubscribe(subscription);
+        if (!subscription.cancelled) {
+            subscriptions.add(subscription);
+            signal();
+        }
+    }
+
+    /**
+     * Publishes {@link InventoryChange.CoinLow} whenever the coins of a denomination fall
+     * below a threshold, e.g. the float needed to make change.
+     * @param coin the denomination, as the {@link Coin} of its value
+     * @param threshold coin count below which the denomination is low; 0 to stop watching it
+     */
+    public void setCoinThreshold(Coin coin, int threshold) {
+        setCoinThreshold(inventory.denominationOf(coin), threshold);
+    }
+
+    /**
+     * Publishes {@link InventoryChange.CoinLow} whenever the coins of a denomination fall
+     * below a threshold.
+     * @param denomination position of the denomination in the inventory's set
+     * @param threshold coin count below which the denomination is low; 0 to stop watching it
+     */
+    public synchronized void setCoinThreshold(int denomination, int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold cannot be negative");
+        }
+        if (denomination < 0 || denomination >= thresholds.length()) {
+            throw new IllegalArgumentException("No denomination " + denomination + " in denomination set "
+                + inventory.getDenominations().getName());
+        }
+        thresholds.set(denomination, threshold);
+        int bit = 1 << denomination;
+        watchedCoins = threshold > 0 ? watchedCoins | bit : watchedCoins & ~bit;
+        coinsRemoved();
+    }
+
+    /**
+     * Gets the number of subscribers that have not cancelled.
+     * @return active subscriptions
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    // ==================== Marks (vend path) ====================
+
+    /**
+     * Makes room for marks of shelves up to {@code slots}. Called by the inventory, under its
+     * lock, before a new shelf is published.
+     */
+    synchronized void ensureCapacity(int slots) {
+        int chunks = (slots + CHUNK_SLOTS - 1) / CHUNK_SLOTS;
+        if (chunks > changedChunks.length) {
+            changedChunks = grow(changedChunks, chunks);
+            emptiedChunks = grow(emptiedChunks, chunks);
+        }
+    }
+
+    private static AtomicLongArray[] grow(AtomicLongArray[] chunks, int count) {
+        AtomicLongArray[] grown = Arrays.copyOf(chunks, count);
+        for (int i = chunks.length; i < count; i++) {
+            grown[i] = new AtomicLongArray(CHUNK_WORDS);
+        }
+        return grown;
+    }
+
+    /**
+     * Marks a shelf as changed, and as run out if it is empty now.
+     * @param slot the shelf's slot
+     * @param quantity items on the shelf after the change
+     */
+    void shelfChanged(int slot, int quantity) {
+        // Emptied before changed: the drain only looks at shelves marked changed
+        boolean marked = quantity == 0 && mark(emptiedChunks, slot);
+        marked |= mark(changedChunks, slot);
+        // Already marked means a drain is already due to pick it up
+        if (marked) {
+            signal();
+        }
+    }
+
+    /**
+     * Checks the watched denominations after coins were taken out.
+     */
+    void coinsRemoved() {
+        int watched = watchedCoins;
+        if (watched == 0) {
+            return;
+        }
+        int low = 0;
+        for (int i = 0; i < thresholds.length(); i++) {
+            if ((watched & (1 << i)) != 0 && inventory.getCoinCount(i) < thresholds.get(i)) {
+                low |= 1 << i;
+            }
+        }
+        // Signal only for newly low denominations; the others are already due for delivery
+        if (low != 0 && (lowCoins.getAndAccumulate(low, (a, b) -> a | b) & low) != low) {
+            signal();
+        }
+    }
+
+    private static boolean mark(AtomicLongArray[] chunks, int slot) {
+        AtomicLongArray words = chunks[slot / CHUNK_SLOTS];
+        int word = (slot % CHUNK_SLOTS) / Long.SIZE;
+        long bit = 1L << (slot % Long.SIZE);
+        if ((words.get(word) & bit) != 0) {
+            return false;
+        }
+        return (words.getAndAccumulate(word, bit, (a, b) -> a | b) & bit) == 0;
+    }
+
+    // ==================== Drain ====================
+
+    private void signal() {
+        if (pendingDrains.getAndIncrement() == 0) {
+            executor.execute(drainTask);
+        }
+    }
+
+    private void drain() {
+        int missed = 1;
+        do {
+            harvest();
+            for (ChangeSubscription subscription : subscriptions) {
+                subscription.deliver();
+            }
+            missed = pendingDrains.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Moves the shared marks into every subscription's pending set.
+     */
+    private void harvest() {
+        int low = lowCoins.getAndSet(0);
+        AtomicLongArray[] changed = changedChunks;
+        AtomicLongArray[] emptied = emptiedChunks;
+        for (int chunk = 0; chunk < changed.length; chunk++) {
+            for (int word = 0; word < CHUNK_WORDS; word++) {
+                if (changed[chunk].get(word) == 0) {
+                    continue;
+                }
+                // Take emptied before changed: a shelf marked empty is always marked changed too
+                long emptiedBits = emptied[chunk].getAndSet(word, 0);
+                long changedBits = changed[chunk].getAndSet(word, 0);
+                int index = chunk * CHUNK_WORDS + word;
+                for (ChangeSubscription subscription : subscriptions) {
+                    subscription.add(index, changedBits, emptiedBits);
+                }
+            }
+        }
+        if (low != 0) {
+            for (ChangeSubscription subscription : subscriptions) {
+                subscription.lowCoins |= low;
+            }
+        }
+    }
+
+    /**
+     * One subscriber's demand and pending changes. The pending sets are only touched by the
+     * drain.
+     */
+    private final class ChangeSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super InventoryChange> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException badRequest;
+        private long[] changed = new long[0];
+        private long[] emptied = new long[0];
+        private int lowCoins;
+
+        ChangeSubscription(Flow.Subscriber<? super InventoryChange> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Request must be positive: " + n);
+            } else {
+                demand.getAndAccumulate(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        void add(int index, long changedBits, long emptiedBits) {
+            if (index >= changed.length) {
+                int length = Math.max(index + 1, changed.length * 2);
+                changed = Arrays.copyOf(changed, length);
+                emptied = Arrays.copyOf(emptied, length);
+            }
+            changed[index] |= changedBits;
+            emptied[index] |= emptiedBits;
+        }
+
+        void deliver() {
+            if (cancelled) {
+                return;
+            }
+            if (badRequest != null) {
+                cancel();
+                subscriber.onError(badRequest);
+                return;
+            }
+            long requested = demand.get();
+            long sent = 0;
+            while (sent < requested && lowCoins != 0) {
+                int i = Integer.numberOfTrailingZeros(lowCoins);
+                lowCoins &= ~(1 << i);
+                if (!emit(new InventoryChange.CoinLow(i, inventory.getCoinCount(i), thresholds.get(i)))) {
+                    return;
+                }
+                sent++;
+            }
+            for (int word = 0; word < changed.length && sent < requested; word++) {
+                while (changed[word] != 0 && sent < requested) {
+                    int bit = Long.numberOfTrailingZeros(changed[word]);
+                    ItemShelf shelf = inventory.shelfAt(word * Long.SIZE + bit);
+                    if ((emptied[word] & (1L << bit)) != 0) {
+                        emptied[word] &= ~(1L << bit);
+                        if (!emit(new InventoryChange.ShelfEmpty(shelf.getCode()))) {
+                            return;
+                        }
+                        // The quantity follows with the next unit of demand
+                        if (++sent == requested) {
+                            break;
+                        }
+                    }
+                    changed[word] &= ~(1L << bit);
+                    if (!emit(new InventoryChange.ShelfQuantityChanged(shelf.getCode(), shelf.getStockedQuantity()))) {
+                        return;
+                    }
+                    sent++;
+                }
+            }
+            if (sent > 0 && requested != Long.MAX_VALUE) {
+                demand.addAndGet(-sent);
+            }
+        }
+
+        private boolean emit(InventoryChange change) {
+            try {
+                subscriber.onNext(change);
+                return !cancelled;
+            } catch (RuntimeException e) {
+                cancel();
+                subscriber.onError(e);
+                return false;
+            }
+        }
+    }
+}
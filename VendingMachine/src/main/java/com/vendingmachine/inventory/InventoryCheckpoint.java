@@ -0,0 +1,386 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.change.ChangeStrategy;
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.model.ItemShelf;
+import com.vendingmachine.model.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Point-in-time copy of an {@link Inventory} (shelves, products, coin counts) with a
+ * compact, versioned binary file format.
+ *
+ * {@link #capture(Inventory)} holds the inventory lock only while copying the counts into
+ * primitive arrays; encoding and writing the file happen afterwards, while vending goes on.
+ * Because every sale and restock commits under that lock, and journaled coin refills under
+ * the journal's lock, which the copy also takes, the copy is consistent.
+ * Restoring reads the whole file with one sequential read and rebuilds the inventory
+ * directly, without replaying individual operations.
+ *
+ * A checkpoint of a journaled inventory remembers the journal position at capture time;
+ * {@link Inventory#recover(Path, InventoryCheckpoint)} restores it and replays only the
+ * journal records written after it. {@link Inventory#checkpoint(Path)} writes a checkpoint
+ * and compacts the journal to it.
+ *
+ * File layout (big-endian): magic "VMC1", version, journal position, products
+ * (id, name, price; each distinct product once, however many
+ * shelves or instances share it), shelves (code, product index or -1,
+ * quantity), the denomination set (name, then value and coin count per denomination),
+ * CRC32 of everything before it.
+ */
+public final class InventoryCheckpoint {
+
+    private static final int MAGIC = 0x564D4331; // "VMC1"
+    private static final short VERSION = 3;
+    private static final int NO_PRODUCT = -1;
+
+    private final Product[] products;
+    private final String[] shelfCodes;
+    private final int[] shelfProducts;
+    private final int[] shelfQuantities;
+    private final DenominationSet denominations;
+    private final int[] coinCounts;
+    private final long journalPosition;
+
+    private InventoryCheckpoint(Product[] products, String[] shelfCodes, int[] shelfProducts, int[] shelfQuantities,
+                                DenominationSet denominations, int[] coinCounts, long journalPosition) {
+        this.products = products;
+        this.shelfCodes = shelfCodes;
+        this.shelfProducts = shelfProducts;
+        this.shelfQuantities = shelfQuantities;
+        this.denominations = denominations;
+        this.coinCounts = coinCounts;
+        this.journalPosition = journalPosition;
+    }
+
+    /**
+     * Takes a consistent copy of an inventory.
+     * @param inventory the inventory to copy
+     * @return the checkpoint
+     */
+    public static InventoryCheckpoint capture(Inventory inventory) {
+        String[] codes;
+        Product[] shelfProducts;
+        int[] quantities;
+        DenominationSet denominations = inventory.getDenominations();
+        int[] coins = new int[denominations.size()];
+        long journalPosition;
+
+        // Only plain copies under the lock; deduplicating products happens after releasing it
+        synchronized (inventory) {
+            ItemShelf[] shelves = inventory.shelves();
+            codes = new String[shelves.length];
+            shelfProducts = new Product[shelves.length];
+            quantities = new int[shelves.length];
+            for (int i = 0; i < shelves.length; i++) {
+                codes[i] = shelves[i].getCode();
+                shelfProducts[i] = shelves[i].getProduct();
+                // Reserved items are still physically on the shelf
+                quantities[i] = shelves[i].getStockedQuantity();
+            }
+            journalPosition = inventory.copyCoinCounts(coins);
+        }
+
+        int[] productIndexes = new int[codes.length];
+        Map<ProductKey, Integer> indexes = new HashMap<>();
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < codes.length; i++) {
+            Product product = shelfProducts[i];
+            if (product == null) {
+                productIndexes[i] = NO_PRODUCT;
+            } else {
+                productIndexes[i] = indexes.computeIfAbsent(ProductKey.of(product), key -> {
+                    products.add(product);
+                    return products.size() - 1;
+                });
+            }
+        }
+        return new InventoryCheckpoint(products.toArray(new Product[0]), codes, productIndexes,
+            quantities, denominations, coins, journalPosition);
+    }
+
+    public int getShelfCount() {
+        return shelfCodes.length;
+    }
+
+    public int getProductCount() {
+        return products.length;
+    }
+
+    /**
+     * Gets the denominations of the checkpointed inventory's coins.
+     * @return the denomination set
+     */
+    public DenominationSet getDenominations() {
+        return denominations;
+    }
+
+    /**
+     * Gets the journal position at capture time ({@link InventoryJournal#getPosition()}).
+     * @return bytes of journal already reflected in this checkpoint, 0 if the inventory was not journaled
+     */
+    public long getJournalPosition() {
+        return journalPosition;
+    }
+
+    // ==================== Writing ====================
+
+    /**
+     * Writes the checkpoint to a file, replacing it atomically.
+     * The data goes to a temporary file in the same directory first, so a crash while
+     * writing never destroys the previous checkpoint. The directory is forced after the
+     * rename, so once this returns the new checkpoint survives a crash and the journal
+     * can be compacted to it.
+     * @param file destination
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path file) throws IOException {
+        ByteBuffer out = encode();
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        forceDirectory(directory);
+    }
+
+    /**
+     * Forces a directory's entries to disk, making a rename into it durable.
+     * Platforms that cannot open a directory (Windows) are skipped.
+     * @param directory the directory
+     * @throws IOException if the directory cannot be forced
+     */
+    static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (AccessDeniedException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Encodes the checkpoint in the file format, e.g. to embed it in another file.
+     * @return the encoded checkpoint
+     */
+    public byte[] toBytes() {
+        return encode().array();
+    }
+
+    private ByteBuffer encode() {
+        byte[][] encodedProducts = new byte[products.length * 2][];
+        byte[][] encodedCodes = new byte[shelfCodes.length][];
+        byte[] encodedSet = utf8(denominations.getName());
+        int size = Integer.BYTES + Short.BYTES + Long.BYTES      // magic, version, journal position
+            + Integer.BYTES                                       // product count
+            + Integer.BYTES                                       // shelf count
+            + Short.BYTES + encodedSet.length                     // denomination set name
+            + Integer.BYTES + coinCounts.length * 2 * Integer.BYTES   // values and coin counts
+            + Integer.BYTES;                                      // checksum
+        for (int i = 0; i < products.length; i++) {
+            encodedProducts[2 * i] = utf8(products[i].getId());
+            encodedProducts[2 * i + 1] = utf8(products[i].getName());
+            size += 2 * Short.BYTES + encodedProducts[2 * i].length + encodedProducts[2 * i + 1].length + Integer.BYTES;
+        }
+        for (int i = 0; i < shelfCodes.length; i++) {
+            encodedCodes[i] = utf8(shelfCodes[i]);
+            size += Short.BYTES + encodedCodes[i].length + 2 * Integer.BYTES;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.putLong(journalPosition);
+        out.putInt(products.length);
+        for (int i = 0; i < products.length; i++) {
+            putBytes(out, encodedProducts[2 * i]);
+            putBytes(out, encodedProducts[2 * i + 1]);
+            out.putInt(products[i].getPriceInCents());
+        }
+        out.putInt(shelfCodes.length);
+        for (int i = 0; i < shelfCodes.length; i++) {
+            putBytes(out, encodedCodes[i]);
+            out.putInt(shelfProducts[i]);
+            out.putInt(shelfQuantities[i]);
+        }
+        putBytes(out, encodedSet);
+        out.putInt(coinCounts.length);
+        for (int i = 0; i < coinCounts.length; i++) {
+            out.putInt(denominations.value(i));
+            out.putInt(coinCounts[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        out.flip();
+        return out;
+    }
+
+    // ==================== Reading ====================
+
+    /**
+     * Reads a checkpoint file with a single sequential read.
+     * @param file checkpoint file
+     * @return the checkpoint
+     * @throws IOException if the file cannot be read, is corrupt or has an unsupported version
+     */
+    public static InventoryCheckpoint readFrom(Path file) throws IOException {
+        return decode(ByteBuffer.wrap(Files.readAllBytes(file)), file.toString());
+    }
+
+    /**
+     * Decodes a checkpoint encoded by {@link #toBytes()}.
+     * @param data the encoded checkpoint
+     * @return the checkpoint
+     * @throws IOException if the data is corrupt or has an unsupported version
+     */
+    public static InventoryCheckpoint fromBytes(byte[] data) throws IOException {
+        return decode(ByteBuffer.wrap(data), "(embedded)");
+    }
+
+    private static InventoryCheckpoint decode(ByteBuffer in, String file) throws IOException {
+        if (in.remaining() < Integer.BYTES + Short.BYTES || in.getInt() != MAGIC) {
+            throw new IOException(file + " is not an inventory checkpoint");
+        }
+        short version = in.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version + " in " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(in.array(), 0, in.limit() - Integer.BYTES);
+        if ((int) crc.getValue() != in.getInt(in.limit() - Integer.BYTES)) {
+            throw new IOException("Checkpoint " + file + " is corrupt (checksum mismatch)");
+        }
+
+        try {
+            long journalPosition = in.getLong();
+            Product[] products = new Product[in.getInt()];
+            for (int i = 0; i < products.length; i++) {
+                products[i] = new Product(getString(in), getString(in), in.getInt());
+            }
+            int shelves = in.getInt();
+            String[] codes = new String[shelves];
+            int[] productIndexes = new int[shelves];
+            int[] quantities = new int[shelves];
+            for (int i = 0; i < shelves; i++) {
+                codes[i] = getString(in);
+                productIndexes[i] = in.getInt();
+                quantities[i] = in.getInt();
+            }
+            String setName = getString(in);
+            int[] values = new int[in.getInt()];
+            int[] coins = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.getInt();
+                coins[i] = in.getInt();
+            }
+            DenominationSet denominations = DenominationSet.of(setName, values);
+            return new InventoryCheckpoint(products, codes, productIndexes, quantities, denominations, coins,
+                journalPosition);
+        } catch (RuntimeException e) {
+            throw new IOException("Checkpoint " + file + " is malformed", e);
+        }
+    }
+
+    /**
+     * Builds a new inventory holding the checkpointed shelves and coins.
+     * @return the restored inventory, making change for the checkpoint's denomination set with
+     *         the strategy {@link ChangeStrategy#forDenominations(DenominationSet)} picks
+     */
+    public Inventory restore() {
+        return restore(ChangeStrategy.forDenominations(denominations));
+    }
+
+    /**
+     * Builds a new inventory holding the checkpointed shelves and coins.
+     * @param changeStrategy strategy used by the restored inventory, for the checkpoint's
+     *                       {@linkplain #getDenominations() denomination set}
+     * @return the restored inventory
+     * @throws IllegalArgumentException if the strategy is null or for another denomination set
+     */
+    public Inventory restore(ChangeStrategy changeStrategy) {
+        Inventory.checkChangeStrategy(changeStrategy);
+        checkDenominations(changeStrategy.getDenominations());
+        Inventory inventory = new Inventory(changeStrategy);
+        restoreInto(inventory);
+        return inventory;
+    }
+
+    /**
+     * Checks that an inventory on the given set can hold the checkpointed coins.
+     * @param denominations the inventory's set
+     * @throws IllegalArgumentException if the checkpoint's coins are of another set
+     */
+    private void checkDenominations(DenominationSet denominations) {
+        if (!this.denominations.equals(denominations)) {
+            throw new IllegalArgumentException("Checkpoint holds coins of " + this.denominations
+                + ", not " + denominations);
+        }
+    }
+
+    void restoreInto(Inventory inventory) {
+        checkDenominations(inventory.getDenominations());
+        for (int i = 0; i < shelfCodes.length; i++) {
+            if (shelfProducts[i] == NO_PRODUCT) {
+                inventory.addShelf(shelfCodes[i]);
+                inventory.addStock(shelfCodes[i], shelfQuantities[i]);
+            } else {
+                inventory.stockProduct(shelfCodes[i], products[shelfProducts[i]], shelfQuantities[i]);
+            }
+        }
+        for (int i = 0; i < coinCounts.length; i++) {
+            inventory.addCoins(i, coinCounts[i]);
+        }
+    }
+
+    /** Products are immutable, so equal fields mean one table entry. */
+    private record ProductKey(String id, String name, int priceInCents) {
+        static ProductKey of(Product product) {
+            return new ProductKey(product.getId(), product.getName(), product.getPriceInCents());
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalStateException("String too long for a checkpoint: " + value.length() + " characters");
+        }
+        return bytes;
+    }
+
+    private static void putBytes(ByteBuffer out, byte[] bytes) {
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,614 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.model.Product;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of every inventory and coin mutation.
+ *
+ * Records are written into a memory-mapped file. Once a record is in the mapping it
+ * survives a crash of the process, so an append costs a memory copy rather than a system
+ * call. Protection against losing the machine itself (power cut, kernel crash) comes from
+ * group commit: a background thread forces the newly written range to disk every flush
+ * interval, covering all records appended since the previous flush with one fsync.
+ * Callers that must not continue before their record is on disk can call {@link #sync()}.
+ *
+ * A whole sale (change paid out, inserted coins banked, shelf decremented) is a single
+ * record, so a crash never leaves the coin float and the stock out of step. A cart sale of
+ * several items is one record too. Strings (at most 65535 UTF-8 bytes) and cart sizes (at most
+ * 65535 items) are checked before a record is begun, so an oversized one is rejected with an
+ * IllegalArgumentException and nothing is written.
+ *
+ * File layout: a 16-byte header (magic, version, base position) followed by records of
+ * {@code [int payloadLength][byte type][payload][int crc32(type + payload)]}. Coins are
+ * recorded by their position in the inventory's denomination set, as packed tallies and count
+ * arrays, so a journal is replayed into an inventory on the same set. The unused
+ * tail of the mapping is zero, so replay stops at the first zero length or bad checksum,
+ * which also discards a record torn by a crash in the middle of an append.
+ *
+ * Positions ({@link #getPosition()}, {@link InventoryCheckpoint#getJournalPosition()}) count
+ * every byte ever journaled, so they stay valid when the journal is compacted. Compacting to
+ * a checkpoint ({@link #compact(InventoryCheckpoint)}, or {@link Inventory#checkpoint(Path)})
+ * rewrites the file with only the records after it; the header's base position maps the
+ * file's offsets back to positions. Without compaction the file grows until it is full (2 GB).
+ *
+ * Use {@link Inventory#recover(Path)} to open a journal, replay it and keep journaling.
+ */
+public class InventoryJournal implements AutoCloseable {
+
+    private static final int MAGIC = 0x564D4A31; // "VMJ1"
+    private static final short VERSION = 3;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_OVERHEAD = Integer.BYTES + 1 + Integer.BYTES;
+    private static final int INITIAL_MAPPING = 4 << 20;
+    private static final long DEFAULT_FLUSH_INTERVAL_MICROS = 1_000;
+    // Strings and cart sizes are stored as unsigned shorts
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+    private static final int MAX_CART_ITEMS = 0xFFFF;
+
+    // Record types
+    private static final byte ADD_SHELF = 1;
+    private static final byte STOCK_PRODUCT = 2;
+    private static final byte ADD_STOCK = 3;
+    private static final byte DISPENSE = 4;
+    private static final byte ADD_COINS = 5;
+    private static final byte REMOVE_COINS = 6;
+    private static final byte CHANGE = 7;
+    private static final byte SALE = 8;
+    private static final byte CART_SALE = 9;
+
+    private final Path file;
+    private FileChannel channel;
+    private final long flushIntervalNanos;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer payload = ByteBuffer.allocate(256);
+
+    private volatile MappedByteBuffer mapping;
+    // Position of file offset 0; nonzero once the journal has been compacted
+    private volatile long base;
+    private volatile int position;
+    private volatile int flushedPosition;
+    private volatile boolean open = true;
+    private final Object flushLock = new Object();
+    private final Thread flusher;
+
+    private InventoryJournal(Path file, long flushIntervalMicros) throws IOException {
+        this.file = file;
+        this.flushIntervalNanos = TimeUnit.MICROSECONDS.toNanos(flushIntervalMicros);
+        this.channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        this.mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, INITIAL_MAPPING));
+
+        if (size == 0) {
+            mapping.putInt(0, MAGIC);
+            mapping.putShort(4, VERSION);
+            mapping.putLong(8, 0L);
+            position = HEADER_SIZE;
+        } else {
+            if (mapping.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not an inventory journal");
+            }
+            if (mapping.getShort(4) != VERSION) {
+                throw new IOException("Unsupported journal version " + mapping.getShort(4) + " in " + file);
+            }
+            base = mapping.getLong(8);
+            position = scanEnd();
+        }
+        flushedPosition = position;
+
+        this.flusher = new Thread(this::flushLoop, "inventory-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Opens (or creates) a journal with a 1 ms group-commit interval.
+     * @param file journal file
+     * @return the journal, positioned after its last valid record
+     * @throws IOException if the file cannot be opened or is not a journal
+     */
+    public static InventoryJournal open(Path file) throws IOException {
+        return new InventoryJournal(file, DEFAULT_FLUSH_INTERVAL_MICROS);
+    }
+
+    /**
+     * Opens (or creates) a journal.
+     * @param file journal file
+     * @param flushIntervalMicros how often new records are forced to disk
+     * @return the journal, positioned after its last valid record
+     * @throws IOException if the file cannot be opened or is not a journal
+     */
+    public static InventoryJournal open(Path file, long flushIntervalMicros) throws IOException {
+        if (flushIntervalMicros <= 0) {
+            throw new IllegalArgumentException("Flush interval must be positive");
+        }
+        return new InventoryJournal(file, flushIntervalMicros);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the number of bytes of valid journal data in the file, header included.
+     * @return journal file length
+     */
+    public int getLength() {
+        return position;
+    }
+
+    /**
+     * Gets the position after the last record, which a checkpoint taken now would store.
+     * @return journal position
+     */
+    public synchronized long getPosition() {
+        return base + position;
+    }
+
+    /**
+     * Gets the position of the first record in the file: where a fresh journal starts, or
+     * the checkpoint it was last compacted to.
+     * @return journal position
+     */
+    public synchronized long getStartPosition() {
+        return base + HEADER_SIZE;
+    }
+
+    // ==================== Appending (called by Inventory) ====================
+
+    synchronized void logAddShelf(String code) {
+        byte[] codeBytes = utf8(code);
+        begin();
+        putBytes(codeBytes);
+        append(ADD_SHELF);
+    }
+
+    synchronized void logStockProduct(String code, Product product, int quantity) {
+        byte[] codeBytes = utf8(code);
+        byte[] idBytes = utf8(product.getId());
+        byte[] nameBytes = utf8(product.getName());
+        begin();
+        putBytes(codeBytes);
+        putBytes(idBytes);
+        putBytes(nameBytes);
+        putInt(product.getPriceInCents());
+        putInt(quantity);
+        append(STOCK_PRODUCT);
+    }
+
+    synchronized void logAddStock(String code, int quantity) {
+        byte[] codeBytes = utf8(code);
+        begin();
+        putBytes(codeBytes);
+        putInt(quantity);
+        append(ADD_STOCK);
+    }
+
+    synchronized void logDispense(String code) {
+        byte[] codeBytes = utf8(code);
+        begin();
+        putBytes(codeBytes);
+        append(DISPENSE);
+    }
+
+    synchronized void logAddCoins(int denomination, int count) {
+        begin();
+        putInt(denomination);
+        putInt(count);
+        append(ADD_COINS);
+    }
+
+    synchronized void logRemoveCoins(int denomination, int count) {
+        begin();
+        putInt(denomination);
+        putInt(count);
+        append(REMOVE_COINS);
+    }
+
+    synchronized void logChange(int[] changeCounts) {
+        begin();
+        putCounts(changeCounts);
+        append(CHANGE);
+    }
+
+    synchronized void logSale(String code, long insertedCoins, int[] changeCounts) {
+        byte[] codeBytes = utf8(code);
+        begin();
+        putBytes(codeBytes);
+        ensurePayloadCapacity(Long.BYTES);
+        payload.putLong(insertedCoins);
+        putCounts(changeCounts);
+        append(SALE);
+    }
+
+    synchronized void logCartSale(String[] codes, int count, long insertedCoins, int[] changeCounts) {
+        if (count > MAX_CART_ITEMS) {
+            throw new IllegalArgumentException("Cart too large for a journal record: " + count
+                + " items (at most " + MAX_CART_ITEMS + ")");
+        }
+        byte[][] codeBytes = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            codeBytes[i] = utf8(codes[i]);
+        }
+        begin();
+        ensurePayloadCapacity(Short.BYTES);
+        payload.putShort((short) count);
+        for (byte[] bytes : codeBytes) {
+            putBytes(bytes);
+        }
+        ensurePayloadCapacity(Long.BYTES);
+        payload.putLong(insertedCoins);
+        putCounts(changeCounts);
+        append(CART_SALE);
+    }
+
+    /**
+     * Checks that strings fit in a record, for callers that must reject them before changing
+     * anything.
+     * @throws IllegalArgumentException if a string is longer than 65535 UTF-8 bytes
+     */
+    static void checkStrings(String... values) {
+        for (String value : values) {
+            utf8(value);
+        }
+    }
+
+    /**
+     * Encodes a string for a record, before the record is begun, so a string that does not
+     * fit leaves nothing half written.
+     */
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String too long for a journal record: " + bytes.length
+                + " UTF-8 bytes (at most " + MAX_STRING_BYTES + ")");
+        }
+        return bytes;
+    }
+
+    private void begin() {
+        payload.clear();
+    }
+
+    private synchronized void append(byte type) {
+        if (!open) {
+            throw new IllegalStateException("Journal " + file + " is closed");
+        }
+        payload.flip();
+        int length = payload.remaining();
+        ensureCapacity(position + RECORD_OVERHEAD + length);
+
+        crc.reset();
+        crc.update(type);
+        crc.update(payload.duplicate());
+
+        MappedByteBuffer out = mapping;
+        int start = position;
+        out.put(start + Integer.BYTES, type);
+        out.put(start + Integer.BYTES + 1, payload, 0, length);
+        out.putInt(start + Integer.BYTES + 1 + length, (int) crc.getValue());
+        // Length last: a record is only visible to replay once it is complete
+        out.putInt(start, length);
+        position = start + RECORD_OVERHEAD + length;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required < 0) {
+            throw new IllegalStateException("Journal " + file + " is full (2 GB); compact it to a checkpoint");
+        }
+        if (required <= mapping.capacity()) {
+            return;
+        }
+        long newSize = Math.min((long) mapping.capacity() * 2, Integer.MAX_VALUE);
+        while (newSize < required) {
+            newSize = Math.min(newSize * 2, Integer.MAX_VALUE);
+        }
+        try {
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot grow journal " + file, e);
+        }
+    }
+
+    private void putBytes(byte[] bytes) {
+        ensurePayloadCapacity(Short.BYTES + bytes.length);
+        payload.putShort((short) bytes.length);
+        payload.put(bytes);
+    }
+
+    private void putInt(int value) {
+        ensurePayloadCapacity(Integer.BYTES);
+        payload.putInt(value);
+    }
+
+    private void putCounts(int[] counts) {
+        ensurePayloadCapacity(counts.length * Integer.BYTES);
+        for (int count : counts) {
+            payload.putInt(count);
+        }
+    }
+
+    private void ensurePayloadCapacity(int extra) {
+        if (payload.remaining() < extra) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(payload.capacity() * 2, payload.position() + extra));
+            payload.flip();
+            grown.put(payload);
+            payload = grown;
+        }
+    }
+
+    // ==================== Group Commit ====================
+
+    /**
+     * Forces every record appended so far to disk before returning.
+     */
+    public void sync() {
+        synchronized (flushLock) {
+            // Read under the lock: compaction moves records to lower offsets
+            int target = position;
+            if (flushedPosition < target) {
+                forceRange(flushedPosition, target);
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (open) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            if (flushedPosition < position) {
+                sync();
+            }
+        }
+    }
+
+    private void forceRange(int from, int to) {
+        mapping.force(from, to - from);
+        flushedPosition = to;
+    }
+
+    /**
+     * Forces outstanding records to disk and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            open = false;
+        }
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        synchronized (this) {
+            channel.close();
+        }
+    }
+
+    // ==================== Compaction ====================
+
+    /**
+     * Drops the records a checkpoint already reflects: the file is rewritten with only the
+     * records after the checkpoint's position and atomically replaces the journal. From then
+     * on the journal can only be recovered together with that checkpoint (or a later one),
+     * so write the checkpoint out before compacting; {@link Inventory#checkpoint(Path)} does
+     * both. Appends wait while the records are copied.
+     * @param checkpoint a checkpoint of the inventory writing to this journal, already saved
+     * @throws IOException if the compacted file cannot be written; the journal is then unchanged
+     * @throws IllegalArgumentException if the checkpoint's position is not in this journal
+     */
+    public synchronized void compact(InventoryCheckpoint checkpoint) throws IOException {
+        if (!open) {
+            throw new IllegalStateException("Journal " + file + " is closed");
+        }
+        long from = checkpoint.getJournalPosition();
+        if (!covers(from)) {
+            throw new IllegalArgumentException("Checkpoint at journal position " + from
+                + " is not in journal " + file + " (" + getStartPosition() + " to " + getPosition() + ")");
+        }
+        int offset = (int) (from - base);
+        int tail = position - offset;
+        long newBase = from - HEADER_SIZE;
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(newBase).flip();
+            ByteBuffer records = mapping.duplicate();
+            records.limit(position).position(offset);
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            while (records.hasRemaining()) {
+                out.write(records);
+            }
+            out.force(true);
+        }
+        Files.move(compacted, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        InventoryCheckpoint.forceDirectory(file.toAbsolutePath().getParent());
+
+        synchronized (flushLock) {
+            FileChannel old = channel;
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(HEADER_SIZE + tail, INITIAL_MAPPING));
+            base = newBase;
+            position = HEADER_SIZE + tail;
+            // Everything copied was forced to disk above
+            flushedPosition = position;
+            old.close();
+        }
+    }
+
+    /**
+     * Checks whether records before the first one in the file were dropped by compaction.
+     */
+    boolean isCompacted() {
+        return base > 0;
+    }
+
+    /**
+     * Checks whether replaying from a position is possible: it is between the first record
+     * in the file and the end of the journal.
+     */
+    synchronized boolean covers(long journalPosition) {
+        return journalPosition >= getStartPosition() && journalPosition <= getPosition();
+    }
+
+    // ==================== Replay ====================
+
+    /**
+     * Applies every record in the journal to an inventory.
+     * The inventory must not journal to this file while it is being replayed.
+     */
+    void replay(Inventory inventory) {
+        replay(inventory, getStartPosition());
+    }
+
+    /**
+     * Applies the journal records from a given position on, e.g. those written after a
+     * checkpoint. The position must be {@linkplain #covers(long) covered} by the journal.
+     */
+    void replay(Inventory inventory, long fromPosition) {
+        ByteBuffer in = mapping.duplicate();
+        int offset = (int) (fromPosition - base);
+        while (offset < position) {
+            int length = in.getInt(offset);
+            byte type = in.get(offset + Integer.BYTES);
+            in.limit(offset + Integer.BYTES + 1 + length).position(offset + Integer.BYTES + 1);
+            ByteBuffer record = in.slice();
+            in.limit(in.capacity());
+            apply(inventory, type, record);
+            offset += RECORD_OVERHEAD + length;
+        }
+    }
+
+    private void apply(Inventory inventory, byte type, ByteBuffer in) {
+        switch (type) {
+            case ADD_SHELF:
+                inventory.addShelf(getString(in));
+                break;
+            case STOCK_PRODUCT: {
+                String code = getString(in);
+                Product product = new Product(getString(in), getString(in), in.getInt());
+                inventory.stockProduct(code, product, in.getInt());
+                break;
+            }
+            case ADD_STOCK: {
+                String code = getString(in);
+                inventory.addStock(code, in.getInt());
+                break;
+            }
+            case DISPENSE:
+                inventory.dispenseProduct(getString(in));
+                break;
+            case ADD_COINS: {
+                int denomination = getDenomination(inventory, in);
+                inventory.addCoins(denomination, in.getInt());
+                break;
+            }
+            case REMOVE_COINS: {
+                int denomination = getDenomination(inventory, in);
+                inventory.applyCoins(denomination, -in.getInt());
+                break;
+            }
+            case CHANGE:
+                inventory.applySale(null, 0L, getCounts(inventory, in));
+                break;
+            case SALE: {
+                String code = getString(in);
+                long inserted = in.getLong();
+                inventory.applySale(code, inserted, getCounts(inventory, in));
+                break;
+            }
+            case CART_SALE: {
+                String[] codes = new String[in.getShort() & 0xFFFF];
+                for (int i = 0; i < codes.length; i++) {
+                    codes[i] = getString(in);
+                }
+                long inserted = in.getLong();
+                inventory.applyCartSale(codes, inserted, getCounts(inventory, in));
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type + " in " + file);
+        }
+    }
+
+    /**
+     * Finds the end of the valid records: the first zero length, overrun or checksum mismatch.
+     */
+    private int scanEnd() {
+        ByteBuffer in = mapping.duplicate();
+        int offset = HEADER_SIZE;
+        while (offset + RECORD_OVERHEAD <= in.capacity()) {
+            int length = in.getInt(offset);
+            int end = offset + RECORD_OVERHEAD + length;
+            if (length <= 0 || end > in.capacity() || end < 0) {
+                break;
+            }
+            crc.reset();
+            crc.update(in.get(offset + Integer.BYTES));
+            in.limit(end - Integer.BYTES).position(offset + Integer.BYTES + 1);
+            crc.update(in);
+            in.limit(in.capacity());
+            if ((int) crc.getValue() != in.getInt(end - Integer.BYTES)) {
+                break;
+            }
+            offset = end;
+        }
+        // Clear a torn tail so new records are not mistaken for it
+        for (int i = offset; i < Math.min(offset + RECORD_OVERHEAD, in.capacity()); i++) {
+            mapping.put(i, (byte) 0);
+        }
+        return offset;
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int getDenomination(Inventory inventory, ByteBuffer in) {
+        int denomination = in.getInt();
+        if (denomination < 0 || denomination >= inventory.getDenominations().size()) {
+            throw new IllegalStateException("Journal " + file + " has coins of denomination " + denomination
+                + ", not in " + inventory.getDenominations());
+        }
+        return denomination;
+    }
+
+    /**
+     * Reads the count array that ends a record, one count per denomination of the inventory's set.
+     */
+    private int[] getCounts(Inventory inventory, ByteBuffer in) {
+        int[] counts = new int[inventory.getDenominations().size()];
+        if (in.remaining() != counts.length * Integer.BYTES) {
+            throw new IllegalStateException("Journal " + file + " has " + in.remaining() / Integer.BYTES
+                + " coin counts in a record, expected " + counts.length + " for " + inventory.getDenominations());
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = in.getInt();
+        }
+        return counts;
+    }
+}
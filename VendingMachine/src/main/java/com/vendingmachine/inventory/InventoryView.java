@@ -0,0 +1,85 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.model.Coin;
+
+import java.util.List;
+
+/**
+ * Immutable, consistent copy of an {@link Inventory}: every shelf and the coin float as they
+ * were at one version of the inventory, with no sale or restock half applied.
+ *
+ * {@link Inventory#getView()} builds a view only when the inventory has changed since the
+ * last one and hands the same view to every caller until then, so polling an unchanged
+ * inventory copies nothing. A new view reuses the {@link ShelfView} of every shelf that did
+ * not change.
+ */
+public final class InventoryView {
+
+    static final InventoryView EMPTY = new InventoryView(0, List.of(), DenominationSet.US,
+        new int[DenominationSet.US.size()]);
+
+    private final long version;
+    private final List<ShelfView> shelves;
+    private final DenominationSet denominations;
+    private final int[] coinCounts;
+
+    InventoryView(long version, List<ShelfView> shelves, DenominationSet denominations, int[] coinCounts) {
+        this.version = version;
+        this.shelves = shelves;
+        this.denominations = denominations;
+        this.coinCounts = coinCounts;
+    }
+
+    /**
+     * Gets the inventory version this view shows. A later view of the same inventory has a
+     * higher version; two views with the same version show the same state.
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets every shelf, in the order they were added.
+     * @return unmodifiable list of shelves
+     */
+    public List<ShelfView> getShelves() {
+        return shelves;
+    }
+
+    /**
+     * Gets the count of a specific coin type.
+     * @param coin type of coin
+     * @return number of coins held
+     * @throws IllegalArgumentException if the inventory's set has no denomination of its value
+     */
+    public int getCoinCount(Coin coin) {
+        int denomination = denominations.indexOf(coin);
+        if (denomination < 0) {
+            throw new IllegalArgumentException("No " + coin.name() + " in denomination set " + denominations.getName());
+        }
+        return coinCounts[denomination];
+    }
+
+    /**
+     * Gets the count of one denomination.
+     * @param denomination position of the denomination in the inventory's {@link DenominationSet}
+     * @return number of coins held
+     */
+    public int getCoinCount(int denomination) {
+        return coinCounts[denomination];
+    }
+
+    /**
+     * Gets the total value of the coins held.
+     * @return total value in the smallest currency unit
+     */
+    public int getTotalCoinValue() {
+        int total = 0;
+        for (int i = 0; i < coinCounts.length; i++) {
+            total += denominations.value(i) * coinCounts[i];
+        }
+        return total;
+    }
+}
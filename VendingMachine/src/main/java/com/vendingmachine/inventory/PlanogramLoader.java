@@ -0,0 +1,402 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.change.ChangeStrategy;
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.model.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads planograms (which product goes on which shelf, and how many) from CSV files.
+ *
+ * One row per shelf: {@code shelf,product_id,product_name,price_cents,quantity}. A first
+ * row whose first field is {@code shelf} is a header; blank rows and rows starting with
+ * {@code #} are skipped. Fields may be double-quoted, with {@code ""} for a quote inside.
+ * A row with an empty product id declares an empty shelf. If a shelf appears twice, the
+ * last row wins.
+ *
+ * The file is streamed through a reused buffer and parsed as bytes in a single pass. Rows
+ * naming the same product share one {@link Product} instance; repeated rows are recognized
+ * from their raw bytes, so they allocate nothing but the shelf code. The whole file is
+ * validated before the inventory is touched, so a malformed file changes nothing. Rows are
+ * then applied in batches, each under the inventory lock, so a live machine keeps vending
+ * while a large planogram loads.
+ */
+public final class PlanogramLoader {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int BATCH_SIZE = 4096;
+
+    private PlanogramLoader() {
+    }
+
+    /**
+     * Creates an inventory holding the planogram in a file, sized for its shelf count.
+     * @param file CSV planogram
+     * @return the new inventory, making change like {@link Inventory#Inventory()}
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static Inventory load(Path file) throws IOException {
+        return load(file, ChangeStrategy.forDenominations(DenominationSet.US));
+    }
+
+    /**
+     * Creates an inventory holding the planogram in a file, sized for its shelf count.
+     * @param file CSV planogram
+     * @param changeStrategy strategy used by the new inventory
+     * @return the new inventory
+     * @throws IOException if the file cannot be read or is malformed
+     * @throws IllegalArgumentException if the strategy is null or its set is too large
+     *         ({@link Inventory#checkChangeStrategy(ChangeStrategy)})
+     */
+    public static Inventory load(Path file, ChangeStrategy changeStrategy) throws IOException {
+        Inventory.checkChangeStrategy(changeStrategy);
+        Planogram planogram = parse(file);
+        Inventory inventory = new Inventory(changeStrategy, planogram.size);
+        planogram.applyTo(inventory);
+        return inventory;
+    }
+
+    /**
+     * Stocks an existing inventory from a planogram file. Shelves the file does not mention
+     * are left as they are.
+     * @param inventory the inventory to stock
+     * @param file CSV planogram
+     * @return number of shelf rows loaded
+     * @throws IOException if the file cannot be read or is malformed; the inventory is then unchanged
+     */
+    public static int loadInto(Inventory inventory, Path file) throws IOException {
+        Planogram planogram = parse(file);
+        planogram.applyTo(inventory);
+        return planogram.size;
+    }
+
+    // ==================== Parsing ====================
+
+    private static Planogram parse(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Parser parser = new Parser(file, channel.size());
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] bytes = buffer.array();
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                int end = buffer.position();
+                int start = 0;
+                while (true) {
+                    int newline = indexOf(bytes, start, end, (byte) '\n');
+                    if (newline < 0) {
+                        break;
+                    }
+                    parser.row(bytes, start, newline);
+                    start = newline + 1;
+                }
+                if (eof) {
+                    if (start < end) {
+                        parser.row(bytes, start, end);
+                    }
+                } else if (start == 0 && end == bytes.length) {
+                    throw parser.error("row longer than " + BUFFER_SIZE + " bytes");
+                } else {
+                    // Carry the incomplete last row over to the next read
+                    System.arraycopy(bytes, start, bytes, 0, end - start);
+                    buffer.position(end - start);
+                }
+            }
+            return parser.planogram;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Parsed rows, applied to an inventory in batches. */
+    private static final class Planogram {
+        String[] codes;
+        Product[] products;
+        int[] quantities;
+        int size;
+
+        Planogram(int capacity) {
+            codes = new String[capacity];
+            products = new Product[capacity];
+            quantities = new int[capacity];
+        }
+
+        void add(String code, Product product, int quantity) {
+            if (size == codes.length) {
+                int capacity = Math.max(16, size + (size >> 1));
+                codes = Arrays.copyOf(codes, capacity);
+                products = Arrays.copyOf(products, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+            }
+            codes[size] = code;
+            products[size] = product;
+            quantities[size] = quantity;
+            size++;
+        }
+
+        void applyTo(Inventory inventory) {
+            for (int from = 0; from < size; from += BATCH_SIZE) {
+                inventory.stockShelves(codes, products, quantities, from, Math.min(from + BATCH_SIZE, size));
+            }
+        }
+    }
+
+    /** Splits rows into fields and turns them into planogram entries. */
+    private static final class Parser {
+        private static final int FIELDS = 5;
+        private static final int SHELF = 0;
+        private static final int PRODUCT_ID = 1;
+        private static final int PRODUCT_NAME = 2;
+        private static final int PRICE = 3;
+        private static final int QUANTITY = 4;
+
+        private final Path file;
+        private final Planogram planogram;
+        // Field boundaries of the current row, and whether a field was quoted
+        private final int[] fieldStart = new int[FIELDS];
+        private final int[] fieldEnd = new int[FIELDS];
+        private final boolean[] quoted = new boolean[FIELDS];
+        private final ProductCache cache = new ProductCache();
+        private final Map<String, Product> productsById = new HashMap<>();
+        private long line;
+        private boolean firstRow = true;
+
+        Parser(Path file, long fileSize) {
+            this.file = file;
+            // Rows are rarely shorter than 24 bytes; start big enough to avoid most regrowth
+            this.planogram = new Planogram((int) Math.min(fileSize / 24 + 16, 1 << 24));
+        }
+
+        void row(byte[] bytes, int start, int end) throws IOException {
+            line++;
+            if (end > start && bytes[end - 1] == '\r') {
+                end--;
+            }
+            if (start == end || bytes[start] == '#') {
+                return;
+            }
+            split(bytes, start, end);
+            boolean header = firstRow && fieldEquals(bytes, SHELF, "shelf");
+            firstRow = false;
+            if (header) {
+                return;
+            }
+
+            String code = text(bytes, SHELF);
+            if (code.isEmpty()) {
+                throw error("shelf code is empty");
+            }
+            if (fieldEnd[PRODUCT_ID] == fieldStart[PRODUCT_ID]) {
+                planogram.add(code, null, 0);
+                return;
+            }
+            int quantity = number(bytes, QUANTITY, "quantity");
+
+            // Product id, name and price are adjacent; identical bytes mean the same product
+            int productStart = fieldStart[PRODUCT_ID] - (quoted[PRODUCT_ID] ? 1 : 0);
+            int productEnd = fieldEnd[PRICE] + (quoted[PRICE] ? 1 : 0);
+            Product product = cache.get(bytes, productStart, productEnd);
+            if (product == null) {
+                product = product(bytes);
+                cache.put(bytes, productStart, productEnd, product);
+            }
+            planogram.add(code, product, quantity);
+        }
+
+        private Product product(byte[] bytes) throws IOException {
+            String id = text(bytes, PRODUCT_ID);
+            String name = text(bytes, PRODUCT_NAME);
+            int price = number(bytes, PRICE, "price");
+            Product known = productsById.get(id);
+            if (known == null) {
+                Product product = new Product(id, name, price);
+                productsById.put(id, product);
+                return product;
+            }
+            if (!known.getName().equals(name) || known.getPriceInCents() != price) {
+                throw error("product " + id + " is listed as " + name + " at " + price
+                    + " cents but earlier as " + known.getName() + " at " + known.getPriceInCents() + " cents");
+            }
+            return known;
+        }
+
+        private void split(byte[] bytes, int start, int end) throws IOException {
+            int field = 0;
+            int i = start;
+            while (true) {
+                if (field == FIELDS) {
+                    throw error("more than " + FIELDS + " fields");
+                }
+                if (i < end && bytes[i] == '"') {
+                    int close = i + 1;
+                    while (true) {
+                        close = indexOf(bytes, close, end, (byte) '"');
+                        if (close < 0) {
+                            throw error("unterminated quote");
+                        }
+                        if (close + 1 < end && bytes[close + 1] == '"') {
+                            close += 2;
+                        } else {
+                            break;
+                        }
+                    }
+                    fieldStart[field] = i + 1;
+                    fieldEnd[field] = close;
+                    quoted[field] = true;
+                    i = close + 1;
+                    if (i < end && bytes[i] != ',') {
+                        throw error("unexpected text after closing quote");
+                    }
+                } else {
+                    int comma = indexOf(bytes, i, end, (byte) ',');
+                    fieldStart[field] = i;
+                    fieldEnd[field] = comma < 0 ? end : comma;
+                    quoted[field] = false;
+                    i = fieldEnd[field];
+                }
+                field++;
+                if (i >= end) {
+                    break;
+                }
+                i++; // skip the comma
+                if (i == end) {
+                    if (field == FIELDS) {
+                        throw error("more than " + FIELDS + " fields");
+                    }
+                    fieldStart[field] = end;
+                    fieldEnd[field] = end;
+                    quoted[field] = false;
+                    field++;
+                    break;
+                }
+            }
+            if (field != FIELDS) {
+                throw error("expected " + FIELDS + " fields, found " + field);
+            }
+        }
+
+        private String text(byte[] bytes, int field) {
+            String value = new String(bytes, fieldStart[field], fieldEnd[field] - fieldStart[field],
+                StandardCharsets.UTF_8);
+            return quoted[field] ? value.replace("\"\"", "\"").strip() : value.strip();
+        }
+
+        private int number(byte[] bytes, int field, String what) throws IOException {
+            int start = fieldStart[field];
+            int end = fieldEnd[field];
+            while (start < end && bytes[start] == ' ') {
+                start++;
+            }
+            while (end > start && bytes[end - 1] == ' ') {
+                end--;
+            }
+            if (start == end) {
+                throw error(what + " is empty");
+            }
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    throw error(what + " is not a non-negative whole number");
+                }
+                value = value * 10 + digit;
+                if (value > Integer.MAX_VALUE) {
+                    throw error(what + " is too large");
+                }
+            }
+            return (int) value;
+        }
+
+        private boolean fieldEquals(byte[] bytes, int field, String value) {
+            int length = fieldEnd[field] - fieldStart[field];
+            if (length != value.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (Character.toLowerCase(bytes[fieldStart[field] + i]) != value.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        IOException error(String message) {
+            return new IOException(file + " line " + line + ": " + message);
+        }
+    }
+
+    /**
+     * Open-addressing table from the raw bytes of a row's product fields to the product,
+     * so repeated products are found without decoding any strings.
+     */
+    private static final class ProductCache {
+        private byte[][] keys = new byte[1024][];
+        private Product[] values = new Product[1024];
+        private int size;
+
+        Product get(byte[] bytes, int start, int end) {
+            int mask = keys.length - 1;
+            for (int slot = hash(bytes, start, end) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                byte[] key = keys[slot];
+                if (Arrays.equals(key, 0, key.length, bytes, start, end)) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        void put(byte[] bytes, int start, int end, Product product) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            insert(Arrays.copyOfRange(bytes, start, end), product);
+            size++;
+        }
+
+        private void insert(byte[] key, Product product) {
+            int mask = keys.length - 1;
+            int slot = hash(key, 0, key.length) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = product;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            Product[] oldValues = values;
+            keys = new byte[oldKeys.length * 2][];
+            values = new Product[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(byte[] bytes, int start, int end) {
+            int h = 1;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + bytes[i];
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
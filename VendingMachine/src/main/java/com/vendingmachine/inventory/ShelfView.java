@@ -0,0 +1,25 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.model.Product;
+
+/**
+ * Immutable state of one shelf, as part of an {@link InventoryView}.
+ *
+ * @param code shelf code
+ * @param product product on the shelf, or null if none is assigned
+ * @param quantity items physically on the shelf, including items reserved by sales in progress
+ */
+public record ShelfView(String code, Product product, int quantity) {
+
+    public boolean isAvailable() {
+        return product != null && quantity > 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Shelf[%s]: %s (Qty: %d)",
+            code,
+            product != null ? product.getName() : "Empty",
+            quantity);
+    }
+}
@@ -0,0 +1,493 @@
+package com.vendingmachine.metrics;
+
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientMoneyException;
+import com.vendingmachine.exception.InvalidOperationException;
+import com.vendingmachine.exception.ProductNotAvailableException;
+import com.vendingmachine.result.VendResult;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Cleaner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for one vending machine (one {@link com.vendingmachine.inventory.Inventory}
+ * and all sessions selling from it).
+ *
+ * Recording is cheap enough for the vend path. Operation and state counters are striped per
+ * session: every {@link com.vendingmachine.VendingMachine} session counts into its own
+ * {@link SessionCounters} with plain single-writer stores (a session is driven by one thread
+ * at a time), and readers add up the stripes. A stripe's counts are folded into the machine
+ * totals once its session is garbage collected. Rare or lock-protected counts (exceptions,
+ * change calculations) use {@link LongAdder}s, and latencies go into lock-free
+ * {@link LatencyHistogram}s. Reading the clock costs more than the rest of the
+ * recording together, so only one in {@value #LATENCY_SAMPLE_RATE} operations, chosen at random,
+ * is timed; counts are exact. {@link #DISABLED} records nothing and never reads the clock,
+ * so a machine without metrics pays one predictable branch per call.
+ *
+ * {@link #register(String)} publishes the metrics as a JMX MXBean.
+ */
+public final class MachineMetrics implements MachineMetricsMXBean {
+
+    /** Metrics that record nothing; the default for every inventory. */
+    public static final MachineMetrics DISABLED = new MachineMetrics(false);
+
+    // State indexes for SessionCounters.recordStateEntry, equal to the MachineState codes
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_HAS_MONEY = 1;
+    public static final int STATE_DISPENSING = 2;
+    public static final int STATE_AUTHORIZING = 3;
+    public static final int STATE_AUTHORIZED = 4;
+
+    // Session counter indexes, after the states
+    private static final int COINS_INSERTED = 5;
+    private static final int PRODUCTS_SELECTED = 6;
+    private static final int PRODUCTS_DISPENSED = 7;
+    private static final int TRANSACTIONS_CANCELLED = 8;
+    private static final int COUNTERS = 9;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /** One in this many operations has its latency recorded (a power of two). */
+    public static final int LATENCY_SAMPLE_RATE = 16;
+
+    private final boolean enabled;
+
+    private final SessionCounters disabledSession;
+    private final Set<SessionCounters> sessions = ConcurrentHashMap.newKeySet();
+    // Counts of collected sessions, and the totals at the last reset
+    private final LongAdder[] retired = new LongAdder[COUNTERS];
+    private volatile long[] resetBaseline = new long[COUNTERS];
+
+    private final LongAdder insufficientChange = new LongAdder();
+    private final LongAdder productNotAvailable = new LongAdder();
+    private final LongAdder insufficientMoney = new LongAdder();
+    private final LongAdder invalidOperation = new LongAdder();
+    private final LongAdder paymentsDeclined = new LongAdder();
+    private final LongAdder captureFailures = new LongAdder();
+
+    private final LongAdder changeCalculations = new LongAdder();
+    private final LongAdder changeFailures = new LongAdder();
+    private final LatencyHistogram changeLatency = new LatencyHistogram();
+    private final LatencyHistogram dispenseLatency = new LatencyHistogram();
+
+    private ObjectName objectName;
+
+    /**
+     * Creates metrics that record.
+     */
+    public MachineMetrics() {
+        this(true);
+    }
+
+    private MachineMetrics(boolean enabled) {
+        this.enabled = enabled;
+        this.disabledSession = enabled ? null : new SessionCounters(this);
+        for (int i = 0; i < COUNTERS; i++) {
+            retired[i] = new LongAdder();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ==================== JMX ====================
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     * @param machineName name identifying the machine, e.g. its serial number
+     * @return the object name the metrics were registered under
+     * @throws IllegalStateException if the metrics are disabled or already registered,
+     *                               or the name is already taken by another machine
+     */
+    public synchronized ObjectName register(String machineName) {
+        if (!enabled) {
+            throw new IllegalStateException("Disabled metrics cannot be registered");
+        }
+        if (objectName != null) {
+            throw new IllegalStateException("Metrics already registered as " + objectName);
+        }
+        try {
+            ObjectName name = new ObjectName("com.vendingmachine:type=VendingMachine,name="
+                + ObjectName.quote(machineName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+            return name;
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("A machine named " + machineName + " is already registered", e);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics for " + machineName, e);
+        }
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if registered.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Already gone
+        }
+        objectName = null;
+    }
+
+    // ==================== Recording ====================
+
+    /**
+     * Creates the counters a session records into.
+     * @param session the session; its counters are folded into the totals once it is unreachable
+     * @return the session's counters, or a shared instance that records nothing if disabled
+     */
+    public SessionCounters newSession(Object session) {
+        if (!enabled) {
+            return disabledSession;
+        }
+        SessionCounters counters = new SessionCounters(this);
+        sessions.add(counters);
+        CLEANER.register(session, counters::retire);
+        return counters;
+    }
+
+    /**
+     * Starts timing an operation, if it is one of the sampled ones.
+     * @return the start time to pass to a record method, 0 if disabled or not sampled
+     */
+    public long startTimer() {
+        if (!enabled || (ThreadLocalRandom.current().nextInt() & (LATENCY_SAMPLE_RATE - 1)) != 0) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records one change calculation.
+     * @param startNanos value returned by {@link #startTimer()} before the calculation
+     * @param success whether exact change could be made
+     */
+    public void recordChangeCalculation(long startNanos, boolean success) {
+        if (enabled) {
+            if (startNanos != 0) {
+                changeLatency.record(System.nanoTime() - startNanos);
+            }
+            changeCalculations.increment();
+            if (!success) {
+                changeFailures.increment();
+            }
+        }
+    }
+
+    /**
+     * Counts an exception thrown to a customer. Exceptions of other types are ignored.
+     * @param e the exception
+     */
+    public void recordException(RuntimeException e) {
+        if (!enabled) {
+            return;
+        }
+        if (e instanceof InsufficientChangeException) {
+            insufficientChange.increment();
+        } else if (e instanceof ProductNotAvailableException) {
+            productNotAvailable.increment();
+        } else if (e instanceof InsufficientMoneyException) {
+            insufficientMoney.increment();
+        } else if (e instanceof InvalidOperationException) {
+            invalidOperation.increment();
+        }
+    }
+
+    /**
+     * Counts a card charge the authorizer refused or failed after the products were dispensed.
+     * Called on the authorizer's thread.
+     */
+    public void recordCaptureFailure() {
+        if (enabled) {
+            captureFailures.increment();
+        }
+    }
+
+    /**
+     * Counts a rejected operation of the result API like the exception the throwing API
+     * would have raised for it; declined card payments have their own count.
+     * @param result the rejection; other results are ignored
+     */
+    public void recordRejection(VendResult result) {
+        if (!enabled || !(result instanceof VendResult.Rejected)) {
+            return;
+        }
+        switch ((VendResult.Rejected) result) {
+            case NO_EXACT_CHANGE:
+                insufficientChange.increment();
+                break;
+            case UNKNOWN_SHELF:
+            case SOLD_OUT:
+                productNotAvailable.increment();
+                break;
+            case NOT_ENOUGH_MONEY:
+                insufficientMoney.increment();
+                break;
+            case PAYMENT_DECLINED:
+                paymentsDeclined.increment();
+                break;
+            default:
+                invalidOperation.increment();
+                break;
+        }
+    }
+
+    // ==================== MXBean Attributes ====================
+
+    @Override
+    public long getIdleEntries() {
+        return total(STATE_IDLE);
+    }
+
+    @Override
+    public long getHasMoneyEntries() {
+        return total(STATE_HAS_MONEY);
+    }
+
+    @Override
+    public long getDispensingEntries() {
+        return total(STATE_DISPENSING);
+    }
+
+    @Override
+    public long getAuthorizingEntries() {
+        return total(STATE_AUTHORIZING);
+    }
+
+    @Override
+    public long getAuthorizedEntries() {
+        return total(STATE_AUTHORIZED);
+    }
+
+    @Override
+    public long getCoinsInserted() {
+        return total(COINS_INSERTED);
+    }
+
+    @Override
+    public long getProductsSelected() {
+        return total(PRODUCTS_SELECTED);
+    }
+
+    @Override
+    public long getProductsDispensed() {
+        return total(PRODUCTS_DISPENSED);
+    }
+
+    @Override
+    public long getTransactionsCancelled() {
+        return total(TRANSACTIONS_CANCELLED);
+    }
+
+    @Override
+    public long getInsufficientChangeExceptions() {
+        return insufficientChange.sum();
+    }
+
+    @Override
+    public long getProductNotAvailableExceptions() {
+        return productNotAvailable.sum();
+    }
+
+    @Override
+    public long getInsufficientMoneyExceptions() {
+        return insufficientMoney.sum();
+    }
+
+    @Override
+    public long getInvalidOperationExceptions() {
+        return invalidOperation.sum();
+    }
+
+    @Override
+    public long getPaymentsDeclined() {
+        return paymentsDeclined.sum();
+    }
+
+    @Override
+    public long getPaymentCaptureFailures() {
+        return captureFailures.sum();
+    }
+
+    @Override
+    public long getChangeCalculations() {
+        return changeCalculations.sum();
+    }
+
+    @Override
+    public long getChangeFailures() {
+        return changeFailures.sum();
+    }
+
+    @Override
+    public long getChangeLatencyP50Nanos() {
+        return changeLatency.percentile(50);
+    }
+
+    @Override
+    public long getChangeLatencyP99Nanos() {
+        return changeLatency.percentile(99);
+    }
+
+    @Override
+    public long getChangeLatencyP999Nanos() {
+        return changeLatency.percentile(99.9);
+    }
+
+    @Override
+    public long getDispenseLatencyP50Nanos() {
+        return dispenseLatency.percentile(50);
+    }
+
+    @Override
+    public long getDispenseLatencyP99Nanos() {
+        return dispenseLatency.percentile(99);
+    }
+
+    @Override
+    public long getDispenseLatencyP999Nanos() {
+        return dispenseLatency.percentile(99.9);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Session counters belong to their sessions' threads, so they are not cleared; the
+     * current totals become the new zero instead.
+     */
+    @Override
+    public synchronized void reset() {
+        long[] baseline = new long[COUNTERS];
+        for (int i = 0; i < COUNTERS; i++) {
+            baseline[i] = sum(i);
+        }
+        resetBaseline = baseline;
+        insufficientChange.reset();
+        productNotAvailable.reset();
+        insufficientMoney.reset();
+        invalidOperation.reset();
+        paymentsDeclined.reset();
+        captureFailures.reset();
+        changeCalculations.reset();
+        changeFailures.reset();
+        changeLatency.reset();
+        dispenseLatency.reset();
+    }
+
+    private long total(int counter) {
+        return sum(counter) - resetBaseline[counter];
+    }
+
+    private long sum(int counter) {
+        long total = retired[counter].sum();
+        for (SessionCounters session : sessions) {
+            total += session.get(counter);
+        }
+        return total;
+    }
+
+    // ==================== Session Counters ====================
+
+    /**
+     * Operation and state counters of one session.
+     * Written only by the thread driving the session, read by any thread.
+     */
+    public static final class SessionCounters {
+
+        private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+        // Counters sit in the middle of the array so two sessions never share a cache line
+        private static final int PADDING = 8;
+
+        private final MachineMetrics metrics;
+        private final long[] counts = new long[PADDING + COUNTERS + PADDING];
+
+        private SessionCounters(MachineMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public MachineMetrics getMetrics() {
+            return metrics;
+        }
+
+        public void recordStateEntry(int state) {
+            increment(state);
+        }
+
+        public void recordCoinInserted() {
+            increment(COINS_INSERTED);
+        }
+
+        public void recordProductSelected() {
+            increment(PRODUCTS_SELECTED);
+        }
+
+        public void recordProductsSelected(int count) {
+            add(PRODUCTS_SELECTED, count);
+        }
+
+        public void recordTransactionCancelled() {
+            increment(TRANSACTIONS_CANCELLED);
+        }
+
+        /**
+         * Records a successful dispense.
+         * @param startNanos value returned by {@link MachineMetrics#startTimer()} when the dispense started
+         */
+        public void recordProductDispensed(long startNanos) {
+            recordProductsDispensed(startNanos, 1);
+        }
+
+        /**
+         * Records a successful dispense of several products at once (a cart).
+         * @param startNanos value returned by {@link MachineMetrics#startTimer()} when the dispense started
+         * @param count number of products dispensed
+         */
+        public void recordProductsDispensed(long startNanos, int count) {
+            if (metrics.enabled) {
+                if (startNanos != 0) {
+                    metrics.dispenseLatency.record(System.nanoTime() - startNanos);
+                }
+                add(PRODUCTS_DISPENSED, count);
+            }
+        }
+
+        private void increment(int counter) {
+            add(counter, 1);
+        }
+
+        private void add(int counter, int amount) {
+            if (metrics.enabled) {
+                int i = PADDING + counter;
+                // Single writer: no read-modify-write atomicity needed, only visibility to readers
+                COUNTS.setOpaque(counts, i, counts[i] + amount);
+            }
+        }
+
+        private long get(int counter) {
+            return (long) COUNTS.getOpaque(counts, PADDING + counter);
+        }
+
+        private void retire() {
+            for (int i = 0; i < COUNTERS; i++) {
+                metrics.retired[i].add(get(i));
+            }
+            metrics.sessions.remove(this);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.vendingmachine.metrics;
+
+/**
+ * JMX view of one machine's {@link MachineMetrics}.
+ * Registered by {@link MachineMetrics#register(String)} as
+ * {@code com.vendingmachine:type=VendingMachine,name=<machine name>}.
+ */
+public interface MachineMetricsMXBean {
+
+    // ==================== State Transitions ====================
+
+    long getIdleEntries();
+
+    long getHasMoneyEntries();
+
+    long getDispensingEntries();
+
+    long getAuthorizingEntries();
+
+    long getAuthorizedEntries();
+
+    // ==================== Operations ====================
+
+    long getCoinsInserted();
+
+    long getProductsSelected();
+
+    long getProductsDispensed();
+
+    long getTransactionsCancelled();
+
+    // ==================== Exceptions (and matching VendResult rejections) ====================
+
+    long getInsufficientChangeExceptions();
+
+    long getProductNotAvailableExceptions();
+
+    long getInsufficientMoneyExceptions();
+
+    long getInvalidOperationExceptions();
+
+    // ==================== Card Payments ====================
+
+    long getPaymentsDeclined();
+
+    long getPaymentCaptureFailures();
+
+    // ==================== Change Calculation ====================
+
+    long getChangeCalculations();
+
+    long getChangeFailures();
+
+    long getChangeLatencyP50Nanos();
+
+    long getChangeLatencyP99Nanos();
+
+    long getChangeLatencyP999Nanos();
+
+    // ==================== Dispensing ====================
+
+    long getDispenseLatencyP50Nanos();
+
+    long getDispenseLatencyP99Nanos();
+
+    long getDispenseLatencyP999Nanos();
+
+    /**
+     * Sets all counters and histograms back to zero.
+     */
+    void reset();
+}
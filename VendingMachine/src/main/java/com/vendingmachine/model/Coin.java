@@ -1,5 +1,10 @@
 package com.vendingmachine.model;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
 /**
  * Enum representing different coin denominations accepted by the vending machine.
  * 
@@ -12,6 +17,11 @@ public enum Coin {
     QUARTER(25),
     DOLLAR(100);
 
+    // Denominations ordered by value, largest first; sorted once
+    private static final List<Coin> LARGEST_FIRST = Arrays.stream(values())
+        .sorted(Comparator.comparingInt(Coin::getValue).reversed())
+        .collect(Collectors.toUnmodifiableList());
+
     private final int value;
 
     Coin(int value) {
@@ -25,4 +35,12 @@ public enum Coin {
     public int getValue() {
         return value;
     }
+
+    /**
+     * Gets all denominations ordered by value, largest first.
+     * @return unmodifiable list shared by all callers
+     */
+    public static List<Coin> largestFirst() {
+        return LARGEST_FIRST;
+    }
 }
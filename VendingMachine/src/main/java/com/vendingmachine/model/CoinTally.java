@@ -0,0 +1,187 @@
+package com.vendingmachine.model;
+
+import com.vendingmachine.change.DenominationSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts of coins per denomination packed into a single {@code long}.
+ *
+ * A denomination is identified by its position in the machine's {@link DenominationSet}.
+ * Each position gets a {@value #BITS_PER_COIN}-bit lane at {@code index * BITS_PER_COIN}, so a
+ * tally holds up to {@value #MAX_PER_COIN} coins of each of up to {@value #MAX_DENOMINATIONS}
+ * denominations. Adding a coin and reading a count are constant-time and allocation-free,
+ * which makes it suitable for the coins inserted during one transaction.
+ *
+ * The {@link Coin} overloads are for tallies of {@link DenominationSet#US}, whose positions
+ * are the {@link Coin#ordinal()}s.
+ */
+public final class CoinTally {
+
+    public static final int BITS_PER_COIN = 8;
+    public static final int MAX_PER_COIN = (1 << BITS_PER_COIN) - 1;
+    /** Most denominations a tally, and so a machine's denomination set, can have. */
+    public static final int MAX_DENOMINATIONS = Long.SIZE / BITS_PER_COIN;
+    public static final long EMPTY = 0L;
+
+    private static final Coin[] COINS = Coin.values();
+
+    static {
+        if (COINS.length > MAX_DENOMINATIONS) {
+            throw new ExceptionInInitializerError("Too many coin denominations for a packed tally");
+        }
+    }
+
+    private CoinTally() {
+    }
+
+    /**
+     * Gets the number of coins of one denomination in a tally.
+     * @param tally packed tally
+     * @param denomination position of the denomination in the set
+     * @return count of that denomination
+     */
+    public static int count(long tally, int denomination) {
+        return (int) (tally >>> shift(denomination)) & MAX_PER_COIN;
+    }
+
+    /**
+     * Gets the number of coins of one denomination in a tally of US coins.
+     * @param tally packed tally
+     * @param coin type of coin
+     * @return count of that coin
+     */
+    public static int count(long tally, Coin coin) {
+        return count(tally, coin.ordinal());
+    }
+
+    /**
+     * Adds one coin to a tally.
+     * @param tally packed tally
+     * @param denomination position of the denomination in the set
+     * @return the new tally
+     * @throws IllegalStateException if the tally already holds {@value #MAX_PER_COIN} coins of that denomination
+     */
+    public static long add(long tally, int denomination) {
+        if (count(tally, denomination) == MAX_PER_COIN) {
+            throw new IllegalStateException("Cannot hold more than " + MAX_PER_COIN
+                + " coins of denomination " + denomination);
+        }
+        return tally + (1L << shift(denomination));
+    }
+
+    /**
+     * Adds one coin to a tally of US coins.
+     * @param tally packed tally
+     * @param coin type of coin
+     * @return the new tally
+     * @throws IllegalStateException if the tally already holds {@value #MAX_PER_COIN} coins of that type
+     */
+    public static long add(long tally, Coin coin) {
+        if (count(tally, coin) == MAX_PER_COIN) {
+            throw new IllegalStateException("Cannot hold more than " + MAX_PER_COIN + " " + coin.name() + " coins");
+        }
+        return tally + (1L << shift(coin.ordinal()));
+    }
+
+    /**
+     * Packs per-denomination counts into a tally.
+     * @param counts coin counts indexed by position in the set, at most {@value #MAX_DENOMINATIONS}
+     * @return the packed tally
+     * @throws IllegalArgumentException if there are too many counts, or a count is negative or
+     *         above {@value #MAX_PER_COIN}
+     */
+    public static long fromCounts(int[] counts) {
+        if (counts.length > MAX_DENOMINATIONS) {
+            throw new IllegalArgumentException("Cannot pack " + counts.length + " denominations");
+        }
+        long tally = EMPTY;
+        for (int i = 0; i < counts.length; i++) {
+            int count = counts[i];
+            if (count < 0 || count > MAX_PER_COIN) {
+                throw new IllegalArgumentException("Cannot pack " + count + " coins of denomination " + i);
+            }
+            tally |= (long) count << shift(i);
+        }
+        return tally;
+    }
+
+    /**
+     * Gets the number of coins in a tally.
+     * @param tally packed tally
+     * @return coins of every denomination together
+     */
+    public static int size(long tally) {
+        int size = 0;
+        for (int i = 0; i < MAX_DENOMINATIONS; i++) {
+            size += count(tally, i);
+        }
+        return size;
+    }
+
+    /**
+     * Gets the total value of a tally.
+     * @param tally packed tally
+     * @param denominations the set the tally counts coins of
+     * @return total value in the smallest currency unit
+     */
+    public static int value(long tally, DenominationSet denominations) {
+        int total = 0;
+        for (int i = 0; i < denominations.size(); i++) {
+            total += count(tally, i) * denominations.value(i);
+        }
+        return total;
+    }
+
+    /**
+     * Gets the total value of a tally of US coins.
+     * @param tally packed tally
+     * @return total value in cents
+     */
+    public static int value(long tally) {
+        int total = 0;
+        for (Coin coin : COINS) {
+            total += count(tally, coin) * coin.getValue();
+        }
+        return total;
+    }
+
+    /**
+     * Expands a tally of US coins into a list of coins, largest first.
+     * @param tally packed tally
+     * @return new list with one entry per coin
+     */
+    public static List<Coin> toList(long tally) {
+        return toList(tally, DenominationSet.US);
+    }
+
+    /**
+     * Expands a tally into a list of the {@link Coin}s its denominations stand for, largest first.
+     * @param tally packed tally
+     * @param denominations the set the tally counts coins of
+     * @return new list with one entry per coin
+     * @throws IllegalArgumentException if the tally holds a denomination with no {@link Coin} of its value
+     */
+    public static List<Coin> toList(long tally, DenominationSet denominations) {
+        List<Coin> coins = new ArrayList<>();
+        for (int i = denominations.size() - 1; i >= 0; i--) {
+            int count = count(tally, i);
+            if (count == 0) {
+                continue;
+            }
+            Coin coin = denominations.coin(i);
+            if (coin == null) {
+                throw new IllegalArgumentException("No coin for denomination " + denominations.getCoinName(i));
+            }
+            for (int n = count; n > 0; n--) {
+                coins.add(coin);
+            }
+        }
+        return coins;
+    }
+
+    private static int shift(int denomination) {
+        return denomination * BITS_PER_COIN;
+    }
+}
@@ -1,21 +1,33 @@
 package com.vendingmachine.model;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Represents a shelf/slot in the vending machine that holds products.
  * 
  * Follows Single Responsibility Principle - manages a single shelf's product and quantity.
+ *
+ * The quantity is a lock-free counter so many sessions can sell from the same shelf
+ * concurrently. A sale first reserves one item ({@link #tryReserve()}), then either
+ * commits it ({@link #commit()}) once payment is settled or releases it back to the
+ * shelf ({@link #release()}). The available and reserved counts are packed into one
+ * atomic word and changed together by compare-and-set, so the count can never go below
+ * zero and an item is never sold twice.
  */
 public class ItemShelf {
+    private static final long COUNT_MASK = 0xFFFF_FFFFL;
+
     private final String code;
-    private Product product;
-    private int quantity;
+    private volatile Product product;
+    // High 32 bits: reserved items, low 32 bits: available items
+    private final AtomicLong stock;
 
     public ItemShelf(String code) {
         if (code == null || code.trim().isEmpty()) {
             throw new IllegalArgumentException("Shelf code cannot be null or empty");
         }
         this.code = code;
-        this.quantity = 0;
+        this.stock = new AtomicLong();
     }
 
     public String getCode() {
@@ -30,15 +42,51 @@ public class ItemShelf {
         this.product = product;
     }
 
+    /**
+     * Gets the number of items that can still be sold (not counting reserved items).
+     * @return available quantity
+     */
     public int getQuantity() {
-        return quantity;
+        return available(stock.get());
     }
 
-    public void setQuantity(int quantity) {
+    /**
+     * Gets the number of items reserved by sales that have not completed yet.
+     * @return reserved quantity
+     */
+    public int getReservedQuantity() {
+        return reserved(stock.get());
+    }
+
+    /**
+     * Gets the number of items physically on the shelf: available plus reserved, read together.
+     * @return stocked quantity
+     */
+    public int getStockedQuantity() {
+        long current = stock.get();
+        return available(current) + reserved(current);
+    }
+
+    /**
+     * Sets the number of items physically on the shelf.
+     * Items reserved by sales in progress are part of that number, so they are not
+     * counted as available again, and the shelf keeps at least those.
+     * @param quantity items on the shelf
+     * @return the number of items now on the shelf: {@code quantity}, or the reserved items
+     *         if there are more of them
+     */
+    public int setQuantity(int quantity) {
         if (quantity < 0) {
             throw new IllegalArgumentException("Quantity cannot be negative");
         }
-        this.quantity = quantity;
+        long current;
+        long updated;
+        do {
+            current = stock.get();
+            int reserved = reserved(current);
+            updated = pack(Math.max(quantity - reserved, 0), reserved);
+        } while (!stock.compareAndSet(current, updated));
+        return available(updated) + reserved(updated);
     }
 
     /**
@@ -46,7 +94,53 @@ public class ItemShelf {
      * @return true if quantity > 0, false otherwise
      */
     public boolean isAvailable() {
-        return product != null && quantity > 0;
+        return product != null && getQuantity() > 0;
+    }
+
+    /**
+     * Atomically takes one item off the available count and holds it for a sale.
+     * @return true if an item was reserved, false if the shelf is empty
+     */
+    public boolean tryReserve() {
+        if (product == null) {
+            return false;
+        }
+        long current;
+        do {
+            current = stock.get();
+            if (available(current) == 0) {
+                return false;
+            }
+        } while (!stock.compareAndSet(current, pack(available(current) - 1, reserved(current) + 1)));
+        return true;
+    }
+
+    /**
+     * Completes a sale of a previously reserved item.
+     * @throws IllegalStateException if there is no outstanding reservation
+     */
+    public void commit() {
+        long current;
+        do {
+            current = stock.get();
+            if (reserved(current) == 0) {
+                throw new IllegalStateException("No reserved item to commit on shelf " + code);
+            }
+        } while (!stock.compareAndSet(current, pack(available(current), reserved(current) - 1)));
+    }
+
+    /**
+     * Returns a previously reserved item to the shelf.
+     * @throws IllegalStateException if there is no outstanding reservation
+     */
+    public void release() {
+        long current;
+        do {
+            current = stock.get();
+            if (reserved(current) == 0) {
+                throw new IllegalStateException("No reserved item to release on shelf " + code);
+            }
+        } while (!stock.compareAndSet(current, pack(available(current) + 1, reserved(current) - 1)));
     }
 
     /**
@@ -55,10 +149,10 @@ public class ItemShelf {
      * @throws IllegalStateException if no products available
      */
     public Product dispense() {
-        if (!isAvailable()) {
+        if (!tryReserve()) {
             throw new IllegalStateException("No products available on shelf " + code);
         }
-        quantity--;
+        commit();
         return product;
     }
 
@@ -70,7 +164,25 @@ public class ItemShelf {
         if (amount < 0) {
             throw new IllegalArgumentException("Cannot add negative amount");
         }
-        this.quantity += amount;
+        long current;
+        do {
+            current = stock.get();
+            if ((long) available(current) + amount > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Shelf " + code + " cannot hold more than " + Integer.MAX_VALUE + " items");
+            }
+        } while (!stock.compareAndSet(current, current + amount));
+    }
+
+    private static int available(long stock) {
+        return (int) (stock & COUNT_MASK);
+    }
+
+    private static int reserved(long stock) {
+        return (int) (stock >>> 32);
+    }
+
+    private static long pack(int available, int reserved) {
+        return ((long) reserved << 32) | (available & COUNT_MASK);
     }
 
     @Override
@@ -78,6 +190,6 @@ public class ItemShelf {
         return String.format("Shelf[%s]: %s (Qty: %d)", 
             code, 
             product != null ? product.getName() : "Empty", 
-            quantity);
+            getQuantity());
     }
 }
@@ -0,0 +1,38 @@
+package com.vendingmachine.payment;
+
+/**
+ * The outcome of a card payment authorization: a hold on the customer's account, or a decline.
+ *
+ * @param id identifier of the hold, used to capture or release it; null if declined
+ * @param paymentToken the card or wallet token that was authorized
+ * @param amountCents amount held, in cents (the amount requested, for a decline)
+ * @param declineReason why the payment was declined, or null if it was approved
+ */
+public record Authorization(String id, String paymentToken, int amountCents, String declineReason) {
+
+    /**
+     * Creates an approved authorization.
+     * @param id identifier of the hold
+     * @param paymentToken the authorized token
+     * @param amountCents amount held
+     * @return the authorization
+     */
+    public static Authorization approved(String id, String paymentToken, int amountCents) {
+        return new Authorization(id, paymentToken, amountCents, null);
+    }
+
+    /**
+     * Creates a declined authorization.
+     * @param paymentToken the declined token
+     * @param amountCents amount requested
+     * @param reason why it was declined
+     * @return the authorization
+     */
+    public static Authorization declined(String paymentToken, int amountCents, String reason) {
+        return new Authorization(null, paymentToken, amountCents, reason);
+    }
+
+    public boolean isApproved() {
+        return declineReason == null;
+    }
+}
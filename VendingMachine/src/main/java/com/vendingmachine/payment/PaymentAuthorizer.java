@@ -0,0 +1,41 @@
+package com.vendingmachine.payment;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Authorizes cashless (card or mobile) payments with an external payment service.
+ *
+ * All calls return at once and complete their future when the service answers, which can
+ * take hundreds of milliseconds; no vending machine thread waits for them. A payment is a
+ * pre-authorization hold for an amount the customer agreed to, followed by a capture of
+ * the actual price when the product is dispensed, or a release if nothing is sold.
+ *
+ * Implementations must be thread-safe; every session of every machine may call them, and
+ * futures may complete on any thread.
+ */
+public interface PaymentAuthorizer {
+
+    /**
+     * Requests a hold on the customer's account.
+     * @param paymentToken card or wallet token presented by the customer
+     * @param amountCents amount to hold, in cents
+     * @return future completed with the authorization, approved or declined; a future that
+     *         completes exceptionally (service unreachable) is treated as a decline
+     */
+    CompletableFuture<Authorization> authorize(String paymentToken, int amountCents);
+
+    /**
+     * Charges part or all of a hold; the rest of the hold is released.
+     * @param authorization an approved authorization
+     * @param amountCents amount to charge, at most the amount held
+     * @return future completed once the charge is accepted
+     */
+    CompletableFuture<Void> capture(Authorization authorization, int amountCents);
+
+    /**
+     * Releases a hold without charging anything.
+     * @param authorization an approved authorization
+     * @return future completed once the hold is released
+     */
+    CompletableFuture<Void> release(Authorization authorization);
+}
@@ -0,0 +1,182 @@
+package com.vendingmachine.payment;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process {@link PaymentAuthorizer} for tests, demos and load runs.
+ *
+ * Every call answers after a fixed latency, and a configurable fraction of authorizations is
+ * declined at random. Answers are delivered by one daemon timer thread, so thousands of
+ * payments can be in flight without a thread each. Holds are tracked so that capturing or
+ * releasing an unknown or already settled hold fails, and the counters show what was
+ * authorized, charged and released.
+ */
+public class StubPaymentAuthorizer implements PaymentAuthorizer, AutoCloseable {
+
+    private final long latencyNanos;
+    private final double declineRate;
+    private final SplittableRandom random;
+    private final ScheduledExecutorService timer;
+
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<String, Integer> holds = new ConcurrentHashMap<>();
+    private final LongAdder approvals = new LongAdder();
+    private final LongAdder declines = new LongAdder();
+    private final LongAdder captures = new LongAdder();
+    private final LongAdder capturedCents = new LongAdder();
+    private final LongAdder releases = new LongAdder();
+
+    /**
+     * Creates a stub authorizer with a random seed.
+     * @param latency time every call takes to answer
+     * @param declineRate fraction of authorizations declined, from 0 to 1
+     */
+    public StubPaymentAuthorizer(Duration latency, double declineRate) {
+        this(latency, declineRate, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates a stub authorizer whose declines repeat for the same seed and call order.
+     * @param latency time every call takes to answer
+     * @param declineRate fraction of authorizations declined, from 0 to 1
+     * @param seed seed for choosing declines
+     */
+    public StubPaymentAuthorizer(Duration latency, double declineRate, long seed) {
+        if (latency == null || latency.isNegative()) {
+            throw new IllegalArgumentException("Latency cannot be negative");
+        }
+        if (!(declineRate >= 0 && declineRate <= 1)) {
+            throw new IllegalArgumentException("Decline rate must be between 0 and 1");
+        }
+        this.latencyNanos = latency.toNanos();
+        this.declineRate = declineRate;
+        this.random = new SplittableRandom(seed);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stub-payment-authorizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Authorization> authorize(String paymentToken, int amountCents) {
+        if (paymentToken == null || paymentToken.isEmpty()) {
+            throw new IllegalArgumentException("Payment token cannot be empty");
+        }
+        if (amountCents <= 0) {
+            throw new IllegalArgumentException("Authorization amount must be positive");
+        }
+        Authorization authorization;
+        if (nextDecline()) {
+            declines.increment();
+            authorization = Authorization.declined(paymentToken, amountCents, "Declined by stub authorizer");
+        } else {
+            String id = "stub-" + nextId.incrementAndGet();
+            holds.put(id, amountCents);
+            approvals.increment();
+            authorization = Authorization.approved(id, paymentToken, amountCents);
+        }
+        return answer(authorization);
+    }
+
+    @Override
+    public CompletableFuture<Void> capture(Authorization authorization, int amountCents) {
+        Integer held = holds.get(authorization.id());
+        if (held == null) {
+            return CompletableFuture.failedFuture(unknownHold(authorization));
+        }
+        if (amountCents < 0 || amountCents > held) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                "Cannot capture " + amountCents + " cents of a " + held + " cent hold"));
+        }
+        if (!holds.remove(authorization.id(), held)) {
+            return CompletableFuture.failedFuture(unknownHold(authorization));
+        }
+        captures.increment();
+        capturedCents.add(amountCents);
+        return answer(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> release(Authorization authorization) {
+        if (holds.remove(authorization.id()) == null) {
+            return CompletableFuture.failedFuture(unknownHold(authorization));
+        }
+        releases.increment();
+        return answer(null);
+    }
+
+    private synchronized boolean nextDecline() {
+        return random.nextDouble() < declineRate;
+    }
+
+    private <T> CompletableFuture<T> answer(T value) {
+        if (latencyNanos == 0) {
+            return CompletableFuture.completedFuture(value);
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        timer.schedule(() -> future.complete(value), latencyNanos, TimeUnit.NANOSECONDS);
+        return future;
+    }
+
+    private static IllegalStateException unknownHold(Authorization authorization) {
+        return new IllegalStateException("No open hold " + authorization.id());
+    }
+
+    // ==================== Counters ====================
+
+    public long getApprovals() {
+        return approvals.sum();
+    }
+
+    public long getDeclines() {
+        return declines.sum();
+    }
+
+    public long getCaptures() {
+        return captures.sum();
+    }
+
+    public long getCapturedCents() {
+        return capturedCents.sum();
+    }
+
+    public long getReleases() {
+        return releases.sum();
+    }
+
+    /**
+     * Gets the number of approved holds not yet captured or released.
+     * @return open holds
+     */
+    public int getOpenHolds() {
+        return holds.size();
+    }
+
+    /**
+     * Stops the timer thread once the answers already scheduled are delivered, waiting at most
+     * one latency period for them (plus a second); later calls fail.
+     */
+    @Override
+    public void close() {
+        timer.shutdown();
+        try {
+            if (!timer.awaitTermination(latencyNanos + TimeUnit.SECONDS.toNanos(1), TimeUnit.NANOSECONDS)) {
+                timer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            timer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
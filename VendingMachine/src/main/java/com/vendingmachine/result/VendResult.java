@@ -0,0 +1,107 @@
+package com.vendingmachine.result;
+
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+
+import java.util.List;
+
+/**
+ * Outcome of a {@link com.vendingmachine.VendingMachine} operation, for callers that treat
+ * failures such as a sold-out shelf as normal business rather than as exceptions.
+ *
+ * A rejection is one of the {@link Rejected} constants: returning it allocates nothing
+ * and captures no stack trace, unlike the exception-throwing API. Callers distinguish
+ * outcomes with {@code instanceof} (or a pattern switch on newer Java versions):
+ * <pre>
+ * VendResult result = vm.tryDispenseProduct();
+ * if (result instanceof VendResult.Dispensed dispensed) {
+ *     hand(dispensed.product());
+ * } else if (result == VendResult.Rejected.NO_EXACT_CHANGE) {
+ *     display("Exact change only");
+ * }
+ * </pre>
+ */
+public sealed interface VendResult
+    permits VendResult.Accepted, VendResult.Dispensed, VendResult.CartDispensed, VendResult.Refunded,
+        VendResult.Rejected {
+
+    /** Shared result of an accepted coin, selection or card payment. */
+    Accepted ACCEPTED = new Accepted();
+
+    /**
+     * Checks whether the operation went through.
+     * @return false for a {@link Rejected} result
+     */
+    default boolean isSuccess() {
+        return !(this instanceof Rejected);
+    }
+
+    /**
+     * A coin, selection or card payment was accepted. The only instance is {@link VendResult#ACCEPTED}.
+     */
+    final class Accepted implements VendResult {
+        private Accepted() {
+        }
+
+        @Override
+        public String toString() {
+            return "ACCEPTED";
+        }
+    }
+
+    /**
+     * A product was dispensed.
+     * @param shelfCode shelf the product came from
+     * @param product the dispensed product
+     * @param change coins returned, as a packed {@link CoinTally} (empty for a card payment)
+     * @param changeCents value of the change in cents
+     */
+    record Dispensed(String shelfCode, Product product, long change, int changeCents) implements VendResult {
+    }
+
+    /**
+     * Several products were dispensed as one purchase, with change computed once.
+     * @param shelfCodes shelves the products came from, one entry per product
+     * @param products the dispensed products, in cart order
+     * @param change coins returned, as a packed {@link CoinTally} (empty for a card payment)
+     * @param changeCents value of the change in cents
+     */
+    record CartDispensed(List<String> shelfCodes, List<Product> products, long change, int changeCents)
+        implements VendResult {
+    }
+
+    /**
+     * A transaction was cancelled and the inserted coins handed back.
+     * @param coins coins returned, as a packed {@link CoinTally} (empty for a card payment or
+     *              when nothing was inserted)
+     * @param refundCents value of the coins returned
+     */
+    record Refunded(long coins, int refundCents) implements VendResult {
+    }
+
+    /**
+     * Why an operation was refused. Nothing changed except where noted.
+     */
+    enum Rejected implements VendResult {
+        /**
+         * The balance does not cover the price of the selected product or cart. When
+         * dispensing, a restock raised the price after selection and the money has been refunded.
+         */
+        NOT_ENOUGH_MONEY,
+        /** There is no shelf with that code. */
+        UNKNOWN_SHELF,
+        /**
+         * The shelf, or a shelf in the cart, is empty or has no product. When dispensing, the
+         * money has been refunded.
+         */
+        SOLD_OUT,
+        /** Exact change cannot be made. The money has been refunded. */
+        NO_EXACT_CHANGE,
+        /** The machine cannot hold more coins of that denomination in one transaction. */
+        COIN_LIMIT,
+        /** The operation is not allowed in the machine's current state. */
+        WRONG_STATE,
+        /** The card payment was declined or could not be authorized. The machine is back to idle. */
+        PAYMENT_DECLINED
+    }
+}
@@ -0,0 +1,44 @@
+package com.vendingmachine.state;
+
+/**
+ * The states of a vending machine transaction.
+ *
+ * A session stores its state as the one-byte {@link #code()}; {@link TransitionTable}
+ * is indexed by the same codes. The codes are the ordinals, so {@link #of(byte)} is an
+ * array lookup.
+ */
+public enum MachineState {
+    /** No money inserted. */
+    IDLE,
+    /** Money inserted, no product selected yet. */
+    HAS_MONEY,
+    /** Product selected and paid for, waiting to be dispensed. */
+    DISPENSING,
+    /** Card payment requested, waiting for the authorizer; a product may already be selected. */
+    AUTHORIZING,
+    /** Card payment authorized, no product selected yet. */
+    AUTHORIZED;
+
+    private static final MachineState[] BY_CODE = values();
+
+    /**
+     * Gets the byte code stored for this state.
+     * @return the state code
+     */
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    /**
+     * Gets the state for a byte code.
+     * @param code a code returned by {@link #code()}
+     * @return the state
+     * @throws IllegalArgumentException if the code is not a state code
+     */
+    public static MachineState of(byte code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown state code: " + code);
+        }
+        return BY_CODE[code];
+    }
+}
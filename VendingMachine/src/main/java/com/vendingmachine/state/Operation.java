@@ -0,0 +1,19 @@
+package com.vendingmachine.state;
+
+/**
+ * The operations a vending machine accepts; the columns of the {@link TransitionTable}.
+ * Besides the customer operations, the outcome of a card authorization is applied as an
+ * operation too, so it follows the same table.
+ */
+public enum Operation {
+    INSERT_COIN,
+    SELECT_PRODUCT,
+    DISPENSE_PRODUCT,
+    CANCEL_TRANSACTION,
+    /** The customer pays by card; starts an authorization. */
+    AUTHORIZE_PAYMENT,
+    /** The pending authorization was approved. */
+    PAYMENT_APPROVED,
+    /** The pending authorization was declined or failed. */
+    PAYMENT_DECLINED
+}
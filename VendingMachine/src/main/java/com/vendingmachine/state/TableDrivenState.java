@@ -0,0 +1,81 @@
+package com.vendingmachine.state;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.exception.InvalidOperationException;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.result.VendResult;
+
+import java.util.List;
+
+/**
+ * A {@link VendingMachineState} that runs one fixed state of the {@link TransitionTable}
+ * through the {@link VendingEngine}. A session stores only its state code; it creates one of
+ * these views per state the first time code working with the state interface asks for it.
+ *
+ * The interface deals in {@link Coin}s: a coin is the denomination of its value in the
+ * machine's {@link DenominationSet}.
+ */
+abstract class TableDrivenState implements VendingMachineState {
+
+    private final VendingMachine vendingMachine;
+    private final MachineState state;
+
+    TableDrivenState(VendingMachine vendingMachine, MachineState state) {
+        this.vendingMachine = vendingMachine;
+        this.state = state;
+    }
+
+    @Override
+    public void insertCoin(Coin coin) {
+        VendingEngine.insertCoinOrThrow(vendingMachine, state.code(),
+            vendingMachine.getInventory().denominationOf(coin));
+    }
+
+    @Override
+    public void selectProduct(String shelfCode) {
+        VendingEngine.selectProductOrThrow(vendingMachine, state.code(), shelfCode);
+    }
+
+    @Override
+    public Product dispenseProduct() {
+        return VendingEngine.dispenseProductOrThrow(vendingMachine, state.code());
+    }
+
+    @Override
+    public VendResult tryInsertCoin(Coin coin) {
+        return VendingEngine.insertCoin(vendingMachine, state.code(),
+            vendingMachine.getInventory().denominationOf(coin));
+    }
+
+    @Override
+    public VendResult trySelectProduct(String shelfCode) {
+        return VendingEngine.selectProduct(vendingMachine, state.code(), shelfCode);
+    }
+
+    @Override
+    public VendResult tryDispenseProduct() {
+        return VendingEngine.dispenseProduct(vendingMachine, state.code());
+    }
+
+    @Override
+    public List<Coin> cancelTransaction() {
+        DenominationSet denominations = vendingMachine.getInventory().getDenominations();
+        if (!denominations.isUsCoins()) {
+            throw new InvalidOperationException("Cannot list " + denominations.getName() + " coins as US coins");
+        }
+        return CoinTally.toList(VendingEngine.cancelTransactionOrThrow(vendingMachine, state.code()), denominations);
+    }
+
+    @Override
+    public String getStateName() {
+        return state.name();
+    }
+
+    @Override
+    public MachineState getMachineState() {
+        return state;
+    }
+}
@@ -0,0 +1,205 @@
+package com.vendingmachine.state;
+
+import java.util.Arrays;
+
+/**
+ * The vending machine's state machine as a lookup table: for every state and
+ * {@link Operation}, the state entered when the operation succeeds, the state entered when
+ * it is accepted but fails (product sold out, no exact change, not enough money), or
+ * {@link #REJECT} with the message explaining why the operation is not allowed.
+ *
+ * States are {@link MachineState#code()} bytes and the table is a flat array indexed by
+ * {@code state * OPERATIONS + operation}, so a transition is one array load instead of a
+ * virtual call on a state object. Both {@link com.vendingmachine.VendingMachine} sessions
+ * and {@link com.vendingmachine.fleet.Fleet} shards run on this table.
+ *
+ * The table is checked when the class loads (see {@link #verify()}): every state/operation
+ * pair is either a transition or a rejection with a message, every state is reachable from
+ * {@link MachineState#IDLE}, and every state can get back to it.
+ */
+public final class TransitionTable {
+
+    /** Marks an operation that is not allowed in a state. */
+    public static final byte REJECT = -1;
+
+    private static final MachineState[] STATES = MachineState.values();
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final int STATE_COUNT = STATES.length;
+    private static final int OPERATION_COUNT = OPERATIONS.length;
+
+    private static final byte[] ON_SUCCESS = new byte[STATE_COUNT * OPERATION_COUNT];
+    private static final byte[] ON_FAILURE = new byte[STATE_COUNT * OPERATION_COUNT];
+    private static final String[] REJECTIONS = new String[STATE_COUNT * OPERATION_COUNT];
+
+    static {
+        Arrays.fill(ON_SUCCESS, REJECT);
+        Arrays.fill(ON_FAILURE, REJECT);
+
+        String noPayment = "No card payment is being authorized";
+        String authorizing = "Payment authorization in progress. Please wait.";
+        String cardPayment = "Cannot insert coins during a card payment";
+
+        allow(MachineState.IDLE, Operation.INSERT_COIN, MachineState.HAS_MONEY, MachineState.IDLE);
+        reject(MachineState.IDLE, Operation.SELECT_PRODUCT,
+            "Please insert coins first before selecting a product");
+        reject(MachineState.IDLE, Operation.DISPENSE_PRODUCT,
+            String.format("Cannot perform '%s' in current state: %s", "dispense", MachineState.IDLE));
+        allow(MachineState.IDLE, Operation.CANCEL_TRANSACTION, MachineState.IDLE, MachineState.IDLE);
+        allow(MachineState.IDLE, Operation.AUTHORIZE_PAYMENT, MachineState.AUTHORIZING, MachineState.IDLE);
+        reject(MachineState.IDLE, Operation.PAYMENT_APPROVED, noPayment);
+        reject(MachineState.IDLE, Operation.PAYMENT_DECLINED, noPayment);
+
+        allow(MachineState.HAS_MONEY, Operation.INSERT_COIN, MachineState.HAS_MONEY, MachineState.HAS_MONEY);
+        allow(MachineState.HAS_MONEY, Operation.SELECT_PRODUCT, MachineState.DISPENSING, MachineState.HAS_MONEY);
+        reject(MachineState.HAS_MONEY, Operation.DISPENSE_PRODUCT, "Please select a product first");
+        allow(MachineState.HAS_MONEY, Operation.CANCEL_TRANSACTION, MachineState.IDLE, MachineState.IDLE);
+        reject(MachineState.HAS_MONEY, Operation.AUTHORIZE_PAYMENT, "Cannot pay by card after inserting coins");
+        reject(MachineState.HAS_MONEY, Operation.PAYMENT_APPROVED, noPayment);
+        reject(MachineState.HAS_MONEY, Operation.PAYMENT_DECLINED, noPayment);
+
+        reject(MachineState.DISPENSING, Operation.INSERT_COIN, "Cannot insert coins while dispensing. Please wait.");
+        reject(MachineState.DISPENSING, Operation.SELECT_PRODUCT,
+            "Product already selected. Please wait for dispensing.");
+        // A failed dispense refunds the money, so the machine is idle either way
+        allow(MachineState.DISPENSING, Operation.DISPENSE_PRODUCT, MachineState.IDLE, MachineState.IDLE);
+        reject(MachineState.DISPENSING, Operation.CANCEL_TRANSACTION, "Cannot cancel during dispensing");
+        reject(MachineState.DISPENSING, Operation.AUTHORIZE_PAYMENT, "Cannot pay while dispensing. Please wait.");
+        reject(MachineState.DISPENSING, Operation.PAYMENT_APPROVED, noPayment);
+        reject(MachineState.DISPENSING, Operation.PAYMENT_DECLINED, noPayment);
+
+        // Selecting while the authorization is in flight is pipelined: the selection is kept
+        // and goes to dispensing once the payment is approved
+        reject(MachineState.AUTHORIZING, Operation.INSERT_COIN, cardPayment);
+        allow(MachineState.AUTHORIZING, Operation.SELECT_PRODUCT, MachineState.AUTHORIZING, MachineState.AUTHORIZING);
+        reject(MachineState.AUTHORIZING, Operation.DISPENSE_PRODUCT, authorizing);
+        allow(MachineState.AUTHORIZING, Operation.CANCEL_TRANSACTION, MachineState.IDLE, MachineState.IDLE);
+        reject(MachineState.AUTHORIZING, Operation.AUTHORIZE_PAYMENT, authorizing);
+        allow(MachineState.AUTHORIZING, Operation.PAYMENT_APPROVED, MachineState.AUTHORIZED, MachineState.AUTHORIZED);
+        allow(MachineState.AUTHORIZING, Operation.PAYMENT_DECLINED, MachineState.IDLE, MachineState.IDLE);
+
+        reject(MachineState.AUTHORIZED, Operation.INSERT_COIN, cardPayment);
+        allow(MachineState.AUTHORIZED, Operation.SELECT_PRODUCT, MachineState.DISPENSING, MachineState.AUTHORIZED);
+        reject(MachineState.AUTHORIZED, Operation.DISPENSE_PRODUCT, "Please select a product first");
+        allow(MachineState.AUTHORIZED, Operation.CANCEL_TRANSACTION, MachineState.IDLE, MachineState.IDLE);
+        reject(MachineState.AUTHORIZED, Operation.AUTHORIZE_PAYMENT, "Payment already authorized");
+        reject(MachineState.AUTHORIZED, Operation.PAYMENT_APPROVED, noPayment);
+        reject(MachineState.AUTHORIZED, Operation.PAYMENT_DECLINED, noPayment);
+
+        verify();
+    }
+
+    private TransitionTable() {
+    }
+
+    private static void allow(MachineState from, Operation operation, MachineState onSuccess, MachineState onFailure) {
+        ON_SUCCESS[index(from.code(), operation)] = onSuccess.code();
+        ON_FAILURE[index(from.code(), operation)] = onFailure.code();
+    }
+
+    private static void reject(MachineState from, Operation operation, String message) {
+        REJECTIONS[index(from.code(), operation)] = message;
+    }
+
+    private static int index(byte state, Operation operation) {
+        return state * OPERATION_COUNT + operation.ordinal();
+    }
+
+    // ==================== Lookups ====================
+
+    /**
+     * Gets the state entered when an operation succeeds.
+     * @param state current state code
+     * @param operation the operation
+     * @return the next state code, or {@link #REJECT} if the operation is not allowed
+     */
+    public static byte onSuccess(byte state, Operation operation) {
+        return ON_SUCCESS[index(state, operation)];
+    }
+
+    /**
+     * Gets the state entered when an allowed operation fails.
+     * @param state current state code
+     * @param operation the operation
+     * @return the next state code, or {@link #REJECT} if the operation is not allowed
+     */
+    public static byte onFailure(byte state, Operation operation) {
+        return ON_FAILURE[index(state, operation)];
+    }
+
+    /**
+     * Checks whether an operation is allowed in a state.
+     * @param state current state code
+     * @param operation the operation
+     * @return true if the operation has a transition
+     */
+    public static boolean isAllowed(byte state, Operation operation) {
+        return ON_SUCCESS[index(state, operation)] != REJECT;
+    }
+
+    /**
+     * Gets the message explaining why an operation is not allowed.
+     * @param state current state code
+     * @param operation the operation
+     * @return the message, or null if the operation is allowed
+     */
+    public static String rejectionMessage(byte state, Operation operation) {
+        return REJECTIONS[index(state, operation)];
+    }
+
+    // ==================== Verification ====================
+
+    /**
+     * Checks the table exhaustively.
+     * @throws IllegalStateException if a state/operation pair is neither a complete transition
+     *         nor a rejection with a message, a state cannot be reached from
+     *         {@link MachineState#IDLE}, or a state has no way back to it
+     */
+    public static void verify() {
+        for (MachineState state : STATES) {
+            for (Operation operation : OPERATIONS) {
+                int i = index(state.code(), operation);
+                boolean allowed = ON_SUCCESS[i] != REJECT;
+                if (allowed != (ON_FAILURE[i] != REJECT) || allowed == (REJECTIONS[i] != null)) {
+                    throw new IllegalStateException("Incomplete transition: " + state + " x " + operation);
+                }
+            }
+        }
+
+        // Reachable from IDLE, following any allowed operation
+        boolean[] reachable = closure(MachineState.IDLE.code());
+        for (MachineState state : STATES) {
+            if (!reachable[state.code()]) {
+                throw new IllegalStateException("State " + state + " is unreachable from " + MachineState.IDLE);
+            }
+            if (!closure(state.code())[MachineState.IDLE.code()]) {
+                throw new IllegalStateException("State " + state + " cannot return to " + MachineState.IDLE);
+            }
+        }
+    }
+
+    private static boolean[] closure(byte start) {
+        boolean[] seen = new boolean[STATE_COUNT];
+        byte[] stack = new byte[STATE_COUNT];
+        int top = 0;
+        seen[start] = true;
+        stack[top++] = start;
+        while (top > 0) {
+            byte state = stack[--top];
+            for (Operation operation : OPERATIONS) {
+                int i = index(state, operation);
+                top = push(ON_SUCCESS[i], seen, stack, top);
+                top = push(ON_FAILURE[i], seen, stack, top);
+            }
+        }
+        return seen;
+    }
+
+    private static int push(byte state, boolean[] seen, byte[] stack, int top) {
+        if (state == REJECT || seen[state]) {
+            return top;
+        }
+        seen[state] = true;
+        stack[top] = state;
+        return top + 1;
+    }
+}
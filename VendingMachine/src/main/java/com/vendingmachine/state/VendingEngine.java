@@ -0,0 +1,652 @@
+package com.vendingmachine.state;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEvent;
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientMoneyException;
+import com.vendingmachine.exception.InvalidOperationException;
+import com.vendingmachine.exception.ProductNotAvailableException;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.metrics.MachineMetrics;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.payment.Authorization;
+import com.vendingmachine.payment.PaymentAuthorizer;
+import com.vendingmachine.result.VendResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The behavior of every state, as stateless functions of a session and its current state code.
+ *
+ * Each operation looks up its transition in the {@link TransitionTable}: a rejected operation
+ * does nothing and reports {@link VendResult.Rejected#WRONG_STATE} (or throws with the table's
+ * message), an allowed one does its work and moves the session to the table's next state.
+ * Nothing here is per session, so a session holds only its state byte, not a set of state
+ * objects.
+ *
+ * Each operation comes in two forms, like {@link VendingMachineState}: one returning a
+ * {@link VendResult} and one that throws on failure. Both have the same effects and publish
+ * the same events.
+ *
+ * Card payments: {@link #authorizePayment} starts an authorization and returns at once. The
+ * authorizer answers on its own thread, which only completes a future; the session applies
+ * the answer itself, on its own thread, through {@link #settlePayment} at its next
+ * operation. So a session still has one writer, and no thread waits for the authorizer.
+ */
+public final class VendingEngine {
+
+    private static final byte AUTHORIZING = MachineState.AUTHORIZING.code();
+
+    private VendingEngine() {
+    }
+
+    // ==================== Result API ====================
+
+    /**
+     * Inserts a coin.
+     * @param vm the session
+     * @param state the session's current state code
+     * @param denomination position of the coin's denomination in the machine's set
+     * @return {@link VendResult#ACCEPTED}, {@code COIN_LIMIT} or {@code WRONG_STATE}
+     */
+    public static VendResult insertCoin(VendingMachine vm, byte state, int denomination) {
+        byte next = TransitionTable.onSuccess(state, Operation.INSERT_COIN);
+        if (next == TransitionTable.REJECT) {
+            return VendResult.Rejected.WRONG_STATE;
+        }
+        if (!vm.tryAddInsertedCoin(denomination)) {
+            vm.enterState(TransitionTable.onFailure(state, Operation.INSERT_COIN));
+            return VendResult.Rejected.COIN_LIMIT;
+        }
+        vm.publishEvent(new VendingEvent.CoinInserted(
+            vm.getInventory().getDenominations(), denomination, vm.getCurrentBalance()));
+        vm.enterState(next);
+        return VendResult.ACCEPTED;
+    }
+
+    /**
+     * Selects a product.
+     * @param vm the session
+     * @param state the session's current state code
+     * @param shelfCode the code of the shelf containing the desired product
+     * @return {@link VendResult#ACCEPTED}, {@code UNKNOWN_SHELF}, {@code SOLD_OUT},
+     *         {@code NOT_ENOUGH_MONEY} or {@code WRONG_STATE}
+     */
+    public static VendResult selectProduct(VendingMachine vm, byte state, String shelfCode) {
+        byte next = TransitionTable.onSuccess(state, Operation.SELECT_PRODUCT);
+        if (next == TransitionTable.REJECT) {
+            return VendResult.Rejected.WRONG_STATE;
+        }
+
+        // Resolve the shelf once; dispensing works on its slot
+        Inventory inventory = vm.getInventory();
+        int shelf = inventory.resolveShelf(shelfCode);
+        VendResult.Rejected rejection = null;
+        Product product = null;
+        if (shelf == Inventory.NO_SHELF) {
+            rejection = VendResult.Rejected.UNKNOWN_SHELF;
+        } else if ((product = inventory.getAvailableProduct(shelf)) == null) {
+            rejection = VendResult.Rejected.SOLD_OUT;
+        } else if (funds(vm, state) < product.getPriceInCents()) {
+            rejection = VendResult.Rejected.NOT_ENOUGH_MONEY;
+        }
+        if (rejection != null) {
+            vm.enterState(TransitionTable.onFailure(state, Operation.SELECT_PRODUCT));
+            return rejection;
+        }
+
+        vm.setSelectedShelfCode(shelfCode);
+        vm.setSelectedShelf(shelf);
+        vm.publishEvent(new VendingEvent.ProductSelected(shelfCode, product));
+        vm.enterState(next);
+        return VendResult.ACCEPTED;
+    }
+
+    /**
+     * Dispenses the selected product and pays out change. A sold-out shelf, missing change or
+     * a price that a restock raised above the balance since selection refunds the money instead.
+     * @param vm the session
+     * @param state the session's current state code
+     * @return a {@link VendResult.Dispensed} or {@link VendResult.CartDispensed}, {@code SOLD_OUT},
+     *         {@code NOT_ENOUGH_MONEY}, {@code NO_EXACT_CHANGE} or {@code WRONG_STATE}
+     */
+    public static VendResult dispenseProduct(VendingMachine vm, byte state) {
+        byte next = TransitionTable.onSuccess(state, Operation.DISPENSE_PRODUCT);
+        if (next == TransitionTable.REJECT) {
+            return VendResult.Rejected.WRONG_STATE;
+        }
+        if (vm.getCartSize() > 0) {
+            return dispenseCart(vm, state, next);
+        }
+        String shelfCode = vm.getSelectedShelfCode();
+        int shelf = vm.getSelectedShelf();
+        Inventory inventory = vm.getInventory();
+
+        // Hold one item for this sale; another session may have sold the last one since selection
+        Product product = inventory.tryReserveProduct(shelf);
+        if (product == null) {
+            publishSaleFailed(vm, shelfCode, VendingEvent.RefundReason.SOLD_OUT);
+            refund(vm, state, VendingEvent.RefundReason.SOLD_OUT);
+            return VendResult.Rejected.SOLD_OUT;
+        }
+        // The price was checked at selection; a restock since then may have raised it
+        if (product.getPriceInCents() > vm.getCurrentBalance()) {
+            inventory.releaseReservation(shelf);
+            publishSaleFailed(vm, shelfCode, VendingEvent.RefundReason.PRICE_CHANGED);
+            refund(vm, state, VendingEvent.RefundReason.PRICE_CHANGED);
+            return VendResult.Rejected.NOT_ENOUGH_MONEY;
+        }
+
+        Authorization authorization = vm.getAuthorization();
+        if (authorization != null) {
+            // Card payment: no coins in or out; charge the price and let the rest of the hold go
+            inventory.sell(shelf, CoinTally.EMPTY, 0);
+            vm.publishEvent(new VendingEvent.ProductDispensed(shelfCode, product));
+            capturePayment(vm, authorization, product.getPriceInCents());
+            clearSelection(vm);
+            vm.endPayment();
+            vm.enterState(next);
+            return new VendResult.Dispensed(shelfCode, product, CoinTally.EMPTY, 0);
+        }
+
+        // Pay out change, bank the inserted coins and take the item off the shelf in one step;
+        // other sessions share the coin float
+        int changeAmount = vm.getCurrentBalance() - product.getPriceInCents();
+        long change = inventory.sell(shelf, vm.getInsertedCoinTally(), changeAmount);
+        if (change == Inventory.NO_SALE) {
+            // Cannot provide exact change, put the item back and refund all money
+            inventory.releaseReservation(shelf);
+            publishSaleFailed(vm, shelfCode, VendingEvent.RefundReason.NO_CHANGE);
+            refund(vm, state, VendingEvent.RefundReason.NO_CHANGE);
+            return VendResult.Rejected.NO_EXACT_CHANGE;
+        }
+        vm.publishEvent(new VendingEvent.ProductDispensed(shelfCode, product));
+        vm.publishEvent(new VendingEvent.ChangeReturned(inventory.getDenominations(), change, changeAmount));
+
+        clearSelection(vm);
+        vm.clearInsertedCoins();
+        vm.enterState(next);
+        return new VendResult.Dispensed(shelfCode, product, change, changeAmount);
+    }
+
+    /**
+     * Selects several products to buy as one purchase (a cart). The same shelf may be listed
+     * once per item. The total price is checked against the balance here; on
+     * {@link #dispenseProduct} every item is reserved, change is made once for the total and
+     * the whole cart is sold in one step, or nothing is.
+     * @param vm the session
+     * @param state the session's current state code
+     * @param shelfCodes shelves of the products, one entry per item
+     * @return {@link VendResult#ACCEPTED}, {@code UNKNOWN_SHELF}, {@code SOLD_OUT},
+     *         {@code NOT_ENOUGH_MONEY} or {@code WRONG_STATE}
+     * @throws IllegalArgumentException if no shelf is given
+     */
+    public static VendResult selectProducts(VendingMachine vm, byte state, String... shelfCodes) {
+        byte next = TransitionTable.onSuccess(state, Operation.SELECT_PRODUCT);
+        if (next == TransitionTable.REJECT) {
+            return VendResult.Rejected.WRONG_STATE;
+        }
+        if (shelfCodes.length == 0) {
+            throw new IllegalArgumentException("Cart cannot be empty");
+        }
+
+        Inventory inventory = vm.getInventory();
+        int[] slots = new int[shelfCodes.length];
+        Product[] products = new Product[shelfCodes.length];
+        long total = 0;
+        VendResult.Rejected rejection = null;
+        for (int i = 0; i < shelfCodes.length && rejection == null; i++) {
+            int shelf = inventory.resolveShelf(shelfCodes[i]);
+            if (shelf == Inventory.NO_SHELF) {
+                rejection = VendResult.Rejected.UNKNOWN_SHELF;
+            } else if ((products[i] = inventory.getAvailableProduct(shelf)) == null) {
+                rejection = VendResult.Rejected.SOLD_OUT;
+            } else {
+                slots[i] = shelf;
+                total += products[i].getPriceInCents();
+            }
+        }
+        if (rejection == null && funds(vm, state) < total) {
+            rejection = VendResult.Rejected.NOT_ENOUGH_MONEY;
+        }
+        if (rejection != null) {
+            vm.enterState(TransitionTable.onFailure(state, Operation.SELECT_PRODUCT));
+            return rejection;
+        }
+
+        vm.setCart(shelfCodes.clone(), slots);
+        for (int i = 0; i < slots.length; i++) {
+            vm.publishEvent(new VendingEvent.ProductSelected(shelfCodes[i], products[i]));
+        }
+        vm.enterState(next);
+        return VendResult.ACCEPTED;
+    }
+
+    /**
+     * Dispenses a selected cart: reserves every item, then sells them all with one change
+     * computation and one inventory step. If an item sold out meanwhile, a restock raised the
+     * total above the balance or exact change cannot be made, every reservation is released
+     * and the money refunded.
+     */
+    private static VendResult dispenseCart(VendingMachine vm, byte state, byte next) {
+        String[] shelfCodes = vm.getCartCodes();
+        int[] slots = vm.getCartSlots();
+        Inventory inventory = vm.getInventory();
+
+        Product[] products = new Product[slots.length];
+        int total = 0;
+        for (int i = 0; i < slots.length; i++) {
+            products[i] = inventory.tryReserveProduct(slots[i]);
+            if (products[i] == null) {
+                releaseReservations(inventory, slots, i);
+                publishSaleFailed(vm, shelfCodes, VendingEvent.RefundReason.SOLD_OUT);
+                refund(vm, state, VendingEvent.RefundReason.SOLD_OUT);
+                return VendResult.Rejected.SOLD_OUT;
+            }
+            total += products[i].getPriceInCents();
+        }
+        // Prices were checked at selection; a restock since then may have raised them
+        if (total > vm.getCurrentBalance()) {
+            releaseReservations(inventory, slots, slots.length);
+            publishSaleFailed(vm, shelfCodes, VendingEvent.RefundReason.PRICE_CHANGED);
+            refund(vm, state, VendingEvent.RefundReason.PRICE_CHANGED);
+            return VendResult.Rejected.NOT_ENOUGH_MONEY;
+        }
+
+        Authorization authorization = vm.getAuthorization();
+        long change = CoinTally.EMPTY;
+        int changeAmount = 0;
+        if (authorization != null) {
+            inventory.sell(slots, slots.length, CoinTally.EMPTY, 0);
+        } else {
+            changeAmount = vm.getCurrentBalance() - total;
+            change = inventory.sell(slots, slots.length, vm.getInsertedCoinTally(), changeAmount);
+            if (change == Inventory.NO_SALE) {
+                releaseReservations(inventory, slots, slots.length);
+                publishSaleFailed(vm, shelfCodes, VendingEvent.RefundReason.NO_CHANGE);
+                refund(vm, state, VendingEvent.RefundReason.NO_CHANGE);
+                return VendResult.Rejected.NO_EXACT_CHANGE;
+            }
+        }
+        for (int i = 0; i < slots.length; i++) {
+            vm.publishEvent(new VendingEvent.ProductDispensed(shelfCodes[i], products[i]));
+        }
+        if (authorization != null) {
+            capturePayment(vm, authorization, total);
+            vm.endPayment();
+        } else {
+            vm.publishEvent(new VendingEvent.ChangeReturned(inventory.getDenominations(), change, changeAmount));
+            vm.clearInsertedCoins();
+        }
+        clearSelection(vm);
+        vm.enterState(next);
+        return new VendResult.CartDispensed(List.of(shelfCodes), List.of(products), change, changeAmount);
+    }
+
+    /**
+     * Cancels the transaction and returns the inserted money.
+     * @param vm the session
+     * @param state the session's current state code
+     * @return {@link VendResult.Refunded} with the coins returned, or {@code WRONG_STATE}
+     */
+    public static VendResult cancelTransaction(VendingMachine vm, byte state) {
+        byte next = TransitionTable.onSuccess(state, Operation.CANCEL_TRANSACTION);
+        if (next == TransitionTable.REJECT) {
+            return VendResult.Rejected.WRONG_STATE;
+        }
+        int refundCents = vm.getCurrentBalance();
+        long refund = vm.refundInsertedCoins();
+        if (vm.hasPayment()) {
+            releasePayment(vm);
+            clearSelection(vm);
+            vm.publishEvent(new VendingEvent.PaymentReleased(VendingEvent.RefundReason.CANCELLED));
+        } else {
+            vm.publishEvent(new VendingEvent.Refunded(
+                vm.getInventory().getDenominations(), refund, VendingEvent.RefundReason.CANCELLED));
+        }
+        vm.enterState(next);
+        return new VendResult.Refunded(refund, refundCents);
+    }
+
+    // ==================== Card Payments ====================
+
+    /**
+     * Starts a card payment: requests a hold of the given amount and moves the session to
+     * {@link MachineState#AUTHORIZING}. The customer may select a product while the
+     * authorization is in flight; once it is approved the selection goes straight to dispensing.
+     * @param vm the session
+     * @param state the session's current state code
+     * @param paymentToken card or wallet token presented by the customer
+     * @param holdCents amount to hold, at least the price of what the customer will buy
+     * @return future completed with {@link VendResult#ACCEPTED} or {@code PAYMENT_DECLINED} when the
+     *         authorizer answers, or already completed with {@code WRONG_STATE}
+     */
+    public static CompletableFuture<VendResult> authorizePayment(VendingMachine vm, byte state,
+                                                                 String paymentToken, int holdCents) {
+        byte next = TransitionTable.onSuccess(state, Operation.AUTHORIZE_PAYMENT);
+        if (next == TransitionTable.REJECT) {
+            return CompletableFuture.completedFuture(VendResult.Rejected.WRONG_STATE);
+        }
+        CompletableFuture<Authorization> pending = vm.getPaymentAuthorizer().authorize(paymentToken, holdCents);
+        vm.beginPayment(pending, holdCents);
+        vm.enterState(next);
+        return pending.handle((authorization, failure) -> authorization != null && authorization.isApproved()
+            ? VendResult.ACCEPTED : VendResult.Rejected.PAYMENT_DECLINED);
+    }
+
+    /**
+     * Applies the answer to a pending card authorization, if it has arrived. Approval moves the
+     * session to {@link MachineState#AUTHORIZED} with the hold as its balance, and on to
+     * {@link MachineState#DISPENSING} if a product was selected meanwhile; a decline ends the
+     * transaction.
+     * @param vm the session
+     * @param state the session's current state code
+     */
+    public static void settlePayment(VendingMachine vm, byte state) {
+        CompletableFuture<Authorization> pending = vm.getPendingAuthorization();
+        if (state != AUTHORIZING || pending == null || !pending.isDone()) {
+            return;
+        }
+        Authorization authorization = pending.handle((approved, failure) -> approved != null ? approved
+            : Authorization.declined(null, vm.getPaymentHold(), "Authorization failed: " + failure.getMessage()))
+            .join();
+
+        if (!authorization.isApproved()) {
+            clearSelection(vm);
+            vm.endPayment();
+            vm.publishEvent(new VendingEvent.PaymentDeclined(authorization.declineReason()));
+            vm.enterState(TransitionTable.onSuccess(state, Operation.PAYMENT_DECLINED));
+            return;
+        }
+        vm.approvePayment(authorization);
+        vm.publishEvent(new VendingEvent.PaymentAuthorized(authorization.id(), authorization.amountCents()));
+        byte authorized = TransitionTable.onSuccess(state, Operation.PAYMENT_APPROVED);
+        vm.enterState(authorized);
+
+        // A selection made while authorizing was checked against the requested hold;
+        // the approved amount decides
+        long price = selectedPrice(vm);
+        if (price >= 0) {
+            if (price <= vm.getCurrentBalance()) {
+                vm.enterState(TransitionTable.onSuccess(authorized, Operation.SELECT_PRODUCT));
+            } else {
+                clearSelection(vm);
+                vm.enterState(TransitionTable.onFailure(authorized, Operation.SELECT_PRODUCT));
+            }
+        }
+    }
+
+    // ==================== Exception API ====================
+
+    /**
+     * Inserts a coin; see {@link #insertCoin(VendingMachine, byte, int)}.
+     * @throws InvalidOperationException if the state does not take coins or the tally is full
+     */
+    public static void insertCoinOrThrow(VendingMachine vm, byte state, int denomination) {
+        VendResult result = insertCoin(vm, state, denomination);
+        if (result == VendResult.Rejected.COIN_LIMIT) {
+            throw new InvalidOperationException("Cannot hold more than " + CoinTally.MAX_PER_COIN + " "
+                + vm.getInventory().getDenominations().getCoinName(denomination) + " coins");
+        }
+        if (result != VendResult.ACCEPTED) {
+            throw wrongState(state, Operation.INSERT_COIN);
+        }
+    }
+
+    /**
+     * Selects a product; see {@link #selectProduct(VendingMachine, byte, String)}.
+     * @throws InvalidOperationException if the state does not allow selecting
+     * @throws InsufficientMoneyException if the balance does not cover the price
+     * @throws ProductNotAvailableException if the shelf is unknown or sold out
+     */
+    public static void selectProductOrThrow(VendingMachine vm, byte state, String shelfCode) {
+        VendResult result = selectProduct(vm, state, shelfCode);
+        if (result == VendResult.ACCEPTED) {
+            return;
+        }
+        if (result == VendResult.Rejected.WRONG_STATE) {
+            throw wrongState(state, Operation.SELECT_PRODUCT);
+        }
+        if (result == VendResult.Rejected.NOT_ENOUGH_MONEY) {
+            int price = vm.getInventory().getProduct(shelfCode).getPriceInCents();
+            throw new InsufficientMoneyException(price, funds(vm, state));
+        }
+        throw new ProductNotAvailableException("Product at shelf " + shelfCode + " is not available");
+    }
+
+    /**
+     * Dispenses the selected product; see {@link #dispenseProduct(VendingMachine, byte)}.
+     * @return the dispensed product
+     * @throws InvalidOperationException if no product has been selected
+     * @throws InsufficientChangeException if exact change cannot be made (money refunded)
+     * @throws InsufficientMoneyException if the price went up since selection (money refunded)
+     * @throws ProductNotAvailableException if the product sold out (money refunded)
+     */
+    public static Product dispenseProductOrThrow(VendingMachine vm, byte state) {
+        if (vm.getCartSize() > 0 && TransitionTable.isAllowed(state, Operation.DISPENSE_PRODUCT)) {
+            throw new InvalidOperationException("Several products are selected. Use dispenseProducts().");
+        }
+        String shelfCode = vm.getSelectedShelfCode();
+        int shelf = vm.getSelectedShelf();
+        int balance = vm.getCurrentBalance();
+        VendResult result = dispenseProduct(vm, state);
+        if (result instanceof VendResult.Dispensed) {
+            return ((VendResult.Dispensed) result).product();
+        }
+        if (result == VendResult.Rejected.WRONG_STATE) {
+            throw wrongState(state, Operation.DISPENSE_PRODUCT);
+        }
+        if (result == VendResult.Rejected.NO_EXACT_CHANGE) {
+            throw new InsufficientChangeException(balance - vm.getInventory().getProduct(shelf).getPriceInCents());
+        }
+        if (result == VendResult.Rejected.NOT_ENOUGH_MONEY) {
+            throw new InsufficientMoneyException(vm.getInventory().getProduct(shelf).getPriceInCents(), balance);
+        }
+        throw new ProductNotAvailableException("Product not available at shelf " + shelfCode);
+    }
+
+    /**
+     * Selects a cart; see {@link #selectProducts(VendingMachine, byte, String...)}.
+     * @throws InvalidOperationException if the state does not allow selecting
+     * @throws InsufficientMoneyException if the balance does not cover the total price
+     * @throws ProductNotAvailableException if a shelf is unknown or sold out
+     */
+    public static void selectProductsOrThrow(VendingMachine vm, byte state, String... shelfCodes) {
+        VendResult result = selectProducts(vm, state, shelfCodes);
+        if (result == VendResult.ACCEPTED) {
+            return;
+        }
+        if (result == VendResult.Rejected.WRONG_STATE) {
+            throw wrongState(state, Operation.SELECT_PRODUCT);
+        }
+        Inventory inventory = vm.getInventory();
+        if (result == VendResult.Rejected.NOT_ENOUGH_MONEY) {
+            int total = 0;
+            for (String shelfCode : shelfCodes) {
+                total += inventory.getProduct(shelfCode).getPriceInCents();
+            }
+            throw new InsufficientMoneyException(total, funds(vm, state));
+        }
+        for (String shelfCode : shelfCodes) {
+            if (!inventory.isProductAvailable(shelfCode)) {
+                throw new ProductNotAvailableException("Product at shelf " + shelfCode + " is not available");
+            }
+        }
+        throw new ProductNotAvailableException("Products in the cart are not available");
+    }
+
+    /**
+     * Dispenses the selected product or cart; see {@link #dispenseProduct(VendingMachine, byte)}.
+     * @return the dispensed products, in cart order
+     * @throws InvalidOperationException if nothing has been selected
+     * @throws InsufficientChangeException if exact change cannot be made (money refunded)
+     * @throws InsufficientMoneyException if prices went up since selection (money refunded)
+     * @throws ProductNotAvailableException if a product sold out (money refunded)
+     */
+    public static List<Product> dispenseProductsOrThrow(VendingMachine vm, byte state) {
+        if (vm.getCartSize() == 0) {
+            return List.of(dispenseProductOrThrow(vm, state));
+        }
+        int[] slots = vm.getCartSlots();
+        int balance = vm.getCurrentBalance();
+        VendResult result = dispenseProduct(vm, state);
+        if (result instanceof VendResult.CartDispensed) {
+            return ((VendResult.CartDispensed) result).products();
+        }
+        if (result == VendResult.Rejected.WRONG_STATE) {
+            throw wrongState(state, Operation.DISPENSE_PRODUCT);
+        }
+        if (result == VendResult.Rejected.NO_EXACT_CHANGE) {
+            int total = 0;
+            for (int slot : slots) {
+                total += vm.getInventory().getProduct(slot).getPriceInCents();
+            }
+            throw new InsufficientChangeException(balance - total);
+        }
+        if (result == VendResult.Rejected.NOT_ENOUGH_MONEY) {
+            int total = 0;
+            for (int slot : slots) {
+                total += vm.getInventory().getProduct(slot).getPriceInCents();
+            }
+            throw new InsufficientMoneyException(total, balance);
+        }
+        throw new ProductNotAvailableException("A product in the cart is no longer available");
+    }
+
+    /**
+     * Cancels the transaction; see {@link #cancelTransaction(VendingMachine, byte)}.
+     * @return the coins returned, as a packed {@link CoinTally}
+     * @throws InvalidOperationException if the transaction cannot be cancelled in this state
+     */
+    public static long cancelTransactionOrThrow(VendingMachine vm, byte state) {
+        VendResult result = cancelTransaction(vm, state);
+        if (!(result instanceof VendResult.Refunded refunded)) {
+            throw wrongState(state, Operation.CANCEL_TRANSACTION);
+        }
+        return refunded.coins();
+    }
+
+    // ==================== Helpers ====================
+
+    private static void refund(VendingMachine vm, byte state, VendingEvent.RefundReason reason) {
+        boolean publishing = vm.isPublishingEvents();
+        long refund = vm.refundInsertedCoins();
+        if (vm.hasPayment()) {
+            releasePayment(vm);
+            if (publishing) {
+                vm.publishEvent(new VendingEvent.PaymentReleased(reason));
+            }
+        } else if (publishing) {
+            vm.publishEvent(new VendingEvent.Refunded(vm.getInventory().getDenominations(), refund, reason));
+        }
+        clearSelection(vm);
+        vm.enterState(TransitionTable.onFailure(state, Operation.DISPENSE_PRODUCT));
+    }
+
+    /**
+     * Charges the hold for a sale whose products have left the machine. The outcome arrives
+     * when the authorizer answers, on its thread: {@link VendingEvent.PaymentCaptured}, or
+     * {@link VendingEvent.PaymentCaptureFailed} plus a count in the metrics, since a failed
+     * charge cannot take the products back and needs following up.
+     */
+    private static void capturePayment(VendingMachine vm, Authorization authorization, int amountCents) {
+        CompletableFuture<Void> capture;
+        try {
+            capture = vm.getPaymentAuthorizer().capture(authorization, amountCents);
+        } catch (RuntimeException e) {
+            capture = CompletableFuture.failedFuture(e);
+        }
+        MachineMetrics metrics = vm.getInventory().getMetrics();
+        capture.whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                vm.publishEvent(new VendingEvent.PaymentCaptured(authorization.id(), amountCents));
+                return;
+            }
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+            metrics.recordCaptureFailure();
+            vm.publishEvent(new VendingEvent.PaymentCaptureFailed(authorization.id(), amountCents,
+                String.valueOf(cause.getMessage())));
+        });
+    }
+
+    /**
+     * Releases the session's hold, or the hold a still-pending authorization will create.
+     */
+    private static void releasePayment(VendingMachine vm) {
+        PaymentAuthorizer authorizer = vm.getPaymentAuthorizer();
+        Authorization authorization = vm.getAuthorization();
+        if (authorization != null) {
+            authorizer.release(authorization);
+        } else {
+            vm.getPendingAuthorization().thenAccept(late -> {
+                if (late.isApproved()) {
+                    authorizer.release(late);
+                }
+            });
+        }
+        vm.endPayment();
+    }
+
+    private static void clearSelection(VendingMachine vm) {
+        vm.setSelectedShelfCode(null);
+        vm.setSelectedShelf(Inventory.NO_SHELF);
+        vm.setCart(null, null);
+    }
+
+    private static void publishSaleFailed(VendingMachine vm, String shelfCode, VendingEvent.RefundReason reason) {
+        if (vm.isPublishingEvents()) {
+            vm.publishEvent(new VendingEvent.SaleFailed(shelfCode, reason));
+        }
+    }
+
+    private static void publishSaleFailed(VendingMachine vm, String[] shelfCodes, VendingEvent.RefundReason reason) {
+        if (!vm.isPublishingEvents()) {
+            return;
+        }
+        for (String shelfCode : shelfCodes) {
+            vm.publishEvent(new VendingEvent.SaleFailed(shelfCode, reason));
+        }
+    }
+
+    private static void releaseReservations(Inventory inventory, int[] slots, int count) {
+        for (int i = 0; i < count; i++) {
+            inventory.releaseReservation(slots[i]);
+        }
+    }
+
+    /**
+     * Gets the money available to pay for a selection: the balance, or the requested hold
+     * while a card payment is still authorizing.
+     */
+    private static int funds(VendingMachine vm, byte state) {
+        return state == AUTHORIZING ? vm.getPaymentHold() : vm.getCurrentBalance();
+    }
+
+    /**
+     * Gets the current price of the selected product or cart, or -1 if nothing is selected.
+     */
+    private static long selectedPrice(VendingMachine vm) {
+        Inventory inventory = vm.getInventory();
+        int[] slots = vm.getCartSize() > 0 ? vm.getCartSlots() : null;
+        if (slots == null && vm.getSelectedShelf() == Inventory.NO_SHELF) {
+            return -1;
+        }
+        long total = 0;
+        for (int slot : slots != null ? slots : new int[] {vm.getSelectedShelf()}) {
+            Product product = inventory.getProduct(slot);
+            if (product == null) {
+                return Long.MAX_VALUE;
+            }
+            total += product.getPriceInCents();
+        }
+        return total;
+    }
+
+    private static InvalidOperationException wrongState(byte state, Operation operation) {
+        return new InvalidOperationException(TransitionTable.rejectionMessage(state, operation));
+    }
+}
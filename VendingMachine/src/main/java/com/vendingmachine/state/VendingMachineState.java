@@ -2,6 +2,7 @@ package com.vendingmachine.state;
 
 import com.vendingmachine.model.Coin;
 import com.vendingmachine.model.Product;
+import com.vendingmachine.result.VendResult;
 
 import java.util.List;
 
@@ -13,6 +14,13 @@ import java.util.List;
  * - Open-Closed Principle: New states can be added without modifying existing code
  * - Interface Segregation Principle: Defines only necessary operations for states
  * - Dependency Inversion Principle: VendingMachine depends on abstraction, not concrete states
+ *
+ * Each operation comes in two forms: one that throws on failure and one that returns a
+ * {@link VendResult}. Both have the same effects and publish the same events.
+ *
+ * Sessions no longer hold state objects: they store a {@link MachineState} code and run the
+ * {@link TransitionTable} through the {@link VendingEngine}. This interface and the state
+ * classes remain as a view of one state for code written against them.
  */
 public interface VendingMachineState {
 
@@ -34,6 +42,26 @@ public interface VendingMachineState {
      */
     Product dispenseProduct();
 
+    /**
+     * Handles inserting a coin into the machine, without throwing on expected failures.
+     * @param coin the coin being inserted
+     * @return {@link VendResult#ACCEPTED} or a {@link VendResult.Rejected} reason
+     */
+    VendResult tryInsertCoin(Coin coin);
+
+    /**
+     * Handles selecting a product, without throwing on expected failures.
+     * @param shelfCode the code of the shelf containing the desired product
+     * @return {@link VendResult#ACCEPTED} or a {@link VendResult.Rejected} reason
+     */
+    VendResult trySelectProduct(String shelfCode);
+
+    /**
+     * Dispenses the selected product and returns change, without throwing on expected failures.
+     * @return a {@link VendResult.Dispensed} or a {@link VendResult.Rejected} reason
+     */
+    VendResult tryDispenseProduct();
+
     /**
      * Cancels the current transaction and returns inserted money.
      * @return list of coins to return
@@ -45,4 +73,12 @@ public interface VendingMachineState {
      * @return state name
      */
     String getStateName();
+
+    /**
+     * Gets the state of the transition table this state stands for.
+     * @return the machine state
+     */
+    default MachineState getMachineState() {
+        return MachineState.valueOf(getStateName());
+    }
 }
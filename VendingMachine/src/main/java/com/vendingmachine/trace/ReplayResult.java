@@ -0,0 +1,30 @@
+package com.vendingmachine.trace;
+
+import java.util.List;
+
+/**
+ * Outcome of replaying a {@link Trace}.
+ *
+ * @param operations calls replayed
+ * @param mismatches calls whose outcome, state, balance or coin float differed from the recording
+ * @param elapsedNanos time spent replaying, excluding setup
+ * @param firstMismatches descriptions of the first mismatches, in trace order
+ */
+public record ReplayResult(long operations, long mismatches, long elapsedNanos, List<String> firstMismatches) {
+
+    /**
+     * Checks whether every call behaved as recorded.
+     * @return true if there were no mismatches
+     */
+    public boolean isFaithful() {
+        return mismatches == 0;
+    }
+
+    /**
+     * Gets the replay throughput.
+     * @return calls per second
+     */
+    public double getOperationsPerSecond() {
+        return elapsedNanos > 0 ? operations * 1e9 / elapsedNanos : 0;
+    }
+}
@@ -0,0 +1,288 @@
+package com.vendingmachine.trace;
+
+import com.vendingmachine.inventory.InventoryCheckpoint;
+import com.vendingmachine.model.Product;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A trace written by {@link TraceRecorder}, decoded into memory for {@link TraceReplayer}.
+ *
+ * Every record is decoded up front into parallel arrays, with shelf codes, carts and
+ * products resolved to the objects the replay passes to the machine, so a replay spends
+ * its time in the machine and not in decoding. A trace cut short by a crash is read up to
+ * its last complete record ({@link #isTruncated()}).
+ */
+public final class Trace {
+
+    private static final TraceOp[] OPS = TraceOp.values();
+    private static final int INITIAL_RECORDS = 1024;
+
+    private final InventoryCheckpoint initialInventory;
+    private final long startTimeMillis;
+    private int size;
+    private boolean truncated;
+
+    // One entry per record
+    byte[] ops = new byte[INITIAL_RECORDS];
+    int[] sessions = new int[INITIAL_RECORDS];
+    long[] times = new long[INITIAL_RECORDS];
+    // Denomination argument (or TraceFormat.NO_COIN), shelf or cart argument, product and count argument
+    byte[] coins = new byte[INITIAL_RECORDS];
+    String[] shelves = new String[INITIAL_RECORDS];
+    String[][] carts = new String[INITIAL_RECORDS][];
+    Product[] products = new Product[INITIAL_RECORDS];
+    int[] counts = new int[INITIAL_RECORDS];
+    // Recorded outcome, state and balance after the call, coin float value or -1
+    byte[] outcomes = new byte[INITIAL_RECORDS];
+    byte[] states = new byte[INITIAL_RECORDS];
+    int[] balances = new int[INITIAL_RECORDS];
+    int[] coinValues = new int[INITIAL_RECORDS];
+
+    private Trace(InventoryCheckpoint initialInventory, long startTimeMillis) {
+        this.initialInventory = initialInventory;
+        this.startTimeMillis = startTimeMillis;
+    }
+
+    /**
+     * Reads a trace file.
+     * @param file the trace
+     * @return the decoded trace
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public static Trace read(Path file) throws IOException {
+        return decode(ByteBuffer.wrap(Files.readAllBytes(file)), file.toString());
+    }
+
+    /**
+     * Reads a trace from a stream, to its end.
+     * @param in the trace
+     * @return the decoded trace
+     * @throws IOException if the stream cannot be read or is not a trace
+     */
+    public static Trace read(InputStream in) throws IOException {
+        return decode(ByteBuffer.wrap(in.readAllBytes()), "stream");
+    }
+
+    /**
+     * Gets the inventory as it was when recording started.
+     * @return the initial inventory
+     */
+    public InventoryCheckpoint getInitialInventory() {
+        return initialInventory;
+    }
+
+    /**
+     * Gets the number of recorded calls.
+     * @return recorded calls
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the operation of one record.
+     * @param index record number, from 0
+     * @return the operation
+     */
+    public TraceOp getOp(int index) {
+        return OPS[ops[index]];
+    }
+
+    /**
+     * Gets when one call was recorded.
+     * @param index record number, from 0
+     * @return epoch milliseconds
+     */
+    public long getTimeMillis(int index) {
+        return times[index];
+    }
+
+    /**
+     * Gets when recording started.
+     * @return epoch milliseconds
+     */
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    /**
+     * Checks whether the trace ended inside a record, e.g. because the recording machine
+     * crashed. The partial record is ignored.
+     * @return true if the last record was incomplete
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    // ==================== Decoding ====================
+
+    private static Trace decode(ByteBuffer in, String source) throws IOException {
+        InventoryCheckpoint checkpoint;
+        long start;
+        try {
+            if (in.getInt() != TraceFormat.MAGIC) {
+                throw new IOException(source + " is not a vending machine trace");
+            }
+            short version = in.getShort();
+            if (version != TraceFormat.VERSION) {
+                throw new IOException("Unsupported trace version " + version + " in " + source);
+            }
+            start = in.getLong();
+            byte[] encoded = new byte[in.getInt()];
+            in.get(encoded);
+            checkpoint = InventoryCheckpoint.fromBytes(encoded);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Trace " + source + " has an incomplete header", e);
+        }
+
+        Trace trace = new Trace(checkpoint, start);
+        List<String> shelfCodes = new ArrayList<>();
+        List<Product> products = new ArrayList<>();
+        long time = start;
+        while (in.hasRemaining()) {
+            int recordStart = in.position();
+            try {
+                int op = in.get();
+                if (op < 0 || op >= OPS.length) {
+                    throw new IOException("Unknown operation " + op + " at byte " + recordStart + " of " + source);
+                }
+                int session = TraceFormat.getVarInt(in);
+                time += TraceFormat.getVarLong(in);
+                trace.add(OPS[op], session, time, in, shelfCodes, products);
+            } catch (BufferUnderflowException e) {
+                trace.truncated = true;
+                break;
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Trace " + source + " is malformed at byte " + recordStart, e);
+            }
+        }
+        return trace;
+    }
+
+    private void add(TraceOp op, int session, long time, ByteBuffer in,
+                     List<String> shelfCodes, List<Product> knownProducts) {
+        byte coin = TraceFormat.NO_COIN;
+        String shelf = null;
+        String[] cart = null;
+        Product product = null;
+        int count = 0;
+        switch (op) {
+            case INSERT_COIN:
+            case TRY_INSERT_COIN:
+                coin = getCoin(in);
+                break;
+            case SELECT_PRODUCT:
+            case TRY_SELECT_PRODUCT:
+                shelf = getShelf(in, shelfCodes);
+                break;
+            case SELECT_PRODUCTS:
+            case TRY_SELECT_PRODUCTS:
+                int items = TraceFormat.getVarInt(in);
+                if (items > 0) {
+                    cart = new String[items - 1];
+                    for (int i = 0; i < cart.length; i++) {
+                        cart[i] = getShelf(in, shelfCodes);
+                    }
+                }
+                break;
+            case STOCK_PRODUCT:
+                shelf = getShelf(in, shelfCodes);
+                product = getProduct(in, knownProducts);
+                count = TraceFormat.getSignedVarInt(in);
+                break;
+            case LOAD_COINS:
+                coin = getCoin(in);
+                count = TraceFormat.getSignedVarInt(in);
+                break;
+            default:
+                break;
+        }
+        byte outcome = in.get();
+        byte state = in.get();
+        int balance = TraceFormat.getVarInt(in);
+        int coinValue = op.isDispense() ? TraceFormat.getVarInt(in) : -1;
+
+        // Only a complete record gets here
+        if (size == ops.length) {
+            grow(size * 2);
+        }
+        ops[size] = (byte) op.ordinal();
+        sessions[size] = session;
+        times[size] = time;
+        coins[size] = coin;
+        shelves[size] = shelf;
+        carts[size] = cart;
+        products[size] = product;
+        counts[size] = count;
+        outcomes[size] = outcome;
+        states[size] = state;
+        balances[size] = balance;
+        coinValues[size] = coinValue;
+        size++;
+    }
+
+    private byte getCoin(ByteBuffer in) {
+        byte coin = in.get();
+        if (coin != TraceFormat.NO_COIN && (coin < 0 || coin >= initialInventory.getDenominations().size())) {
+            throw new IllegalArgumentException("Unknown denomination " + coin);
+        }
+        return coin;
+    }
+
+    private static String getShelf(ByteBuffer in, List<String> shelfCodes) {
+        int reference = TraceFormat.getVarInt(in);
+        if (reference == 0) {
+            return null;
+        }
+        if (reference == shelfCodes.size() + 1) {
+            shelfCodes.add(getString(in));
+        } else if (reference > shelfCodes.size()) {
+            throw new IllegalArgumentException("Unknown shelf reference " + reference);
+        }
+        return shelfCodes.get(reference - 1);
+    }
+
+    private static Product getProduct(ByteBuffer in, List<Product> products) {
+        int reference = TraceFormat.getVarInt(in);
+        if (reference == 0) {
+            return null;
+        }
+        if (reference == products.size() + 1) {
+            products.add(new Product(getString(in), getString(in), TraceFormat.getSignedVarInt(in)));
+        } else if (reference > products.size()) {
+            throw new IllegalArgumentException("Unknown product reference " + reference);
+        }
+        return products.get(reference - 1);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[TraceFormat.getVarInt(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void grow(int capacity) {
+        ops = Arrays.copyOf(ops, capacity);
+        sessions = Arrays.copyOf(sessions, capacity);
+        times = Arrays.copyOf(times, capacity);
+        coins = Arrays.copyOf(coins, capacity);
+        shelves = Arrays.copyOf(shelves, capacity);
+        carts = Arrays.copyOf(carts, capacity);
+        products = Arrays.copyOf(products, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        outcomes = Arrays.copyOf(outcomes, capacity);
+        states = Arrays.copyOf(states, capacity);
+        balances = Arrays.copyOf(balances, capacity);
+        coinValues = Arrays.copyOf(coinValues, capacity);
+    }
+}
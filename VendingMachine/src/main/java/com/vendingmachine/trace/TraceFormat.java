@@ -0,0 +1,132 @@
+package com.vendingmachine.trace;
+
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.InsufficientMoneyException;
+import com.vendingmachine.exception.InvalidOperationException;
+import com.vendingmachine.exception.ProductNotAvailableException;
+import com.vendingmachine.result.VendResult;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Constants and primitive codecs of the trace file format.
+ *
+ * Layout: magic "VMT1", version, start time (epoch milliseconds), length and bytes of an
+ * {@link com.vendingmachine.inventory.InventoryCheckpoint} of the inventory when recording
+ * started, then one record per operation until the end of the file:
+ * <pre>
+ * op           byte     {@link TraceOp} ordinal
+ * session      varint   session number, in order of first appearance
+ * time         varint   milliseconds since the previous record
+ * arguments             per operation: denomination byte, shelf and product references, counts
+ * outcome      byte     {@link #OK}, a rejection or an exception (see {@link #outcomeOf})
+ * state        byte     session state after the call
+ * balance      varint   session balance after the call
+ * coin value   varint   value of the coin float after the call (dispense operations only)
+ * </pre>
+ * Shelf codes and products are written in full once and referenced by number afterwards;
+ * reference 0 is null, and the next unused number introduces a new entry. A denomination is
+ * its position in the checkpoint's {@link com.vendingmachine.change.DenominationSet}, or
+ * {@link #NO_COIN} for an argument outside the set.
+ */
+final class TraceFormat {
+
+    static final int MAGIC = 0x564D5431; // "VMT1"
+    static final short VERSION = 2;
+    static final byte NO_COIN = -1;
+
+    /** The call succeeded, or its result was accepted or dispensed. */
+    static final byte OK = 0;
+    // 1 + VendResult.Rejected ordinal for a rejected result
+    private static final byte REJECTED = 1;
+    // Exceptions thrown by the exception API
+    private static final byte INVALID_OPERATION = 32;
+    private static final byte INSUFFICIENT_MONEY = 33;
+    private static final byte INSUFFICIENT_CHANGE = 34;
+    private static final byte PRODUCT_NOT_AVAILABLE = 35;
+    private static final byte ILLEGAL_ARGUMENT = 36;
+    private static final byte OTHER_EXCEPTION = 37;
+
+    private static final VendResult.Rejected[] REJECTIONS = VendResult.Rejected.values();
+
+    private TraceFormat() {
+    }
+
+    // ==================== Outcomes ====================
+
+    static byte outcomeOf(VendResult result) {
+        return result instanceof VendResult.Rejected rejected ? (byte) (REJECTED + rejected.ordinal()) : OK;
+    }
+
+    static byte outcomeOf(RuntimeException failure) {
+        if (failure instanceof InvalidOperationException) {
+            return INVALID_OPERATION;
+        } else if (failure instanceof InsufficientMoneyException) {
+            return INSUFFICIENT_MONEY;
+        } else if (failure instanceof InsufficientChangeException) {
+            return INSUFFICIENT_CHANGE;
+        } else if (failure instanceof ProductNotAvailableException) {
+            return PRODUCT_NOT_AVAILABLE;
+        } else if (failure instanceof IllegalArgumentException) {
+            return ILLEGAL_ARGUMENT;
+        }
+        return OTHER_EXCEPTION;
+    }
+
+    static String describe(byte outcome) {
+        switch (outcome) {
+            case OK:
+                return "OK";
+            case INVALID_OPERATION:
+                return "InvalidOperationException";
+            case INSUFFICIENT_MONEY:
+                return "InsufficientMoneyException";
+            case INSUFFICIENT_CHANGE:
+                return "InsufficientChangeException";
+            case PRODUCT_NOT_AVAILABLE:
+                return "ProductNotAvailableException";
+            case ILLEGAL_ARGUMENT:
+                return "IllegalArgumentException";
+            case OTHER_EXCEPTION:
+                return "other exception";
+            default:
+                int rejection = outcome - REJECTED;
+                return rejection >= 0 && rejection < REJECTIONS.length
+                    ? REJECTIONS[rejection].name() : "outcome " + outcome;
+        }
+    }
+
+    // ==================== Varints ====================
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     * @throws java.nio.BufferUnderflowException if the buffer ends inside it
+     */
+    static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint is too long");
+    }
+
+    static int getVarInt(ByteBuffer in) {
+        long value = getVarLong(in);
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Varint " + value + " does not fit an int");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads a zigzag-encoded varint, for values that may be negative.
+     */
+    static int getSignedVarInt(ByteBuffer in) {
+        long value = getVarLong(in);
+        return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+}
@@ -0,0 +1,29 @@
+package com.vendingmachine.trace;
+
+/**
+ * A {@link com.vendingmachine.VendingMachine} call recorded in a trace. The ordinal is the
+ * operation's code in the trace file, so new operations go at the end.
+ */
+public enum TraceOp {
+    INSERT_COIN,
+    TRY_INSERT_COIN,
+    SELECT_PRODUCT,
+    TRY_SELECT_PRODUCT,
+    SELECT_PRODUCTS,
+    TRY_SELECT_PRODUCTS,
+    DISPENSE_PRODUCT,
+    TRY_DISPENSE_PRODUCT,
+    DISPENSE_PRODUCTS,
+    CANCEL_TRANSACTION,
+    STOCK_PRODUCT,
+    LOAD_COINS,
+    TRY_CANCEL_TRANSACTION;
+
+    /**
+     * Checks whether the operation may sell, so its record also carries the coin float.
+     * @return true for the dispense operations
+     */
+    boolean isDispense() {
+        return this == DISPENSE_PRODUCT || this == TRY_DISPENSE_PRODUCT || this == DISPENSE_PRODUCTS;
+    }
+}
@@ -0,0 +1,437 @@
+package com.vendingmachine.trace;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.inventory.InventoryCheckpoint;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.result.VendResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Records the customer and restocking calls made on a machine and all its sessions into a
+ * compact binary trace, for {@link TraceReplayer} to re-run later.
+ *
+ * <pre>
+ * try (TraceRecorder recorder = TraceRecorder.start(vm, Files.newOutputStream(path))) {
+ *     ...   // vm and its sessions are traced
+ * }
+ * </pre>
+ * The trace starts with a checkpoint of the inventory, followed by one record per call on
+ * the {@link VendingMachine} API (coins, selections, dispensing, cancelling, stocking and
+ * loading coins): its arguments, its outcome (accepted, the rejection or the exception) and
+ * the session's state and balance afterwards. A typical record takes 6 to 8 bytes. Card
+ * payments and changes made directly on the {@link Inventory} are not recorded.
+ *
+ * Records are encoded under the recorder's lock into a buffer. Each full
+ * {@value #FLUSH_BYTES}-byte block is handed to a writer thread, so a call never waits for
+ * the stream unless the writer is {@value #BUFFERS} blocks behind. Calls from different
+ * sessions are recorded in the order they finish; a replay runs them one after another in
+ * that order, so a trace of sessions racing for the last item may replay with a different
+ * winner. If writing fails, recording stops and {@link #close()} throws the error.
+ */
+public final class TraceRecorder implements AutoCloseable {
+
+    private static final int FLUSH_BYTES = 64 * 1024;
+    private static final int MAX_RECORD_BYTES = 64;
+    private static final int BUFFERS = 4;
+    private static final Block END = new Block(new byte[0], 0);
+
+    private final Inventory inventory;
+    private final OutputStream out;
+    // Session numbers, never reused: a collected session is never seen again
+    private final Map<VendingMachine, Integer> sessions = new WeakHashMap<>();
+    private int nextSession;
+    // Most calls come from the session of the previous call, which is kept reachable
+    private VendingMachine lastSession;
+    private int lastSessionNumber;
+    private final Map<String, Integer> shelfCodes = new HashMap<>();
+    private final Map<ProductKey, Integer> products = new HashMap<>();
+    private byte[] buffer = new byte[FLUSH_BYTES + MAX_RECORD_BYTES];
+    private int length;
+    private long lastTime;
+    private long records;
+    private boolean stopped;
+
+    // Full blocks go to the writer thread, which returns their buffers for reuse
+    private final BlockingQueue<Block> written = new LinkedBlockingQueue<>();
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(BUFFERS);
+    private final Thread writer;
+    private volatile IOException failure;
+
+    private TraceRecorder(Inventory inventory, OutputStream out) {
+        this.inventory = inventory;
+        this.out = out;
+        for (int i = 1; i < BUFFERS; i++) {
+            free.add(new byte[FLUSH_BYTES + MAX_RECORD_BYTES]);
+        }
+        this.writer = new Thread(this::writeLoop, "trace-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Starts tracing a machine and every session selling from its inventory. Start it while
+     * the machine is idle, so the initial checkpoint matches the first recorded call.
+     * @param vm the machine
+     * @param out destination of the trace; closed by {@link #close()}
+     * @return the recorder
+     * @throws IOException if the trace header cannot be written
+     * @throws IllegalStateException if the machine is already being traced
+     */
+    public static TraceRecorder start(VendingMachine vm, OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("Output stream cannot be null");
+        }
+        Inventory inventory = vm.getInventory();
+        TraceRecorder recorder = new TraceRecorder(inventory, out);
+        synchronized (inventory) {
+            if (inventory.getTraceRecorder() != null) {
+                throw new IllegalStateException("The machine is already being traced");
+            }
+            byte[] checkpoint = InventoryCheckpoint.capture(inventory).toBytes();
+            recorder.writeHeader(checkpoint);
+            recorder.writer.start();
+            inventory.setTraceRecorder(recorder);
+        }
+        return recorder;
+    }
+
+    /**
+     * Gets the number of calls recorded so far.
+     * @return recorded calls
+     */
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Stops tracing, writes the rest of the trace and closes the stream.
+     * @throws IOException if part of the trace could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (inventory) {
+            if (inventory.getTraceRecorder() == this) {
+                inventory.setTraceRecorder(null);
+            }
+        }
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            written.add(new Block(buffer, length));
+            written.add(END);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the rest of the trace", e);
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // ==================== Recording (called by VendingMachine) ====================
+
+    /**
+     * Records {@code insertCoin} or {@code tryInsertCoin}.
+     * @param vm the session called
+     * @param op the operation
+     * @param denomination the denomination argument
+     * @param result the result of the try variant, or null
+     * @param thrown the exception thrown, or null
+     */
+    public synchronized void recordCoin(VendingMachine vm, TraceOp op, int denomination,
+                                        VendResult result, RuntimeException thrown) {
+        if (begin(vm, op)) {
+            putDenomination(denomination);
+            end(vm, op, result, thrown);
+        }
+    }
+
+    /**
+     * Records {@code selectProduct} or {@code trySelectProduct}.
+     * @param vm the session called
+     * @param op the operation
+     * @param shelfCode the shelf argument
+     * @param result the result of the try variant, or null
+     * @param thrown the exception thrown, or null
+     */
+    public synchronized void recordSelect(VendingMachine vm, TraceOp op, String shelfCode,
+                                          VendResult result, RuntimeException thrown) {
+        if (begin(vm, op)) {
+            putShelf(shelfCode);
+            end(vm, op, result, thrown);
+        }
+    }
+
+    /**
+     * Records {@code selectProducts} or {@code trySelectProducts}.
+     * @param vm the session called
+     * @param op the operation
+     * @param shelfCodes the cart argument
+     * @param result the result of the try variant, or null
+     * @param thrown the exception thrown, or null
+     */
+    public synchronized void recordCart(VendingMachine vm, TraceOp op, String[] shelfCodes,
+                                        VendResult result, RuntimeException thrown) {
+        if (begin(vm, op)) {
+            // 0 stands for a null array
+            putVarLong(shelfCodes != null ? shelfCodes.length + 1L : 0);
+            if (shelfCodes != null) {
+                for (String shelfCode : shelfCodes) {
+                    putShelf(shelfCode);
+                }
+            }
+            end(vm, op, result, thrown);
+        }
+    }
+
+    /**
+     * Records a dispense or cancel call, which have no arguments.
+     * @param vm the session called
+     * @param op the operation
+     * @param result the result of the try variant, or null
+     * @param thrown the exception thrown, or null
+     */
+    public synchronized void record(VendingMachine vm, TraceOp op, VendResult result, RuntimeException thrown) {
+        if (begin(vm, op)) {
+            end(vm, op, result, thrown);
+        }
+    }
+
+    /**
+     * Records {@code stockProduct}.
+     * @param vm the session called
+     * @param shelfCode the shelf argument
+     * @param product the product argument
+     * @param quantity the quantity argument
+     * @param thrown the exception thrown, or null
+     */
+    public synchronized void recordStock(VendingMachine vm, String shelfCode, Product product, int quantity,
+                                         RuntimeException thrown) {
+        if (begin(vm, TraceOp.STOCK_PRODUCT)) {
+            putShelf(shelfCode);
+            putProduct(product);
+            putSignedVarInt(quantity);
+            end(vm, TraceOp.STOCK_PRODUCT, null, thrown);
+        }
+    }
+
+    /**
+     * Records {@code loadCoins}.
+     * @param vm the session called
+     * @param denomination the denomination argument
+     * @param count the count argument
+     * @param thrown the exception thrown, or null
+     */
+    public synchronized void recordLoadCoins(VendingMachine vm, int denomination, int count,
+                                             RuntimeException thrown) {
+        if (begin(vm, TraceOp.LOAD_COINS)) {
+            putDenomination(denomination);
+            putSignedVarInt(count);
+            end(vm, TraceOp.LOAD_COINS, null, thrown);
+        }
+    }
+
+    private boolean begin(VendingMachine vm, TraceOp op) {
+        if (stopped || failure != null) {
+            return false;
+        }
+        if (vm != lastSession) {
+            Integer session = sessions.get(vm);
+            if (session == null) {
+                session = nextSession++;
+                sessions.put(vm, session);
+            }
+            lastSession = vm;
+            lastSessionNumber = session;
+        }
+        long now = System.currentTimeMillis();
+        putByte((byte) op.ordinal());
+        putVarLong(lastSessionNumber);
+        putVarLong(Math.max(0, now - lastTime));
+        lastTime = Math.max(lastTime, now);
+        return true;
+    }
+
+    private void end(VendingMachine vm, TraceOp op, VendResult result, RuntimeException thrown) {
+        putByte(thrown != null ? TraceFormat.outcomeOf(thrown) : TraceFormat.outcomeOf(result));
+        putByte(vm.getStateCode());
+        putVarLong(vm.getCurrentBalance());
+        if (op.isDispense()) {
+            putVarLong(inventory.getTotalCoinValue());
+        }
+        records++;
+        if (length >= FLUSH_BYTES) {
+            handOff();
+        }
+    }
+
+    /**
+     * Passes the full buffer to the writer thread and continues in a free one. Waits only if
+     * the writer still holds every other buffer.
+     */
+    private void handOff() {
+        written.add(new Block(buffer, length));
+        byte[] next = free.poll();
+        if (next == null) {
+            try {
+                next = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                next = new byte[FLUSH_BYTES + MAX_RECORD_BYTES];
+            }
+        }
+        buffer = next;
+        length = 0;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Block block;
+            try {
+                block = written.take();
+            } catch (InterruptedException e) {
+                // Only close() ends the loop, after the last block
+                continue;
+            }
+            if (block == END) {
+                return;
+            }
+            if (failure == null) {
+                try {
+                    out.write(block.bytes(), 0, block.length());
+                    out.flush();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            // A buffer grown by a long record is kept too; the pool never holds more than BUFFERS
+            free.offer(block.bytes());
+        }
+    }
+
+    // ==================== Encoding ====================
+
+    private void writeHeader(byte[] checkpoint) throws IOException {
+        lastTime = System.currentTimeMillis();
+        putInt(TraceFormat.MAGIC);
+        putByte((byte) (TraceFormat.VERSION >> 8));
+        putByte((byte) TraceFormat.VERSION);
+        putInt((int) (lastTime >>> 32));
+        putInt((int) lastTime);
+        putInt(checkpoint.length);
+        out.write(buffer, 0, length);
+        out.write(checkpoint);
+        length = 0;
+    }
+
+    private void putDenomination(int denomination) {
+        // Any position outside the set is rejected alike, so one code stands for all of them
+        boolean known = denomination >= 0 && denomination < inventory.getDenominations().size();
+        putByte(known ? (byte) denomination : TraceFormat.NO_COIN);
+    }
+
+    private void putShelf(String shelfCode) {
+        if (shelfCode == null) {
+            putVarLong(0);
+            return;
+        }
+        Integer index = shelfCodes.get(shelfCode);
+        if (index != null) {
+            putVarLong(index + 1L);
+            return;
+        }
+        shelfCodes.put(shelfCode, shelfCodes.size());
+        putVarLong(shelfCodes.size());
+        putString(shelfCode);
+    }
+
+    private void putProduct(Product product) {
+        if (product == null) {
+            putVarLong(0);
+            return;
+        }
+        ProductKey key = ProductKey.of(product);
+        Integer index = products.get(key);
+        if (index != null) {
+            putVarLong(index + 1L);
+            return;
+        }
+        products.put(key, products.size());
+        putVarLong(products.size());
+        putString(product.getId());
+        putString(product.getName());
+        putSignedVarInt(product.getPriceInCents());
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarLong(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void putSignedVarInt(int value) {
+        putVarLong(Integer.toUnsignedLong((value << 1) ^ (value >> 31)));
+    }
+
+    private void putVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            putByte((byte) (value >>> shift));
+        }
+    }
+
+    private void putByte(byte value) {
+        ensure(1);
+        buffer[length++] = value;
+    }
+
+    private void ensure(int bytes) {
+        if (length + bytes > buffer.length) {
+            // Only a record with long strings or a large cart gets here
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+        }
+    }
+
+    /** A filled buffer and how much of it to write. */
+    private record Block(byte[] bytes, int length) {
+    }
+
+    /** Products are immutable, so equal fields mean one table entry. */
+    private record ProductKey(String id, String name, int priceInCents) {
+        static ProductKey of(Product product) {
+            return new ProductKey(product.getId(), product.getName(), product.getPriceInCents());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.vendingmachine.trace;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.change.ChangeStrategy;
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.state.MachineState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Re-runs a recorded {@link Trace} against a fresh machine, as fast as the machine goes, and
+ * checks every call against the recording.
+ *
+ * <pre>
+ * ReplayResult result = new TraceReplayer(Trace.read(path)).run();
+ * if (!result.isFaithful()) {
+ *     result.firstMismatches().forEach(System.out::println);
+ * }
+ * </pre>
+ * The machine starts from the trace's initial inventory and gets one session per recorded
+ * session. Each call is made through the same API variant as recorded (exception or
+ * {@link com.vendingmachine.result.VendResult}), and its outcome, the session's state and
+ * balance, and after a dispense the value of the coin float are compared with the trace.
+ * A mismatch is counted and described, and the replay goes on.
+ *
+ * The replay is single-threaded and allocates nothing per call beyond what the machine
+ * itself does, so it doubles as a benchmark workload built from real traffic. Events go
+ * to {@link VendingEventListener#NO_OP} unless another listener is set;
+ * {@link #getTraceTimeMillis()} gives listeners such as
+ * {@link com.vendingmachine.analytics.SalesAnalytics} the recorded time of the current call.
+ */
+public final class TraceReplayer {
+
+    private static final int REPORTED_MISMATCHES = 10;
+    private static final TraceOp[] OPS = TraceOp.values();
+
+    private final Trace trace;
+    private final ChangeStrategy changeStrategy;
+    private VendingEventListener eventListener = VendingEventListener.NO_OP;
+    private volatile long traceTime;
+
+    /**
+     * Creates a replayer for machines making change with the default strategy for the
+     * denomination set of the trace's initial inventory.
+     * @param trace the trace to replay
+     */
+    public TraceReplayer(Trace trace) {
+        this(trace, ChangeStrategy.forDenominations(initialDenominations(trace)));
+    }
+
+    /**
+     * Creates a replayer for machines making change with the given strategy, which should be
+     * the recording machine's.
+     * @param trace the trace to replay
+     * @param changeStrategy change strategy of the replayed inventory
+     * @throws IllegalArgumentException if the trace is null, the strategy is null or not usable
+     *         ({@link Inventory#checkChangeStrategy(ChangeStrategy)}), or its denomination set is
+     *         not the trace's
+     */
+    public TraceReplayer(Trace trace, ChangeStrategy changeStrategy) {
+        DenominationSet denominations = initialDenominations(trace);
+        Inventory.checkChangeStrategy(changeStrategy);
+        if (!changeStrategy.getDenominations().equals(denominations)) {
+            throw new IllegalArgumentException("Change strategy is for " + changeStrategy.getDenominations().getName()
+                + ", the trace for " + denominations.getName());
+        }
+        this.trace = trace;
+        this.changeStrategy = changeStrategy;
+    }
+
+    private static DenominationSet initialDenominations(Trace trace) {
+        if (trace == null) {
+            throw new IllegalArgumentException("Trace cannot be null");
+        }
+        return trace.getInitialInventory().getDenominations();
+    }
+
+    /**
+     * Sets the listener receiving the replayed machine's events.
+     * @param eventListener the listener
+     */
+    public void setEventListener(VendingEventListener eventListener) {
+        if (eventListener == null) {
+            throw new IllegalArgumentException("Event listener cannot be null");
+        }
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * Gets the recorded time of the call being replayed, or of the start of the trace
+     * before the replay.
+     * @return epoch milliseconds
+     */
+    public long getTraceTimeMillis() {
+        long time = traceTime;
+        return time != 0 ? time : trace.getStartTimeMillis();
+    }
+
+    /**
+     * Replays the whole trace on a new machine.
+     * @return calls replayed, mismatches and elapsed time
+     */
+    public ReplayResult run() {
+        Inventory inventory = trace.getInitialInventory().restore(changeStrategy);
+        VendingMachine machine = new VendingMachine(inventory, eventListener);
+        VendingMachine[] sessions = new VendingMachine[4];
+        List<String> reported = new ArrayList<>();
+        long mismatches = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < trace.size(); i++) {
+            int session = trace.sessions[i];
+            if (session >= sessions.length) {
+                sessions = Arrays.copyOf(sessions, Math.max(sessions.length * 2, session + 1));
+            }
+            VendingMachine vm = sessions[session];
+            if (vm == null) {
+                vm = machine.openSession();
+                sessions[session] = vm;
+            }
+            traceTime = trace.times[i];
+
+            TraceOp op = OPS[trace.ops[i]];
+            byte outcome = execute(vm, op, i);
+            int coinValue = trace.coinValues[i] >= 0 ? inventory.getTotalCoinValue() : -1;
+            if (outcome != trace.outcomes[i] || vm.getStateCode() != trace.states[i]
+                || vm.getCurrentBalance() != trace.balances[i] || coinValue != trace.coinValues[i]) {
+                mismatches++;
+                if (reported.size() < REPORTED_MISMATCHES) {
+                    reported.add(describe(i, op, outcome, vm, coinValue));
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        return new ReplayResult(trace.size(), mismatches, elapsed, List.copyOf(reported));
+    }
+
+    private byte execute(VendingMachine vm, TraceOp op, int i) {
+        try {
+            switch (op) {
+                case INSERT_COIN:
+                    vm.insertCoin(coin(i));
+                    return TraceFormat.OK;
+                case TRY_INSERT_COIN:
+                    return TraceFormat.outcomeOf(vm.tryInsertCoin(coin(i)));
+                case SELECT_PRODUCT:
+                    vm.selectProduct(trace.shelves[i]);
+                    return TraceFormat.OK;
+                case TRY_SELECT_PRODUCT:
+                    return TraceFormat.outcomeOf(vm.trySelectProduct(trace.shelves[i]));
+                case SELECT_PRODUCTS:
+                    vm.selectProducts(trace.carts[i]);
+                    return TraceFormat.OK;
+                case TRY_SELECT_PRODUCTS:
+                    return TraceFormat.outcomeOf(vm.trySelectProducts(trace.carts[i]));
+                case DISPENSE_PRODUCT:
+                    vm.dispenseProduct();
+                    return TraceFormat.OK;
+                case TRY_DISPENSE_PRODUCT:
+                    return TraceFormat.outcomeOf(vm.tryDispenseProduct());
+                case DISPENSE_PRODUCTS:
+                    vm.dispenseProducts();
+                    return TraceFormat.OK;
+                case CANCEL_TRANSACTION:
+                    vm.cancelTransaction();
+                    return TraceFormat.OK;
+                case TRY_CANCEL_TRANSACTION:
+                    return TraceFormat.outcomeOf(vm.tryCancelTransaction());
+                case STOCK_PRODUCT:
+                    vm.stockProduct(trace.shelves[i], trace.products[i], trace.counts[i]);
+                    return TraceFormat.OK;
+                case LOAD_COINS:
+                    vm.loadCoins(coin(i), trace.counts[i]);
+                    return TraceFormat.OK;
+                default:
+                    throw new IllegalStateException("Unknown operation " + op);
+            }
+        } catch (RuntimeException e) {
+            return TraceFormat.outcomeOf(e);
+        }
+    }
+
+    private int coin(int i) {
+        // NO_COIN is -1, which the machine rejects like any position outside the set
+        return trace.coins[i];
+    }
+
+    private String describe(int i, TraceOp op, byte outcome, VendingMachine vm, int coinValue) {
+        StringBuilder out = new StringBuilder();
+        out.append('#').append(i).append(" session ").append(trace.sessions[i]).append(' ').append(op)
+            .append(": recorded ").append(TraceFormat.describe(trace.outcomes[i]))
+            .append(' ').append(MachineState.of(trace.states[i])).append(" balance ").append(trace.balances[i]);
+        if (trace.coinValues[i] >= 0) {
+            out.append(" coins ").append(trace.coinValues[i]);
+        }
+        out.append(", replayed ").append(TraceFormat.describe(outcome))
+            .append(' ').append(MachineState.of(vm.getStateCode())).append(" balance ").append(vm.getCurrentBalance());
+        if (coinValue >= 0) {
+            out.append(" coins ").append(coinValue);
+        }
+        return out.toString();
+    }
+}
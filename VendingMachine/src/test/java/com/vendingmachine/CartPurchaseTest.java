@@ -0,0 +1,139 @@
+package com.vendingmachine;
+
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.exception.InvalidOperationException;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.inventory.ShelfView;
+import com.vendingmachine.metrics.MachineMetrics;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.result.VendResult;
+import com.vendingmachine.state.MachineState;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CartPurchaseTest {
+
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 150);
+    private static final Product CHIPS = new Product("CHIPS", "Chips", 65);
+
+    @Test
+    void sellsTheWholeCartWithOneChangeCalculation() {
+        VendingMachine vm = machine();
+        MachineMetrics metrics = new MachineMetrics();
+        vm.getInventory().setMetrics(metrics);
+        pay(vm, 4);
+        vm.selectProducts("A1", "B1", "B1");
+
+        VendResult.CartDispensed cart = assertInstanceOf(VendResult.CartDispensed.class, vm.tryDispenseProduct());
+        assertEquals(List.of("A1", "B1", "B1"), cart.shelfCodes());
+        assertEquals(List.of(COLA, CHIPS, CHIPS), cart.products());
+        assertEquals(120, cart.changeCents());
+        assertEquals(120, CoinTally.value(cart.change()));
+        assertEquals(1, metrics.getChangeCalculations());
+        assertEquals(3, metrics.getProductsDispensed());
+        assertEquals(Map.of("A1", 2, "B1", 3), stock(vm));
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+    }
+
+    @Test
+    void sellsNothingWhenAnItemSoldOutAfterSelection() {
+        VendingMachine vm = machine();
+        VendingMachine other = vm.openSession();
+        pay(vm, 6);
+        vm.selectProducts("B1", "A1", "A1", "A1");
+        // Another customer buys one of the colas first
+        pay(other, 2);
+        other.selectProduct("A1");
+        other.dispenseProduct();
+        Map<String, Integer> before = stock(vm);
+        int floatBefore = vm.getInventory().getTotalCoinValue();
+
+        assertEquals(VendResult.Rejected.SOLD_OUT, vm.tryDispenseProduct());
+        assertEquals(before, stock(vm));
+        assertEquals(floatBefore, vm.getInventory().getTotalCoinValue());
+        assertEquals(0, vm.getCurrentBalance());
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+    }
+
+    @Test
+    void sellsNothingWhenExactChangeCannotBeMade() {
+        VendingMachine vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        vm.stockProduct("A1", COLA, 3);
+        vm.stockProduct("B1", CHIPS, 5);
+        pay(vm, 3);
+        vm.selectProducts("A1", "B1");
+        Map<String, Integer> before = stock(vm);
+
+        assertEquals(VendResult.Rejected.NO_EXACT_CHANGE, vm.tryDispenseProduct());
+        assertEquals(before, stock(vm));
+        assertEquals(0, vm.getInventory().getTotalCoinValue());
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+    }
+
+    @Test
+    void sellsNothingWhenARestockRaisedThePrice() {
+        VendingMachine vm = machine();
+        pay(vm, 3);
+        vm.selectProducts("A1", "B1");
+        vm.stockProduct("B1", new Product("CHIPS", "Chips", 200), 5);
+
+        assertEquals(VendResult.Rejected.NOT_ENOUGH_MONEY, vm.tryDispenseProduct());
+        assertEquals(Map.of("A1", 3, "B1", 5), stock(vm));
+        assertEquals(0, vm.getCurrentBalance());
+    }
+
+    @Test
+    void checksTheCartTotalAtSelection() {
+        VendingMachine vm = machine();
+        pay(vm, 2);
+        assertEquals(VendResult.Rejected.NOT_ENOUGH_MONEY, vm.trySelectProducts("A1", "B1"));
+        assertEquals(VendResult.Rejected.UNKNOWN_SHELF, vm.trySelectProducts("A1", "Z9"));
+        assertEquals(MachineState.HAS_MONEY, vm.getCurrentState());
+        assertEquals(200, vm.getCurrentBalance());
+        assertThrows(IllegalArgumentException.class, () -> vm.selectProducts());
+    }
+
+    @Test
+    void singleProductDispenseRefusesACart() {
+        VendingMachine vm = machine();
+        pay(vm, 4);
+        vm.selectProducts("A1", "B1");
+        assertThrows(InvalidOperationException.class, vm::dispenseProduct);
+        assertEquals(List.of(COLA, CHIPS), vm.dispenseProducts());
+    }
+
+    // ==================== Helpers ====================
+
+    private static VendingMachine machine() {
+        VendingMachine vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        vm.stockProduct("A1", COLA, 3);
+        vm.stockProduct("B1", CHIPS, 5);
+        vm.loadCoins(Coin.QUARTER, 20);
+        vm.loadCoins(Coin.DIME, 20);
+        vm.loadCoins(Coin.NICKEL, 20);
+        return vm;
+    }
+
+    private static void pay(VendingMachine vm, int dollars) {
+        for (int i = 0; i < dollars; i++) {
+            vm.insertCoin(Coin.DOLLAR);
+        }
+    }
+
+    private static Map<String, Integer> stock(VendingMachine vm) {
+        Map<String, Integer> stock = new HashMap<>();
+        for (ShelfView shelf : vm.getInventory().getView().getShelves()) {
+            stock.put(shelf.code(), shelf.quantity());
+        }
+        return stock;
+    }
+}
@@ -0,0 +1,168 @@
+package com.vendingmachine;
+
+import com.vendingmachine.change.ChangeStrategy;
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.event.VendingEvent;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.exception.InvalidOperationException;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.inventory.InventoryCheckpoint;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.result.VendResult;
+import com.vendingmachine.state.MachineState;
+import com.vendingmachine.trace.ReplayResult;
+import com.vendingmachine.trace.Trace;
+import com.vendingmachine.trace.TraceRecorder;
+import com.vendingmachine.trace.TraceReplayer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs machines on a denomination set other than US coins.
+ */
+class RegionalCoinsTest {
+
+    private static final DenominationSet EUR = DenominationSet.of("EUR", 1, 2, 5, 10, 20, 50, 100, 200);
+    private static final int CENT_5 = 2;
+    private static final int CENT_20 = 4;
+    private static final int CENT_50 = 5;
+    private static final int EURO_2 = 7;
+    private static final Product WATER = new Product("WATER", "Water", 130);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sellsAndMakesChangeInTheMachinesCoins() {
+        List<VendingEvent> events = new ArrayList<>();
+        VendingMachine vm = new VendingMachine(euroInventory(), events::add);
+        vm.insertCoin(EURO_2);
+        vm.selectProduct("A1");
+
+        VendResult.Dispensed sale = assertInstanceOf(VendResult.Dispensed.class, vm.tryDispenseProduct());
+        assertEquals(70, sale.changeCents());
+        assertEquals(1, CoinTally.count(sale.change(), CENT_50));
+        assertEquals(1, CoinTally.count(sale.change(), CENT_20));
+        assertEquals(70, CoinTally.value(sale.change(), EUR));
+        assertEquals(1, vm.getInventory().getCoinCount(EURO_2));
+        assertEquals(new VendingEvent.CoinInserted(EUR, EURO_2, 200), events.get(0));
+        assertEquals("EUR 200", EUR.getCoinName(EURO_2));
+    }
+
+    @Test
+    void cancelReturnsTheInsertedCoinsAsATally() {
+        VendingMachine vm = new VendingMachine(euroInventory(), VendingEventListener.NO_OP);
+        vm.insertCoin(CENT_50);
+        vm.insertCoin(CENT_50);
+        vm.insertCoin(CENT_20);
+
+        // The refund cannot be listed as US coins, so nothing happens
+        assertThrows(InvalidOperationException.class, vm::cancelTransaction);
+        assertEquals(120, vm.getCurrentBalance());
+
+        VendResult.Refunded refund = assertInstanceOf(VendResult.Refunded.class, vm.tryCancelTransaction());
+        assertEquals(120, refund.refundCents());
+        assertEquals(2, CoinTally.count(refund.coins(), CENT_50));
+        assertEquals(1, CoinTally.count(refund.coins(), CENT_20));
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+        assertEquals(new VendResult.Refunded(CoinTally.EMPTY, 0), vm.tryCancelTransaction());
+    }
+
+    @Test
+    void mapsCoinsToTheDenominationOfTheirValue() {
+        VendingMachine vm = new VendingMachine(euroInventory(), VendingEventListener.NO_OP);
+        vm.insertCoin(Coin.NICKEL);
+        assertEquals(1, CoinTally.count(vm.getInsertedCoinTally(), CENT_5));
+        assertEquals(5, vm.getCurrentBalance());
+
+        assertThrows(IllegalArgumentException.class, () -> vm.insertCoin(Coin.QUARTER));
+        assertThrows(IllegalArgumentException.class, () -> vm.insertCoin(EUR.size()));
+        assertThrows(IllegalArgumentException.class, () -> vm.loadCoins(Coin.QUARTER, 1));
+        assertEquals(5, vm.getCurrentBalance());
+        // A dollar has the value of one euro
+        vm.loadCoins(Coin.DOLLAR, 2);
+        assertEquals(2, vm.getInventory().getCoinCount(6));
+    }
+
+    @Test
+    void rejectsSetsTooLargeForATally() {
+        DenominationSet large = DenominationSet.of("LARGE", 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertThrows(IllegalArgumentException.class, () -> new Inventory(ChangeStrategy.forDenominations(large)));
+    }
+
+    @Test
+    void journalAndCheckpointKeepTheSet() throws IOException {
+        Path file = dir.resolve("machine.wal");
+        Inventory inventory = Inventory.recover(file, ChangeStrategy.forDenominations(EUR));
+        inventory.addCoins(CENT_20, 4);
+        inventory.addCoins(CENT_50, 2);
+        VendingMachine vm = new VendingMachine(inventory, VendingEventListener.NO_OP);
+        vm.stockProduct("A1", WATER, 3);
+        vm.insertCoin(EURO_2);
+        vm.selectProduct("A1");
+        vm.dispenseProduct();
+        int value = inventory.getTotalCoinValue();
+        inventory.getJournal().close();
+
+        Inventory recovered = Inventory.recover(file, ChangeStrategy.forDenominations(EUR));
+        try {
+            assertEquals(value, recovered.getTotalCoinValue());
+            assertEquals(3, recovered.getCoinCount(CENT_20));
+            assertEquals(1, recovered.getCoinCount(EURO_2));
+        } finally {
+            recovered.getJournal().close();
+        }
+
+        InventoryCheckpoint checkpoint = InventoryCheckpoint.fromBytes(InventoryCheckpoint.capture(inventory).toBytes());
+        assertEquals(EUR, checkpoint.getDenominations());
+        Inventory restored = checkpoint.restore();
+        assertEquals(EUR, restored.getDenominations());
+        assertEquals(value, restored.getTotalCoinValue());
+        assertThrows(IllegalArgumentException.class,
+            () -> checkpoint.restore(ChangeStrategy.forDenominations(DenominationSet.US)));
+    }
+
+    @Test
+    void replaysATraceOnTheRecordedSet() throws IOException {
+        VendingMachine vm = new VendingMachine(euroInventory(), VendingEventListener.NO_OP);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceRecorder recorder = TraceRecorder.start(vm, bytes)) {
+            vm.loadCoins(CENT_5, 10);
+            vm.insertCoin(EURO_2);
+            vm.trySelectProduct("A1");
+            vm.tryDispenseProduct();
+            vm.tryInsertCoin(CENT_50);
+            vm.tryCancelTransaction();
+            assertEquals(6, recorder.getRecordCount());
+        }
+        Trace trace = Trace.read(new ByteArrayInputStream(bytes.toByteArray()));
+        ReplayResult result = new TraceReplayer(trace).run();
+        assertTrue(result.isFaithful(), () -> String.valueOf(result.firstMismatches()));
+        assertThrows(IllegalArgumentException.class,
+            () -> new TraceReplayer(trace, ChangeStrategy.forDenominations(DenominationSet.US)));
+    }
+
+    // ==================== Helpers ====================
+
+    private static Inventory euroInventory() {
+        Inventory inventory = new Inventory(ChangeStrategy.forDenominations(EUR));
+        inventory.stockProduct("A1", WATER, 5);
+        inventory.addCoins(CENT_20, 5);
+        inventory.addCoins(CENT_50, 5);
+        return inventory;
+    }
+}
@@ -0,0 +1,139 @@
+package com.vendingmachine;
+
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.result.VendResult;
+import com.vendingmachine.state.MachineState;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VendingMachineSessionTest {
+
+    private static final Product GUM = new Product("GUM", "Gum", 25);
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 150);
+
+    @Test
+    void sessionsKeepTheirOwnStateAndBalance() {
+        VendingMachine vm = machine();
+        VendingMachine kiosk = vm.openSession();
+        VendingMachine app = vm.openSession();
+        assertSame(vm.getInventory(), kiosk.getInventory());
+
+        kiosk.insertCoin(Coin.DOLLAR);
+        kiosk.insertCoin(Coin.QUARTER);
+        app.insertCoin(Coin.QUARTER);
+        app.selectProduct("A1");
+
+        assertEquals(125, kiosk.getCurrentBalance());
+        assertEquals(MachineState.HAS_MONEY, kiosk.getCurrentState());
+        assertEquals(MachineState.DISPENSING, app.getCurrentState());
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+        assertEquals(0, vm.getCurrentBalance());
+
+        assertEquals(List.of(Coin.QUARTER, Coin.DOLLAR), sorted(kiosk.cancelTransaction()));
+        assertEquals(GUM, app.dispenseProduct());
+        assertEquals(0, kiosk.getCurrentBalance());
+        assertEquals(1, vm.getInventory().getCoinCount(Coin.QUARTER));
+    }
+
+    @Test
+    void stockSoldByOneSessionIsGoneForTheOthers() {
+        VendingMachine vm = machine();
+        vm.stockProduct("B1", COLA, 1);
+        VendingMachine first = vm.openSession();
+        VendingMachine second = vm.openSession();
+
+        pay(first, 150);
+        first.selectProduct("B1");
+        pay(second, 150);
+        second.selectProduct("B1");
+
+        assertEquals(COLA, first.dispenseProduct());
+        assertEquals(VendResult.Rejected.SOLD_OUT, second.tryDispenseProduct());
+        assertEquals(MachineState.IDLE, second.getCurrentState());
+        // The second customer's money was refunded, not added to the float
+        assertEquals(1, vm.getInventory().getCoinCount(Coin.DOLLAR));
+        second.insertCoin(Coin.DOLLAR);
+        assertEquals(VendResult.Rejected.SOLD_OUT, second.trySelectProduct("B1"));
+    }
+
+    @Test
+    void parallelSessionsNeverOversell() throws Exception {
+        int stock = 500;
+        int threads = 8;
+        int attemptsPerThread = 100;
+        VendingMachine vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        vm.stockProduct("A1", GUM, stock);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            VendingMachine session = vm.openSession();
+            results.add(executor.submit(() -> {
+                start.await();
+                int sold = 0;
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    session.insertCoin(Coin.QUARTER);
+                    if (session.trySelectProduct("A1").isSuccess()
+                        && session.tryDispenseProduct() instanceof VendResult.Dispensed) {
+                        sold++;
+                    } else if (session.getCurrentState() != MachineState.IDLE) {
+                        session.cancelTransaction();
+                    }
+                }
+                return sold;
+            }));
+        }
+        start.countDown();
+        int sold = 0;
+        for (Future<Integer> result : results) {
+            sold += result.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(stock, sold);
+        assertFalse(vm.getInventory().isProductAvailable("A1"));
+        assertEquals(stock, vm.getInventory().getCoinCount(Coin.QUARTER));
+    }
+
+    // ==================== Helpers ====================
+
+    private static VendingMachine machine() {
+        VendingMachine vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        vm.stockProduct("A1", GUM, 5);
+        return vm;
+    }
+
+    private static void pay(VendingMachine session, int cents) {
+        while (cents >= Coin.DOLLAR.getValue()) {
+            session.insertCoin(Coin.DOLLAR);
+            cents -= Coin.DOLLAR.getValue();
+        }
+        while (cents >= Coin.QUARTER.getValue()) {
+            session.insertCoin(Coin.QUARTER);
+            cents -= Coin.QUARTER.getValue();
+        }
+    }
+
+    private static List<Coin> sorted(List<Coin> coins) {
+        List<Coin> copy = new ArrayList<>(coins);
+        copy.sort(null);
+        return copy;
+    }
+}
@@ -0,0 +1,208 @@
+package com.vendingmachine.analytics;
+
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.event.VendingEvent;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.inventory.InventoryChange;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SalesAnalyticsTest {
+
+    // Midnight, so every window starts a bucket here
+    private static final long START = 20_000L * 24 * 3_600_000L;
+
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 150);
+    private static final Product CHIPS = new Product("CHIPS", "Chips", 60);
+    private static final Product GUM = new Product("GUM", "Gum", 25);
+
+    private final AtomicLong now = new AtomicLong(START);
+
+    @Test
+    void countsSalesFailuresAndRefunds() {
+        SalesAnalytics analytics = new SalesAnalytics(now::get, SalesAnalytics.DEFAULT_MAX_KEYS);
+        sell(analytics, "A1", COLA, 2);
+        sell(analytics, "A2", COLA, 1);
+        sell(analytics, "B1", CHIPS, 1);
+        analytics.onEvent(new VendingEvent.SaleFailed("B1", VendingEvent.RefundReason.SOLD_OUT));
+        analytics.onEvent(new VendingEvent.Refunded(
+            DenominationSet.US, CoinTally.add(CoinTally.EMPTY, Coin.DOLLAR), VendingEvent.RefundReason.SOLD_OUT));
+        analytics.onEvent(new VendingEvent.Refunded(DenominationSet.US, CoinTally.EMPTY, VendingEvent.RefundReason.CANCELLED));
+        analytics.onEvent(new VendingEvent.PaymentReleased(VendingEvent.RefundReason.CANCELLED));
+        analytics.onEvent(new VendingEvent.CoinInserted(DenominationSet.US, Coin.DOLLAR.ordinal(), 100));
+
+        for (SalesWindow window : SalesWindow.values()) {
+            assertEquals(4, analytics.getUnitsSold(window));
+            assertEquals(510, analytics.getRevenue(window));
+            assertEquals(1, analytics.getFailedSales(window));
+            assertEquals(2, analytics.getRefunds(window));
+        }
+        assertEquals(new SalesFigures("COKE", 3, 450, 0, 0), analytics.getProductFigures("COKE", SalesWindow.HOUR));
+        assertEquals(new SalesFigures("B1", 1, 60, 1, 0), analytics.getShelfFigures("B1", SalesWindow.HOUR));
+        assertEquals(new SalesFigures("Z9", 0, 0, 0, 0), analytics.getShelfFigures("Z9", SalesWindow.HOUR));
+    }
+
+    @Test
+    void salesLeaveEachWindowWhenTheirBucketExpires() {
+        SalesAnalytics analytics = new SalesAnalytics(now::get, SalesAnalytics.DEFAULT_MAX_KEYS);
+        sell(analytics, "A1", COLA, 1);
+        now.addAndGet(30_000);
+        sell(analytics, "A1", COLA, 1);
+
+        now.set(START + 59_999);
+        assertEquals(2, analytics.getUnitsSold(SalesWindow.MINUTE));
+        now.set(START + 60_000);
+        assertEquals(1, analytics.getUnitsSold(SalesWindow.MINUTE));
+        assertEquals(2, analytics.getUnitsSold(SalesWindow.HOUR));
+        now.set(START + 91_000);
+        assertEquals(0, analytics.getUnitsSold(SalesWindow.MINUTE));
+        assertEquals(2, analytics.getUnitsSold(SalesWindow.HOUR));
+
+        now.set(START + 3_600_000);
+        assertEquals(0, analytics.getUnitsSold(SalesWindow.HOUR));
+        assertEquals(2, analytics.getUnitsSold(SalesWindow.DAY));
+        // Far beyond every window, after a long idle time
+        now.set(START + 10 * 24 * 3_600_000L);
+        assertEquals(0, analytics.getUnitsSold(SalesWindow.DAY));
+        assertEquals(0, analytics.getProductFigures("COKE", SalesWindow.DAY).revenueCents());
+    }
+
+    @Test
+    void ranksTopSellersPerWindow() {
+        SalesAnalytics analytics = new SalesAnalytics(now::get, SalesAnalytics.DEFAULT_MAX_KEYS);
+        sell(analytics, "A1", COLA, 3);
+        sell(analytics, "C1", GUM, 1);
+        now.addAndGet(40_000);
+        sell(analytics, "B1", CHIPS, 5);
+
+        assertEquals(List.of("CHIPS", "COKE", "GUM"), keys(analytics.topProducts(SalesWindow.MINUTE, 5)));
+        assertEquals(List.of("B1", "A1"), keys(analytics.topShelves(SalesWindow.MINUTE, 2)));
+
+        // COKE and GUM leave the minute, CHIPS stays
+        now.set(START + 61_000);
+        assertEquals(List.of("CHIPS"), keys(analytics.topProducts(SalesWindow.MINUTE, 5)));
+        assertEquals(List.of("CHIPS", "COKE", "GUM"), keys(analytics.topProducts(SalesWindow.HOUR, 5)));
+
+        sell(analytics, "C1", GUM, 6);
+        assertEquals(List.of("GUM", "CHIPS"), keys(analytics.topProducts(SalesWindow.MINUTE, 5)));
+        assertEquals(List.of("GUM", "CHIPS", "COKE"), keys(analytics.topProducts(SalesWindow.HOUR, 5)));
+        assertEquals(new SalesFigures("GUM", 7, 175, 0, 0), analytics.topProducts(SalesWindow.DAY, 1).get(0));
+    }
+
+    @Test
+    void rankingMatchesAFullSortAfterRandomSales() {
+        SalesAnalytics analytics = new SalesAnalytics(now::get, SalesAnalytics.DEFAULT_MAX_KEYS);
+        Random random = new Random(7);
+        long[] units = new long[40];
+        for (int sale = 0; sale < 5_000; sale++) {
+            int p = (int) Math.abs(random.nextGaussian() * 10) % units.length;
+            sell(analytics, "S" + p, new Product("P" + p, "Product " + p, 100), 1);
+            units[p]++;
+            now.addAndGet(random.nextInt(500));
+        }
+        List<SalesFigures> top = analytics.topProducts(SalesWindow.DAY, 10);
+        List<Long> expected = new ArrayList<>();
+        for (long count : units) {
+            expected.add(count);
+        }
+        expected.sort(Comparator.reverseOrder());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(expected.get(i), top.get(i).unitsSold());
+            int p = Integer.parseInt(top.get(i).key().substring(1));
+            assertEquals(units[p], top.get(i).unitsSold());
+        }
+        assertEquals(10, top.size());
+    }
+
+    @Test
+    void countsSalesBeyondMaxKeysInTheTotalsOnly() {
+        SalesAnalytics analytics = new SalesAnalytics(now::get, 2);
+        sell(analytics, "A1", COLA, 1);
+        sell(analytics, "B1", CHIPS, 1);
+        sell(analytics, "C1", GUM, 1);
+
+        assertEquals(3, analytics.getUnitsSold(SalesWindow.MINUTE));
+        // The third shelf and the third product were not tracked
+        assertEquals(2, analytics.getUntrackedCount());
+        assertEquals(List.of("COKE", "CHIPS"), keys(analytics.topProducts(SalesWindow.MINUTE, 5)));
+    }
+
+    @Test
+    void tracksStockOutTimeFromTheInventory() throws InterruptedException {
+        Inventory inventory = new Inventory();
+        inventory.stockProduct("A1", COLA, 0);
+        inventory.stockProduct("B1", CHIPS, 3);
+        SalesAnalytics analytics = new SalesAnalytics(now::get, SalesAnalytics.DEFAULT_MAX_KEYS);
+        analytics.track(inventory);
+
+        now.addAndGet(5_000);
+        assertEquals(5_000, analytics.getShelfFigures("A1", SalesWindow.MINUTE).stockOutMillis());
+        assertEquals(0, analytics.getShelfFigures("B1", SalesWindow.MINUTE).stockOutMillis());
+
+        // Analytics subscribed first, so it has seen the restock once this subscriber has
+        awaitChange(inventory, () -> inventory.addStock("A1", 4));
+        now.addAndGet(10_000);
+        assertEquals(5_000, analytics.getShelfFigures("A1", SalesWindow.MINUTE).stockOutMillis());
+
+        // Stock-outs leave the minute like sales do
+        now.set(START + 75_000);
+        assertEquals(0, analytics.getShelfFigures("A1", SalesWindow.MINUTE).stockOutMillis());
+        assertEquals(5_000, analytics.getShelfFigures("A1", SalesWindow.HOUR).stockOutMillis());
+    }
+
+    // ==================== Helpers ====================
+
+    private static void sell(SalesAnalytics analytics, String shelfCode, Product product, int count) {
+        for (int i = 0; i < count; i++) {
+            analytics.onEvent(new VendingEvent.ProductDispensed(shelfCode, product));
+        }
+    }
+
+    private static List<String> keys(List<SalesFigures> figures) {
+        List<String> keys = new ArrayList<>();
+        for (SalesFigures figure : figures) {
+            keys.add(figure.key());
+        }
+        return keys;
+    }
+
+    /** Runs a change and waits until the inventory's change stream has delivered it. */
+    private static void awaitChange(Inventory inventory, Runnable change) throws InterruptedException {
+        CountDownLatch delivered = new CountDownLatch(1);
+        inventory.getChanges().subscribe(new Flow.Subscriber<InventoryChange>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(InventoryChange item) {
+                delivered.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        change.run();
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    }
+}
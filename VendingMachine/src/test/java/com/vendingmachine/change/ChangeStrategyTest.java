@@ -0,0 +1,165 @@
+package com.vendingmachine.change;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the change strategies against an exhaustive search over small floats.
+ */
+class ChangeStrategyTest {
+
+    private static final int NO_CHANGE = -1;
+
+    @Test
+    void optimalMatchesBruteForceOnUsCoins() {
+        Random random = new Random(1);
+        OptimalChangeStrategy strategy = new OptimalChangeStrategy();
+        for (int round = 0; round < 2_000; round++) {
+            int[] available = randomCounts(random, DenominationSet.US.size(), 6);
+            checkFewestCoins(strategy, DenominationSet.US, 1 + random.nextInt(400), available);
+        }
+    }
+
+    @Test
+    void optimalMatchesBruteForceOnRandomSets() {
+        Random random = new Random(2);
+        for (int round = 0; round < 300; round++) {
+            DenominationSet set = randomSet(random);
+            OptimalChangeStrategy strategy = new OptimalChangeStrategy(set);
+            // Reuse one strategy across floats, as the inventory does, to exercise its cached rows
+            for (int call = 0; call < 10; call++) {
+                int[] available = randomCounts(random, set.size(), 5);
+                checkFewestCoins(strategy, set, 1 + random.nextInt(120), available);
+            }
+        }
+    }
+
+    @Test
+    void optimalGrowsPastItsInitialTable() {
+        OptimalChangeStrategy strategy = new OptimalChangeStrategy();
+        int[] available = {0, 0, 0, 0, 40};
+        int[] change = new int[available.length];
+        assertTrue(strategy.makeChange(2_500, available, change));
+        assertEquals(25, change[4]);
+        checkFewestCoins(strategy, DenominationSet.US, 35, new int[] {3, 1, 2, 1, 0});
+    }
+
+    @Test
+    void forDenominationsMatchesBruteForce() {
+        Random random = new Random(3);
+        for (int round = 0; round < 300; round++) {
+            DenominationSet set = randomSet(random);
+            ChangeStrategy strategy = ChangeStrategy.forDenominations(set);
+            Class<?> expected = set.isCanonical() ? CanonicalChangeStrategy.class : OptimalChangeStrategy.class;
+            assertEquals(expected, strategy.getClass());
+            for (int call = 0; call < 10; call++) {
+                int[] available = randomCounts(random, set.size(), 5);
+                checkFewestCoins(strategy, set, 1 + random.nextInt(120), available);
+            }
+        }
+    }
+
+    @Test
+    void greedyFailsWhereExactChangeExists() {
+        // 30 cents from one quarter and three dimes
+        int[] available = {0, 0, 3, 1, 0};
+        int[] change = new int[available.length];
+        assertFalse(new GreedyChangeStrategy().makeChange(30, available, change));
+        assertTrue(new OptimalChangeStrategy().makeChange(30, available, change));
+        assertEquals(3, change[2]);
+    }
+
+    @Test
+    void greedyChangeIsAlwaysExactWhenFound() {
+        Random random = new Random(4);
+        for (int round = 0; round < 300; round++) {
+            DenominationSet set = randomSet(random);
+            GreedyChangeStrategy strategy = new GreedyChangeStrategy(set);
+            int[] available = randomCounts(random, set.size(), 5);
+            int amount = 1 + random.nextInt(120);
+            int[] change = new int[set.size()];
+            if (strategy.makeChange(amount, available, change)) {
+                checkChange(set, amount, available, change);
+            }
+        }
+    }
+
+    @Test
+    void canonicalStrategyRejectsNonCanonicalSet() {
+        DenominationSet set = DenominationSet.of("TEST", 1, 3, 4);
+        assertFalse(set.isCanonical());
+        assertThrows(IllegalArgumentException.class, () -> new CanonicalChangeStrategy(set));
+    }
+
+    // ==================== Helpers ====================
+
+    private static void checkFewestCoins(ChangeStrategy strategy, DenominationSet set, int amount, int[] available) {
+        int expected = fewestCoins(set.values(), amount, available, set.size() - 1);
+        int[] change = new int[set.size()];
+        boolean made = strategy.makeChange(amount, available.clone(), change);
+        assertEquals(expected != NO_CHANGE, made, () -> "amount " + amount + " in " + set);
+        if (made) {
+            checkChange(set, amount, available, change);
+            int coins = 0;
+            for (int count : change) {
+                coins += count;
+            }
+            assertEquals(expected, coins, () -> "coins for " + amount + " in " + set);
+        }
+    }
+
+    private static void checkChange(DenominationSet set, int amount, int[] available, int[] change) {
+        int total = 0;
+        for (int i = 0; i < set.size(); i++) {
+            assertTrue(change[i] >= 0 && change[i] <= available[i], "coin count within the float");
+            total += change[i] * set.value(i);
+        }
+        assertEquals(amount, total);
+    }
+
+    /**
+     * Fewest coins making the amount from denominations 0..index, or {@link #NO_CHANGE}.
+     */
+    private static int fewestCoins(int[] values, int amount, int[] available, int index) {
+        if (amount == 0) {
+            return 0;
+        }
+        if (index < 0) {
+            return NO_CHANGE;
+        }
+        int best = NO_CHANGE;
+        int maxUse = Math.min(available[index], amount / values[index]);
+        for (int used = 0; used <= maxUse; used++) {
+            int rest = fewestCoins(values, amount - used * values[index], available, index - 1);
+            if (rest != NO_CHANGE && (best == NO_CHANGE || rest + used < best)) {
+                best = rest + used;
+            }
+        }
+        return best;
+    }
+
+    private static DenominationSet randomSet(Random random) {
+        int size = 2 + random.nextInt(4);
+        int[] values = new int[size];
+        // Mostly sets with a 1-unit coin; some without, which are never canonical
+        values[0] = random.nextInt(4) == 0 ? 2 + random.nextInt(3) : 1;
+        for (int i = 1; i < size; i++) {
+            values[i] = values[i - 1] + 1 + random.nextInt(12);
+        }
+        return DenominationSet.of("R", values);
+    }
+
+    private static int[] randomCounts(Random random, int size, int max) {
+        int[] counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            counts[i] = random.nextInt(max + 1);
+        }
+        return counts;
+    }
+}
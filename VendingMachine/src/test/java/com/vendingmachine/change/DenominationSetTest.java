@@ -0,0 +1,112 @@
+package com.vendingmachine.change;
+
+import com.vendingmachine.model.Coin;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DenominationSetTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void knownSets() {
+        assertTrue(DenominationSet.US.isCanonical());
+        assertArrayEquals(new int[] {1, 5, 10, 25, 100}, DenominationSet.US.values());
+        assertTrue(DenominationSet.of("EUR", 1, 2, 5, 10, 20, 50, 100, 200).isCanonical());
+        assertFalse(DenominationSet.of("OLD_GBP", 1, 3, 6, 12, 24, 30).isCanonical());
+        assertFalse(DenominationSet.of("NO_ONE", 2, 5).isCanonical());
+    }
+
+    @Test
+    void canonicalCheckMatchesExhaustiveGreedyComparison() {
+        Random random = new Random(5);
+        for (int round = 0; round < 500; round++) {
+            int size = 1 + random.nextInt(5);
+            int[] values = new int[size];
+            values[0] = 1;
+            for (int i = 1; i < size; i++) {
+                values[i] = values[i - 1] + 1 + random.nextInt(15);
+            }
+            DenominationSet set = DenominationSet.of("R", values);
+            assertEquals(greedyAlwaysOptimal(values), set.isCanonical(), set::toString);
+        }
+    }
+
+    @Test
+    void mapsCoinsByValue() {
+        for (Coin coin : Coin.values()) {
+            assertEquals(coin.ordinal(), DenominationSet.US.indexOf(coin));
+            assertEquals(coin, DenominationSet.US.coin(coin.ordinal()));
+        }
+        DenominationSet eur = DenominationSet.of("EUR", 1, 2, 5, 10, 20, 50, 100, 200);
+        assertFalse(eur.isUsCoins());
+        assertEquals(2, eur.indexOf(Coin.NICKEL));
+        assertEquals(-1, eur.indexOf(Coin.QUARTER));
+        assertNull(eur.coin(1));
+        assertEquals("EUR 50", eur.getCoinName(5));
+        assertEquals("DIME", DenominationSet.US.getCoinName(Coin.DIME.ordinal()));
+        assertTrue(DenominationSet.of("SMALL", 5, 25).isUsCoins());
+    }
+
+    @Test
+    void rejectsInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> DenominationSet.of("X"));
+        assertThrows(IllegalArgumentException.class, () -> DenominationSet.of("X", 5, 5));
+        assertThrows(IllegalArgumentException.class, () -> DenominationSet.of("X", 0, 5));
+        assertThrows(IllegalArgumentException.class, () -> DenominationSet.of(" ", 1));
+        assertThrows(IllegalArgumentException.class, () -> DenominationSet.parse("X", "1, two"));
+    }
+
+    @Test
+    void loadsSetsFromFile() throws IOException {
+        Path file = dir.resolve("coins.txt");
+        Files.writeString(file, "# regions\nUS = 1, 5, 10, 25, 100\n\nODD = 1,3,4\n");
+        Map<String, DenominationSet> sets = DenominationSet.loadAll(file);
+        assertEquals(DenominationSet.US, sets.get("US"));
+        assertArrayEquals(new int[] {1, 3, 4}, sets.get("ODD").values());
+
+        Files.writeString(file, "US = 1, 5\nUS = 1, 2\n");
+        IOException duplicate = assertThrows(IOException.class, () -> DenominationSet.loadAll(file));
+        assertTrue(duplicate.getMessage().contains("line 2"));
+    }
+
+    /**
+     * Compares greedy with the fewest coins for every amount up to twice the largest value.
+     */
+    private static boolean greedyAlwaysOptimal(int[] values) {
+        int limit = 2 * values[values.length - 1];
+        int[] fewest = new int[limit + 1];
+        for (int amount = 1; amount <= limit; amount++) {
+            fewest[amount] = Integer.MAX_VALUE;
+            for (int value : values) {
+                if (value <= amount && fewest[amount - value] + 1 < fewest[amount]) {
+                    fewest[amount] = fewest[amount - value] + 1;
+                }
+            }
+            int greedy = 0;
+            int remaining = amount;
+            for (int i = values.length - 1; i >= 0; i--) {
+                greedy += remaining / values[i];
+                remaining %= values[i];
+            }
+            if (greedy != fewest[amount]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
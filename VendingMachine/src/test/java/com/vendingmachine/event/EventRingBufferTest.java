@@ -0,0 +1,90 @@
+package com.vendingmachine.event;
+
+import com.vendingmachine.change.DenominationSet;
+import com.vendingmachine.model.Coin;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventRingBufferTest {
+
+    @Test
+    void deliversInOrderAndRejectsWhenFull() {
+        EventRingBuffer buffer = new EventRingBuffer(4);
+        VendingEvent[] events = new VendingEvent[4];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new VendingEvent.CoinInserted(DenominationSet.US, Coin.NICKEL.ordinal(), i);
+            assertTrue(buffer.offer(events[i]));
+        }
+        assertFalse(buffer.offer(new VendingEvent.CoinInserted(DenominationSet.US, Coin.DIME.ordinal(), 0)));
+
+        assertSame(events[0], buffer.poll());
+        // A freed slot takes the next event behind the others
+        VendingEvent wrapped = new VendingEvent.CoinInserted(DenominationSet.US, Coin.QUARTER.ordinal(), 9);
+        assertTrue(buffer.offer(wrapped));
+        for (int i = 1; i < events.length; i++) {
+            assertSame(events[i], buffer.poll());
+        }
+        assertSame(wrapped, buffer.poll());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void rejectsCapacityThatIsNotAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new EventRingBuffer(6));
+        assertThrows(IllegalArgumentException.class, () -> new EventRingBuffer(1));
+    }
+
+    @Test
+    void deliversEveryEventFromConcurrentProducersOnce() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 20_000;
+        EventRingBuffer buffer = new EventRingBuffer(1024);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    VendingEvent event = new VendingEvent.CoinInserted(DenominationSet.US, Coin.NICKEL.ordinal(), producer * perProducer + i);
+                    while (!buffer.offer(event)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+
+        // Each producer's events arrive in the order it offered them
+        int[] next = new int[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            VendingEvent event = buffer.poll();
+            if (event == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int value = ((VendingEvent.CoinInserted) event).balance();
+            int producer = value / perProducer;
+            assertEquals(next[producer]++, value % perProducer);
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(buffer.poll());
+    }
+}
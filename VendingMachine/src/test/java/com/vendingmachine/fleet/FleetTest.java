@@ -0,0 +1,139 @@
+package com.vendingmachine.fleet;
+
+import com.vendingmachine.exception.InsufficientMoneyException;
+import com.vendingmachine.exception.InvalidOperationException;
+import com.vendingmachine.exception.ProductNotAvailableException;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FleetTest {
+
+    private static final Product CHIPS = new Product("CHIPS", "Chips", 50);
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 150);
+
+    @Test
+    void sellsWithChangeAndAnswersFleetQueries() throws Exception {
+        try (Fleet fleet = new Fleet(10, 2, 3)) {
+            for (int machine = 0; machine < 10; machine++) {
+                fleet.stockProduct(machine, 0, COLA, 1).get();
+                fleet.stockProduct(machine, 1, CHIPS, 0).get();
+                fleet.loadCoins(machine, Coin.QUARTER, 4).get();
+            }
+            fleet.insertCoin(3, Coin.DOLLAR).get();
+            assertEquals(200, fleet.insertCoin(3, Coin.DOLLAR).get());
+            assertEquals(COLA, fleet.selectProduct(3, 0).get());
+            assertEquals(COLA, fleet.dispenseProduct(3).get());
+
+            assertEquals("IDLE", fleet.getStateName(3).get());
+            assertEquals(0, fleet.getShelfQuantity(3, 0).get());
+            assertEquals(2, fleet.getCoinCount(3, Coin.QUARTER).get());
+            assertEquals(2, fleet.getCoinCount(3, Coin.DOLLAR).get());
+            assertEquals(10 * 100 + 150, fleet.getTotalCash());
+            assertEquals(Map.of(CHIPS, 10L, COLA, 1L), fleet.getStockOutsPerProduct());
+        }
+    }
+
+    @Test
+    void rejectsOperationsTheStateDoesNotAllow() throws Exception {
+        try (Fleet fleet = new Fleet(1, 1, 1)) {
+            fleet.stockProduct(0, 0, COLA, 1).get();
+            assertCause(InvalidOperationException.class, fleet.dispenseProduct(0));
+            fleet.insertCoin(0, Coin.DOLLAR).get();
+            assertCause(InsufficientMoneyException.class, fleet.selectProduct(0, 0));
+            assertEquals(List.of(Coin.DOLLAR), fleet.cancelTransaction(0).get());
+            assertEquals("IDLE", fleet.getStateName(0).get());
+        }
+    }
+
+    @Test
+    void refundsWhenRestockedBetweenSelectionAndDispense() throws Exception {
+        try (Fleet fleet = new Fleet(1, 1, 1)) {
+            fleet.stockProduct(0, 0, CHIPS, 1).get();
+            fleet.insertCoin(0, Coin.DOLLAR).get();
+            fleet.selectProduct(0, 0).get();
+            fleet.stockProduct(0, 0, COLA, 1).get();
+            assertCause(InsufficientMoneyException.class, fleet.dispenseProduct(0));
+            assertEquals("IDLE", fleet.getStateName(0).get());
+            assertEquals(1, fleet.getShelfQuantity(0, 0).get());
+
+            fleet.insertCoin(0, Coin.DOLLAR).get();
+            fleet.insertCoin(0, Coin.DOLLAR).get();
+            fleet.selectProduct(0, 0).get();
+            fleet.stockProduct(0, 0, COLA, 0).get();
+            assertCause(ProductNotAvailableException.class, fleet.dispenseProduct(0));
+            assertEquals("IDLE", fleet.getStateName(0).get());
+        }
+    }
+
+    @Test
+    void sellsARepricedProductAtItsNewPrice() throws Exception {
+        Product repriced = new Product("COKE", "Coca-Cola", 250);
+        try (Fleet fleet = new Fleet(2, 1, 1)) {
+            fleet.stockProduct(0, 0, COLA, 1).get();
+            fleet.stockProduct(1, 0, COLA, 0).get();
+            fleet.stockProduct(0, 0, repriced, 1).get();
+            fleet.insertCoin(0, Coin.DOLLAR).get();
+            fleet.insertCoin(0, Coin.DOLLAR).get();
+            assertCause(InsufficientMoneyException.class, fleet.selectProduct(0, 0));
+
+            fleet.insertCoin(0, Coin.QUARTER).get();
+            fleet.insertCoin(0, Coin.QUARTER).get();
+            Product sold = fleet.selectProduct(0, 0).get();
+            assertEquals(250, sold.getPriceInCents());
+            assertEquals(250, fleet.dispenseProduct(0).get().getPriceInCents());
+            assertEquals(250, fleet.getTotalCash());
+
+            // Both versions of the product are one entry in the stock-out count
+            assertEquals(Map.of(COLA, 2L), fleet.getStockOutsPerProduct());
+        }
+    }
+
+    @Test
+    void completesEveryFutureWhenClosedDuringSubmits() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            Fleet fleet = new Fleet(8, 1, 4);
+            List<CompletableFuture<String>> futures = Collections.synchronizedList(new ArrayList<>());
+            Thread[] submitters = new Thread[4];
+            for (int t = 0; t < submitters.length; t++) {
+                int machine = t;
+                submitters[t] = new Thread(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        futures.add(fleet.getStateName(machine));
+                    }
+                });
+                submitters[t].start();
+            }
+            fleet.close();
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+            for (CompletableFuture<String> future : futures) {
+                try {
+                    assertEquals("IDLE", future.get(5, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    assertInstanceOf(IllegalStateException.class, e.getCause());
+                }
+            }
+        }
+    }
+
+    private static void assertCause(Class<? extends Throwable> expected, CompletableFuture<?> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(expected, e.getCause());
+        assertTrue(future.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,172 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class InventoryChangePublisherTest {
+
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 150);
+
+    @Test
+    void deliversNoMoreThanRequested() throws InterruptedException {
+        Inventory inventory = sampleInventory();
+        RecordingSubscriber subscriber = subscribe(inventory);
+        inventory.addStock("A1", 1);
+        inventory.addStock("B1", 1);
+        inventory.addStock("C1", 1);
+        subscriber.assertQuiet();
+
+        subscriber.subscription.request(1);
+        assertEquals(new InventoryChange.ShelfQuantityChanged("A1", 11), subscriber.next());
+        subscriber.assertQuiet();
+
+        subscriber.subscription.request(5);
+        assertEquals(new InventoryChange.ShelfQuantityChanged("B1", 11), subscriber.next());
+        assertEquals(new InventoryChange.ShelfQuantityChanged("C1", 11), subscriber.next());
+        subscriber.assertQuiet();
+
+        // Three units of demand are left over for the next change
+        inventory.addStock("A1", 1);
+        assertEquals(new InventoryChange.ShelfQuantityChanged("A1", 12), subscriber.next());
+    }
+
+    @Test
+    void coalescesChangesToOneShelfWhileThereIsNoDemand() throws InterruptedException {
+        Inventory inventory = sampleInventory();
+        RecordingSubscriber subscriber = subscribe(inventory);
+        for (int i = 0; i < 7; i++) {
+            inventory.dispenseProduct("A1");
+        }
+        subscriber.subscription.request(100);
+        assertEquals(new InventoryChange.ShelfQuantityChanged("A1", 3), subscriber.next());
+        subscriber.assertQuiet();
+    }
+
+    @Test
+    void reportsAShelfThatRanOutEvenIfRestockedSince() throws InterruptedException {
+        Inventory inventory = sampleInventory();
+        inventory.stockProduct("D1", COLA, 1);
+        RecordingSubscriber subscriber = subscribe(inventory);
+        inventory.dispenseProduct("D1");
+        inventory.addStock("D1", 6);
+
+        subscriber.subscription.request(1);
+        assertEquals(new InventoryChange.ShelfEmpty("D1"), subscriber.next());
+        subscriber.assertQuiet();
+        subscriber.subscription.request(1);
+        assertEquals(new InventoryChange.ShelfQuantityChanged("D1", 6), subscriber.next());
+    }
+
+    @Test
+    void reportsCoinsFallingBelowTheirThreshold() throws InterruptedException {
+        Inventory inventory = sampleInventory();
+        inventory.getChanges().setCoinThreshold(Coin.QUARTER, 5);
+        RecordingSubscriber subscriber = subscribe(inventory);
+        subscriber.subscription.request(10);
+        subscriber.assertQuiet();
+
+        inventory.removeCoins(Coin.QUARTER, 6);
+        assertEquals(new InventoryChange.CoinLow(Coin.QUARTER.ordinal(), 4, 5), subscriber.next());
+        // Dimes have no threshold, so taking all of them is not reported
+        inventory.removeCoins(Coin.DIME, 10);
+        Object signal;
+        while ((signal = subscriber.poll()) != null) {
+            assertEquals(Coin.QUARTER.ordinal(), ((InventoryChange.CoinLow) signal).denomination());
+        }
+    }
+
+    @Test
+    void cancelledSubscribersGetNothingMore() throws InterruptedException {
+        Inventory inventory = sampleInventory();
+        RecordingSubscriber subscriber = subscribe(inventory);
+        RecordingSubscriber other = subscribe(inventory);
+        assertEquals(2, inventory.getChanges().getSubscriberCount());
+
+        subscriber.subscription.request(10);
+        other.subscription.request(10);
+        subscriber.subscription.cancel();
+        assertEquals(1, inventory.getChanges().getSubscriberCount());
+        inventory.addStock("A1", 1);
+        assertEquals(new InventoryChange.ShelfQuantityChanged("A1", 11), other.next());
+        subscriber.assertQuiet();
+    }
+
+    @Test
+    void nonPositiveRequestIsAnError() throws InterruptedException {
+        Inventory inventory = sampleInventory();
+        RecordingSubscriber subscriber = subscribe(inventory);
+        subscriber.subscription.request(0);
+        assertInstanceOf(IllegalArgumentException.class, subscriber.next());
+        assertEquals(0, inventory.getChanges().getSubscriberCount());
+    }
+
+    // ==================== Helpers ====================
+
+    private static Inventory sampleInventory() {
+        Inventory inventory = new Inventory();
+        inventory.stockProduct("A1", COLA, 10);
+        inventory.stockProduct("B1", COLA, 10);
+        inventory.stockProduct("C1", COLA, 10);
+        inventory.addCoins(Coin.QUARTER, 10);
+        inventory.addCoins(Coin.DIME, 10);
+        return inventory;
+    }
+
+    private static RecordingSubscriber subscribe(Inventory inventory) {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        inventory.getChanges().subscribe(subscriber);
+        return subscriber;
+    }
+
+    /** Queues every change and error it receives; requests nothing by itself. */
+    private static final class RecordingSubscriber implements Flow.Subscriber<InventoryChange> {
+        private final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(InventoryChange change) {
+            received.add(change);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            received.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            received.add("complete");
+        }
+
+        Object next() throws InterruptedException {
+            Object signal = received.poll(5, TimeUnit.SECONDS);
+            if (signal == null) {
+                throw new AssertionError("Nothing delivered");
+            }
+            return signal;
+        }
+
+        Object poll() throws InterruptedException {
+            return received.poll(100, TimeUnit.MILLISECONDS);
+        }
+
+        void assertQuiet() throws InterruptedException {
+            assertNull(poll());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InventoryCheckpointTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsThroughFile() throws IOException {
+        Inventory inventory = sampleInventory();
+        Path file = dir.resolve("machine.ckp");
+        InventoryCheckpoint written = InventoryCheckpoint.capture(inventory);
+        written.writeTo(file);
+
+        InventoryCheckpoint read = InventoryCheckpoint.readFrom(file);
+        assertEquals(3, read.getShelfCount());
+        // Two shelves share one product
+        assertEquals(1, read.getProductCount());
+        assertEquals(0, read.getJournalPosition());
+        assertEquals(describe(inventory), describe(read.restore()));
+    }
+
+    @Test
+    void replacesPreviousCheckpointWithoutLeavingTemporaryFiles() throws IOException {
+        Inventory inventory = sampleInventory();
+        Path file = dir.resolve("machine.ckp");
+        InventoryCheckpoint.capture(inventory).writeTo(file);
+        inventory.addCoins(Coin.NICKEL, 7);
+        InventoryCheckpoint.capture(inventory).writeTo(file);
+
+        assertEquals(describe(inventory), describe(InventoryCheckpoint.readFrom(file).restore()));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(file), files.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void countsReservedItemsAsStocked() throws IOException {
+        Inventory inventory = sampleInventory();
+        inventory.reserveProduct("A1");
+        InventoryCheckpoint checkpoint = InventoryCheckpoint.fromBytes(InventoryCheckpoint.capture(inventory).toBytes());
+        assertEquals(5, checkpoint.restore().getView().getShelves().get(0).quantity());
+    }
+
+    @Test
+    void rejectsCorruptedBytes() {
+        byte[] data = InventoryCheckpoint.capture(sampleInventory()).toBytes();
+        data[data.length / 2] ^= 1;
+        assertThrows(IOException.class, () -> InventoryCheckpoint.fromBytes(data));
+        byte[] truncated = java.util.Arrays.copyOf(InventoryCheckpoint.capture(sampleInventory()).toBytes(), 10);
+        assertThrows(IOException.class, () -> InventoryCheckpoint.fromBytes(truncated));
+    }
+
+    private static Inventory sampleInventory() {
+        Inventory inventory = new Inventory();
+        Product cola = new Product("COKE", "Coca-Cola", 150);
+        inventory.stockProduct("A1", cola, 5);
+        inventory.stockProduct("B2", cola, 2);
+        inventory.addShelf("C3");
+        inventory.addCoins(Coin.QUARTER, 12);
+        inventory.addCoins(Coin.DIME, 3);
+        return inventory;
+    }
+
+    static String describe(Inventory inventory) {
+        InventoryView view = inventory.getView();
+        StringBuilder out = new StringBuilder();
+        for (ShelfView shelf : view.getShelves()) {
+            out.append(shelf.code()).append('=')
+                .append(shelf.product() != null ? shelf.product().getId() + "@" + shelf.product().getPriceInCents() : "-")
+                .append('x').append(shelf.quantity()).append(' ');
+        }
+        for (Coin coin : Coin.values()) {
+            out.append(coin).append('=').append(view.getCoinCount(coin)).append(' ');
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,249 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.vendingmachine.inventory.InventoryCheckpointTest.describe;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryJournalTest {
+
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 100);
+
+    @TempDir
+    Path dir;
+
+    private final List<Inventory> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() throws IOException {
+        for (Inventory inventory : opened) {
+            inventory.getJournal().close();
+        }
+    }
+
+    @Test
+    void recoversEveryMutation() throws IOException {
+        Path file = dir.resolve("machine.wal");
+        Inventory inventory = recover(file);
+        inventory.stockProduct("A1", COLA, 5);
+        inventory.addShelf("B1");
+        inventory.addStock("B1", 3);
+        inventory.addCoins(Coin.QUARTER, 10);
+        inventory.removeCoins(Coin.QUARTER, 2);
+        sell(inventory, "A1", 125, 25);
+        String live = describe(inventory);
+
+        inventory.getJournal().close();
+        opened.remove(inventory);
+        assertEquals(live, describe(recover(file)));
+    }
+
+    @Test
+    void replaysSaleOfItemReservedBeforeRestockToZero() throws IOException {
+        Path file = dir.resolve("machine.wal");
+        Inventory inventory = recover(file);
+        inventory.stockProduct("A1", COLA, 5);
+        int slot = inventory.resolveShelf("A1");
+        inventory.reserveProduct(slot);
+        // The reserved item stays on the shelf, and is journaled as stocked
+        inventory.stockProduct("A1", COLA, 0);
+        assertNotEquals(Inventory.NO_SALE, inventory.sell(slot, CoinTally.add(CoinTally.EMPTY, Coin.DOLLAR), 0));
+        String live = describe(inventory);
+
+        inventory.getJournal().close();
+        opened.remove(inventory);
+        assertEquals(live, describe(recover(file)));
+    }
+
+    @Test
+    void ignoresTornLastRecord() throws IOException {
+        Path file = dir.resolve("machine.wal");
+        Inventory inventory = recover(file);
+        inventory.addCoins(Coin.DIME, 5);
+        inventory.addCoins(Coin.DIME, 7);
+        int length = inventory.getJournal().getLength();
+        inventory.getJournal().close();
+        opened.remove(inventory);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0x55}), length - 2);
+        }
+
+        Inventory recovered = recover(file);
+        assertEquals(5, recovered.getCoinCount(Coin.DIME));
+        // New records overwrite the torn one
+        recovered.addCoins(Coin.DIME, 1);
+        recovered.getJournal().close();
+        opened.remove(recovered);
+        assertEquals(6, recover(file).getCoinCount(Coin.DIME));
+    }
+
+    @Test
+    void compactsToCheckpoints() throws IOException {
+        Path file = dir.resolve("machine.wal");
+        Path checkpointFile = dir.resolve("machine.ckp");
+        Inventory inventory = recover(file);
+        inventory.stockProduct("A1", COLA, 30);
+        inventory.stockProduct("A2", COLA, 30);
+        inventory.addCoins(Coin.QUARTER, 100);
+
+        Random random = new Random(1);
+        InventoryCheckpoint first = null;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 500; i++) {
+                String code = random.nextBoolean() ? "A1" : "A2";
+                if (!inventory.isProductAvailable(code)) {
+                    inventory.stockProduct(code, COLA, 30);
+                } else if (!sell(inventory, code, 125, 25)) {
+                    inventory.addCoins(Coin.QUARTER, 10);
+                }
+            }
+            InventoryCheckpoint checkpoint = inventory.checkpoint(checkpointFile);
+            if (first == null) {
+                first = checkpoint;
+            }
+            assertEquals(checkpoint.getJournalPosition(), inventory.getJournal().getStartPosition());
+        }
+        sell(inventory, "A1", 100, 0);
+        String live = describe(inventory);
+        assertTrue(inventory.getJournal().isCompacted());
+        inventory.getJournal().close();
+        opened.remove(inventory);
+
+        assertEquals(live, describe(recover(file, InventoryCheckpoint.readFrom(checkpointFile))));
+        assertFalse(Files.exists(dir.resolve("machine.wal.compact")));
+    }
+
+    @Test
+    void rejectsRecoveryWithoutMatchingCheckpoint() throws IOException {
+        Path file = dir.resolve("machine.wal");
+        Inventory inventory = recover(file);
+        inventory.addCoins(Coin.DIME, 1);
+        InventoryCheckpoint stale = inventory.checkpoint(dir.resolve("first.ckp"));
+        inventory.addCoins(Coin.DIME, 1);
+        inventory.checkpoint(dir.resolve("second.ckp"));
+        inventory.getJournal().close();
+        opened.remove(inventory);
+
+        assertThrows(IOException.class, () -> Inventory.recover(file));
+        assertThrows(IOException.class, () -> Inventory.recover(file, stale));
+        assertThrows(IOException.class, () -> Inventory.recover(file, new Inventory().checkpoint(dir.resolve("none.ckp"))));
+    }
+
+    @Test
+    void rejectsStringsTooLongForARecordBeforeWritingIt() throws IOException {
+        Path file = dir.resolve("machine.wal");
+        Inventory inventory = recover(file);
+        inventory.stockProduct("A1", COLA, 2);
+        long position = inventory.getJournal().getPosition();
+        String longName = "x".repeat(70_000);
+        // Two bytes per character in UTF-8
+        String longCode = "\u00e9".repeat(40_000);
+
+        assertThrows(IllegalArgumentException.class, () -> inventory.addShelf(longCode));
+        assertThrows(IllegalArgumentException.class, () -> inventory.stockProduct(longCode, COLA, 1));
+        assertThrows(IllegalArgumentException.class,
+            () -> inventory.stockProduct("A1", new Product("COKE", longName, 100), 1));
+        assertEquals(Inventory.NO_SHELF, inventory.resolveShelf(longCode));
+        assertEquals(COLA.getName(), inventory.getProduct("A1").getName());
+        assertEquals(position, inventory.getJournal().getPosition());
+
+        String[] codes = new String[70_000];
+        Arrays.fill(codes, "A1");
+        assertThrows(IllegalArgumentException.class,
+            () -> inventory.getJournal().logCartSale(codes, codes.length, CoinTally.EMPTY, new int[Coin.values().length]));
+        assertEquals(position, inventory.getJournal().getPosition());
+
+        String live = describe(inventory);
+        inventory.getJournal().close();
+        opened.remove(inventory);
+        assertEquals(live, describe(recover(file)));
+    }
+
+    @Test
+    void journalsNoStockThatWasNotAdded() throws IOException {
+        Path file = dir.resolve("machine.wal");
+        Inventory inventory = recover(file);
+        inventory.stockProduct("A1", COLA, Integer.MAX_VALUE - 1);
+        long position = inventory.getJournal().getPosition();
+        assertThrows(IllegalArgumentException.class, () -> inventory.addStock("A1", 2));
+        assertEquals(position, inventory.getJournal().getPosition());
+        inventory.addStock("A1", 1);
+
+        String live = describe(inventory);
+        inventory.getJournal().close();
+        opened.remove(inventory);
+        assertEquals(live, describe(recover(file)));
+    }
+
+    @Test
+    void replaysLargeCartSale() throws IOException {
+        Path file = dir.resolve("machine.wal");
+        Inventory inventory = recover(file);
+        inventory.stockProduct("A1", COLA, 40_000);
+        int[] slots = new int[40_000];
+        Arrays.fill(slots, inventory.resolveShelf("A1"));
+        for (int i = 0; i < slots.length; i++) {
+            inventory.reserveProduct(slots[i]);
+        }
+        // More items than a signed short counts
+        assertNotEquals(Inventory.NO_SALE, inventory.sell(slots, slots.length, CoinTally.EMPTY, 0));
+        assertEquals(0, inventory.getView().getShelves().get(0).quantity());
+
+        String live = describe(inventory);
+        inventory.getJournal().close();
+        opened.remove(inventory);
+        assertEquals(live, describe(recover(file)));
+    }
+
+    // ==================== Helpers ====================
+
+    private Inventory recover(Path file) throws IOException {
+        Inventory inventory = Inventory.recover(file);
+        opened.add(inventory);
+        return inventory;
+    }
+
+    private Inventory recover(Path file, InventoryCheckpoint checkpoint) throws IOException {
+        Inventory inventory = Inventory.recover(file, checkpoint);
+        opened.add(inventory);
+        return inventory;
+    }
+
+    /**
+     * Sells one item paid with a dollar and, for 125 cents, a quarter.
+     * @return false if exact change could not be made (the reservation is released)
+     */
+    private static boolean sell(Inventory inventory, String code, int paid, int changeAmount) {
+        int slot = inventory.resolveShelf(code);
+        inventory.reserveProduct(slot);
+        long coins = CoinTally.add(CoinTally.EMPTY, Coin.DOLLAR);
+        if (paid == 125) {
+            coins = CoinTally.add(coins, Coin.QUARTER);
+        }
+        if (inventory.sell(slot, coins, changeAmount) == Inventory.NO_SALE) {
+            inventory.releaseReservation(slot);
+            return false;
+        }
+        return true;
+    }
+}
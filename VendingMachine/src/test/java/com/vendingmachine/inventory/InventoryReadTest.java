@@ -0,0 +1,116 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the lock-free reads never see a sale or restock half applied.
+ */
+class InventoryReadTest {
+
+    private static final Product CHIPS = new Product("CHIPS", "Chips", 60);
+    private static final Product OLD = new Product("OLD", "Discontinued", 100);
+    private static final Product NEW = new Product("NEW", "Replacement", 120);
+    private static final long DURATION_NANOS = 300_000_000L;
+
+    @Test
+    void totalCoinValueCountsASaleWhollyOrNotAtAll() throws Exception {
+        Inventory inventory = new Inventory();
+        inventory.stockProduct("A1", CHIPS, 1_000_000);
+        inventory.addCoins(Coin.QUARTER, 1_000);
+        inventory.addCoins(Coin.DIME, 1_000);
+        inventory.addCoins(Coin.NICKEL, 1_000);
+        int slot = inventory.resolveShelf("A1");
+        long dollar = CoinTally.add(CoinTally.EMPTY, Coin.DOLLAR);
+        int initial = inventory.getTotalCoinValue();
+
+        // Each sale banks a dollar and pays 40 cents back, so the float grows by 60 per sale;
+        // a read between the two steps would be 100 or -40 off
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread seller = new Thread(() -> {
+            while (!stop.get()) {
+                inventory.tryReserveProduct(slot);
+                if (inventory.sell(slot, dollar, 40) == Inventory.NO_SALE) {
+                    inventory.releaseReservation(slot);
+                    stop.set(true);
+                }
+            }
+        });
+        seller.start();
+        try {
+            long end = System.nanoTime() + DURATION_NANOS;
+            int reads = 0;
+            while (System.nanoTime() < end && !stop.get()) {
+                int value = inventory.getTotalCoinValue();
+                assertEquals(0, (value - initial) % 60, "float value " + value);
+                reads++;
+            }
+            assertTrue(reads > 0);
+        } finally {
+            stop.set(true);
+            seller.join();
+        }
+        assertNotEquals(initial, inventory.getTotalCoinValue());
+    }
+
+    @Test
+    void availableProductMatchesItsShelfDuringRestocks() throws Exception {
+        Inventory inventory = new Inventory();
+        inventory.stockProduct("A1", OLD, 0);
+        int slot = inventory.resolveShelf("A1");
+
+        // The shelf alternates between an empty OLD product and a stocked NEW one;
+        // OLD must never be reported available
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread restocker = new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    inventory.stockProduct("A1", NEW, 5);
+                    inventory.stockProduct("A1", OLD, 0);
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        restocker.start();
+        try {
+            long end = System.nanoTime() + DURATION_NANOS;
+            while (System.nanoTime() < end) {
+                Product product = inventory.getAvailableProduct(slot);
+                if (product != null) {
+                    assertSame(NEW, product);
+                }
+            }
+        } finally {
+            stop.set(true);
+            restocker.join();
+        }
+        assertNull(failure.get());
+        assertNull(inventory.getAvailableProduct(slot));
+    }
+
+    @Test
+    void reservingDoesNotMoveTheVersion() {
+        Inventory inventory = new Inventory();
+        inventory.stockProduct("A1", CHIPS, 3);
+        InventoryView before = inventory.getView();
+
+        assertSame(CHIPS, inventory.reserveProduct("A1"));
+        assertSame(before, inventory.getView());
+        assertEquals(3, before.getShelves().get(0).quantity());
+        inventory.releaseReservation("A1");
+        assertSame(before, inventory.getView());
+    }
+}
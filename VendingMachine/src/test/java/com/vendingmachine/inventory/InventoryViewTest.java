@@ -0,0 +1,101 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.ItemShelf;
+import com.vendingmachine.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryViewTest {
+
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 150);
+    private static final Product CHIPS = new Product("CHIPS", "Chips", 50);
+
+    @Test
+    void returnsTheSameViewWhileNothingChanges() {
+        Inventory inventory = sampleInventory();
+        InventoryView view = inventory.getView();
+        assertSame(view, inventory.getView());
+        inventory.getAllShelves();
+        inventory.getTotalCoinValue();
+        assertSame(view, inventory.getView());
+    }
+
+    @Test
+    void reusesTheShelvesThatDidNotChange() {
+        Inventory inventory = sampleInventory();
+        InventoryView before = inventory.getView();
+
+        inventory.addStock("B1", 4);
+        InventoryView after = inventory.getView();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertSame(before.getShelves().get(0), after.getShelves().get(0));
+        assertSame(before.getShelves().get(2), after.getShelves().get(2));
+        assertNotSame(before.getShelves().get(1), after.getShelves().get(1));
+        assertEquals(new ShelfView("B1", CHIPS, 9), after.getShelves().get(1));
+        // The old view still shows the old quantity
+        assertEquals(5, before.getShelves().get(1).quantity());
+    }
+
+    @Test
+    void coinRefillsAndSalesProduceANewView() {
+        Inventory inventory = sampleInventory();
+        InventoryView start = inventory.getView();
+
+        inventory.addCoins(Coin.QUARTER, 3);
+        InventoryView refilled = inventory.getView();
+        assertTrue(refilled.getVersion() > start.getVersion());
+        assertEquals(13, refilled.getCoinCount(Coin.QUARTER));
+        assertEquals(10, start.getCoinCount(Coin.QUARTER));
+        assertSame(start.getShelves().get(0), refilled.getShelves().get(0));
+
+        int slot = inventory.resolveShelf("A1");
+        inventory.tryReserveProduct(slot);
+        inventory.sell(slot, CoinTally.add(CoinTally.add(CoinTally.EMPTY, Coin.DOLLAR), Coin.DOLLAR), 50);
+        InventoryView sold = inventory.getView();
+        assertEquals(2, sold.getShelves().get(0).quantity());
+        assertEquals(11, sold.getCoinCount(Coin.QUARTER));
+        assertEquals(2, sold.getCoinCount(Coin.DOLLAR));
+        assertEquals(inventory.getTotalCoinValue(), sold.getTotalCoinValue());
+    }
+
+    @Test
+    void addedShelvesAppearInOrder() {
+        Inventory inventory = sampleInventory();
+        List<ItemShelf> shelves = inventory.getAllShelves();
+        assertSame(shelves, inventory.getAllShelves());
+
+        inventory.addShelf("D1");
+        List<ItemShelf> grown = inventory.getAllShelves();
+        assertEquals(4, grown.size());
+        assertEquals("D1", grown.get(3).getCode());
+        assertEquals(3, shelves.size());
+        assertEquals(new ShelfView("D1", null, 0), inventory.getView().getShelves().get(3));
+    }
+
+    @Test
+    void viewsCannotBeModified() {
+        InventoryView view = sampleInventory().getView();
+        assertThrows(UnsupportedOperationException.class, () -> view.getShelves().remove(0));
+        assertThrows(UnsupportedOperationException.class, () -> sampleInventory().getAllShelves().clear());
+    }
+
+    // ==================== Helpers ====================
+
+    private static Inventory sampleInventory() {
+        Inventory inventory = new Inventory();
+        inventory.stockProduct("A1", COLA, 3);
+        inventory.stockProduct("B1", CHIPS, 5);
+        inventory.addShelf("C1");
+        inventory.addCoins(Coin.QUARTER, 10);
+        return inventory;
+    }
+}
@@ -0,0 +1,158 @@
+package com.vendingmachine.inventory;
+
+import com.vendingmachine.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlanogramLoaderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void loadsRowsSkippingHeaderCommentsAndBlankLines() throws IOException {
+        Path file = write("shelf,product_id,product_name,price_cents,quantity\r\n"
+            + "# front row\r\n"
+            + "A1,COKE,Coca-Cola,150,10\r\n"
+            + "\r\n"
+            + "A2, PEPSI , Pepsi , 140 , 8\r\n"
+            + "A3,,,,\n"
+            + "B1,WATER,Water,100,0");
+
+        Inventory inventory = PlanogramLoader.load(file);
+        assertEquals(Map.of("A1", "COKE/Coca-Cola/150 x10", "A2", "PEPSI/Pepsi/140 x8",
+            "A3", "empty", "B1", "WATER/Water/100 x0"), shelves(inventory));
+    }
+
+    @Test
+    void unquotesFields() throws IOException {
+        Path file = write("A1,\"SNK,1\",\"Chips, \"\"salted\"\"\",\"120\",\"4\"\n"
+            + "\"A2\",\"\",\"\",\"\",\"\"\n");
+
+        Inventory inventory = PlanogramLoader.load(file);
+        Product chips = inventory.getProduct("A1");
+        assertEquals("SNK,1", chips.getId());
+        assertEquals("Chips, \"salted\"", chips.getName());
+        assertEquals(120, chips.getPriceInCents());
+        assertEquals("empty", shelves(inventory).get("A2"));
+    }
+
+    @Test
+    void sharesProductsAndKeepsTheLastRowOfAShelf() throws IOException {
+        Path file = write("A1,COKE,Coca-Cola,150,10\n"
+            + "A2,COKE,Coca-Cola,150,5\n"
+            + "A3,\"COKE\",Coca-Cola, 150,5\n"
+            + "A1,WATER,Water,100,2\n");
+
+        Inventory inventory = PlanogramLoader.load(file);
+        assertSame(inventory.getProduct("A2"), inventory.getProduct("A3"));
+        assertEquals("WATER/Water/100 x2", shelves(inventory).get("A1"));
+        assertEquals(3, shelves(inventory).size());
+    }
+
+    @Test
+    void rejectsAProductListedTwiceWithDifferentDetails() throws IOException {
+        Path file = write("A1,COKE,Coca-Cola,150,10\n"
+            + "A2,COKE,Coca-Cola,175,5\n");
+
+        IOException e = assertThrows(IOException.class, () -> PlanogramLoader.load(file));
+        assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+        assertTrue(e.getMessage().contains("product COKE"), e.getMessage());
+
+        Path renamed = write("A1,COKE,Coca-Cola,150,10\n"
+            + "A2,COKE,Coke Zero,150,5\n");
+        assertThrows(IOException.class, () -> PlanogramLoader.load(renamed));
+    }
+
+    @Test
+    void rejectsMalformedRowsWithTheirLineNumber() throws IOException {
+        Map<String, String> rows = new HashMap<>();
+        rows.put("A2,COKE,Coca-Cola,150", "expected 5 fields");
+        rows.put("A2,COKE,Coca-Cola,150,10,extra", "more than 5 fields");
+        rows.put("A2,COKE,Coca-Cola,150,10,", "more than 5 fields");
+        rows.put("A2,\"COKE,Coca-Cola,150,10", "unterminated quote");
+        rows.put("A2,\"COKE\"x,Coca-Cola,150,10", "unexpected text after closing quote");
+        rows.put(",COKE,Coca-Cola,150,10", "shelf code is empty");
+        rows.put("A2,COKE,Coca-Cola,-150,10", "price is not a non-negative whole number");
+        rows.put("A2,COKE,Coca-Cola,1.50,10", "price is not a non-negative whole number");
+        rows.put("A2,COKE,Coca-Cola,150,", "quantity is empty");
+        rows.put("A2,COKE,Coca-Cola,150,99999999999", "quantity is too large");
+
+        for (Map.Entry<String, String> row : rows.entrySet()) {
+            Path file = write("A1,WATER,Water,100,2\n" + row.getKey() + "\n");
+            IOException e = assertThrows(IOException.class, () -> PlanogramLoader.load(file), row.getKey());
+            assertTrue(e.getMessage().contains("line 2: " + row.getValue()), e.getMessage());
+        }
+    }
+
+    @Test
+    void leavesTheInventoryUnchangedWhenTheFileIsMalformed() throws IOException {
+        Inventory inventory = new Inventory();
+        inventory.stockProduct("A1", new Product("WATER", "Water", 100), 2);
+        Map<String, String> before = shelves(inventory);
+
+        Path file = write("A1,COKE,Coca-Cola,150,10\n"
+            + "A2,PEPSI,Pepsi,140,8\n"
+            + "A3,CHIPS,Chips,abc,8\n");
+        assertThrows(IOException.class, () -> PlanogramLoader.loadInto(inventory, file));
+        assertEquals(before, shelves(inventory));
+
+        Path good = write("A2,PEPSI,Pepsi,140,8\n");
+        assertEquals(1, PlanogramLoader.loadInto(inventory, good));
+        assertEquals("WATER/Water/100 x2", shelves(inventory).get("A1"));
+        assertEquals("PEPSI/Pepsi/140 x8", shelves(inventory).get("A2"));
+    }
+
+    @Test
+    void loadsRowsSpanningSeveralReads() throws IOException {
+        // More than the 1 MiB read buffer, so rows are split across reads
+        int rows = 60_000;
+        StringBuilder csv = new StringBuilder("shelf,product_id,product_name,price_cents,quantity\n");
+        for (int i = 0; i < rows; i++) {
+            int product = i % 100;
+            csv.append('S').append(i).append(",P").append(product).append(",\"Product number ")
+                .append(product).append("\",").append(100 + product).append(',').append(i % 7);
+            if (i < rows - 1) {
+                csv.append('\n');
+            }
+        }
+        Path file = write(csv.toString());
+        assertTrue(Files.size(file) > 1 << 20);
+
+        Inventory inventory = PlanogramLoader.load(file);
+        Map<String, String> shelves = shelves(inventory);
+        assertEquals(rows, shelves.size());
+        assertEquals("P99/Product number 99/199 x2", shelves.get("S" + (rows - 1)));
+        assertSame(inventory.getProduct("S5"), inventory.getProduct("S105"));
+    }
+
+    // ==================== Helpers ====================
+
+    private Path write(String csv) throws IOException {
+        Path file = Files.createTempFile(dir, "planogram", ".csv");
+        Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static Map<String, String> shelves(Inventory inventory) {
+        Map<String, String> shelves = new HashMap<>();
+        for (ShelfView shelf : inventory.getView().getShelves()) {
+            Product product = shelf.product();
+            shelves.put(shelf.code(), product == null ? "empty"
+                : product.getId() + "/" + product.getName() + "/" + product.getPriceInCents() + " x" + shelf.quantity());
+        }
+        return shelves;
+    }
+}
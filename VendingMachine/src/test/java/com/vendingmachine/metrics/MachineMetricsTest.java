@@ -0,0 +1,156 @@
+package com.vendingmachine.metrics;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.exception.ProductNotAvailableException;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.result.VendResult;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MachineMetricsTest {
+
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 150);
+
+    @Test
+    void countsOperationsAndStateEntriesOfAllSessions() {
+        VendingMachine vm = machine();
+        MachineMetrics metrics = new MachineMetrics();
+        vm.getInventory().setMetrics(metrics);
+        VendingMachine session = vm.openSession();
+
+        buy(vm);
+        buy(session);
+        session.insertCoin(Coin.QUARTER);
+        session.cancelTransaction();
+
+        assertEquals(5, metrics.getCoinsInserted());
+        assertEquals(2, metrics.getProductsSelected());
+        assertEquals(2, metrics.getProductsDispensed());
+        assertEquals(1, metrics.getTransactionsCancelled());
+        assertEquals(3, metrics.getHasMoneyEntries());
+        assertEquals(2, metrics.getDispensingEntries());
+        assertEquals(3, metrics.getIdleEntries());
+        assertEquals(2, metrics.getChangeCalculations());
+        assertEquals(0, metrics.getChangeFailures());
+    }
+
+    @Test
+    void countsRejectionsLikeTheMatchingExceptions() {
+        VendingMachine vm = machine();
+        MachineMetrics metrics = new MachineMetrics();
+        vm.getInventory().setMetrics(metrics);
+
+        vm.insertCoin(Coin.DOLLAR);
+        assertThrows(ProductNotAvailableException.class, () -> vm.selectProduct("Z9"));
+        assertEquals(VendResult.Rejected.UNKNOWN_SHELF, vm.trySelectProduct("Z9"));
+        assertEquals(VendResult.Rejected.NOT_ENOUGH_MONEY, vm.trySelectProduct("A1"));
+        assertEquals(VendResult.Rejected.WRONG_STATE, vm.tryDispenseProduct());
+
+        assertEquals(2, metrics.getProductNotAvailableExceptions());
+        assertEquals(1, metrics.getInsufficientMoneyExceptions());
+        assertEquals(1, metrics.getInvalidOperationExceptions());
+        assertEquals(0, metrics.getInsufficientChangeExceptions());
+    }
+
+    @Test
+    void resetStartsEveryCountFromZero() {
+        VendingMachine vm = machine();
+        MachineMetrics metrics = new MachineMetrics();
+        vm.getInventory().setMetrics(metrics);
+        buy(vm);
+        metrics.reset();
+
+        assertEquals(0, metrics.getCoinsInserted());
+        assertEquals(0, metrics.getProductsDispensed());
+        assertEquals(0, metrics.getIdleEntries());
+        assertEquals(0, metrics.getChangeCalculations());
+        assertEquals(0, metrics.getDispenseLatencyP99Nanos());
+
+        buy(vm);
+        assertEquals(1, metrics.getProductsDispensed());
+    }
+
+    @Test
+    void disabledMetricsRecordNothing() {
+        VendingMachine vm = machine();
+        buy(vm);
+        assertFalse(MachineMetrics.DISABLED.isEnabled());
+        assertEquals(0, MachineMetrics.DISABLED.getProductsDispensed());
+        assertEquals(0, MachineMetrics.DISABLED.startTimer());
+        assertThrows(IllegalStateException.class, () -> MachineMetrics.DISABLED.register("disabled"));
+    }
+
+    @Test
+    void publishesAttributesOverJmx() throws Exception {
+        VendingMachine vm = machine();
+        MachineMetrics metrics = vm.enableMetrics("metrics-test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.vendingmachine:type=VendingMachine,name=\"metrics-test\"");
+        try {
+            assertTrue(server.isRegistered(name));
+            buy(vm);
+            assertEquals(1L, server.getAttribute(name, "ProductsDispensed"));
+            assertEquals(2L, server.getAttribute(name, "CoinsInserted"));
+
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "ProductsDispensed"));
+
+            MachineMetrics other = new MachineMetrics();
+            assertThrows(IllegalStateException.class, () -> other.register("metrics-test"));
+            assertThrows(IllegalStateException.class, () -> metrics.register("metrics-test-2"));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void histogramPercentilesAreWithinTheBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos);
+        }
+        assertEquals(100_000, histogram.count());
+        assertWithin(50_000, histogram.percentile(50));
+        assertWithin(99_000, histogram.percentile(99));
+        assertWithin(99_900, histogram.percentile(99.9));
+        assertEquals(7, histogram.percentile(0.007));
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+    }
+
+    // ==================== Helpers ====================
+
+    private static VendingMachine machine() {
+        VendingMachine vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        vm.stockProduct("A1", COLA, 10);
+        vm.loadCoins(Coin.QUARTER, 10);
+        return vm;
+    }
+
+    /** Buys a cola with two dollars, for two coins and 50 cents change. */
+    private static void buy(VendingMachine vm) {
+        vm.insertCoin(Coin.DOLLAR);
+        vm.insertCoin(Coin.DOLLAR);
+        vm.selectProduct("A1");
+        vm.dispenseProduct();
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16,
+            () -> "expected about " + expected + " but was " + actual);
+    }
+}
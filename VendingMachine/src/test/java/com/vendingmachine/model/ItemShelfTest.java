@@ -0,0 +1,98 @@
+package com.vendingmachine.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ItemShelfTest {
+
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 150);
+
+    @Test
+    void reservesCommitsAndReleases() {
+        ItemShelf shelf = new ItemShelf("A1");
+        shelf.setProduct(COLA);
+        shelf.setQuantity(2);
+
+        assertTrue(shelf.tryReserve());
+        assertEquals(1, shelf.getQuantity());
+        assertEquals(1, shelf.getReservedQuantity());
+        shelf.release();
+        assertEquals(2, shelf.getQuantity());
+
+        assertTrue(shelf.tryReserve());
+        shelf.commit();
+        assertEquals(1, shelf.getStockedQuantity());
+        assertThrows(IllegalStateException.class, shelf::commit);
+    }
+
+    @Test
+    void keepsReservedItemsWhenRestocked() {
+        ItemShelf shelf = new ItemShelf("A1");
+        shelf.setProduct(COLA);
+        shelf.setQuantity(3);
+        shelf.tryReserve();
+        shelf.tryReserve();
+
+        assertEquals(2, shelf.setQuantity(0));
+        assertEquals(0, shelf.getQuantity());
+        assertFalse(shelf.tryReserve());
+        assertEquals(5, shelf.setQuantity(5));
+        assertEquals(3, shelf.getQuantity());
+    }
+
+    @Test
+    void neverSellsMoreThanStockedUnderContention() throws InterruptedException {
+        int threads = 8;
+        int stock = 100_000;
+        ItemShelf shelf = new ItemShelf("A1");
+        shelf.setProduct(COLA);
+        shelf.setQuantity(stock);
+
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger released = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            boolean releaseSome = t % 2 == 0;
+            workers[t] = new Thread(() -> {
+                awaitQuietly(start);
+                int attempt = 0;
+                while (shelf.tryReserve()) {
+                    // Every third reservation of some threads falls through and goes back
+                    if (releaseSome && ++attempt % 3 == 0) {
+                        shelf.release();
+                        released.incrementAndGet();
+                    } else {
+                        shelf.commit();
+                        sold.incrementAndGet();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(stock, sold.get());
+        assertEquals(0, shelf.getQuantity());
+        assertEquals(0, shelf.getReservedQuantity());
+        assertTrue(released.get() > 0);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.vendingmachine.payment;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEvent;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.metrics.MachineMetrics;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.result.VendResult;
+import com.vendingmachine.state.MachineState;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CardPaymentTest {
+
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 150);
+    private static final Product CHIPS = new Product("CHIPS", "Chips", 40);
+
+    private final List<VendingEvent> events = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void approvedPaymentCapturesThePriceAndReleasesTheRest() {
+        try (StubPaymentAuthorizer authorizer = new StubPaymentAuthorizer(Duration.ZERO, 0.0, 1)) {
+            VendingMachine vm = machine(authorizer);
+            assertEquals(VendResult.ACCEPTED, vm.payByCard("card", 200).join());
+            vm.selectProduct("A1");
+            assertEquals(COLA, vm.dispenseProduct());
+
+            assertEquals(MachineState.IDLE, vm.getCurrentState());
+            assertEquals(1, authorizer.getCaptures());
+            assertEquals(150, authorizer.getCapturedCents());
+            assertEquals(0, authorizer.getOpenHolds());
+            assertEquals(List.of(VendingEvent.PaymentAuthorized.class, VendingEvent.ProductSelected.class,
+                VendingEvent.ProductDispensed.class, VendingEvent.PaymentCaptured.class), eventTypes());
+            assertEquals(150, last(VendingEvent.PaymentCaptured.class).amountCents());
+        }
+    }
+
+    @Test
+    void cartIsChargedItsTotalOnce() {
+        try (StubPaymentAuthorizer authorizer = new StubPaymentAuthorizer(Duration.ZERO, 0.0, 1)) {
+            VendingMachine vm = machine(authorizer);
+            vm.payByCard("card", 300).join();
+            vm.selectProducts("A1", "B1");
+            assertEquals(List.of(COLA, CHIPS), vm.dispenseProducts());
+            assertEquals(1, authorizer.getCaptures());
+            assertEquals(190, authorizer.getCapturedCents());
+        }
+    }
+
+    @Test
+    void selectionWhileAuthorizingGoesStraightToDispensing() {
+        ControlledAuthorizer authorizer = new ControlledAuthorizer();
+        VendingMachine vm = machine(authorizer);
+        CompletableFuture<VendResult> payment = vm.payByCard("card", 200);
+        assertFalse(payment.isDone());
+        vm.selectProduct("A1");
+        assertEquals(MachineState.AUTHORIZING, vm.getCurrentState());
+
+        authorizer.approve();
+        assertEquals(VendResult.ACCEPTED, payment.join());
+        assertEquals(MachineState.DISPENSING, vm.getCurrentState());
+        assertEquals(COLA, vm.dispenseProduct());
+        assertEquals(List.of(150), authorizer.captured);
+    }
+
+    @Test
+    void approvedHoldBelowTheSelectedPriceDropsTheSelection() {
+        ControlledAuthorizer authorizer = new ControlledAuthorizer();
+        VendingMachine vm = machine(authorizer);
+        vm.payByCard("card", 200);
+        vm.selectProduct("A1");
+        // The service approves less than was asked
+        authorizer.pending.complete(Authorization.approved("hold-1", "card", 100));
+        assertEquals(MachineState.AUTHORIZED, vm.getCurrentState());
+        assertEquals(100, vm.getCurrentBalance());
+    }
+
+    @Test
+    void declineEndsTheTransaction() {
+        MachineMetrics metrics = new MachineMetrics();
+        try (StubPaymentAuthorizer authorizer = new StubPaymentAuthorizer(Duration.ZERO, 1.0, 1)) {
+            VendingMachine vm = machine(authorizer);
+            vm.getInventory().setMetrics(metrics);
+            assertEquals(VendResult.Rejected.PAYMENT_DECLINED, vm.payByCard("card", 200).join());
+            assertEquals(MachineState.IDLE, vm.getCurrentState());
+            assertEquals(1, authorizer.getDeclines());
+            assertEquals(1, metrics.getPaymentsDeclined());
+            assertEquals(List.of(VendingEvent.PaymentDeclined.class), eventTypes());
+        }
+    }
+
+    @Test
+    void unreachableServiceCountsAsADecline() {
+        ControlledAuthorizer authorizer = new ControlledAuthorizer();
+        VendingMachine vm = machine(authorizer);
+        CompletableFuture<VendResult> payment = vm.payByCard("card", 200);
+        authorizer.pending.completeExceptionally(new IllegalStateException("Service down"));
+        assertEquals(VendResult.Rejected.PAYMENT_DECLINED, payment.join());
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+        assertTrue(last(VendingEvent.PaymentDeclined.class).reason().contains("Service down"));
+    }
+
+    @Test
+    void cancelWhileAuthorizingReleasesTheLateApproval() {
+        ControlledAuthorizer authorizer = new ControlledAuthorizer();
+        VendingMachine vm = machine(authorizer);
+        vm.payByCard("card", 200);
+        vm.selectProduct("A1");
+        vm.cancelTransaction();
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+        assertTrue(authorizer.released.isEmpty());
+
+        authorizer.approve();
+        assertEquals(1, authorizer.released.size());
+        assertEquals("hold-1", authorizer.released.get(0).id());
+        assertTrue(authorizer.captured.isEmpty());
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+    }
+
+    @Test
+    void cancelAfterApprovalReleasesTheHold() {
+        try (StubPaymentAuthorizer authorizer = new StubPaymentAuthorizer(Duration.ZERO, 0.0, 1)) {
+            VendingMachine vm = machine(authorizer);
+            vm.payByCard("card", 200).join();
+            vm.cancelTransaction();
+            assertEquals(1, authorizer.getReleases());
+            assertEquals(0, authorizer.getOpenHolds());
+            assertEquals(0, authorizer.getCaptures());
+        }
+    }
+
+    @Test
+    void chargeIsReportedOnlyWhenTheCaptureCompletes() {
+        ControlledAuthorizer authorizer = new ControlledAuthorizer();
+        authorizer.capture = new CompletableFuture<>();
+        VendingMachine vm = machine(authorizer);
+        vm.payByCard("card", 200);
+        authorizer.approve();
+        vm.selectProduct("A1");
+        vm.dispenseProduct();
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+        assertFalse(eventTypes().contains(VendingEvent.PaymentCaptured.class));
+
+        authorizer.capture.complete(null);
+        assertSame(VendingEvent.PaymentCaptured.class, eventTypes().get(eventTypes().size() - 1));
+    }
+
+    @Test
+    void failedCaptureIsPublishedAndCounted() {
+        MachineMetrics metrics = new MachineMetrics();
+        try (StubPaymentAuthorizer authorizer = new StubPaymentAuthorizer(Duration.ZERO, 0.0, 1)) {
+            VendingMachine vm = machine(authorizer);
+            vm.getInventory().setMetrics(metrics);
+            vm.payByCard("card", 200).join();
+            vm.selectProduct("A1");
+            // The hold expires at the service before the product is dispensed
+            authorizer.release(vm.getAuthorization());
+
+            assertEquals(COLA, vm.dispenseProduct());
+            assertEquals(0, authorizer.getCaptures());
+            assertFalse(eventTypes().contains(VendingEvent.PaymentCaptured.class));
+            VendingEvent.PaymentCaptureFailed failed = last(VendingEvent.PaymentCaptureFailed.class);
+            assertEquals(150, failed.amountCents());
+            assertTrue(failed.reason().contains("No open hold"), failed.reason());
+            assertEquals(1, metrics.getPaymentCaptureFailures());
+        }
+    }
+
+    @Test
+    void captureThatThrowsIsReportedAsFailed() {
+        ControlledAuthorizer authorizer = new ControlledAuthorizer();
+        authorizer.capture = null;
+        VendingMachine vm = machine(authorizer);
+        vm.payByCard("card", 200);
+        authorizer.approve();
+        vm.selectProduct("A1");
+        assertEquals(COLA, vm.dispenseProduct());
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+        assertEquals("Capture refused", last(VendingEvent.PaymentCaptureFailed.class).reason());
+    }
+
+    // ==================== Helpers ====================
+
+    private VendingMachine machine(PaymentAuthorizer authorizer) {
+        VendingMachine vm = new VendingMachine(new Inventory(), events::add);
+        vm.stockProduct("A1", COLA, 3);
+        vm.stockProduct("B1", CHIPS, 3);
+        vm.setPaymentAuthorizer(authorizer);
+        events.clear();
+        return vm;
+    }
+
+    private List<Class<?>> eventTypes() {
+        synchronized (events) {
+            List<Class<?>> types = new ArrayList<>();
+            for (VendingEvent event : events) {
+                types.add(event.getClass());
+            }
+            return types;
+        }
+    }
+
+    private <T extends VendingEvent> T last(Class<T> type) {
+        synchronized (events) {
+            for (int i = events.size() - 1; i >= 0; i--) {
+                if (type.isInstance(events.get(i))) {
+                    return type.cast(events.get(i));
+                }
+            }
+        }
+        throw new AssertionError("No " + type.getSimpleName() + " in " + events);
+    }
+
+    /**
+     * Authorizer whose authorization the test answers explicitly, and which records captures
+     * and releases.
+     */
+    private static final class ControlledAuthorizer implements PaymentAuthorizer {
+
+        CompletableFuture<Authorization> pending;
+        // Returned by capture(); null makes capture() throw
+        CompletableFuture<Void> capture = CompletableFuture.completedFuture(null);
+        final List<Integer> captured = new ArrayList<>();
+        final List<Authorization> released = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<Authorization> authorize(String paymentToken, int amountCents) {
+            pending = new CompletableFuture<>();
+            return pending;
+        }
+
+        void approve() {
+            pending.complete(Authorization.approved("hold-1", "card", 200));
+        }
+
+        @Override
+        public CompletableFuture<Void> capture(Authorization authorization, int amountCents) {
+            if (capture == null) {
+                throw new IllegalStateException("Capture refused");
+            }
+            captured.add(amountCents);
+            return capture;
+        }
+
+        @Override
+        public CompletableFuture<Void> release(Authorization authorization) {
+            released.add(authorization);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.vendingmachine.result;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.exception.InsufficientChangeException;
+import com.vendingmachine.exception.ProductNotAvailableException;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.CoinTally;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.state.MachineState;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VendResultTest {
+
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 150);
+    private static final Product GUM = new Product("GUM", "Gum", 25);
+
+    @Test
+    void reportsASaleWithItsChange() {
+        VendingMachine vm = machine();
+        vm.loadCoins(Coin.QUARTER, 4);
+        assertSame(VendResult.ACCEPTED, vm.tryInsertCoin(Coin.DOLLAR));
+        assertSame(VendResult.ACCEPTED, vm.tryInsertCoin(Coin.DOLLAR));
+        assertSame(VendResult.ACCEPTED, vm.trySelectProduct("A1"));
+
+        VendResult result = vm.tryDispenseProduct();
+        assertTrue(result.isSuccess());
+        VendResult.Dispensed dispensed = assertInstanceOf(VendResult.Dispensed.class, result);
+        assertEquals("A1", dispensed.shelfCode());
+        assertEquals(COLA, dispensed.product());
+        assertEquals(50, dispensed.changeCents());
+        assertEquals(List.of(Coin.QUARTER, Coin.QUARTER), CoinTally.toList(dispensed.change()));
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+    }
+
+    @Test
+    void rejectedSelectionsKeepTheMoney() {
+        VendingMachine vm = machine();
+        vm.stockProduct("B1", GUM, 0);
+        vm.insertCoin(Coin.DOLLAR);
+
+        assertEquals(VendResult.Rejected.UNKNOWN_SHELF, vm.trySelectProduct("Z9"));
+        assertEquals(VendResult.Rejected.SOLD_OUT, vm.trySelectProduct("B1"));
+        assertEquals(VendResult.Rejected.NOT_ENOUGH_MONEY, vm.trySelectProduct("A1"));
+        assertFalse(VendResult.Rejected.NOT_ENOUGH_MONEY.isSuccess());
+        assertEquals(MachineState.HAS_MONEY, vm.getCurrentState());
+        assertEquals(100, vm.getCurrentBalance());
+
+        vm.insertCoin(Coin.DOLLAR);
+        assertSame(VendResult.ACCEPTED, vm.trySelectProduct("A1"));
+    }
+
+    @Test
+    void missingChangeRefundsAndLeavesStockAndFloatAlone() {
+        VendingMachine vm = machine();
+        vm.insertCoin(Coin.DOLLAR);
+        vm.insertCoin(Coin.DOLLAR);
+        vm.selectProduct("A1");
+
+        assertEquals(VendResult.Rejected.NO_EXACT_CHANGE, vm.tryDispenseProduct());
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+        assertEquals(0, vm.getCurrentBalance());
+        assertEquals(0, vm.getInventory().getCoinCount(Coin.DOLLAR));
+        assertEquals(3, vm.getInventory().getView().getShelves().get(0).quantity());
+    }
+
+    @Test
+    void operationsInTheWrongStateAreRejectedWithoutEffect() {
+        VendingMachine vm = machine();
+        assertEquals(VendResult.Rejected.WRONG_STATE, vm.trySelectProduct("A1"));
+        assertEquals(VendResult.Rejected.WRONG_STATE, vm.tryDispenseProduct());
+        assertEquals(MachineState.IDLE, vm.getCurrentState());
+
+        vm.insertCoin(Coin.QUARTER);
+        vm.insertCoin(Coin.DOLLAR);
+        vm.insertCoin(Coin.QUARTER);
+        vm.selectProduct("A1");
+        assertEquals(VendResult.Rejected.WRONG_STATE, vm.tryInsertCoin(Coin.DIME));
+        assertEquals(150, vm.getCurrentBalance());
+        assertEquals(MachineState.DISPENSING, vm.getCurrentState());
+    }
+
+    @Test
+    void coinsBeyondTheTallyLimitAreRejected() {
+        VendingMachine vm = machine();
+        for (int i = 0; i < CoinTally.MAX_PER_COIN; i++) {
+            assertSame(VendResult.ACCEPTED, vm.tryInsertCoin(Coin.PENNY));
+        }
+        assertEquals(VendResult.Rejected.COIN_LIMIT, vm.tryInsertCoin(Coin.PENNY));
+        assertEquals(CoinTally.MAX_PER_COIN, vm.getCurrentBalance());
+        assertSame(VendResult.ACCEPTED, vm.tryInsertCoin(Coin.NICKEL));
+    }
+
+    @Test
+    void matchesTheExceptionsOfTheThrowingApi() {
+        VendingMachine throwing = machine();
+        VendingMachine trying = throwing.openSession();
+        throwing.insertCoin(Coin.DOLLAR);
+        trying.insertCoin(Coin.DOLLAR);
+        assertThrows(ProductNotAvailableException.class, () -> throwing.selectProduct("Z9"));
+        assertEquals(VendResult.Rejected.UNKNOWN_SHELF, trying.trySelectProduct("Z9"));
+
+        throwing.insertCoin(Coin.DOLLAR);
+        trying.insertCoin(Coin.DOLLAR);
+        throwing.selectProduct("A1");
+        trying.selectProduct("A1");
+        assertThrows(InsufficientChangeException.class, throwing::dispenseProduct);
+        assertEquals(VendResult.Rejected.NO_EXACT_CHANGE, trying.tryDispenseProduct());
+        assertEquals(throwing.getCurrentState(), trying.getCurrentState());
+    }
+
+    // ==================== Helpers ====================
+
+    private static VendingMachine machine() {
+        VendingMachine vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        vm.stockProduct("A1", COLA, 3);
+        return vm;
+    }
+}
@@ -0,0 +1,216 @@
+package com.vendingmachine.state;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.exception.InvalidOperationException;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import com.vendingmachine.payment.Authorization;
+import com.vendingmachine.payment.PaymentAuthorizer;
+import com.vendingmachine.result.VendResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks every state/operation pair of the table, and that a session does what the table says
+ * for each of them.
+ */
+class TransitionTableTest {
+
+    private static final String SHELF = "A1";
+    private static final Product COLA = new Product("COKE", "Coca-Cola", 100);
+
+    @Test
+    void tableVerifies() {
+        assertDoesNotThrow(TransitionTable::verify);
+    }
+
+    @Test
+    void everyPairIsATransitionOrARejection() {
+        for (MachineState state : MachineState.values()) {
+            for (Operation operation : Operation.values()) {
+                byte code = state.code();
+                String pair = state + " x " + operation;
+                byte onSuccess = TransitionTable.onSuccess(code, operation);
+                byte onFailure = TransitionTable.onFailure(code, operation);
+                String message = TransitionTable.rejectionMessage(code, operation);
+                if (TransitionTable.isAllowed(code, operation)) {
+                    assertDoesNotThrow(() -> MachineState.of(onSuccess), pair);
+                    assertDoesNotThrow(() -> MachineState.of(onFailure), pair);
+                    assertNull(message, pair);
+                } else {
+                    assertEquals(TransitionTable.REJECT, onSuccess, pair);
+                    assertEquals(TransitionTable.REJECT, onFailure, pair);
+                    assertFalse(message == null || message.isBlank(), pair);
+                }
+            }
+        }
+    }
+
+    @Test
+    void sessionsFollowTheTable() {
+        for (MachineState state : MachineState.values()) {
+            for (Operation operation : Operation.values()) {
+                String pair = state + " x " + operation;
+                ControlledAuthorizer authorizer = new ControlledAuthorizer();
+                VendingMachine vm = machineIn(state, authorizer);
+                byte code = state.code();
+
+                if (!TransitionTable.isAllowed(code, operation)) {
+                    if (operation == Operation.PAYMENT_APPROVED || operation == Operation.PAYMENT_DECLINED) {
+                        // Only an authorization in flight can be answered
+                        assertTrue(authorizer.pending == null || authorizer.pending.isDone(), pair);
+                        continue;
+                    }
+                    assertEquals(VendResult.Rejected.WRONG_STATE, tryOperation(vm, authorizer, operation), pair);
+                    assertEquals(state, vm.getCurrentState(), pair);
+                    if (operation != Operation.AUTHORIZE_PAYMENT) {
+                        // The throwing API reports the table's message
+                        InvalidOperationException e = assertThrows(InvalidOperationException.class,
+                            () -> throwingOperation(machineIn(state, new ControlledAuthorizer()), operation), pair);
+                        assertEquals(TransitionTable.rejectionMessage(code, operation), e.getMessage(), pair);
+                    }
+                } else {
+                    assertNotEquals(VendResult.Rejected.WRONG_STATE, tryOperation(vm, authorizer, operation), pair);
+                    byte next = vm.getCurrentState().code();
+                    assertTrue(next == TransitionTable.onSuccess(code, operation)
+                        || next == TransitionTable.onFailure(code, operation), pair + " entered " + vm.getCurrentState());
+                }
+            }
+        }
+    }
+
+    @Test
+    void stateFacadesAreKeptPerSession() {
+        VendingMachine vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        assertSame(vm.getIdleState(), vm.getIdleState());
+        assertSame(vm.getHasMoneyState(), vm.getHasMoneyState());
+        assertSame(vm.getDispensingState(), vm.getDispensingState());
+        assertEquals(MachineState.HAS_MONEY, vm.getHasMoneyState().getMachineState());
+
+        vm.setState(vm.getHasMoneyState());
+        assertEquals(MachineState.HAS_MONEY, vm.getCurrentState());
+    }
+
+    // ==================== Helpers ====================
+
+    /**
+     * Builds a session in the given state, with one item in stock and change for a dollar.
+     */
+    private static VendingMachine machineIn(MachineState state, ControlledAuthorizer authorizer) {
+        VendingMachine vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        vm.stockProduct(SHELF, COLA, 1);
+        vm.loadCoins(Coin.QUARTER, 8);
+        vm.setPaymentAuthorizer(authorizer);
+        switch (state) {
+            case IDLE:
+                break;
+            case HAS_MONEY:
+                vm.insertCoin(Coin.DOLLAR);
+                break;
+            case DISPENSING:
+                vm.insertCoin(Coin.DOLLAR);
+                vm.selectProduct(SHELF);
+                break;
+            case AUTHORIZING:
+                vm.payByCard("card", 200);
+                break;
+            case AUTHORIZED:
+                vm.payByCard("card", 200);
+                authorizer.answer(true);
+                break;
+            default:
+                throw new IllegalStateException("No setup for " + state);
+        }
+        assertEquals(state, vm.getCurrentState());
+        return vm;
+    }
+
+    private static VendResult tryOperation(VendingMachine vm, ControlledAuthorizer authorizer, Operation operation) {
+        switch (operation) {
+            case INSERT_COIN:
+                return vm.tryInsertCoin(Coin.QUARTER);
+            case SELECT_PRODUCT:
+                return vm.trySelectProduct(SHELF);
+            case DISPENSE_PRODUCT:
+                return vm.tryDispenseProduct();
+            case CANCEL_TRANSACTION:
+                try {
+                    vm.cancelTransaction();
+                    return VendResult.ACCEPTED;
+                } catch (InvalidOperationException e) {
+                    return VendResult.Rejected.WRONG_STATE;
+                }
+            case AUTHORIZE_PAYMENT:
+                CompletableFuture<VendResult> result = vm.payByCard("card", 200);
+                return result.isDone() ? result.join() : VendResult.ACCEPTED;
+            case PAYMENT_APPROVED:
+                authorizer.answer(true);
+                return VendResult.ACCEPTED;
+            case PAYMENT_DECLINED:
+                authorizer.answer(false);
+                return VendResult.ACCEPTED;
+            default:
+                throw new IllegalStateException("No call for " + operation);
+        }
+    }
+
+    private static void throwingOperation(VendingMachine vm, Operation operation) {
+        switch (operation) {
+            case INSERT_COIN:
+                vm.insertCoin(Coin.QUARTER);
+                break;
+            case SELECT_PRODUCT:
+                vm.selectProduct(SHELF);
+                break;
+            case DISPENSE_PRODUCT:
+                vm.dispenseProduct();
+                break;
+            case CANCEL_TRANSACTION:
+                vm.cancelTransaction();
+                break;
+            default:
+                throw new IllegalStateException("No call for " + operation);
+        }
+    }
+
+    /**
+     * Authorizer whose answers the test gives explicitly.
+     */
+    private static final class ControlledAuthorizer implements PaymentAuthorizer {
+
+        CompletableFuture<Authorization> pending;
+
+        @Override
+        public CompletableFuture<Authorization> authorize(String paymentToken, int amountCents) {
+            pending = new CompletableFuture<>();
+            return pending;
+        }
+
+        void answer(boolean approve) {
+            pending.complete(approve ? Authorization.approved("auth-1", "card", 200)
+                : Authorization.declined("card", 200, "Declined by test"));
+        }
+
+        @Override
+        public CompletableFuture<Void> capture(Authorization authorization, int amountCents) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> release(Authorization authorization) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
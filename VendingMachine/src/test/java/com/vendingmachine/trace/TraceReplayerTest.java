@@ -0,0 +1,153 @@
+package com.vendingmachine.trace;
+
+import com.vendingmachine.VendingMachine;
+import com.vendingmachine.event.VendingEventListener;
+import com.vendingmachine.inventory.Inventory;
+import com.vendingmachine.model.Coin;
+import com.vendingmachine.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TraceReplayerTest {
+
+    private static final Product[] PRODUCTS = {
+        new Product("COKE", "Coca-Cola", 125),
+        new Product("CHIPS", "Chips", 65),
+        new Product("WATER", "Water", 100)
+    };
+
+    @Test
+    void replaysRecordedWorkloadFaithfully() throws IOException {
+        byte[] recording = record(5_000, 7);
+        Trace trace = Trace.read(new ByteArrayInputStream(recording));
+        assertFalse(trace.isTruncated());
+        assertEquals(5_000, trace.size());
+
+        ReplayResult result = new TraceReplayer(trace).run();
+        assertEquals(5_000, result.operations());
+        assertTrue(result.isFaithful(), () -> String.valueOf(result.firstMismatches()));
+    }
+
+    @Test
+    void replaysTruncatedTraceUpToLastCompleteRecord() throws IOException {
+        byte[] recording = record(1_000, 8);
+        Trace trace = Trace.read(new ByteArrayInputStream(Arrays.copyOf(recording, recording.length - 3)));
+        assertTrue(trace.isTruncated());
+        assertEquals(999, trace.size());
+        assertTrue(new TraceReplayer(trace).run().isFaithful());
+    }
+
+    @Test
+    void reportsMismatchWhenReplayedMachineDiffers() throws IOException {
+        Inventory inventory = new Inventory();
+        VendingMachine vm = new VendingMachine(inventory, VendingEventListener.NO_OP);
+        vm.stockProduct("A1", PRODUCTS[0], 1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceRecorder recorder = TraceRecorder.start(vm, bytes)) {
+            vm.insertCoin(Coin.DOLLAR);
+            vm.insertCoin(Coin.QUARTER);
+            vm.trySelectProduct("A1");
+            // Changed behind the recorder's back, so the replay cannot reproduce it
+            inventory.addCoins(Coin.QUARTER, 1);
+            vm.tryDispenseProduct();
+            assertEquals(4, recorder.getRecordCount());
+        }
+        Trace trace = Trace.read(new ByteArrayInputStream(bytes.toByteArray()));
+        // Exact change is only possible in the recording; the replay refunds instead
+        assertFalse(new TraceReplayer(trace).run().isFaithful());
+    }
+
+    @Test
+    void neverReusesTheNumberOfACollectedSession() throws IOException, InterruptedException {
+        VendingMachine vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        vm.stockProduct("A1", PRODUCTS[2], 5);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceRecorder recorder = TraceRecorder.start(vm, bytes)) {
+            vm.insertCoin(Coin.DOLLAR);
+            // Left with money inserted, then dropped
+            VendingMachine abandoned = vm.openSession();
+            abandoned.insertCoin(Coin.QUARTER);
+            WeakReference<VendingMachine> collected = new WeakReference<>(abandoned);
+            abandoned = null;
+            vm.cancelTransaction();
+            for (int i = 0; i < 50 && collected.get() != null; i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+
+            VendingMachine next = vm.openSession();
+            next.insertCoin(Coin.DOLLAR);
+            next.selectProduct("A1");
+            next.dispenseProduct();
+            assertEquals(6, recorder.getRecordCount());
+        }
+        ReplayResult result = new TraceReplayer(Trace.read(new ByteArrayInputStream(bytes.toByteArray()))).run();
+        assertTrue(result.isFaithful(), () -> String.valueOf(result.firstMismatches()));
+    }
+
+    @Test
+    void writesTracesLongerThanTheWriterBuffers() throws IOException {
+        byte[] recording = record(200_000, 9);
+        assertTrue(recording.length > 8 * 64 * 1024);
+        assertTrue(new TraceReplayer(Trace.read(new ByteArrayInputStream(recording))).run().isFaithful());
+    }
+
+    /**
+     * Records a random mix of calls from two sessions of one machine, both APIs, restocks
+     * and coin loads, including calls that fail.
+     */
+    private static byte[] record(int calls, long seed) throws IOException {
+        VendingMachine vm = new VendingMachine(new Inventory(), VendingEventListener.NO_OP);
+        for (int i = 0; i < 6; i++) {
+            vm.stockProduct("A" + (i + 1), PRODUCTS[i % PRODUCTS.length], 5);
+        }
+        vm.loadCoins(Coin.QUARTER, 10);
+        vm.loadCoins(Coin.DIME, 10);
+        vm.loadCoins(Coin.NICKEL, 5);
+        VendingMachine[] sessions = {vm, vm.openSession()};
+        Coin[] coins = Coin.values();
+        Random random = new Random(seed);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceRecorder recorder = TraceRecorder.start(vm, bytes)) {
+            for (int i = 0; i < calls; i++) {
+                VendingMachine session = sessions[random.nextInt(sessions.length)];
+                int kind = random.nextInt(100);
+                try {
+                    if (kind < 40) {
+                        session.tryInsertCoin(coins[1 + random.nextInt(coins.length - 1)]);
+                    } else if (kind < 55) {
+                        session.trySelectProduct("A" + (1 + random.nextInt(7)));
+                    } else if (kind < 60) {
+                        session.trySelectProducts("A1", "A" + (1 + random.nextInt(6)));
+                    } else if (kind < 70) {
+                        session.tryDispenseProduct();
+                    } else if (kind < 80) {
+                        session.dispenseProduct();
+                    } else if (kind < 90) {
+                        session.cancelTransaction();
+                    } else if (kind < 95) {
+                        session.stockProduct("A" + (1 + random.nextInt(6)), PRODUCTS[random.nextInt(PRODUCTS.length)],
+                            random.nextInt(4));
+                    } else {
+                        session.loadCoins(coins[random.nextInt(coins.length)], random.nextInt(5));
+                    }
+                } catch (RuntimeException e) {
+                    // Recorded with the call; the replay must throw the same
+                }
+            }
+            assertEquals(calls, recorder.getRecordCount());
+        }
+        return bytes.toByteArray();
+    }
+}